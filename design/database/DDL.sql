@@ -41,6 +41,7 @@ CREATE TABLE `pin_order_group`
   PRIMARY KEY (`id`),
   KEY `pin_order_group_pin_store_id_fk` (`store_id`),
   KEY `pin_order_group_pin_user_id_fk` (`owner_user_id`),
+  KEY `pin_order_group_store_create_time_index` (`store_id`, `create_time`, `id`),
   CONSTRAINT `pin_order_group_pin_store_id_fk` FOREIGN KEY (`store_id`) REFERENCES `pin_store` (`id`),
   CONSTRAINT `pin_order_group_pin_user_id_fk` FOREIGN KEY (`owner_user_id`) REFERENCES `pin_user` (`id`)
 ) ENGINE = InnoDB
@@ -88,6 +89,7 @@ CREATE TABLE `pin_order_individual`
   PRIMARY KEY (`id`) USING BTREE,
   KEY `pin_order_individual_pin_store_id_fk` (`store_id`),
   KEY `pin_order_individual_pin_user_id_fk` (`user_id`),
+  KEY `pin_order_individual_store_create_time_index` (`store_id`, `create_time`, `id`),
   CONSTRAINT `pin_order_individual_pin_store_id_fk` FOREIGN KEY (`store_id`) REFERENCES `pin_store` (`id`),
   CONSTRAINT `pin_order_individual_pin_user_id_fk` FOREIGN KEY (`user_id`) REFERENCES `pin_user` (`id`)
 ) ENGINE = InnoDB
@@ -135,7 +137,9 @@ CREATE TABLE `pin_product`
   `credit_to_give`        int(11) unsigned       NOT NULL DEFAULT '0' COMMENT '购买将获得的积分',
   `cost`                  decimal(8, 2) unsigned NOT NULL COMMENT '成本价',
   `visit_count`           int(11)                         DEFAULT '0' COMMENT '浏览量',
+  `update_time`           timestamp              NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后修改时间（推荐表征增量导出的水位线）',
   PRIMARY KEY (`id`),
+  KEY `pin_product_update_time_index` (`update_time`),
   KEY `pin_product_pin_store_id_fk` (`store_id`),
   KEY `pin_product_pin_settings_product_category_id_fk` (`category_id`),
   CONSTRAINT `pin_product_pin_settings_product_category_id_fk` FOREIGN KEY (`category_id`) REFERENCES `pin_settings_product_category` (`id`),
@@ -162,6 +166,25 @@ CREATE TABLE `pin_product_attribute_definition`
 
 -- No native definition for element: pin_product_attribute_definition_pin_product_id_fk (index)
 
+-- pin_product_rating: table
+CREATE TABLE `pin_product_rating`
+(
+  `product_id`    int(11) unsigned NOT NULL COMMENT '产品ID',
+  `comment_count` int(11)          NOT NULL DEFAULT '0' COMMENT '评论数',
+  `score_sum`     int(11)          NOT NULL DEFAULT '0' COMMENT '商品打分之和',
+  `good_count`    int(11)          NOT NULL DEFAULT '0' COMMENT '好评数',
+  `star1_count`   int(11)          NOT NULL DEFAULT '0' COMMENT '1 分评论数',
+  `star2_count`   int(11)          NOT NULL DEFAULT '0' COMMENT '2 分评论数',
+  `star3_count`   int(11)          NOT NULL DEFAULT '0' COMMENT '3 分评论数',
+  `star4_count`   int(11)          NOT NULL DEFAULT '0' COMMENT '4 分评论数',
+  `star5_count`   int(11)          NOT NULL DEFAULT '0' COMMENT '5 分评论数',
+  `update_time`   timestamp        NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后修改时间',
+  PRIMARY KEY (`product_id`),
+  KEY `pin_product_rating_update_time_index` (`update_time`),
+  CONSTRAINT `pin_product_rating_pin_product_id_fk` FOREIGN KEY (`product_id`) REFERENCES `pin_product` (`id`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4 COMMENT ='产品评分汇总';
+
 -- pin_settings_constant: table
 CREATE TABLE `pin_settings_constant`
 (
@@ -253,7 +276,9 @@ CREATE TABLE `pin_user`
   `last_login_ip`          varchar(64)               DEFAULT NULL,
   `create_ip`              varchar(64)               DEFAULT NULL,
   `gender`                 tinyint(1)                DEFAULT NULL COMMENT '1: 男；2：女；0:未知',
-  PRIMARY KEY (`id`)
+  `update_time`            timestamp        NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后修改时间（推荐表征增量导出的水位线）',
+  PRIMARY KEY (`id`),
+  KEY `pin_user_update_time_index` (`update_time`)
 ) ENGINE = InnoDB
   DEFAULT CHARSET = utf8mb4 COMMENT ='用户基础信息表';
 
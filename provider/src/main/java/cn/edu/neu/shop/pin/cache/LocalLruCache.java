@@ -0,0 +1,104 @@
+package cn.edu.neu.shop.pin.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 进程内有界缓存
+ * 按访问顺序淘汰最久未使用的条目，并对每个条目设置存活时间
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class LocalLruCache<K, V> {
+
+    private final int maxSize;
+
+    private final long ttlMillis;
+
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    /**
+     * @param maxSize   最大条目数
+     * @param ttlMillis 条目存活时间（毫秒），小于等于0表示不过期
+     */
+    public LocalLruCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > LocalLruCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存值，过期则移除并返回 null
+     *
+     * @param key 键
+     * @return 缓存值
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            map.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, ttlMillis);
+    }
+
+    /**
+     * 以指定的存活时间写入缓存
+     *
+     * @param key       键
+     * @param value     值
+     * @param ttlMillis 存活时间（毫秒），小于等于0表示不过期
+     */
+    public synchronized void put(K key, V value, long ttlMillis) {
+        long expireAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+        map.put(key, new Entry<>(value, expireAt));
+    }
+
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * @return 当前所有键的快照（含已过期但尚未移除的条目）
+     */
+    public synchronized List<K> keys() {
+        return new ArrayList<>(map.keySet());
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+}
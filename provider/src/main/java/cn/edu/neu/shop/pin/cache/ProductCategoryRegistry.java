@@ -0,0 +1,270 @@
+package cn.edu.neu.shop.pin.cache;
+
+import cn.edu.neu.shop.pin.mapper.PinSettingsProductCategoryMapper;
+import cn.edu.neu.shop.pin.model.PinSettingsProductCategory;
+import cn.edu.neu.shop.pin.util.PinConstants;
+import cn.edu.neu.shop.pin.util.ResponseWrapper;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import tk.mybatis.mapper.entity.Condition;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商品分类注册表
+ * 启动时一次性加载 pin_settings_product_category 整张表，构建不可变的两级分类树（子分类以数组保存），
+ * 并预先序列化常用接口的响应体；分类变更后重新加载并整体替换快照，读取方无需加锁，也不再访问数据库
+ */
+@Component
+public class ProductCategoryRegistry {
+
+    private static Logger logger = LoggerFactory.getLogger(ProductCategoryRegistry.class);
+
+    private final PinSettingsProductCategoryMapper pinSettingsProductCategoryMapper;
+
+    private final ObjectMapper objectMapper;
+
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public ProductCategoryRegistry(PinSettingsProductCategoryMapper pinSettingsProductCategoryMapper, ObjectMapper objectMapper) {
+        this.pinSettingsProductCategoryMapper = pinSettingsProductCategoryMapper;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    protected void init() throws JsonProcessingException {
+        snapshot = load();
+    }
+
+    /**
+     * 从数据库重新加载全部分类并替换当前快照；加载失败时保留旧快照
+     */
+    public void reload() {
+        try {
+            snapshot = load();
+            logger.info("商品分类已重新加载，共 " + snapshot.byId.size() + " 个分类");
+        } catch (Exception e) {
+            logger.error("重新加载商品分类失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * @param categoryId 分类ID
+     * @return 分类节点，不存在则返回 null
+     */
+    public CategoryNode getCategory(Integer categoryId) {
+        return categoryId == null ? null : snapshot.byId.get(categoryId);
+    }
+
+    /**
+     * @return 所有一级分类
+     */
+    public List<CategoryNode> getRoots() {
+        return Collections.unmodifiableList(Arrays.asList(snapshot.roots));
+    }
+
+    /**
+     * 将分类展开为商品实际挂载的分类ID：一级分类展开为其下所有二级分类（含自身），二级分类只返回自身
+     *
+     * @param categoryId 分类ID
+     * @return 分类ID列表
+     */
+    public List<Integer> expandCategoryIds(Integer categoryId) {
+        CategoryNode node = getCategory(categoryId);
+        if (node == null) {
+            return Collections.singletonList(categoryId);
+        }
+        List<Integer> ids = new ArrayList<>(node.children.length + 1);
+        ids.add(node.getId());
+        for (CategoryNode child : node.children) {
+            ids.add(child.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * @return /commons/product/category/all 的响应体
+     */
+    public byte[] getAllResponse() {
+        return snapshot.allResponse;
+    }
+
+    /**
+     * @param layer 层级：空或 0 为一级分类，其他为二级分类
+     * @return /commons/product/category/get-all-by-layer 的响应体
+     */
+    public byte[] getByLayerResponse(Integer layer) {
+        return layer == null || layer.equals(0) ? snapshot.parentLayerResponse : snapshot.subLayerResponse;
+    }
+
+    /**
+     * @return /goods/category-list 的响应体
+     */
+    public byte[] getAdminListResponse() {
+        return snapshot.adminListResponse;
+    }
+
+    private Snapshot load() throws JsonProcessingException {
+        Condition condition = new Condition(PinSettingsProductCategory.class);
+        condition.orderBy("id");
+        List<PinSettingsProductCategory> rows = pinSettingsProductCategoryMapper.selectByCondition(condition);
+
+        Map<Integer, List<PinSettingsProductCategory>> childrenByParent = new HashMap<>();
+        List<PinSettingsProductCategory> parentList = new ArrayList<>();
+        List<PinSettingsProductCategory> subList = new ArrayList<>();
+        for (PinSettingsProductCategory row : rows) {
+            if (row.getParentCategoryId() == null || row.getParentCategoryId().equals(0)) {
+                parentList.add(row);
+            } else {
+                subList.add(row);
+                childrenByParent.computeIfAbsent(row.getParentCategoryId(), k -> new ArrayList<>()).add(row);
+            }
+        }
+
+        Map<Integer, CategoryNode> byId = new LinkedHashMap<>();
+        CategoryNode[] roots = new CategoryNode[parentList.size()];
+        JSONArray tree = new JSONArray();
+        JSONArray adminTree = new JSONArray();
+        for (int i = 0; i < parentList.size(); i++) {
+            PinSettingsProductCategory parent = parentList.get(i);
+            List<PinSettingsProductCategory> childRows = childrenByParent.getOrDefault(parent.getId(), Collections.emptyList());
+            CategoryNode[] children = new CategoryNode[childRows.size()];
+            JSONArray adminChildren = new JSONArray();
+            for (int j = 0; j < childRows.size(); j++) {
+                children[j] = new CategoryNode(childRows.get(j), new CategoryNode[0]);
+                byId.put(children[j].getId(), children[j]);
+                adminChildren.add(adminItem(childRows.get(j)));
+            }
+            roots[i] = new CategoryNode(parent, children);
+            byId.put(roots[i].getId(), roots[i]);
+
+            JSONObject categoryJSON = (JSONObject) JSONObject.toJSON(parent);
+            categoryJSON.put("subCategories", Collections.unmodifiableList(childRows));
+            tree.add(categoryJSON);
+
+            JSONObject adminItem = new JSONObject();
+            adminItem.put("parent", adminItem(parent));
+            adminItem.put("child", adminChildren);
+            adminTree.add(adminItem);
+        }
+        // 父分类不存在的二级分类只能按ID查找，不出现在分类树中
+        for (PinSettingsProductCategory row : subList) {
+            byId.putIfAbsent(row.getId(), new CategoryNode(row, new CategoryNode[0]));
+        }
+
+        JSONObject allData = new JSONObject();
+        allData.put("list", tree);
+        JSONObject parentData = new JSONObject();
+        parentData.put("list", parentList);
+        JSONObject subData = new JSONObject();
+        subData.put("list", subList);
+        JSONObject adminData = new JSONObject();
+        adminData.put("categoryList", adminTree);
+
+        return new Snapshot(Collections.unmodifiableMap(byId), roots,
+                serialize(allData), serialize(parentData), serialize(subData), serialize(adminData));
+    }
+
+    private static JSONObject adminItem(PinSettingsProductCategory category) {
+        JSONObject item = new JSONObject();
+        item.put("id", category.getId());
+        item.put("category_name", category.getCategoryName());
+        return item;
+    }
+
+    private byte[] serialize(Object data) throws JsonProcessingException {
+        // 使用与 Controller 相同的 ObjectMapper，保证响应格式与直接返回 JSONObject 时一致
+        return objectMapper.writeValueAsBytes(ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, data));
+    }
+
+    /**
+     * 不可变的分类节点
+     */
+    public static class CategoryNode {
+        private final Integer id;
+        private final Integer parentCategoryId;
+        private final String categoryName;
+        private final Integer sort;
+        private final String imageUrl;
+        private final Boolean isActivated;
+        private final CategoryNode[] children;
+
+        CategoryNode(PinSettingsProductCategory category, CategoryNode[] children) {
+            this.id = category.getId();
+            this.parentCategoryId = category.getParentCategoryId();
+            this.categoryName = category.getCategoryName();
+            this.sort = category.getSort();
+            this.imageUrl = category.getImageUrl();
+            this.isActivated = category.getIsActivated();
+            this.children = children;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public Integer getParentCategoryId() {
+            return parentCategoryId;
+        }
+
+        public String getCategoryName() {
+            return categoryName;
+        }
+
+        public Integer getSort() {
+            return sort;
+        }
+
+        public String getImageUrl() {
+            return imageUrl;
+        }
+
+        public Boolean getIsActivated() {
+            return isActivated;
+        }
+
+        public boolean isRoot() {
+            return parentCategoryId == null || parentCategoryId.equals(0);
+        }
+
+        /**
+         * @return 子分类（只读）
+         */
+        public List<CategoryNode> getChildren() {
+            return Collections.unmodifiableList(Arrays.asList(children));
+        }
+    }
+
+    private static class Snapshot {
+        private final Map<Integer, CategoryNode> byId;
+        private final CategoryNode[] roots;
+        private final byte[] allResponse;
+        private final byte[] parentLayerResponse;
+        private final byte[] subLayerResponse;
+        private final byte[] adminListResponse;
+
+        Snapshot(Map<Integer, CategoryNode> byId, CategoryNode[] roots,
+                 byte[] allResponse, byte[] parentLayerResponse, byte[] subLayerResponse, byte[] adminListResponse) {
+            this.byId = byId;
+            this.roots = roots;
+            this.allResponse = allResponse;
+            this.parentLayerResponse = parentLayerResponse;
+            this.subLayerResponse = subLayerResponse;
+            this.adminListResponse = adminListResponse;
+        }
+    }
+}
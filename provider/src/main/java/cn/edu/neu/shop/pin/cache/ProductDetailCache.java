@@ -0,0 +1,150 @@
+package cn.edu.neu.shop.pin.cache;
+
+import cn.edu.neu.shop.pin.message_queue.producer.MessageOnQueueProducer;
+import cn.edu.neu.shop.pin.model.PinProduct;
+import cn.edu.neu.shop.pin.util.TransactionUtils;
+import com.alibaba.fastjson.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 商品详情两级缓存
+ * 一级为各 Provider 节点内的有界本地缓存，二级为共享的 Redis 缓存
+ * 缓存内容为组装完毕的商品（含 SKU 定义与 SKU 值）以及 MongoDB 中的富文本描述
+ * 商品被修改时通过 RabbitMQ 广播失效消息，清除所有节点的本地缓存
+ */
+@Component
+public class ProductDetailCache {
+
+    private static Logger logger = LoggerFactory.getLogger(ProductDetailCache.class);
+
+    private static final String PRODUCT_KEY_PREFIX = "product-detail-";
+
+    private static final String RICH_TEXT_KEY_PREFIX = "product-rich-text-";
+
+    @Value("${pin.cache.product.local-size:2048}")
+    private int localSize;
+
+    @Value("${pin.cache.product.local-ttl-seconds:30}")
+    private long localTtlSeconds;
+
+    @Value("${pin.cache.product.redis-ttl-seconds:600}")
+    private long redisTtlSeconds;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final MessageOnQueueProducer messageOnQueueProducer;
+
+    // 本地缓存只保存序列化后的 JSON，每次命中都反序列化出新对象，避免调用方修改共享实例
+    private LocalLruCache<String, String> localCache;
+
+    @Autowired
+    public ProductDetailCache(RedisTemplate<String, String> redisTemplate, MessageOnQueueProducer messageOnQueueProducer) {
+        this.redisTemplate = redisTemplate;
+        this.messageOnQueueProducer = messageOnQueueProducer;
+    }
+
+    @PostConstruct
+    protected void init() {
+        localCache = new LocalLruCache<>(localSize, TimeUnit.SECONDS.toMillis(localTtlSeconds));
+    }
+
+    /**
+     * 读取商品详情，未命中时通过 loader 从数据库加载并回填两级缓存
+     *
+     * @param productId 商品ID
+     * @param loader    数据库加载方法
+     * @return 商品详情，不存在则返回 null
+     */
+    public PinProduct getProduct(Integer productId, Function<Integer, PinProduct> loader) {
+        String json = getOrLoad(PRODUCT_KEY_PREFIX + productId, () -> {
+            PinProduct product = loader.apply(productId);
+            return product == null ? null : JSON.toJSONString(product);
+        });
+        return json == null ? null : JSON.parseObject(json, PinProduct.class);
+    }
+
+    /**
+     * 读取商品富文本描述，未命中时通过 loader 从 MongoDB 加载并回填两级缓存
+     *
+     * @param productId 商品ID
+     * @param loader    MongoDB 加载方法
+     * @return 富文本字符串
+     */
+    public String getRichText(Integer productId, Function<Integer, String> loader) {
+        return getOrLoad(RICH_TEXT_KEY_PREFIX + productId, () -> loader.apply(productId));
+    }
+
+    /**
+     * 使某一商品的缓存失效
+     * 若处于事务中，则等待事务提交后再清除，防止其他请求在提交前回填旧数据
+     *
+     * @param productId 商品ID
+     */
+    public void evict(Integer productId) {
+        if (productId == null) {
+            return;
+        }
+        TransactionUtils.runAfterCommit(() -> doEvict(productId));
+    }
+
+    /**
+     * 仅清除当前节点的本地缓存，由失效消息的消费者调用
+     *
+     * @param productId 商品ID
+     */
+    public void evictLocal(Integer productId) {
+        localCache.remove(PRODUCT_KEY_PREFIX + productId);
+        localCache.remove(RICH_TEXT_KEY_PREFIX + productId);
+    }
+
+    private void doEvict(Integer productId) {
+        evictLocal(productId);
+        try {
+            redisTemplate.delete(PRODUCT_KEY_PREFIX + productId);
+            redisTemplate.delete(RICH_TEXT_KEY_PREFIX + productId);
+        } catch (Exception e) {
+            logger.error("清除商品 #" + productId + " 的 Redis 缓存失败：" + e.getMessage());
+        }
+        messageOnQueueProducer.broadcastProductCacheEviction(productId);
+    }
+
+    private String getOrLoad(String key, Loader loader) {
+        String value = localCache.get(key);
+        if (value != null) {
+            return value;
+        }
+        try {
+            value = redisTemplate.opsForValue().get(key);
+        } catch (Exception e) {
+            // Redis 不可用时直接回源，不影响商品页访问
+            logger.error("读取 Redis 缓存 " + key + " 失败：" + e.getMessage());
+        }
+        if (value == null) {
+            value = loader.load();
+            if (value == null) {
+                return null;
+            }
+            try {
+                redisTemplate.opsForValue().set(key, value, redisTtlSeconds, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                logger.error("写入 Redis 缓存 " + key + " 失败：" + e.getMessage());
+            }
+        }
+        localCache.put(key, value);
+        return value;
+    }
+
+    @FunctionalInterface
+    private interface Loader {
+        String load();
+    }
+}
@@ -0,0 +1,144 @@
+package cn.edu.neu.shop.pin.cache;
+
+import cn.edu.neu.shop.pin.mapper.PinSettingsConstantMapper;
+import cn.edu.neu.shop.pin.model.PinSettingsConstant;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 设置常量注册表
+ * 启动时加载 pin_settings_constant 整张表到内存，按类型读取常量时不再查询数据库；
+ * 常量变更后由 SETTINGS 广播通知各节点重新加载；另外定期比对数据库中的版本号，广播丢失时也能最终更新
+ */
+@Component
+public class SettingsConstantRegistry {
+
+    private static Logger logger = LoggerFactory.getLogger(SettingsConstantRegistry.class);
+
+    // 每次通过后台修改常量时自增的版本号
+    public static final String VERSION_KEY = "settings_version";
+
+    private final PinSettingsConstantMapper pinSettingsConstantMapper;
+
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public SettingsConstantRegistry(PinSettingsConstantMapper pinSettingsConstantMapper) {
+        this.pinSettingsConstantMapper = pinSettingsConstantMapper;
+    }
+
+    @PostConstruct
+    protected void init() {
+        snapshot = load();
+    }
+
+    /**
+     * 从数据库重新加载全部常量并替换当前快照；加载失败时保留旧快照
+     */
+    public void reload() {
+        try {
+            snapshot = load();
+            logger.info("设置常量已重新加载，版本 " + snapshot.version);
+        } catch (Exception e) {
+            logger.error("重新加载设置常量失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 版本号与本地快照不一致时重新加载
+     */
+    @Scheduled(fixedDelayString = "${pin.settings.version-check-millis:60000}", initialDelayString = "${pin.settings.version-check-millis:60000}")
+    public void checkVersion() {
+        try {
+            PinSettingsConstant version = pinSettingsConstantMapper.selectByPrimaryKey(VERSION_KEY);
+            if (!Objects.equals(version == null ? null : version.getConstantValue(), snapshot.version)) {
+                reload();
+            }
+        } catch (Exception e) {
+            logger.error("检查设置常量版本失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * @param key 常量键
+     * @return 常量值，不存在则返回 null
+     */
+    public String getString(String key) {
+        return snapshot.values.get(key);
+    }
+
+    /**
+     * @param key 常量键
+     * @return 整数常量值
+     * @throws IllegalStateException 常量不存在
+     */
+    public int getInt(String key) {
+        return (Integer) snapshot.typed("int:", key, Integer::valueOf);
+    }
+
+    /**
+     * @param key 常量键
+     * @return URL 常量值
+     * @throws IllegalStateException 常量不存在
+     */
+    public URI getUrl(String key) {
+        return (URI) snapshot.typed("url:", key, URI::create);
+    }
+
+    /**
+     * @param key 常量键
+     * @return JSON 数组常量值（每次返回新对象，调用方可以修改）
+     * @throws IllegalStateException 常量不存在
+     */
+    public JSONArray getJSONArray(String key) {
+        return JSON.parseArray(require(snapshot, key));
+    }
+
+    private Snapshot load() {
+        List<PinSettingsConstant> constants = pinSettingsConstantMapper.selectAll();
+        Map<String, String> values = new HashMap<>();
+        for (PinSettingsConstant constant : constants) {
+            values.put(constant.getConstantKey(), constant.getConstantValue());
+        }
+        return new Snapshot(Collections.unmodifiableMap(values), values.get(VERSION_KEY));
+    }
+
+    private static String require(Snapshot snapshot, String key) {
+        String value = snapshot.values.get(key);
+        if (value == null) {
+            throw new IllegalStateException("设置常量 " + key + " 不存在");
+        }
+        return value;
+    }
+
+    private static class Snapshot {
+        private final Map<String, String> values;
+        private final String version;
+        // 已转换的不可变类型值（整数、URL），按 "类型:键" 缓存，每个快照只转换一次
+        private final Map<String, Object> typedValues = new ConcurrentHashMap<>();
+
+        Snapshot(Map<String, String> values, String version) {
+            this.values = values;
+            this.version = version;
+        }
+
+        Object typed(String type, String key, Function<String, Object> parser) {
+            return typedValues.computeIfAbsent(type + key, k -> parser.apply(require(this, key).trim()));
+        }
+    }
+}
@@ -6,6 +6,7 @@ import cn.edu.neu.shop.pin.model.PinRole;
 import cn.edu.neu.shop.pin.model.PinUser;
 import cn.edu.neu.shop.pin.model.PinUserRole;
 import cn.edu.neu.shop.pin.security.JwtTokenProvider;
+import cn.edu.neu.shop.pin.security.UserRoleCache;
 import cn.edu.neu.shop.pin.service.UserRoleListTransferService;
 import cn.edu.neu.shop.pin.service.security.UserService;
 import cn.edu.neu.shop.pin.util.PinConstants;
@@ -35,13 +36,16 @@ public class SignUpController {
 
     private final PinUserRoleMapper pinUserRoleMapper;
 
+    private final UserRoleCache userRoleCache;
+
     @Autowired
-    public SignUpController(UserService userService, PinUserMapper pinUserMapper, JwtTokenProvider jwtTokenProvider, UserRoleListTransferService userRoleListTransferService, PinUserRoleMapper pinUserRoleMapper) {
+    public SignUpController(UserService userService, PinUserMapper pinUserMapper, JwtTokenProvider jwtTokenProvider, UserRoleListTransferService userRoleListTransferService, PinUserRoleMapper pinUserRoleMapper, UserRoleCache userRoleCache) {
         this.userService = userService;
         this.pinUserMapper = pinUserMapper;
         this.jwtTokenProvider = jwtTokenProvider;
         this.userRoleListTransferService = userRoleListTransferService;
         this.pinUserRoleMapper = pinUserRoleMapper;
+        this.userRoleCache = userRoleCache;
     }
 
     /**
@@ -71,6 +75,7 @@ public class SignUpController {
                 PinUserRole role = new PinUserRole(user.getId(), roles.getInteger(i));
                 pinUserRoleMapper.insert(role);
             }
+            userRoleCache.invalidate(user.getId());
             user = userRoleListTransferService.findById(jwtTokenProvider.getId(token));
             //创建JSONObject
             JSONObject data = new JSONObject();
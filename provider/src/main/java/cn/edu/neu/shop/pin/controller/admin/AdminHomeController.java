@@ -1,9 +1,6 @@
 package cn.edu.neu.shop.pin.controller.admin;
 
-import cn.edu.neu.shop.pin.mapper.PinProductMapper;
-import cn.edu.neu.shop.pin.service.OrderIndividualService;
-import cn.edu.neu.shop.pin.service.ProductCommentService;
-import cn.edu.neu.shop.pin.service.ProductVisitRecordService;
+import cn.edu.neu.shop.pin.service.StoreDashboardService;
 import cn.edu.neu.shop.pin.util.PinConstants;
 import cn.edu.neu.shop.pin.util.ResponseWrapper;
 import com.alibaba.fastjson.JSONObject;
@@ -20,46 +17,33 @@ import javax.servlet.http.HttpServletRequest;
 @RestController
 public class AdminHomeController {
 
-    private final ProductCommentService productCommentService;
-
-    private final OrderIndividualService orderIndividualService;
-
-    private final ProductVisitRecordService productVisitRecordService;
-
-    private final PinProductMapper pinProductMapper;
+    private final StoreDashboardService storeDashboardService;
 
     @Autowired
-    public AdminHomeController(ProductCommentService productCommentService, OrderIndividualService orderIndividualService, ProductVisitRecordService productVisitRecordService, PinProductMapper pinProductMapper) {
-        this.productCommentService = productCommentService;
-        this.orderIndividualService = orderIndividualService;
-        this.productVisitRecordService = productVisitRecordService;
-        this.pinProductMapper = pinProductMapper;
+    public AdminHomeController(StoreDashboardService storeDashboardService) {
+        this.storeDashboardService = storeDashboardService;
     }
 
     /**
-     * 显示近七天内的评论数 交易数 浏览量
+     * 显示近七天内的评论数 交易数 浏览量（下标 0 为今天），以及待处理事项的数量
+     * 计数由 StoreDashboardService 增量维护，一次 Redis 往返读取
      */
     @GetMapping("/home")
     public JSONObject getCommentSevenDays(HttpServletRequest httpServletRequest) {
         try {
             int storeId = getCurrentStoreIdFromHeader(httpServletRequest);
-            Integer[] commentNum = productCommentService.getComments(storeId);
-            Integer[] orderNum = orderIndividualService.getOrders(storeId);
-            Integer[] viewNum = productVisitRecordService.getVisitRecords(storeId);
+            JSONObject dashboard = storeDashboardService.getDashboard(storeId);
             JSONObject chartData = new JSONObject();
-            chartData.put("commentNum", commentNum);
-            chartData.put("orderNum", orderNum);
-            chartData.put("viewNum", viewNum);
+            chartData.put("commentNum", dashboard.get(StoreDashboardService.DAILY_COMMENTS));
+            chartData.put("orderNum", dashboard.get(StoreDashboardService.DAILY_ORDERS));
+            chartData.put("viewNum", dashboard.get(StoreDashboardService.DAILY_VISITS));
+            chartData.put("refundNum", dashboard.get(StoreDashboardService.DAILY_REFUNDS));
             JSONObject data = new JSONObject();
             data.put("chartData", chartData);
-            Integer comment = productCommentService.getMerchantNotComment(storeId);
-            data.put("comment", comment);
-            Integer inventory = pinProductMapper.getNumberOfProductLessStock(storeId);
-            data.put("inventory", inventory);
-            Integer readyToDelivery = orderIndividualService.getProductNotShip(storeId);
-            data.put("readyToDelivery", readyToDelivery);
-            Integer salesReturn = orderIndividualService.getOrderRefund(storeId);
-            data.put("salesReturn", salesReturn);
+            data.put("comment", dashboard.get(StoreDashboardService.GAUGE_UNREPLIED));
+            data.put("inventory", dashboard.get(StoreDashboardService.GAUGE_LOW_STOCK));
+            data.put("readyToDelivery", dashboard.get(StoreDashboardService.GAUGE_UNSHIPPED));
+            data.put("salesReturn", dashboard.get(StoreDashboardService.GAUGE_REFUNDING));
             return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, data);
         } catch (Exception e) {
             e.printStackTrace();
@@ -1,5 +1,6 @@
 package cn.edu.neu.shop.pin.controller.admin;
 
+import cn.edu.neu.shop.pin.dto.OrderQueryCondition;
 import cn.edu.neu.shop.pin.model.PinOrderGroup;
 import cn.edu.neu.shop.pin.model.PinOrderIndividual;
 import cn.edu.neu.shop.pin.model.PinUser;
@@ -49,28 +50,34 @@ public class AdminOrderController {
         }
     }
 
+    /**
+     * 后台子订单查询
+     * 筛选与分页在数据库中完成；传入上一页返回的 cursor 时按游标翻页，否则按 pageNumber 翻页
+     *
+     * @param req       请求
+     * @param queryType 查询条件 {pageNumber, pageSize, orderTypeChoice, orderDateChoice, begin, end, key, cursor}
+     * @return 当前页、总数及下一页的游标
+     */
     @PostMapping("/order/query")
     public JSONObject getOrderByCondition(HttpServletRequest req, @RequestBody JSONObject queryType) {
         try {
-            System.out.println(queryType);
             Integer storeId = Integer.parseInt(req.getHeader("Current-Store"));
-            Integer pageNumber = queryType.getInteger("pageNumber");
-            Integer pageSize = queryType.getInteger("pageSize");
-            Integer orderTypeChoice = queryType.getInteger("orderTypeChoice");
-            Integer orderDateChoice = queryType.getInteger("orderDateChoice");
-            String keyWord = queryType.getString("key");
-            //通过关键词查找得到所有的orders
-            List<PinOrderIndividual> orderList = orderIndividualService.getAllWithProductsByKeyWord(keyWord, storeId);
-            //得到符合orderType的order
-            List<PinOrderIndividual> orderTypeList = orderIndividualService.getOrdersByOrderType(orderList, orderTypeChoice);
-            //得到符合orderDate的order
-            List<PinOrderIndividual> orderDateList = orderIndividualService.getOrdersByOrderDate(orderTypeList, orderDateChoice, queryType);
-            //通过传入的一页的size和页码，返回那一页的list
-            List<PinOrderIndividual> list = (List<PinOrderIndividual>) orderIndividualService.getOrdersByPageNumAndSize(orderDateList, pageNumber, pageSize);
+            OrderQueryCondition condition = OrderQueryCondition.forStore(storeId)
+                    .orderType(queryType.getInteger("orderTypeChoice"))
+                    .orderDate(queryType.getInteger("orderDateChoice"), queryType.getDate("begin"), queryType.getDate("end"))
+                    .keyWord(queryType.getString("key"))
+                    .page(queryType.getInteger("pageNumber"), queryType.getInteger("pageSize"), queryType.getJSONObject("cursor"))
+                    .build();
+            List<PinOrderIndividual> list = orderIndividualService.queryForAdmin(condition);
 
             JSONObject specificPage = new JSONObject();
-            specificPage.put("total", orderDateList.size());
+            specificPage.put("total", orderIndividualService.countForAdmin(condition));
+            specificPage.put("pageSize", condition.getLimit());
             specificPage.put("orderList", list);
+            if (list.size() == condition.getLimit()) {
+                PinOrderIndividual last = list.get(list.size() - 1);
+                specificPage.put("cursor", OrderQueryCondition.cursorOf(last.getCreateTime(), last.getId()));
+            }
             return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, specificPage);
         } catch (Exception e) {
             e.printStackTrace();
@@ -78,28 +85,33 @@ public class AdminOrderController {
         }
     }
 
+    /**
+     * 后台团单查询
+     * 筛选与分页在数据库中完成；传入上一页返回的 cursor 时按游标翻页，否则按 pageNumber 翻页
+     *
+     * @param req       请求
+     * @param queryType 查询条件 {pageNumber, pageSize, groupStatus, begin, end, cursor}
+     * @return 当前页、总数及下一页的游标
+     */
     @PostMapping("/order/get-group-order-list")
     public JSONObject getGroupOrderByCondition(HttpServletRequest req, @RequestBody JSONObject queryType) {
         try {
-            System.out.println(queryType);
             Integer storeId = Integer.parseInt(req.getHeader("Current-Store"));
-            Integer pageNumber = queryType.getInteger("pageNumber");
-            Integer pageSize = queryType.getInteger("pageSize");
-            Integer groupStatus = queryType.getInteger("groupStatus");
-            Date begin = queryType.getDate("begin");
-            Date end = queryType.getDate("end");
-            //得到所有的orderGroup，其中嵌套了orderIndividual,orderIndividual中也嵌套了其他信息
-            List<PinOrderGroup> orderGroups = orderGroupService.getAllWithOrderIndividual(storeId);
-            //得到符合传入的状态的orderGroups
-            List<PinOrderGroup> orderStatusGroups = orderGroupService.getOrdersByOrderStatus(orderGroups, groupStatus);
-            //得到符合传入时间段的orderGroups
-            List<PinOrderGroup> orderDateGroups = orderGroupService.getOrdersByDate(orderStatusGroups, begin, end);
-            //为前端分页处理
-            List<PinOrderIndividual> list = orderIndividualService.getOrdersByPageNumAndSize(orderDateGroups, pageNumber, pageSize);
+            OrderQueryCondition condition = OrderQueryCondition.forStore(storeId)
+                    .groupStatus(queryType.getInteger("groupStatus"))
+                    .createdBetween(queryType.getDate("begin"), queryType.getDate("end"))
+                    .page(queryType.getInteger("pageNumber"), queryType.getInteger("pageSize"), queryType.getJSONObject("cursor"))
+                    .build();
+            List<PinOrderGroup> list = orderGroupService.queryForAdmin(condition);
 
             JSONObject specificPage = new JSONObject();
-            specificPage.put("total", orderDateGroups.size());
+            specificPage.put("total", orderGroupService.countForAdmin(condition));
+            specificPage.put("pageSize", condition.getLimit());
             specificPage.put("orderList", list);
+            if (list.size() == condition.getLimit()) {
+                PinOrderGroup last = list.get(list.size() - 1);
+                specificPage.put("cursor", OrderQueryCondition.cursorOf(last.getCreateTime(), last.getId()));
+            }
             return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, specificPage);
         } catch (Exception e) {
             e.printStackTrace();
@@ -6,9 +6,10 @@ import cn.edu.neu.shop.pin.model.PinProductAttributeValue;
 import cn.edu.neu.shop.pin.service.*;
 import cn.edu.neu.shop.pin.util.PinConstants;
 import cn.edu.neu.shop.pin.util.ResponseWrapper;
-import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
@@ -116,17 +117,12 @@ public class AdminProductController {
         }
     }
 
+    /**
+     * 返回预先序列化的分类列表，不经过数据库与 JSON 序列化
+     */
     @GetMapping("/category-list")
-    public JSONObject getProductCatrgory() {
-        try {
-            JSONArray array = productCategoryService.getProductCategory();
-            JSONObject categoryList = new JSONObject();
-            categoryList.put("categoryList", array);
-            return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, categoryList);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
-        }
+    public ResponseEntity<byte[]> getProductCatrgory() {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(productCategoryService.getProductCategory());
     }
 
     @PutMapping("/update-category")
@@ -184,6 +180,7 @@ public class AdminProductController {
                 attributeDefinition = new PinProductAttributeDefinition(productId, property, value);
                 definitionService.save(attributeDefinition);
             }
+            productService.evictProductCache(productId);
             return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, null);
         } catch (Exception e) {
             e.printStackTrace();
@@ -194,7 +191,7 @@ public class AdminProductController {
     @PostMapping("/create-sku")
     public JSONObject createSku(@RequestBody JSONObject requestJSON) {
         try {
-            Integer storeId = requestJSON.getInteger("productId");
+            Integer productId = requestJSON.getInteger("productId");
             JSONObject object;
             String sku;
             Integer stock;
@@ -211,9 +208,10 @@ public class AdminProductController {
                 //imageUrl = ImgUtil.upload(base64Img, "https://sm.ms/api/upload").getBody().getJSONObject("data").getString("url");
                 imageUrl = "https://i.loli.net/2019/07/05/5d1ec92eac6cb47889.png";
                 cost = new BigDecimal(object.getString("cost"));
-                attributeValue = new PinProductAttributeValue(storeId, sku, stock, price, imageUrl, cost);
+                attributeValue = new PinProductAttributeValue(productId, sku, stock, price, imageUrl, cost);
                 valueService.save(attributeValue);
             }
+            productService.evictProductCache(productId);
             return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, "创建成功");
         } catch (Exception e) {
             e.printStackTrace();
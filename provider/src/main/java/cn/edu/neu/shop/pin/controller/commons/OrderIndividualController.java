@@ -62,6 +62,28 @@ public class OrderIndividualController {
         }
     }
 
+    /**
+     * @param httpServletRequest 请求对象
+     * @param requestObject      请求体JSON对象，包含 orderItemIds
+     * @return 返回JSON
+     * 确认订单：计算所选商品的总价、邮费与商品总数，随后提交订单时复用该报价
+     */
+    @PostMapping("/order-individual/quote")
+    public JSONObject quoteOrderIndividual(HttpServletRequest httpServletRequest, @RequestBody JSONObject requestObject) {
+        try {
+            PinUser user = userService.whoAmI(httpServletRequest);
+            List<PinOrderItem> list = orderItemService.getItemListByJSONArray(requestObject.getJSONArray("orderItemIds"));
+            return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, orderIndividualService.quoteOrderIndividual(user, list).toJSON());
+        } catch (ProductSoldOutException e) {
+            return ResponseWrapper.wrap(PinConstants.StatusCode.PRODUCT_SOLD_OUT, e.getMessage(), null);
+        } catch (OrderItemsAreNotInTheSameStoreException | RecordNotFoundException e) {
+            return ResponseWrapper.wrap(PinConstants.StatusCode.INVALID_DATA, e.getMessage(), null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
+        }
+    }
+
     /**
      * @param httpServletRequest HTTP请求对象
      * @return 请求体JSON
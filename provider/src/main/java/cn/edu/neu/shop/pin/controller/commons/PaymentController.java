@@ -2,7 +2,9 @@ package cn.edu.neu.shop.pin.controller.commons;
 
 
 import cn.edu.neu.shop.pin.exception.InsufficientBalanceException;
+import cn.edu.neu.shop.pin.exception.LockAcquisitionException;
 import cn.edu.neu.shop.pin.exception.PermissionDeniedException;
+import cn.edu.neu.shop.pin.exception.ProductSoldOutException;
 import cn.edu.neu.shop.pin.exception.RecordNotFoundException;
 import cn.edu.neu.shop.pin.exception.RepeatPaymentException;
 import cn.edu.neu.shop.pin.model.PinUser;
@@ -58,6 +60,12 @@ public class PaymentController {
         } catch (RepeatPaymentException e) {
             // 已经支付
             return ResponseWrapper.wrap(PinConstants.StatusCode.PAY_REPEAT_PAYMENT, e.getMessage(), null);
+        } catch (ProductSoldOutException e) {
+            // 预占库存已超时释放，且商品库存已不足
+            return ResponseWrapper.wrap(PinConstants.StatusCode.PRODUCT_SOLD_OUT, e.getMessage(), null);
+        } catch (LockAcquisitionException e) {
+            // 同一订单的支付请求正在处理
+            return ResponseWrapper.wrap(PinConstants.StatusCode.SERVER_BUSY, PinConstants.ResponseMessage.SERVER_BUSY, null);
         }
     }
 }
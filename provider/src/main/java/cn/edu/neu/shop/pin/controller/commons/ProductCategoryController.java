@@ -2,10 +2,10 @@ package cn.edu.neu.shop.pin.controller.commons;
 
 
 import cn.edu.neu.shop.pin.service.ProductCategoryService;
-import cn.edu.neu.shop.pin.util.PinConstants;
-import cn.edu.neu.shop.pin.util.ResponseWrapper;
 import com.alibaba.fastjson.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 /**
@@ -27,35 +27,28 @@ public class ProductCategoryController {
      * 层级获取商品分类表
      *
      * @param requestJSON 请求 layer JSON数据
-     * @return JSONObject
+     * @return 预先序列化的响应体
      */
     @PostMapping("/get-all-by-layer")
-    public JSONObject getCategoryByLayer(@RequestBody JSONObject requestJSON) {
-        try {
-            Integer layer = requestJSON.getInteger("layer");
-            JSONObject data = new JSONObject();
-            data.put("list", productCategoryService.getProductCategoryByLayer(layer));
-            return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, data);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
-        }
+    public ResponseEntity<byte[]> getCategoryByLayer(@RequestBody JSONObject requestJSON) {
+        Integer layer = requestJSON.getInteger("layer");
+        return json(productCategoryService.getProductCategoryByLayer(layer));
     }
 
     /**
      * 获取所有商品类别
      *
-     * @return JSONObject
+     * @return 预先序列化的响应体
      */
     @GetMapping("/all")
-    public JSONObject geAllCategory() {
-        try {
-            JSONObject data = new JSONObject();
-            data.put("list", productCategoryService.getProductCategoryAll());
-            return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, data);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
-        }
+    public ResponseEntity<byte[]> geAllCategory() {
+        return json(productCategoryService.getProductCategoryAll());
+    }
+
+    /**
+     * 分类数据在内存中预先序列化，直接写出响应体
+     */
+    private static ResponseEntity<byte[]> json(byte[] body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
     }
 }
@@ -1,10 +1,11 @@
 package cn.edu.neu.shop.pin.controller.commons;
 
-import cn.edu.neu.shop.pin.mapper.PinUserProductCommentMapper;
+import cn.edu.neu.shop.pin.exception.InvalidOperationException;
 import cn.edu.neu.shop.pin.model.PinUser;
 import cn.edu.neu.shop.pin.model.PinUserProductComment;
 import cn.edu.neu.shop.pin.service.ProductCategoryService;
 import cn.edu.neu.shop.pin.service.ProductCommentService;
+import cn.edu.neu.shop.pin.service.ProductRatingService;
 import cn.edu.neu.shop.pin.service.ProductService;
 import cn.edu.neu.shop.pin.service.ProductVisitRecordService;
 import cn.edu.neu.shop.pin.service.security.UserService;
@@ -33,14 +34,15 @@ public class ProductController {
 
     private final ProductVisitRecordService productVisitRecordService;
 
+    private final ProductRatingService productRatingService;
+
     @Autowired
-    PinUserProductCommentMapper pinUserProductCommentMapper;
-    @Autowired
-    public ProductController(UserService userService, ProductService productService, ProductCommentService productCommentService, ProductVisitRecordService productVisitRecordService) {
+    public ProductController(UserService userService, ProductService productService, ProductCommentService productCommentService, ProductVisitRecordService productVisitRecordService, ProductRatingService productRatingService) {
         this.userService = userService;
         this.productService = productService;
         this.productCommentService = productCommentService;
         this.productVisitRecordService = productVisitRecordService;
+        this.productRatingService = productRatingService;
     }
 
     /**
@@ -117,6 +119,30 @@ public class ProductController {
             return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS,
                     PinConstants.ResponseMessage.SUCCESS,
                     productService.searchByKeyWordByPage(keyword, pageNum, pageSize));
+        } catch (InvalidOperationException e) {
+            return ResponseWrapper.wrap(PinConstants.StatusCode.INVALID_DATA, e.getMessage(), null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
+        }
+    }
+
+    /**
+     * 按关键字搜索商品，使用游标分页
+     *
+     * @param keyword  关键字
+     * @param pageSize 分页大小
+     * @param cursor   上一页返回的 nextCursor，首页不传
+     * @return 商品列表及下一页游标
+     */
+    @GetMapping(value = "/search-cursor/{keyword}/{pageSize}")
+    public JSONObject searchByCursor(@PathVariable(value = "keyword") String keyword, @PathVariable(value = "pageSize") Integer pageSize, @RequestParam(value = "cursor", required = false) String cursor) {
+        try {
+            return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS,
+                    PinConstants.ResponseMessage.SUCCESS,
+                    productService.searchByKeyWordByCursor(keyword, cursor, pageSize));
+        } catch (InvalidOperationException e) {
+            return ResponseWrapper.wrap(PinConstants.StatusCode.INVALID_DATA, e.getMessage(), null);
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
@@ -186,7 +212,7 @@ public class ProductController {
     public JSONObject returnPraise(@RequestBody JSONObject request){
         try {
             Integer productId = request.getInteger("id");
-            return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, pinUserProductCommentMapper.getAvgScore(productId));
+            return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, productRatingService.getRating(productId).getAverageScore());
         } catch (Exception e) {
             return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
         }
@@ -1,8 +1,8 @@
 package cn.edu.neu.shop.pin.controller.commons;
 
+import cn.edu.neu.shop.pin.cache.SettingsConstantRegistry;
 import cn.edu.neu.shop.pin.exception.CommentFailedException;
 import cn.edu.neu.shop.pin.exception.PermissionDeniedException;
-import cn.edu.neu.shop.pin.mapper.PinSettingsConstantMapper;
 import cn.edu.neu.shop.pin.model.*;
 import cn.edu.neu.shop.pin.service.ProductCommentService;
 import cn.edu.neu.shop.pin.service.UserCreditRecordService;
@@ -34,7 +34,7 @@ public class UserBasicInfoController {
 
     private final UserCreditRecordService userCreditRecordService;
 
-    private final PinSettingsConstantMapper pinSettingsConstantMapper;
+    private final SettingsConstantRegistry settingsConstantRegistry;
 
     @Autowired
     private WechatUserService wechatUserService;
@@ -43,12 +43,12 @@ public class UserBasicInfoController {
     private TemplateMessageService templateMessageService;
 
     @Autowired
-    public UserBasicInfoController(UserService userService, UserProductRecordService userProductRecordService, ProductCommentService productCommentService, UserCreditRecordService userCreditRecordService, PinSettingsConstantMapper pinSettingsConstantMapper) {
+    public UserBasicInfoController(UserService userService, UserProductRecordService userProductRecordService, ProductCommentService productCommentService, UserCreditRecordService userCreditRecordService, SettingsConstantRegistry settingsConstantRegistry) {
         this.userService = userService;
         this.userProductRecordService = userProductRecordService;
         this.productCommentService = productCommentService;
         this.userCreditRecordService = userCreditRecordService;
-        this.pinSettingsConstantMapper = pinSettingsConstantMapper;
+        this.settingsConstantRegistry = settingsConstantRegistry;
     }
 
     /**
@@ -65,8 +65,7 @@ public class UserBasicInfoController {
             JSONObject data = new JSONObject();
             data.put("user", user);
             data.put("hasCheckedIn", hasCheckedIn);
-            PinSettingsConstant pinSettingsConstant = pinSettingsConstantMapper.selectByPrimaryKey("banner_content");
-            data.put("banner", pinSettingsConstant.getConstantValue());
+            data.put("banner", settingsConstantRegistry.getString("banner_content"));
             return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS,
                     data);
         } catch (Exception e) {
@@ -103,9 +102,9 @@ public class UserBasicInfoController {
      */
     @GetMapping("/check-in")
     public JSONObject checkIn(HttpServletRequest httpServletRequest) {
-        PinUser user = userService.whoAmI(httpServletRequest);
+        Integer userId = userService.whoAmIId(httpServletRequest);
         try {
-            userCreditRecordService.dailyCheckIn(user.getId());
+            userCreditRecordService.dailyCheckIn(userId);
             return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, null);
         } catch (Exception e) {
             return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
@@ -138,8 +137,7 @@ public class UserBasicInfoController {
      */
     @GetMapping("/has-checked-in")
     public JSONObject hasCheckedIn(HttpServletRequest httpServletRequest) {
-        PinUser user = userService.whoAmI(httpServletRequest);
-        Boolean flag = userCreditRecordService.hasCheckedIn(user.getId());
+        Boolean flag = userCreditRecordService.hasCheckedIn(userService.whoAmIId(httpServletRequest));
         if (flag) {
             return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, "已签到", null);
         } else {
@@ -0,0 +1,37 @@
+package cn.edu.neu.shop.pin.controller.super_admin;
+
+import cn.edu.neu.shop.pin.lock.DistributedLockEngine;
+import cn.edu.neu.shop.pin.util.PinConstants;
+import cn.edu.neu.shop.pin.util.ResponseWrapper;
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/sadmin")
+public class SAdminLockController {
+
+    private final DistributedLockEngine distributedLockEngine;
+
+    @Autowired
+    public SAdminLockController(DistributedLockEngine distributedLockEngine) {
+        this.distributedLockEngine = distributedLockEngine;
+    }
+
+    /**
+     * 分布式锁竞争指标：按锁统计获取成功、发生竞争、等待超时的次数，以及累计与最长等待时间（毫秒）
+     */
+    @GetMapping("/lock-metrics")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public JSONObject getLockMetrics() {
+        try {
+            return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, distributedLockEngine.getMetrics());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
+        }
+    }
+}
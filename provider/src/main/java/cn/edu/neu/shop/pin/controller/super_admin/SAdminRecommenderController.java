@@ -0,0 +1,37 @@
+package cn.edu.neu.shop.pin.controller.super_admin;
+
+import cn.edu.neu.shop.pin.recommender.RecommendEngineCaller;
+import cn.edu.neu.shop.pin.util.PinConstants;
+import cn.edu.neu.shop.pin.util.ResponseWrapper;
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/sadmin")
+public class SAdminRecommenderController {
+
+    private final RecommendEngineCaller recommendEngineCaller;
+
+    @Autowired
+    public SAdminRecommenderController(RecommendEngineCaller recommendEngineCaller) {
+        this.recommendEngineCaller = recommendEngineCaller;
+    }
+
+    /**
+     * 推荐模型刷新指标：排名新鲜度延迟、进行中的训练任务、最近一次导出/上传/训练/写入耗时（毫秒）与跳过次数
+     */
+    @GetMapping("/recommender-metrics")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public JSONObject getRecommenderMetrics() {
+        try {
+            return ResponseWrapper.wrap(PinConstants.StatusCode.SUCCESS, PinConstants.ResponseMessage.SUCCESS, recommendEngineCaller.getMetrics());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseWrapper.wrap(PinConstants.StatusCode.INTERNAL_ERROR, e.getMessage(), null);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package cn.edu.neu.shop.pin.dto;
+
+import cn.edu.neu.shop.pin.model.PinOrderGroup;
+import cn.edu.neu.shop.pin.model.PinOrderIndividual;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * 后台订单查询条件
+ * 由 Builder 将前端传入的筛选码翻译为 SQL 谓词（状态、时间范围、关键词）与分页参数，全部在数据库中完成过滤与分页
+ * 结果按 (create_time, id) 倒序排列；传入上一页最后一条记录的游标时使用键集分页，否则退化为 LIMIT/OFFSET
+ */
+public class OrderQueryCondition {
+
+    public static final int DEFAULT_PAGE_SIZE = 10;
+
+    // 每页条数上限，避免一次请求取出整个店铺的订单
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private Integer storeId;
+
+    private Boolean paid;
+
+    private Integer status;
+
+    private Integer refundStatus;
+
+    // 创建时间下限（含）
+    private Date beginTime;
+
+    // 创建时间上限（不含）
+    private Date endTime;
+
+    private String keyWord;
+
+    // 键集分页游标：上一页最后一条记录的创建时间与ID
+    private Date afterCreateTime;
+
+    private Integer afterId;
+
+    private int offset;
+
+    private int limit;
+
+    private OrderQueryCondition() {
+    }
+
+    public Integer getStoreId() {
+        return storeId;
+    }
+
+    public Boolean getPaid() {
+        return paid;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public Integer getRefundStatus() {
+        return refundStatus;
+    }
+
+    public Date getBeginTime() {
+        return beginTime;
+    }
+
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    public String getKeyWord() {
+        return keyWord;
+    }
+
+    public Date getAfterCreateTime() {
+        return afterCreateTime;
+    }
+
+    public Integer getAfterId() {
+        return afterId;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param storeId 店铺ID
+     * @return 该店铺订单的查询条件构造器
+     */
+    public static Builder forStore(Integer storeId) {
+        return new Builder(storeId);
+    }
+
+    /**
+     * @param createTime 本页最后一条记录的创建时间
+     * @param id         本页最后一条记录的ID
+     * @return 下一页的游标
+     */
+    public static JSONObject cursorOf(Date createTime, Integer id) {
+        JSONObject cursor = new JSONObject();
+        cursor.put("createTime", createTime.getTime());
+        cursor.put("id", id);
+        return cursor;
+    }
+
+    public static class Builder {
+
+        private final OrderQueryCondition condition = new OrderQueryCondition();
+
+        private Builder(Integer storeId) {
+            condition.storeId = storeId;
+        }
+
+        /**
+         * 子订单类型：0 全部；1 未付款；2 待发货；3 待收货；4 待评价；5 交易完成；6 退款中；7 已退款
+         */
+        public Builder orderType(Integer orderType) {
+            if (orderType == null) {
+                return this;
+            }
+            switch (orderType) {
+                case 1:
+                    condition.paid = false;
+                    break;
+                case 2:
+                    condition.status = PinOrderIndividual.STATUS_DEPENDING_TO_SHIP;
+                    break;
+                case 3:
+                    condition.status = PinOrderIndividual.STATUS_SHIPPED;
+                    break;
+                case 4:
+                    condition.status = PinOrderIndividual.STATUS_PENDING_COMMENT;
+                    break;
+                case 5:
+                    condition.status = PinOrderIndividual.STATUS_COMMENTED;
+                    break;
+                case 6:
+                    condition.refundStatus = PinOrderIndividual.REFUND_STATUS_APPLYING;
+                    break;
+                case 7:
+                    condition.refundStatus = PinOrderIndividual.REFUND_STATUS_FINISHED;
+                    break;
+                default:
+                    break;
+            }
+            return this;
+        }
+
+        /**
+         * 团单状态：0 全部；1 正在拼团；2 已结束拼团
+         */
+        public Builder groupStatus(Integer groupStatus) {
+            if (groupStatus == null) {
+                return this;
+            }
+            if (groupStatus == 1) {
+                condition.status = PinOrderGroup.STATUS_PINGING;
+            } else if (groupStatus == 2) {
+                condition.status = PinOrderGroup.STATUS_FINISHED;
+            }
+            return this;
+        }
+
+        /**
+         * 创建时间：0 全部；1 昨天；2 今天；3 本周；4 本月；5 本季度；6 本年；7 自定义（begin ~ end，均可为空）
+         */
+        public Builder orderDate(Integer orderDate, Date begin, Date end) {
+            if (orderDate == null || orderDate == 0) {
+                return this;
+            }
+            if (orderDate == 7) {
+                return createdBetween(begin, end);
+            }
+            Calendar from = Calendar.getInstance();
+            from.set(Calendar.HOUR_OF_DAY, 0);
+            from.set(Calendar.MINUTE, 0);
+            from.set(Calendar.SECOND, 0);
+            from.set(Calendar.MILLISECOND, 0);
+            Calendar to = (Calendar) from.clone();
+            switch (orderDate) {
+                case 1:
+                    from.add(Calendar.DATE, -1);
+                    break;
+                case 2:
+                    to.add(Calendar.DATE, 1);
+                    break;
+                case 3:
+                    from.set(Calendar.DAY_OF_WEEK, from.getFirstDayOfWeek());
+                    to.setTime(from.getTime());
+                    to.add(Calendar.WEEK_OF_YEAR, 1);
+                    break;
+                case 4:
+                    from.set(Calendar.DAY_OF_MONTH, 1);
+                    to.setTime(from.getTime());
+                    to.add(Calendar.MONTH, 1);
+                    break;
+                case 5:
+                    from.set(Calendar.DAY_OF_MONTH, 1);
+                    from.set(Calendar.MONTH, from.get(Calendar.MONTH) / 3 * 3);
+                    to.setTime(from.getTime());
+                    to.add(Calendar.MONTH, 3);
+                    break;
+                case 6:
+                    from.set(Calendar.DAY_OF_YEAR, 1);
+                    to.setTime(from.getTime());
+                    to.add(Calendar.YEAR, 1);
+                    break;
+                default:
+                    return this;
+            }
+            condition.beginTime = from.getTime();
+            condition.endTime = to.getTime();
+            return this;
+        }
+
+        /**
+         * @param begin 创建时间下限（含），可为空
+         * @param end   创建时间上限（含），可为空
+         */
+        public Builder createdBetween(Date begin, Date end) {
+            condition.beginTime = begin;
+            condition.endTime = end == null ? null : new Date(end.getTime() + 1);
+            return this;
+        }
+
+        public Builder keyWord(String keyWord) {
+            condition.keyWord = keyWord == null || keyWord.trim().isEmpty() ? null : keyWord.trim();
+            return this;
+        }
+
+        /**
+         * @param pageNumber 页码（从 1 开始），传入游标时忽略
+         * @param pageSize   每页条数，为空或不为正数时取 DEFAULT_PAGE_SIZE，超过 MAX_PAGE_SIZE 时取 MAX_PAGE_SIZE
+         * @param cursor     上一页返回的游标 {createTime, id}，可为空
+         */
+        public Builder page(Integer pageNumber, Integer pageSize, JSONObject cursor) {
+            condition.limit = pageSize == null || pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+            if (cursor != null && cursor.getLong("createTime") != null && cursor.getInteger("id") != null) {
+                condition.afterCreateTime = new Date(cursor.getLong("createTime"));
+                condition.afterId = cursor.getInteger("id");
+                condition.offset = 0;
+            } else {
+                condition.offset = pageNumber == null || pageNumber <= 1 ? 0 : (int) Math.min(Integer.MAX_VALUE, (pageNumber - 1L) * condition.limit);
+            }
+            return this;
+        }
+
+        public OrderQueryCondition build() {
+            if (condition.limit == 0) {
+                page(1, null, null);
+            }
+            return condition;
+        }
+    }
+}
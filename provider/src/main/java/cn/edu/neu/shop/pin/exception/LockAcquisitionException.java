@@ -0,0 +1,13 @@
+package cn.edu.neu.shop.pin.exception;
+
+/**
+ * 在等待时间内未能获取互斥锁
+ */
+public class LockAcquisitionException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public LockAcquisitionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,177 @@
+package cn.edu.neu.shop.pin.lock;
+
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author LLG
+ * 基于 Redis 的分布式互斥锁
+ * 加锁使用 SET NX PX 一次完成，锁的值为持有者令牌，释放时通过 Lua 脚本比较令牌后再删除，不会误删他人的锁
+ * 获取失败时以指数退避自旋等待，可选地先获取本地分段锁，同一进程内只有一个线程向 Redis 竞争同一段的锁；
+ * 分段锁只在向 Redis 竞争期间持有，获取到 Redis 锁后立即释放，不会让散列到同一段的无关键在临界区内串行
+ */
+@Component
+public class DistributedLockEngine {
+
+    private static Logger logger = LoggerFactory.getLogger(DistributedLockEngine.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    private static final int STRIPE_COUNT = 64;
+
+    private static final long MIN_BACKOFF_MILLIS = 5;
+
+    private static final long MAX_BACKOFF_MILLIS = 100;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPE_COUNT];
+
+    // 按注解中的 key 统计竞争情况（不含参数部分，避免统计项无限增长）
+    private final Map<String, LockStats> stats = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DistributedLockEngine(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 获取锁
+     *
+     * @param statsKey     统计用的键
+     * @param key          锁的键
+     * @param ownerPrefix  持有者令牌前缀
+     * @param leaseMillis  锁的过期时间（毫秒）
+     * @param waitMillis   最长等待时间（毫秒）
+     * @param localPreLock 是否先获取本地分段锁
+     * @return 获取成功时返回锁句柄，超时返回 null
+     * @throws InterruptedException 等待时线程被中断
+     */
+    public Handle tryLock(String statsKey, String key, String ownerPrefix, long leaseMillis, long waitMillis, boolean localPreLock) throws InterruptedException {
+        LockStats lockStats = stats.computeIfAbsent(statsKey, k -> new LockStats());
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        ReentrantLock stripe = null;
+        if (localPreLock) {
+            stripe = stripes[(key.hashCode() & 0x7fffffff) % STRIPE_COUNT];
+            if (!stripe.tryLock(waitMillis, TimeUnit.MILLISECONDS)) {
+                lockStats.record(false, true, System.nanoTime() - start);
+                return null;
+            }
+        }
+        String token = ownerPrefix + ":" + UUID.randomUUID().toString();
+        long backoff = MIN_BACKOFF_MILLIS;
+        boolean contended = false;
+        try {
+            while (true) {
+                Boolean acquired = redisTemplate.opsForValue().setIfAbsent(key, token, leaseMillis, TimeUnit.MILLISECONDS);
+                if (Boolean.TRUE.equals(acquired)) {
+                    lockStats.record(true, contended, System.nanoTime() - start);
+                    return new Handle(key, token);
+                }
+                contended = true;
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    lockStats.record(false, true, System.nanoTime() - start);
+                    return null;
+                }
+                // 指数退避并加入随机抖动，避免多个节点同时重试
+                long sleep = Math.min(remaining, backoff + ThreadLocalRandom.current().nextLong(backoff));
+                Thread.sleep(sleep);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        } finally {
+            if (stripe != null) {
+                stripe.unlock();
+            }
+        }
+    }
+
+    /**
+     * 释放锁，仅当锁仍由该句柄持有时才删除
+     *
+     * @param handle 锁句柄
+     */
+    public void unlock(Handle handle) {
+        Long released = redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(handle.key), handle.token);
+        if (released == null || released == 0) {
+            logger.warn("互斥锁" + handle.key + "在释放前已过期或被其他持有者获取");
+        }
+    }
+
+    /**
+     * @return 各个锁的竞争统计
+     */
+    public JSONObject getMetrics() {
+        JSONObject metrics = new JSONObject();
+        stats.forEach((key, lockStats) -> metrics.put(key, lockStats.toJSON()));
+        return metrics;
+    }
+
+    /**
+     * 已获取的锁
+     */
+    public static class Handle {
+        private final String key;
+        private final String token;
+
+        Handle(String key, String token) {
+            this.key = key;
+            this.token = token;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static class LockStats {
+        private final AtomicLong acquired = new AtomicLong();
+        private final AtomicLong contended = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        void record(boolean success, boolean hadToWait, long waitNanos) {
+            if (success) {
+                acquired.incrementAndGet();
+            } else {
+                timedOut.incrementAndGet();
+            }
+            if (hadToWait) {
+                contended.incrementAndGet();
+            }
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("acquired", acquired.get());
+            json.put("contended", contended.get());
+            json.put("timedOut", timedOut.get());
+            json.put("totalWaitMillis", TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()));
+            json.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+            return json;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.lang.annotation.Target;
 /**
  * @author LLG
  * 互斥锁注解
+ * 在等待时间内未获取到锁时抛出 LockAcquisitionException
  */
 @Target({ElementType.METHOD})
 @Retention(RetentionPolicy.RUNTIME)
@@ -18,6 +19,12 @@ public @interface MutexLock {
     // redis缓存key中的数据
     String value() default "";
 
-    // 过期时间(秒)，默认为10分钟
+    // 过期时间(秒)，默认为10秒
     long expire() default 10;
+
+    // 获取锁的最长等待时间(毫秒)，为0时不等待
+    long waitMillis() default 3000;
+
+    // 是否先在本地获取分段锁，使同一进程内的竞争线程不必反复访问 Redis
+    boolean localPreLock() default true;
 }
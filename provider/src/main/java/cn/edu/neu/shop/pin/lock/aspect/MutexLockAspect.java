@@ -1,5 +1,7 @@
 package cn.edu.neu.shop.pin.lock.aspect;
 
+import cn.edu.neu.shop.pin.exception.LockAcquisitionException;
+import cn.edu.neu.shop.pin.lock.DistributedLockEngine;
 import cn.edu.neu.shop.pin.lock.annotation.LockKeyVariable;
 import cn.edu.neu.shop.pin.lock.annotation.MutexLock;
 import lombok.extern.slf4j.Slf4j;
@@ -11,7 +13,8 @@ import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
@@ -21,32 +24,32 @@ import java.util.concurrent.TimeUnit;
 /**
  * @author LLG
  * 互斥锁切面
- * 根据注解注入执行方法，若互斥则停止执行
+ * 根据注解注入执行方法，在等待时间内未获取到锁时抛出 LockAcquisitionException
+ * 切面优先级高于事务，保证锁在事务提交之后才释放
  */
 @SuppressWarnings("ALL")
 @Component
 @Slf4j
 @Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class MutexLockAspect {
 
     private static Logger logger = LoggerFactory.getLogger(MutexLockAspect.class);
 
-    private final RedisTemplate<String, String> redisTemplate;
+    private final DistributedLockEngine distributedLockEngine;
 
     @Autowired
-    public MutexLockAspect(RedisTemplate<String, String> redisTemplate) {
-        this.redisTemplate = redisTemplate;
+    public MutexLockAspect(DistributedLockEngine distributedLockEngine) {
+        this.distributedLockEngine = distributedLockEngine;
     }
 
     @Around("@annotation(cn.edu.neu.shop.pin.lock.annotation.MutexLock)")
-    public Object distributeMutexLock(ProceedingJoinPoint pjp) {
-        Object resultObject = null;
-
+    public Object distributeMutexLock(ProceedingJoinPoint pjp) throws Throwable {
         //确认此注解是用在方法上
         Signature signature = pjp.getSignature();
         if (!(signature instanceof MethodSignature)) {
             logger.error("MutexLock 注解需要设置到方法上。");
-            return resultObject;
+            return null;
         }
 
         MethodSignature methodSignature = (MethodSignature) signature;
@@ -69,27 +72,19 @@ public class MutexLockAspect {
         }
 
         final String key = keyBuilder.toString();
-        String value = mutexLock.value();
-        long expire = mutexLock.expire();
-
-        // 分布式锁，如果没有此key，设置此值并返回true；如果有此key，则返回false
-        boolean result = redisTemplate.boundValueOps(key).setIfAbsent(value);
-        if (!result) {
-            logger.info("[回避] 互斥锁" + key +"已被添加，撤销当前方法的执行。");
-            // 其他程序已经获取分布式锁，不再执行此方法
-            return resultObject;
+        // 分布式锁：SET NX PX 原子地加锁并设置过期时间，在等待时间内退避重试
+        DistributedLockEngine.Handle handle = distributedLockEngine.tryLock(mutexLock.key(), key, mutexLock.value(),
+                TimeUnit.SECONDS.toMillis(mutexLock.expire()), mutexLock.waitMillis(), mutexLock.localPreLock());
+        if (handle == null) {
+            logger.info("[回避] 互斥锁" + key + "在 " + mutexLock.waitMillis() + "ms 内未能获取。");
+            throw new LockAcquisitionException("操作过于频繁，请稍后再试");
         }
-        logger.info("[加锁] 互斥锁" + key +"已添加。");
-        //设置注解中的过期时间，默认一分钟
-        redisTemplate.boundValueOps(key).expire(expire, TimeUnit.SECONDS);
+        logger.info("[加锁] 互斥锁" + key + "已添加。");
         try {
-            resultObject = pjp.proceed(); //调用对应方法执行
-            logger.info("[解锁] 互斥锁" + key +"已解锁。");
-        } catch (Throwable throwable) {
-            throwable.printStackTrace();
+            return pjp.proceed(); //调用对应方法执行
         } finally {
-            redisTemplate.delete(key); // 执行完成后解锁
+            distributedLockEngine.unlock(handle); // 执行完成后解锁（仅删除自己持有的锁）
+            logger.info("[解锁] 互斥锁" + key + "已解锁。");
         }
-        return resultObject;
     }
-}
\ No newline at end of file
+}
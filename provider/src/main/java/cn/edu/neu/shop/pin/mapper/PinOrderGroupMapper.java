@@ -1,9 +1,13 @@
 package cn.edu.neu.shop.pin.mapper;
 
+import cn.edu.neu.shop.pin.dto.OrderQueryCondition;
 import cn.edu.neu.shop.pin.model.PinOrderGroup;
 import cn.edu.neu.shop.pin.util.base.BaseMapper;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Component;
 
+import java.math.BigDecimal;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -14,7 +18,19 @@ import java.util.List;
 public interface PinOrderGroupMapper extends BaseMapper<PinOrderGroup> {
     List<PinOrderGroup> getTopTenOrderGroups(Integer storeId);
 
-    List<PinOrderGroup> getAllWithOrderIndividual(Integer storeId);
+    /**
+     * 后台团单查询（筛选与分页均在数据库中完成）
+     *
+     * @param condition 查询条件
+     * @return 当前页的团单（不含子订单）
+     */
+    List<PinOrderGroup> queryForAdmin(OrderQueryCondition condition);
+
+    /**
+     * @param condition 查询条件（忽略分页参数）
+     * @return 符合条件的团单总数
+     */
+    Integer countForAdmin(OrderQueryCondition condition);
 
     /**
      * 通过状态码获取团单
@@ -23,4 +39,23 @@ public interface PinOrderGroupMapper extends BaseMapper<PinOrderGroup> {
      * @return 团单列表
      */
     List<PinOrderGroup> getOrderGroupsByStatus(Integer status);
+
+    /**
+     * 获取指定状态、且收团时间不晚于给定时间的团单
+     *
+     * @param status 状态码
+     * @param before 收团时间上限
+     * @return 团单列表
+     */
+    List<PinOrderGroup> getDueOrderGroups(@Param("status") Integer status, @Param("before") Date before);
+
+    /**
+     * 结束仍处于拼团中的团单
+     *
+     * @param orderGroupId           团单ID
+     * @param totalAmountOfMoneyPaid 团单总价
+     * @param actualFinishTime       实际结束时间
+     * @return 受影响的行数，团单已被结束时为 0
+     */
+    int finishOrderGroup(@Param("orderGroupId") Integer orderGroupId, @Param("totalAmountOfMoneyPaid") BigDecimal totalAmountOfMoneyPaid, @Param("actualFinishTime") Date actualFinishTime);
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package cn.edu.neu.shop.pin.mapper;
 
+import cn.edu.neu.shop.pin.dto.OrderQueryCondition;
 import cn.edu.neu.shop.pin.model.PinOrderIndividual;
 import cn.edu.neu.shop.pin.util.base.BaseMapper;
+import com.alibaba.fastjson.JSONObject;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Component;
@@ -17,13 +19,27 @@ public interface PinOrderIndividualMapper extends BaseMapper<PinOrderIndividual>
 
     List<PinOrderIndividual> getRecentThreeMonthsOrderIndividuals(Integer userId);
 
-    List<PinOrderIndividual> getAllWithProductsByKeyWord(@Param("keyWord") String keyWord, @Param("storeId") Integer storeId);
+    /**
+     * 后台订单查询（筛选与分页均在数据库中完成）
+     *
+     * @param condition 查询条件
+     * @return 当前页的子订单（不含订单商品）
+     */
+    List<PinOrderIndividual> queryForAdmin(OrderQueryCondition condition);
 
-    Integer getNumberOfOrder(Date fromTime, Date toTime, Integer storeId);
+    /**
+     * @param condition 查询条件（忽略分页参数）
+     * @return 符合条件的子订单总数
+     */
+    Integer countForAdmin(OrderQueryCondition condition);
 
-    Integer getNumberOfOrderNotShip(Integer storeId);
+    List<JSONObject> getDailyOrderCounts(@Param("from") Date from);
 
-    Integer getNumberOfOrderRefund(Integer storeId);
+    List<JSONObject> getDailyRefundCounts(@Param("from") Date from);
+
+    List<JSONObject> getUnshippedCountsByStore();
+
+    List<JSONObject> getRefundingCountsByStore();
 
     void updateOrderDeliveryTypeNotExpress(Integer orderIndividualId, String deliveryType, Date deliveryTime);
 
@@ -36,4 +52,10 @@ public interface PinOrderIndividualMapper extends BaseMapper<PinOrderIndividual>
     void updateRefundSuccess(Integer orderIndividualId);
 
     void updateRefundFailure(Integer orderIndividualId, String refundRefuseReason);
+
+    Integer getMaxIdBefore(@Param("afterId") Integer afterId, @Param("cutoff") Date cutoff);
+
+    int mountOrderGroup(@Param("orderIndividualId") Integer orderIndividualId, @Param("orderGroupId") Integer orderGroupId);
+
+    int unmountOrderGroup(@Param("orderIndividualId") Integer orderIndividualId, @Param("orderGroupId") Integer orderGroupId);
 }
@@ -2,9 +2,12 @@ package cn.edu.neu.shop.pin.mapper;
 
 import cn.edu.neu.shop.pin.model.PinOrderItem;
 import cn.edu.neu.shop.pin.util.base.BaseMapper;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 /**
  * @author flyhero
@@ -19,4 +22,6 @@ public interface PinOrderItemMapper extends BaseMapper<PinOrderItem> {
                                       Integer userId, Integer skuId);
 
     PinOrderItem getUnSubmittedOrderItemByUserIdAndProductId(Integer userId, Integer productId, Integer skuId);
+
+    List<JSONObject> getSoldCountDeltas(@Param("afterId") Integer afterId, @Param("toId") Integer toId);
 }
\ No newline at end of file
@@ -2,9 +2,12 @@ package cn.edu.neu.shop.pin.mapper;
 
 import cn.edu.neu.shop.pin.model.PinProductAttributeValue;
 import cn.edu.neu.shop.pin.util.base.BaseMapper;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 @Component
 public interface PinProductAttributeValueMapper extends BaseMapper<PinProductAttributeValue> {
@@ -12,4 +15,6 @@ public interface PinProductAttributeValueMapper extends BaseMapper<PinProductAtt
                                      BigDecimal price, String imageUrl, BigDecimal cost);
 
     PinProductAttributeValue getSkuBySkuId(Integer skuId);
+
+    void decreaseStocks(@Param("deltas") List<JSONObject> deltas);
 }
\ No newline at end of file
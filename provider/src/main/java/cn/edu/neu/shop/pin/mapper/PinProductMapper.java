@@ -4,8 +4,10 @@ import cn.edu.neu.shop.pin.model.PinProduct;
 import cn.edu.neu.shop.pin.util.base.BaseMapper;
 import com.alibaba.fastjson.JSONObject;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 import org.springframework.stereotype.Component;
 
+import java.util.Date;
 import java.util.List;
 
 @Component
@@ -51,6 +53,8 @@ public interface PinProductMapper extends BaseMapper<PinProduct> {
 
     Integer getNumberOfProductLessStock(Integer storeId);
 
+    List<JSONObject> getLowStockCountsByStore();
+
     void updateProductCategory(Integer productId, Integer categoryId);
 
     List<PinProduct> getIsShownProductInfo(Integer storeId);
@@ -63,6 +67,29 @@ public interface PinProductMapper extends BaseMapper<PinProduct> {
 
     List<PinProduct> searchByKeyword(String keyword);
 
+    /**
+     * 按主键顺序分批获取建立搜索索引所需的商品字段
+     *
+     * @param afterId 上一批最后一个商品ID
+     * @param limit   批大小
+     * @return 商品List（仅含 id、name、keyword、description）
+     */
+    List<PinProduct> getProductsForIndex(@Param("afterId") Integer afterId, @Param("limit") Integer limit);
+
+    /**
+     * 流式读取生成推荐表征所需的商品字段，逐行交给 handler，不在内存中保留整张表
+     *
+     * @param since   只读取在此之后修改过（含评分汇总变化）的商品，为 null 时读取全部
+     * @param handler 行处理器（每行仅含 id、category_id、price、sold_count、visit_count）
+     */
+    void streamProductsForRepresentation(@Param("since") Date since, ResultHandler<PinProduct> handler);
+
+    void increaseVisitCounts(@Param("deltas") List<JSONObject> deltas);
+
+    void increaseSoldCounts(@Param("deltas") List<JSONObject> deltas);
+
+    void decreaseStockCounts(@Param("deltas") List<JSONObject> deltas);
+
     void updateIsShownStatus(Integer productId);
 
     void updateIsNotShownStatus(Integer productId);
@@ -0,0 +1,14 @@
+package cn.edu.neu.shop.pin.mapper;
+
+import cn.edu.neu.shop.pin.model.PinProductRating;
+import cn.edu.neu.shop.pin.util.base.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Component;
+
+@Component
+public interface PinProductRatingMapper extends BaseMapper<PinProductRating> {
+
+    void applyDelta(@Param("delta") PinProductRating delta);
+
+    int rebuildAll();
+}
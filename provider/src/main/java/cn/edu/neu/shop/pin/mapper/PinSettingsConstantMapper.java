@@ -2,10 +2,15 @@ package cn.edu.neu.shop.pin.mapper;
 
 import cn.edu.neu.shop.pin.model.PinSettingsConstant;
 import cn.edu.neu.shop.pin.util.base.BaseMapper;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Component;
 
 @Component
 public interface PinSettingsConstantMapper extends BaseMapper<PinSettingsConstant> {
 
+    String getConstantValueForUpdate(@Param("key") String key);
 
+    void saveConstantValue(@Param("key") String key, @Param("value") String value);
+
+    void increaseVersion(@Param("key") String key);
 }
\ No newline at end of file
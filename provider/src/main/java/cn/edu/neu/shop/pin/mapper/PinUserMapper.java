@@ -2,8 +2,12 @@ package cn.edu.neu.shop.pin.mapper;
 
 import cn.edu.neu.shop.pin.model.PinUser;
 import cn.edu.neu.shop.pin.util.base.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 import org.springframework.stereotype.Component;
 
+import java.util.Date;
+
 @Component
 public interface PinUserMapper extends BaseMapper<PinUser> {
 
@@ -15,4 +19,12 @@ public interface PinUserMapper extends BaseMapper<PinUser> {
 
     // 更新用户积分
     void updateUserCredit(Integer userId, Integer credit);
+
+    /**
+     * 流式读取生成推荐表征所需的用户字段，逐行交给 handler，不在内存中保留整张表
+     *
+     * @param since   只读取在此之后修改过的用户，为 null 时读取全部
+     * @param handler 行处理器（每行仅含 id、gender、balance、credit）
+     */
+    void streamUsersForRepresentation(@Param("since") Date since, ResultHandler<PinUser> handler);
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package cn.edu.neu.shop.pin.mapper;
 import cn.edu.neu.shop.pin.model.PinUserProductComment;
 import cn.edu.neu.shop.pin.util.base.BaseMapper;
 import com.alibaba.fastjson.JSONObject;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
@@ -11,15 +12,19 @@ import java.util.List;
 @Component
 public interface PinUserProductCommentMapper extends BaseMapper<PinUserProductComment> {
 
-    Integer getNumberOfComment(Date fromTime, Date toTime, Integer storeId);
+    List<JSONObject> getDailyCommentCounts(@Param("from") Date from);
 
     List<JSONObject> getCommentAndUserInfo(Integer productId);
 
-    Integer getNumberOfMerchantNotComment(Integer storeId);
+    List<JSONObject> getUnrepliedCountsByStore();
 
     List<JSONObject> getAllProductWithComment(Integer storeId);
 
     void updateMerchantComment(Integer commentId, String commentContent, Date commentTime);
 
-    Double getAvgScore(Integer id);
+    List<PinUserProductComment> getPendingAnalysisComments(@Param("before") Date before, @Param("limit") int limit);
+
+    void clearCommentTag(@Param("commentId") Integer commentId);
+
+    void updateCommentTags(@Param("comments") List<PinUserProductComment> comments);
 }
\ No newline at end of file
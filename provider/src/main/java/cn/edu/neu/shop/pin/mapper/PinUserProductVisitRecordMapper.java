@@ -2,12 +2,19 @@ package cn.edu.neu.shop.pin.mapper;
 
 import cn.edu.neu.shop.pin.model.PinUserProductVisitRecord;
 import cn.edu.neu.shop.pin.util.base.BaseMapper;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
+import java.util.List;
 
 @Component
 public interface PinUserProductVisitRecordMapper extends BaseMapper<PinUserProductVisitRecord> {
 
-    Integer getNumberOfVisitRecord(Date fromTime, Date toTime, Integer storeId);
+    List<JSONObject> getDailyVisitCounts(@Param("from") Date from);
+
+    Integer getMaxIdBefore(@Param("afterId") Integer afterId, @Param("cutoff") Date cutoff);
+
+    List<JSONObject> getVisitCountDeltas(@Param("afterId") Integer afterId, @Param("toId") Integer toId);
 }
\ No newline at end of file
@@ -1,8 +1,13 @@
 package cn.edu.neu.shop.pin.message_queue;
 
 import cn.edu.neu.shop.pin.util.PinConstants;
+import cn.edu.neu.shop.pin.websocket.StompSessionRegistry;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -10,19 +15,77 @@ import org.springframework.context.annotation.Configuration;
 public class RabbitConfig {
 
     /**
-     * 定义 Group 队列
-     * @return Group Queue
+     * 定义 STOMP 消息交换机
+     * @return STOMP Exchange
      */
     @Bean
-    public Queue group() {
-        return QueueBuilder.durable(PinConstants.MessageQueueKey.GROUP).build();
+    public TopicExchange stompExchange() {
+        return new TopicExchange(PinConstants.MessageQueueKey.STOMP_EXCHANGE);
     }
+
+    /**
+     * 定义当前节点独占的 STOMP 消息队列，节点下线后自动删除
+     * @return STOMP Queue
+     */
+    @Bean
+    public Queue stompQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding stompNodeBinding(TopicExchange stompExchange, Queue stompQueue, StompSessionRegistry stompSessionRegistry) {
+        return BindingBuilder.bind(stompQueue).to(stompExchange)
+                .with(PinConstants.MessageQueueKey.STOMP_NODE_ROUTING_KEY_PREFIX + stompSessionRegistry.getNodeId());
+    }
+
+    @Bean
+    public Binding stompBroadcastBinding(TopicExchange stompExchange, Queue stompQueue) {
+        return BindingBuilder.bind(stompQueue).to(stompExchange).with(PinConstants.MessageQueueKey.STOMP_BROADCAST_ROUTING_KEY);
+    }
+
+    /**
+     * 定义商品缓存失效广播交换机
+     * @return Product Cache Exchange
+     */
+    @Bean
+    public FanoutExchange productCacheExchange() {
+        return new FanoutExchange(PinConstants.MessageQueueKey.PRODUCT_CACHE_EXCHANGE);
+    }
+
     /**
-     * 定义 User 队列
-     * @return User Queue
+     * 定义当前节点独占的商品缓存失效队列，节点下线后自动删除
+     * @return Product Cache Queue
      */
     @Bean
-    public Queue user() {
-        return QueueBuilder.durable(PinConstants.MessageQueueKey.USER).build();
+    public Queue productCacheQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding productCacheBinding(FanoutExchange productCacheExchange, Queue productCacheQueue) {
+        return BindingBuilder.bind(productCacheQueue).to(productCacheExchange);
+    }
+
+    /**
+     * 定义系统设置变更广播交换机
+     * @return Settings Exchange
+     */
+    @Bean
+    public FanoutExchange settingsExchange() {
+        return new FanoutExchange(PinConstants.MessageQueueKey.SETTINGS_EXCHANGE);
+    }
+
+    /**
+     * 定义当前节点独占的系统设置变更队列，节点下线后自动删除
+     * @return Settings Queue
+     */
+    @Bean
+    public Queue settingsQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding settingsBinding(FanoutExchange settingsExchange, Queue settingsQueue) {
+        return BindingBuilder.bind(settingsQueue).to(settingsExchange);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package cn.edu.neu.shop.pin.message_queue.consumer;
+
+import cn.edu.neu.shop.pin.cache.ProductDetailCache;
+import cn.edu.neu.shop.pin.search.ProductSearchEngine;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商品变更（缓存失效）消息消费者
+ * 每个节点都有独占队列，因此每个节点都会收到失效消息
+ */
+@Component
+@RabbitListener(queues = "#{productCacheQueue.name}")
+public class ProductCacheMessageConsumer {
+    private static Logger logger = LoggerFactory.getLogger(ProductCacheMessageConsumer.class);
+
+    private final ProductDetailCache productDetailCache;
+
+    private final ProductSearchEngine productSearchEngine;
+
+    @Autowired
+    public ProductCacheMessageConsumer(ProductDetailCache productDetailCache, ProductSearchEngine productSearchEngine) {
+        this.productDetailCache = productDetailCache;
+        this.productSearchEngine = productSearchEngine;
+    }
+
+    /**
+     * 清除本节点中对应商品的本地缓存，并重新索引该商品
+     */
+    @RabbitHandler
+    public void onReceive(String message) {
+        logger.info("[Received PRODUCT_CACHE]: " + message);
+        JSONObject evictMessage = JSONObject.parseObject(message);
+        Integer productId = evictMessage.getInteger("productId");
+        productDetailCache.evictLocal(productId);
+        productSearchEngine.reindex(productId);
+    }
+
+}
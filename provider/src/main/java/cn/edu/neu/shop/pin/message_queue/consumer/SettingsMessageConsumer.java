@@ -0,0 +1,50 @@
+package cn.edu.neu.shop.pin.message_queue.consumer;
+
+import cn.edu.neu.shop.pin.cache.ProductCategoryRegistry;
+import cn.edu.neu.shop.pin.cache.SettingsConstantRegistry;
+import cn.edu.neu.shop.pin.recommender.RecommenderCache;
+import cn.edu.neu.shop.pin.util.PinConstants;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 系统设置变更消息消费者
+ * 每个节点都有独占队列，因此每个节点都会收到变更消息并重新加载本地的设置快照
+ */
+@Component
+@RabbitListener(queues = "#{settingsQueue.name}")
+public class SettingsMessageConsumer {
+    private static Logger logger = LoggerFactory.getLogger(SettingsMessageConsumer.class);
+
+    private final ProductCategoryRegistry productCategoryRegistry;
+
+    private final SettingsConstantRegistry settingsConstantRegistry;
+
+    private final RecommenderCache recommenderCache;
+
+    @Autowired
+    public SettingsMessageConsumer(ProductCategoryRegistry productCategoryRegistry, SettingsConstantRegistry settingsConstantRegistry, RecommenderCache recommenderCache) {
+        this.productCategoryRegistry = productCategoryRegistry;
+        this.settingsConstantRegistry = settingsConstantRegistry;
+        this.recommenderCache = recommenderCache;
+    }
+
+    @RabbitHandler
+    public void onReceive(String message) {
+        logger.info("[Received SETTINGS]: " + message);
+        String type = JSONObject.parseObject(message).getString("type");
+        if (PinConstants.SettingsType.PRODUCT_CATEGORY.equals(type)) {
+            productCategoryRegistry.reload();
+        } else if (PinConstants.SettingsType.CONSTANT.equals(type)) {
+            settingsConstantRegistry.reload();
+        } else if (PinConstants.SettingsType.RECOMMENDATION_RANK.equals(type)) {
+            recommenderCache.warm();
+        }
+    }
+
+}
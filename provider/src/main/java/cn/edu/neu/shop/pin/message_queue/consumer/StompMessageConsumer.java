@@ -1,6 +1,5 @@
 package cn.edu.neu.shop.pin.message_queue.consumer;
 
-import cn.edu.neu.shop.pin.util.PinConstants;
 import cn.edu.neu.shop.pin.websocket.StompMessageService;
 import com.alibaba.fastjson.JSONObject;
 import org.slf4j.Logger;
@@ -10,15 +9,19 @@ import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+/**
+ * STOMP 消息消费者
+ * 每个节点都有独占队列，只会收到投递给本节点（或广播）的消息，收到后推送给本节点上的 WebSocket 会话
+ */
 @Component
-@RabbitListener(queues = PinConstants.MessageQueueKey.GROUP)
-public class GroupMessageConsumer {
-    private static Logger logger = LoggerFactory.getLogger(GroupMessageConsumer.class);
+@RabbitListener(queues = "#{stompQueue.name}")
+public class StompMessageConsumer {
+    private static Logger logger = LoggerFactory.getLogger(StompMessageConsumer.class);
 
     private final StompMessageService stompMessageService;
 
     @Autowired
-    public GroupMessageConsumer(StompMessageService stompMessageService) {
+    public StompMessageConsumer(StompMessageService stompMessageService) {
         this.stompMessageService = stompMessageService;
     }
 
@@ -27,12 +30,8 @@ public class GroupMessageConsumer {
      */
     @RabbitHandler
     public void onReceive(String message) {
-        logger.info("[Received GROUP]: " + message);
-        JSONObject groupMessage = JSONObject.parseObject(message);
-        stompMessageService.onReceiveGroupMessageToRoute(
-                groupMessage.getString("route"),
-                groupMessage.getJSONObject("data")
-        );
+        logger.debug("[Received STOMP]: " + message);
+        stompMessageService.deliverLocally(JSONObject.parseObject(message));
     }
 
-}
\ No newline at end of file
+}
@@ -4,37 +4,172 @@ import cn.edu.neu.shop.pin.util.PinConstants;
 import com.alibaba.fastjson.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 @Component
 public class MessageOnQueueProducer {
 
     private static Logger logger = LoggerFactory.getLogger(MessageOnQueueProducer.class);
 
-    private final AmqpTemplate rabbitTemplate;
+    private static final long CONFIRM_TIMEOUT_MILLIS = 5000;
+
+    @Value("${pin.stomp-bus.capacity:10000}")
+    private int capacity;
+
+    @Value("${pin.stomp-bus.batch-size:100}")
+    private int batchSize;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    // 待发布的 STOMP 消息：{路由键, 消息体}
+    private LinkedBlockingQueue<String[]> stompQueue;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean running = false;
+
+    private Thread publisher;
 
     @Autowired
-    public MessageOnQueueProducer(AmqpTemplate rabbitTemplate) {
+    public MessageOnQueueProducer(RabbitTemplate rabbitTemplate) {
         this.rabbitTemplate = rabbitTemplate;
     }
 
-    public void sendToGroup(String route, JSONObject data) {
+    @PostConstruct
+    protected void start() {
+        stompQueue = new LinkedBlockingQueue<>(capacity);
+        running = true;
+        publisher = new Thread(this::runPublisher, "stomp-bus-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    @PreDestroy
+    protected void stop() {
+        running = false;
+        publisher.interrupt();
+        try {
+            publisher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        while (!stompQueue.isEmpty()) {
+            publishBatch();
+        }
+        logger.info("STOMP 消息发布器已关闭：" + getMetrics().toJSONString());
+    }
+
+    /**
+     * 将 STOMP 消息投递到指定节点
+     * @param nodeId 节点ID
+     * @param message 消息
+     */
+    public void sendToNode(String nodeId, JSONObject message) {
+        enqueue(PinConstants.MessageQueueKey.STOMP_NODE_ROUTING_KEY_PREFIX + nodeId, message);
+    }
+
+    /**
+     * 将 STOMP 消息广播到所有节点（无法确定目标节点时使用）
+     * @param message 消息
+     */
+    public void broadcastToNodes(JSONObject message) {
+        enqueue(PinConstants.MessageQueueKey.STOMP_BROADCAST_ROUTING_KEY, message);
+    }
+
+    /**
+     * 向所有节点广播商品缓存失效消息
+     * @param productId 商品ID
+     */
+    public void broadcastProductCacheEviction(Integer productId) {
         JSONObject jsonToSend = new JSONObject();
-        jsonToSend.put("route", route);
-        jsonToSend.put("data", data);
-        logger.info("[Sending to GROUP] send msg:" + jsonToSend);
-        this.rabbitTemplate.convertAndSend(PinConstants.MessageQueueKey.GROUP, jsonToSend.toJSONString());
+        jsonToSend.put("productId", productId);
+        logger.info("[Sending to PRODUCT_CACHE] send msg:" + jsonToSend);
+        this.rabbitTemplate.convertAndSend(PinConstants.MessageQueueKey.PRODUCT_CACHE_EXCHANGE, "", jsonToSend.toJSONString());
     }
 
-    public void sendToUser(String userId, String route, JSONObject data) {
+    /**
+     * 向所有节点广播系统设置变更消息
+     * @param type 设置类型，见 PinConstants.SettingsType
+     */
+    public void broadcastSettingsChange(String type) {
         JSONObject jsonToSend = new JSONObject();
-        jsonToSend.put("userId", userId);
-        jsonToSend.put("route", route);
-        jsonToSend.put("data", data);
-        logger.info("[Sending to USER] send msg:" + jsonToSend);
-        this.rabbitTemplate.convertAndSend(PinConstants.MessageQueueKey.USER, jsonToSend.toJSONString());
+        jsonToSend.put("type", type);
+        logger.info("[Sending to SETTINGS] send msg:" + jsonToSend);
+        this.rabbitTemplate.convertAndSend(PinConstants.MessageQueueKey.SETTINGS_EXCHANGE, "", jsonToSend.toJSONString());
+    }
+
+    /**
+     * @return STOMP 消息发布指标
+     */
+    public JSONObject getMetrics() {
+        JSONObject metrics = new JSONObject();
+        metrics.put("pending", stompQueue.size());
+        metrics.put("published", publishedCount.get());
+        metrics.put("failed", failedCount.get());
+        metrics.put("dropped", droppedCount.get());
+        return metrics;
+    }
+
+    private void enqueue(String routingKey, JSONObject message) {
+        if (!stompQueue.offer(new String[]{routingKey, message.toJSONString()})) {
+            // 实时推送只是尽力而为，队列满时丢弃，客户端重连后会重新获取团单信息
+            droppedCount.incrementAndGet();
+            logger.warn("STOMP 消息队列已满，丢弃消息：" + routingKey);
+        }
+    }
+
+    private void runPublisher() {
+        while (running) {
+            try {
+                String[] first = stompQueue.take();
+                publishBatch(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void publishBatch() {
+        String[] first = stompQueue.poll();
+        if (first != null) {
+            publishBatch(first);
+        }
+    }
+
+    /**
+     * 在同一信道中连续发布一批消息，最后统一等待 Broker 确认
+     */
+    private void publishBatch(String[] first) {
+        List<String[]> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        stompQueue.drainTo(batch, batchSize - 1);
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (String[] message : batch) {
+                    operations.convertAndSend(PinConstants.MessageQueueKey.STOMP_EXCHANGE, message[0], message[1]);
+                }
+                operations.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MILLIS);
+                return null;
+            });
+            publishedCount.addAndGet(batch.size());
+        } catch (Exception e) {
+            failedCount.addAndGet(batch.size());
+            logger.error("发布 " + batch.size() + " 条 STOMP 消息失败：" + e.getMessage());
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,269 @@
+package cn.edu.neu.shop.pin.model;
+
+import javax.persistence.Column;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * 产品评分汇总：评论数、打分之和、好评数与 1~5 分直方图
+ * 评论新增或覆盖时在同一事务中增量更新
+ */
+@Table(name = "pin_product_rating")
+public class PinProductRating {
+    /**
+     * 产品ID
+     */
+    @Id
+    @Column(name = "product_id")
+    private Integer productId;
+
+    /**
+     * 评论数
+     */
+    @Column(name = "comment_count")
+    private Integer commentCount;
+
+    /**
+     * 商品打分之和
+     */
+    @Column(name = "score_sum")
+    private Integer scoreSum;
+
+    /**
+     * 好评数
+     */
+    @Column(name = "good_count")
+    private Integer goodCount;
+
+    /**
+     * 1 分评论数
+     */
+    @Column(name = "star1_count")
+    private Integer star1Count;
+
+    /**
+     * 2 分评论数
+     */
+    @Column(name = "star2_count")
+    private Integer star2Count;
+
+    /**
+     * 3 分评论数
+     */
+    @Column(name = "star3_count")
+    private Integer star3Count;
+
+    /**
+     * 4 分评论数
+     */
+    @Column(name = "star4_count")
+    private Integer star4Count;
+
+    /**
+     * 5 分评论数
+     */
+    @Column(name = "star5_count")
+    private Integer star5Count;
+
+    /**
+     * 获取产品ID
+     *
+     * @return product_id - 产品ID
+     */
+    public Integer getProductId() {
+        return productId;
+    }
+
+    /**
+     * 设置产品ID
+     *
+     * @param productId 产品ID
+     */
+    public void setProductId(Integer productId) {
+        this.productId = productId;
+    }
+
+    /**
+     * 获取评论数
+     *
+     * @return comment_count - 评论数
+     */
+    public Integer getCommentCount() {
+        return commentCount;
+    }
+
+    /**
+     * 设置评论数
+     *
+     * @param commentCount 评论数
+     */
+    public void setCommentCount(Integer commentCount) {
+        this.commentCount = commentCount;
+    }
+
+    /**
+     * 获取商品打分之和
+     *
+     * @return score_sum - 商品打分之和
+     */
+    public Integer getScoreSum() {
+        return scoreSum;
+    }
+
+    /**
+     * 设置商品打分之和
+     *
+     * @param scoreSum 商品打分之和
+     */
+    public void setScoreSum(Integer scoreSum) {
+        this.scoreSum = scoreSum;
+    }
+
+    /**
+     * 获取好评数
+     *
+     * @return good_count - 好评数
+     */
+    public Integer getGoodCount() {
+        return goodCount;
+    }
+
+    /**
+     * 设置好评数
+     *
+     * @param goodCount 好评数
+     */
+    public void setGoodCount(Integer goodCount) {
+        this.goodCount = goodCount;
+    }
+
+    /**
+     * 获取1 分评论数
+     *
+     * @return star1_count - 1 分评论数
+     */
+    public Integer getStar1Count() {
+        return star1Count;
+    }
+
+    /**
+     * 设置1 分评论数
+     *
+     * @param star1Count 1 分评论数
+     */
+    public void setStar1Count(Integer star1Count) {
+        this.star1Count = star1Count;
+    }
+
+    /**
+     * 获取2 分评论数
+     *
+     * @return star2_count - 2 分评论数
+     */
+    public Integer getStar2Count() {
+        return star2Count;
+    }
+
+    /**
+     * 设置2 分评论数
+     *
+     * @param star2Count 2 分评论数
+     */
+    public void setStar2Count(Integer star2Count) {
+        this.star2Count = star2Count;
+    }
+
+    /**
+     * 获取3 分评论数
+     *
+     * @return star3_count - 3 分评论数
+     */
+    public Integer getStar3Count() {
+        return star3Count;
+    }
+
+    /**
+     * 设置3 分评论数
+     *
+     * @param star3Count 3 分评论数
+     */
+    public void setStar3Count(Integer star3Count) {
+        this.star3Count = star3Count;
+    }
+
+    /**
+     * 获取4 分评论数
+     *
+     * @return star4_count - 4 分评论数
+     */
+    public Integer getStar4Count() {
+        return star4Count;
+    }
+
+    /**
+     * 设置4 分评论数
+     *
+     * @param star4Count 4 分评论数
+     */
+    public void setStar4Count(Integer star4Count) {
+        this.star4Count = star4Count;
+    }
+
+    /**
+     * 获取5 分评论数
+     *
+     * @return star5_count - 5 分评论数
+     */
+    public Integer getStar5Count() {
+        return star5Count;
+    }
+
+    /**
+     * 设置5 分评论数
+     *
+     * @param star5Count 5 分评论数
+     */
+    public void setStar5Count(Integer star5Count) {
+        this.star5Count = star5Count;
+    }
+
+    /**
+     * @param star 分数（1~5）
+     * @return 该分数的评论数
+     */
+    public int getStarCount(int star) {
+        Integer[] stars = {star1Count, star2Count, star3Count, star4Count, star5Count};
+        Integer count = stars[toStar(star) - 1];
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 与 AVG(product_score) 一致，只按有打分的评论（即直方图中的评论）计算
+     *
+     * @return 平均分，没有打分的评论时返回 null
+     */
+    public Double getAverageScore() {
+        int scoredCount = 0;
+        for (int star = 1; star <= 5; star++) {
+            scoredCount += getStarCount(star);
+        }
+        return scoredCount <= 0 || scoreSum == null ? null : scoreSum.doubleValue() / scoredCount;
+    }
+
+    /**
+     * @return 好评率，没有评论时返回 0
+     */
+    public double getGoodRate() {
+        return commentCount == null || commentCount <= 0 ? 0.0 : goodCount.doubleValue() / commentCount;
+    }
+
+    /**
+     * 超出范围的分数计入最近的档位
+     *
+     * @param score 商品打分
+     * @return 1~5
+     */
+    public static int toStar(int score) {
+        return Math.max(1, Math.min(5, score));
+    }
+}
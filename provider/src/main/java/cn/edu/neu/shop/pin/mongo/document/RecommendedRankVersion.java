@@ -0,0 +1,47 @@
+package cn.edu.neu.shop.pin.mongo.document;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * 当前生效的推荐排名集合版本，只有一个 ID 为 current 的文档
+ * 新版本的排名全部写入后才更新此文档，读取方随之原子地切换到新集合
+ */
+@Document(collection = "RecommendedRankVersion")
+public class RecommendedRankVersion {
+
+    public static final String CURRENT = "current";
+
+    @Id
+    private String id;
+
+    private Long version;
+
+    private Date publishTime;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Date getPublishTime() {
+        return publishTime;
+    }
+
+    public void setPublishTime(Date publishTime) {
+        this.publishTime = publishTime;
+    }
+}
@@ -1,8 +1,11 @@
 package cn.edu.neu.shop.pin.mongo.document;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.Date;
+
 @Document(collection = "UserProductInteraction")
 public class UserProductInteraction {
     @Id
@@ -14,6 +17,10 @@ public class UserProductInteraction {
 
     private Double interactionValue;
 
+    // 最后修改时间，推荐表征增量导出时按此筛选
+    @Indexed
+    private Date updateTime;
+
     public String getInteractionId() {
         return interactionId;
     }
@@ -45,4 +52,12 @@ public class UserProductInteraction {
     public void setInteractionValue(Double interactionValue) {
         this.interactionValue = interactionValue;
     }
+
+    public Date getUpdateTime() {
+        return updateTime;
+    }
+
+    public void setUpdateTime(Date updateTime) {
+        this.updateTime = updateTime;
+    }
 }
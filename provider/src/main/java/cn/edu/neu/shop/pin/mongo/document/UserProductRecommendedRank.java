@@ -3,17 +3,22 @@ package cn.edu.neu.shop.pin.mongo.document;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
-import javax.validation.constraints.NotBlank;
 import java.util.List;
 
+/**
+ * 用户的推荐排名
+ * 每次模型刷新写入一个带版本号的新集合（UserProductRecommendedRank_版本号），由 RecommendedRankVersion 指向当前版本；
+ * 排名以 RankCodec 编码后保存在 encodedRank 中，rank 仅用于读取未分版本之前的旧数据
+ */
 @Document(collection = "UserProductRecommendedRank")
 public class UserProductRecommendedRank {
     @Id
     private Integer userId;
 
-    @NotBlank
     private List<Integer> rank;
 
+    private byte[] encodedRank;
+
     public Integer getUserId() {
         return userId;
     }
@@ -29,4 +34,12 @@ public class UserProductRecommendedRank {
     public void setRank(List<Integer> rank) {
         this.rank = rank;
     }
+
+    public byte[] getEncodedRank() {
+        return encodedRank;
+    }
+
+    public void setEncodedRank(byte[] encodedRank) {
+        this.encodedRank = encodedRank;
+    }
 }
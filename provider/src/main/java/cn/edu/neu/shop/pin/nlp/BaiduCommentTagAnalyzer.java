@@ -0,0 +1,60 @@
+package cn.edu.neu.shop.pin.nlp;
+
+import com.baidu.aip.nlp.AipNlp;
+import com.baidu.aip.nlp.ESimnetType;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 基于百度 NLP 评论观点抽取接口的分析器
+ * AipNlp 的每次请求使用独立的 HTTP 连接，可以被多个线程并发调用
+ */
+@Component
+@ConditionalOnProperty(name = "pin.comment-analysis.analyzer", havingValue = "baidu", matchIfMissing = true)
+public class BaiduCommentTagAnalyzer implements CommentTagAnalyzer {
+
+    private static Logger logger = LoggerFactory.getLogger(BaiduCommentTagAnalyzer.class);
+
+    // 基本设置
+    @Value("${pin.nlp.baidu.app-id:YOUR_APP_ID}")
+    private String appId;
+
+    @Value("${pin.nlp.baidu.api-key:YOUR_API_KEY}")
+    private String apiKey;
+
+    @Value("${pin.nlp.baidu.secret-key:YOUR_SECRET_KEY}")
+    private String secretKey;
+
+    @Value("${pin.nlp.baidu.connection-timeout-millis:2000}")
+    private int connectionTimeoutMillis;
+
+    @Value("${pin.nlp.baidu.socket-timeout-millis:10000}")
+    private int socketTimeoutMillis;
+
+    private AipNlp client;
+
+    @PostConstruct
+    protected void init() {
+        logger.info("初始化 NLP 工具箱...");
+        client = new AipNlp(appId, apiKey, secretKey);
+        client.setConnectionTimeoutInMillis(connectionTimeoutMillis);
+        client.setSocketTimeoutInMillis(socketTimeoutMillis);
+        logger.info("NLP 工具箱初始化完成");
+    }
+
+    @Override
+    public String analyze(String commentContent) {
+        JSONObject resultJSON = client.commentTag(commentContent, ESimnetType.SHOPPING, null);
+        if (!resultJSON.has("items")) {
+            // 接口错误（鉴权失败、QPS 超限等）以 error_code/error_msg 返回
+            throw new IllegalStateException("评论观点分析失败：" + resultJSON.optString("error_msg", resultJSON.toString()));
+        }
+        return resultJSON.getJSONArray("items").toString();
+    }
+}
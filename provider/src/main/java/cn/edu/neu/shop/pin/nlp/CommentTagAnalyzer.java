@@ -0,0 +1,19 @@
+package cn.edu.neu.shop.pin.nlp;
+
+/**
+ * 评论观点分析器
+ * 默认使用百度 NLP 评论观点抽取接口（pin.comment-analysis.analyzer=baidu），
+ * 离线或测试环境可设置为 rule 使用本地的规则分析器
+ */
+public interface CommentTagAnalyzer {
+
+    /**
+     * 分析一条评论
+     * 实现需要是线程安全的，分析管道会在多个工作线程中并发调用
+     *
+     * @param commentContent 评论内容
+     * @return 观点标签 JSON 数组字符串，元素格式为 {prop, adj, sentiment, begin_pos, end_pos, abstract}
+     * @throws Exception 分析失败（网络错误、接口限流等），由调用方决定是否重试
+     */
+    String analyze(String commentContent) throws Exception;
+}
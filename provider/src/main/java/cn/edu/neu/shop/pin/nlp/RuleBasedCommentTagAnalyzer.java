@@ -0,0 +1,79 @@
+package cn.edu.neu.shop.pin.nlp;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于情感词表的本地分析器，不依赖外部服务，用于离线开发与测试
+ * 输出格式与百度接口一致；sentiment 取值 0 负面、1 中性、2 正面
+ */
+@Component
+@ConditionalOnProperty(name = "pin.comment-analysis.analyzer", havingValue = "rule")
+public class RuleBasedCommentTagAnalyzer implements CommentTagAnalyzer {
+
+    private static final int NEGATIVE = 0;
+    private static final int POSITIVE = 2;
+
+    // 情感词 -> 倾向，按长度从长到短匹配，已被较长的词占用的位置不再匹配，避免“不好用”被识别为“好用”
+    private static final List<Map.Entry<String, Integer>> WORDS;
+
+    static {
+        Map<String, Integer> words = new LinkedHashMap<>();
+        for (String word : new String[]{"不满意", "不好用", "不新鲜", "太差", "很差", "失望", "不好", "破损", "难吃", "太慢", "差"}) {
+            words.put(word, NEGATIVE);
+        }
+        for (String word : new String[]{"物美价廉", "性价比高", "非常好", "很满意", "推荐", "满意", "新鲜", "好吃", "好用", "很快", "不错", "好"}) {
+            words.put(word, POSITIVE);
+        }
+        WORDS = new ArrayList<>(words.entrySet());
+        // 稳定排序，等长的词保持负面在前
+        WORDS.sort(Comparator.comparingInt((Map.Entry<String, Integer> entry) -> entry.getKey().length()).reversed());
+    }
+
+    @Override
+    public String analyze(String commentContent) {
+        JSONArray items = new JSONArray();
+        if (commentContent == null) {
+            return items.toJSONString();
+        }
+        boolean[] matched = new boolean[commentContent.length()];
+        for (Map.Entry<String, Integer> entry : WORDS) {
+            String word = entry.getKey();
+            for (int begin = commentContent.indexOf(word); begin >= 0; begin = commentContent.indexOf(word, begin + word.length())) {
+                int end = begin + word.length();
+                if (overlaps(matched, begin, end)) {
+                    continue;
+                }
+                for (int i = begin; i < end; i++) {
+                    matched[i] = true;
+                }
+                JSONObject item = new JSONObject();
+                item.put("prop", "");
+                item.put("adj", word);
+                item.put("sentiment", entry.getValue());
+                item.put("begin_pos", begin);
+                item.put("end_pos", end);
+                item.put("abstract", commentContent.substring(begin, end));
+                items.add(item);
+            }
+        }
+        return items.toJSONString();
+    }
+
+    private static boolean overlaps(boolean[] matched, int begin, int end) {
+        for (int i = begin; i < end; i++) {
+            if (matched[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
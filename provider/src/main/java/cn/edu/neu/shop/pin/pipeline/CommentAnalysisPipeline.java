@@ -0,0 +1,345 @@
+package cn.edu.neu.shop.pin.pipeline;
+
+import cn.edu.neu.shop.pin.mapper.PinUserProductCommentMapper;
+import cn.edu.neu.shop.pin.model.PinUserProductComment;
+import cn.edu.neu.shop.pin.nlp.CommentTagAnalyzer;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 评论观点分析管道
+ * 评论先以空标签（comment_tag 为 NULL，表示待分析）入库，提交后放入有界延迟队列；
+ * 后台线程每次取出一批，交给固定大小的工作线程池并发调用分析器，成功的结果以一条 UPDATE 批量写回
+ * 失败的评论按指数退避重新入队，超过最大次数后写入空标签不再重试；
+ * 分析器连续失败达到阈值时熔断一段时间，期间评论留在队列中等待
+ * 队列已满、熔断期间或节点重启而未分析的评论，由定时扫描从数据库中补回
+ */
+@Component
+public class CommentAnalysisPipeline {
+
+    private static Logger logger = LoggerFactory.getLogger(CommentAnalysisPipeline.class);
+
+    // 放弃分析时写入的标签
+    public static final String EMPTY_TAG = "[]";
+
+    private static final String SWEEP_LOCK_KEY = "comment-analysis-sweep-lock";
+
+    @Value("${pin.comment-analysis.capacity:10000}")
+    private int capacity;
+
+    @Value("${pin.comment-analysis.batch-size:20}")
+    private int batchSize;
+
+    @Value("${pin.comment-analysis.workers:4}")
+    private int workers;
+
+    @Value("${pin.comment-analysis.batch-timeout-millis:30000}")
+    private long batchTimeoutMillis;
+
+    @Value("${pin.comment-analysis.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${pin.comment-analysis.retry-backoff-millis:2000}")
+    private long retryBackoffMillis;
+
+    @Value("${pin.comment-analysis.breaker-threshold:5}")
+    private int breakerThreshold;
+
+    @Value("${pin.comment-analysis.breaker-open-millis:60000}")
+    private long breakerOpenMillis;
+
+    @Value("${pin.comment-analysis.sweep-millis:600000}")
+    private long sweepMillis;
+
+    @Value("${pin.comment-analysis.sweep-limit:500}")
+    private int sweepLimit;
+
+    private final PinUserProductCommentMapper pinUserProductCommentMapper;
+
+    private final CommentTagAnalyzer commentTagAnalyzer;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final DelayQueue<Task> queue = new DelayQueue<>();
+
+    // 已在队列中或正在分析的评论ID -> 最新一次提交的代号，避免扫描时重复入队，并丢弃被新内容取代的旧任务
+    private final Map<Integer, Long> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong generations = new AtomicLong();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile long breakerOpenUntil = 0;
+
+    private final AtomicLong analyzedCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong abandonedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean running = false;
+
+    private ExecutorService workerPool;
+
+    private Thread dispatcher;
+
+    @Autowired
+    public CommentAnalysisPipeline(PinUserProductCommentMapper pinUserProductCommentMapper, CommentTagAnalyzer commentTagAnalyzer, RedisTemplate<String, String> redisTemplate) {
+        this.pinUserProductCommentMapper = pinUserProductCommentMapper;
+        this.commentTagAnalyzer = commentTagAnalyzer;
+        this.redisTemplate = redisTemplate;
+    }
+
+    @PostConstruct
+    protected void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        workerPool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(batchSize), runnable -> {
+            Thread thread = new Thread(runnable, "comment-analysis-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        running = true;
+        dispatcher = new Thread(this::runDispatcher, "comment-analysis-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    protected void stop() {
+        // 未分析的评论仍是待分析状态，下次启动后由扫描补回
+        running = false;
+        dispatcher.interrupt();
+        workerPool.shutdownNow();
+        logger.info("评论观点分析管道已关闭：" + getMetrics().toJSONString());
+    }
+
+    /**
+     * 提交一条待分析的评论，应在评论所在事务提交后调用
+     *
+     * @param commentId 评论ID
+     * @param content   评论内容
+     */
+    public void submit(Integer commentId, String content) {
+        long generation = generations.incrementAndGet();
+        if (inFlight.putIfAbsent(commentId, generation) != null) {
+            return;
+        }
+        enqueue(commentId, content, generation);
+    }
+
+    /**
+     * 提交评论的最新内容，取代仍在队列中或正在分析的旧内容（评论被覆盖更新时调用）
+     *
+     * @param commentId 评论ID
+     * @param content   评论内容
+     */
+    public void resubmit(Integer commentId, String content) {
+        long generation = generations.incrementAndGet();
+        inFlight.put(commentId, generation);
+        enqueue(commentId, content, generation);
+    }
+
+    private void enqueue(Integer commentId, String content, long generation) {
+        if (queue.size() >= capacity) {
+            // 评论仍是待分析状态，由定时扫描补回
+            inFlight.remove(commentId, generation);
+            droppedCount.incrementAndGet();
+            return;
+        }
+        queue.offer(new Task(commentId, content, generation, 0, 0));
+    }
+
+    /**
+     * 启动时补回未分析的评论
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        sweep();
+    }
+
+    /**
+     * 定时扫描待分析的评论并入队，多个节点中只有一个执行
+     * 只扫描创建已超过一个扫描周期一半的评论，刚提交的评论由提交它的节点处理
+     */
+    @Scheduled(fixedDelayString = "${pin.comment-analysis.sweep-millis:600000}", initialDelayString = "${pin.comment-analysis.sweep-millis:600000}")
+    public void sweep() {
+        if (isBreakerOpen()) {
+            return;
+        }
+        try {
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(SWEEP_LOCK_KEY, "1", sweepMillis / 2, TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(locked)) {
+                return;
+            }
+            Date before = new Date(System.currentTimeMillis() - sweepMillis / 2);
+            List<PinUserProductComment> pending = pinUserProductCommentMapper.getPendingAnalysisComments(before, sweepLimit);
+            for (PinUserProductComment comment : pending) {
+                submit(comment.getId(), comment.getContent());
+            }
+            if (!pending.isEmpty()) {
+                logger.info("补回 " + pending.size() + " 条待分析评论");
+            }
+        } catch (Exception e) {
+            logger.error("扫描待分析评论失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * @return 管道运行指标
+     */
+    public JSONObject getMetrics() {
+        JSONObject metrics = new JSONObject();
+        metrics.put("pending", queue.size());
+        metrics.put("analyzed", analyzedCount.get());
+        metrics.put("retried", retriedCount.get());
+        metrics.put("abandoned", abandonedCount.get());
+        metrics.put("dropped", droppedCount.get());
+        metrics.put("breakerOpen", isBreakerOpen());
+        return metrics;
+    }
+
+    private void runDispatcher() {
+        while (running) {
+            try {
+                long wait = breakerOpenUntil - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                    continue;
+                }
+                List<Task> batch = new ArrayList<>(batchSize);
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("评论观点分析批次处理失败：" + e.getMessage());
+            }
+        }
+    }
+
+    private void process(List<Task> batch) throws InterruptedException {
+        List<Callable<String>> calls = new ArrayList<>(batch.size());
+        for (Task task : batch) {
+            calls.add(() -> commentTagAnalyzer.analyze(task.content));
+        }
+        // 超时未完成的调用会被取消，按失败处理
+        List<Future<String>> futures = workerPool.invokeAll(calls, batchTimeoutMillis, TimeUnit.MILLISECONDS);
+        List<PinUserProductComment> results = new ArrayList<>(batch.size());
+        List<Task> finished = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Task task = batch.get(i);
+            if (!Objects.equals(inFlight.get(task.commentId), task.generation)) {
+                // 评论已被覆盖，新内容另有任务分析
+                futures.get(i).cancel(true);
+                continue;
+            }
+            String tag = null;
+            try {
+                tag = futures.get(i).get();
+            } catch (Exception e) {
+                logger.warn("评论 #" + task.commentId + " 第 " + (task.attempts + 1) + " 次分析失败：" + e.getMessage());
+            }
+            if (tag != null) {
+                consecutiveFailures.set(0);
+                results.add(result(task.commentId, tag));
+                finished.add(task);
+                analyzedCount.incrementAndGet();
+            } else {
+                recordFailure();
+                if (task.attempts + 1 >= maxAttempts) {
+                    results.add(result(task.commentId, EMPTY_TAG));
+                    finished.add(task);
+                    abandonedCount.incrementAndGet();
+                } else {
+                    // 指数退避后重试
+                    long delay = retryBackoffMillis << Math.min(task.attempts, 10);
+                    queue.offer(new Task(task.commentId, task.content, task.generation, task.attempts + 1, System.currentTimeMillis() + delay));
+                    retriedCount.incrementAndGet();
+                }
+            }
+        }
+        if (!results.isEmpty()) {
+            try {
+                pinUserProductCommentMapper.updateCommentTags(results);
+            } catch (Exception e) {
+                // 写回失败的评论仍是待分析状态，由定时扫描补回
+                logger.error("批量写回 " + results.size() + " 条评论标签失败：" + e.getMessage());
+            }
+            for (Task task : finished) {
+                inFlight.remove(task.commentId, task.generation);
+            }
+        }
+    }
+
+    private void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= breakerThreshold && !isBreakerOpen()) {
+            breakerOpenUntil = System.currentTimeMillis() + breakerOpenMillis;
+            logger.warn("评论观点分析连续失败 " + consecutiveFailures.get() + " 次，暂停 " + breakerOpenMillis + "ms");
+        }
+    }
+
+    private boolean isBreakerOpen() {
+        return System.currentTimeMillis() < breakerOpenUntil;
+    }
+
+    private static PinUserProductComment result(Integer commentId, String tag) {
+        PinUserProductComment comment = new PinUserProductComment();
+        comment.setId(commentId);
+        comment.setCommentTag(tag);
+        return comment;
+    }
+
+    private static class Task implements Delayed {
+        private final Integer commentId;
+        private final String content;
+        private final long generation;
+        private final int attempts;
+        private final long readyAt;
+
+        Task(Integer commentId, String content, long generation, int attempts, long readyAt) {
+            this.commentId = commentId;
+            this.content = content;
+            this.generation = generation;
+            this.attempts = attempts;
+            this.readyAt = readyAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(readyAt, ((Task) other).readyAt);
+        }
+    }
+}
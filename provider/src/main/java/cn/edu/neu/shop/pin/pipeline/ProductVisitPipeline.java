@@ -0,0 +1,193 @@
+package cn.edu.neu.shop.pin.pipeline;
+
+import cn.edu.neu.shop.pin.mapper.PinUserProductVisitRecordMapper;
+import cn.edu.neu.shop.pin.model.PinUserProductVisitRecord;
+import cn.edu.neu.shop.pin.service.StoreDashboardService;
+import cn.edu.neu.shop.pin.service.UserProductInteractionService;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 商品浏览记录异步写入管道
+ * 请求线程只负责把浏览事件放入有界无锁队列，由后台线程按固定时间窗口批量落库：
+ * MySQL 浏览记录使用多行插入，MongoDB 交互度量值按 (用户, 商品) 合并后以 $inc 批量 upsert
+ * 队列已满时由请求线程直接同步写入（背压），应用关闭时会把队列中剩余的事件全部写完
+ */
+@Component
+public class ProductVisitPipeline {
+
+    private static Logger logger = LoggerFactory.getLogger(ProductVisitPipeline.class);
+
+    @Value("${pin.visit-pipeline.capacity:65536}")
+    private int capacity;
+
+    @Value("${pin.visit-pipeline.batch-size:500}")
+    private int batchSize;
+
+    @Value("${pin.visit-pipeline.flush-interval-millis:500}")
+    private long flushIntervalMillis;
+
+    private final PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper;
+
+    private final UserProductInteractionService userProductInteractionService;
+
+    private final StoreDashboardService storeDashboardService;
+
+    private final ConcurrentLinkedQueue<PinUserProductVisitRecord> queue = new ConcurrentLinkedQueue<>();
+
+    // ConcurrentLinkedQueue 的 size() 需要遍历，单独计数用于容量控制
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong flushedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean running = false;
+
+    private Thread flusher;
+
+    @Autowired
+    public ProductVisitPipeline(PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper, UserProductInteractionService userProductInteractionService, StoreDashboardService storeDashboardService) {
+        this.pinUserProductVisitRecordMapper = pinUserProductVisitRecordMapper;
+        this.userProductInteractionService = userProductInteractionService;
+        this.storeDashboardService = storeDashboardService;
+    }
+
+    @PostConstruct
+    protected void start() {
+        running = true;
+        flusher = new Thread(this::runFlusher, "product-visit-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    protected void stop() {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 写完队列中剩余的事件
+        while (!queue.isEmpty()) {
+            flush();
+        }
+        logger.info("商品浏览记录管道已关闭：" + getMetrics().toJSONString());
+    }
+
+    /**
+     * 提交一条浏览记录
+     *
+     * @param visitRecord 浏览记录
+     */
+    public void submit(PinUserProductVisitRecord visitRecord) {
+        if (!running || pending.incrementAndGet() > capacity) {
+            if (running) {
+                pending.decrementAndGet();
+            }
+            spill(visitRecord);
+            return;
+        }
+        queue.offer(visitRecord);
+        acceptedCount.incrementAndGet();
+        if (pending.get() >= batchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /**
+     * @return 管道运行指标
+     */
+    public JSONObject getMetrics() {
+        JSONObject metrics = new JSONObject();
+        metrics.put("pending", pending.get());
+        metrics.put("accepted", acceptedCount.get());
+        metrics.put("flushed", flushedCount.get());
+        metrics.put("coalesced", coalescedCount.get());
+        metrics.put("spilled", spilledCount.get());
+        metrics.put("dropped", droppedCount.get());
+        return metrics;
+    }
+
+    private void runFlusher() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+            while (running && !queue.isEmpty()) {
+                flush();
+                if (pending.get() < batchSize) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 取出一批事件写入数据库
+     */
+    private synchronized void flush() {
+        List<PinUserProductVisitRecord> batch = new ArrayList<>(batchSize);
+        PinUserProductVisitRecord visitRecord;
+        while (batch.size() < batchSize && (visitRecord = queue.poll()) != null) {
+            batch.add(visitRecord);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        pending.addAndGet(-batch.size());
+        // 同一窗口内对同一商品的多次浏览合并为一次 $inc
+        Map<String, Integer> visitCounts = new LinkedHashMap<>();
+        for (PinUserProductVisitRecord record : batch) {
+            visitCounts.merge(UserProductInteractionService.getInteractionId(record.getUserId(), record.getProductId()), 1, Integer::sum);
+        }
+        try {
+            pinUserProductVisitRecordMapper.insertList(batch);
+            flushedCount.addAndGet(batch.size());
+            storeDashboardService.visitsRecorded(batch);
+        } catch (Exception e) {
+            droppedCount.addAndGet(batch.size());
+            logger.error("批量写入 " + batch.size() + " 条商品浏览记录失败：" + e.getMessage());
+        }
+        try {
+            userProductInteractionService.batchVisitProduct(visitCounts);
+            coalescedCount.addAndGet(batch.size() - visitCounts.size());
+        } catch (Exception e) {
+            logger.error("批量更新 " + visitCounts.size() + " 条交互度量值失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 队列已满或管道已关闭时，在调用线程中同步写入
+     */
+    private void spill(PinUserProductVisitRecord visitRecord) {
+        spilledCount.incrementAndGet();
+        try {
+            pinUserProductVisitRecordMapper.insertSelective(visitRecord);
+            storeDashboardService.visitsRecorded(Collections.singletonList(visitRecord));
+            userProductInteractionService.visitProduct(visitRecord.getUserId(), visitRecord.getProductId());
+        } catch (Exception e) {
+            droppedCount.incrementAndGet();
+            logger.error("写入商品浏览记录失败：" + e.getMessage());
+        }
+    }
+}
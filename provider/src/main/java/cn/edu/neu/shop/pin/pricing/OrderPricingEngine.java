@@ -0,0 +1,113 @@
+package cn.edu.neu.shop.pin.pricing;
+
+import cn.edu.neu.shop.pin.cache.LocalLruCache;
+import cn.edu.neu.shop.pin.exception.OrderItemsAreNotInTheSameStoreException;
+import cn.edu.neu.shop.pin.exception.ProductSoldOutException;
+import cn.edu.neu.shop.pin.exception.RecordNotFoundException;
+import cn.edu.neu.shop.pin.model.PinOrderItem;
+import cn.edu.neu.shop.pin.model.PinProduct;
+import cn.edu.neu.shop.pin.model.PinProductAttributeValue;
+import cn.edu.neu.shop.pin.service.OrderItemBatchLoader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单计价引擎
+ * 一次批量加载购物车中的商品与 SKU，在一次遍历中完成店铺、库存、价格、邮费与成本的校验和计算，
+ * 金额以分为单位用 long 累加，结果为不可变的 OrderQuote
+ * 报价按用户与所选购物车记录（含 SKU 与数量）短暂缓存，确认订单后立即下单时无需重新计算
+ */
+@Component
+public class OrderPricingEngine {
+
+    private final OrderItemBatchLoader orderItemBatchLoader;
+
+    private final LocalLruCache<String, OrderQuote> quoteCache;
+
+    @Autowired
+    public OrderPricingEngine(OrderItemBatchLoader orderItemBatchLoader,
+                              @Value("${pin.pricing.quote-cache-size:10000}") int quoteCacheSize,
+                              @Value("${pin.pricing.quote-ttl-seconds:60}") long quoteTtlSeconds) {
+        this.orderItemBatchLoader = orderItemBatchLoader;
+        this.quoteCache = new LocalLruCache<>(quoteCacheSize, quoteTtlSeconds * 1000);
+    }
+
+    /**
+     * 计算订单报价，优先使用缓存中未过期的报价
+     *
+     * @param userId     用户ID
+     * @param orderItems 购物车中选中的商品
+     * @return 订单报价
+     * @throws OrderItemsAreNotInTheSameStoreException 结算时商品不属于同一家店铺
+     * @throws ProductSoldOutException                 商品库存不足
+     */
+    public OrderQuote quote(Integer userId, List<PinOrderItem> orderItems) throws OrderItemsAreNotInTheSameStoreException, ProductSoldOutException {
+        String key = getQuoteKey(userId, orderItems);
+        OrderQuote quote = quoteCache.get(key);
+        if (quote == null) {
+            quote = calculate(orderItems);
+            quoteCache.put(key, quote);
+        }
+        return quote;
+    }
+
+    private OrderQuote calculate(List<PinOrderItem> orderItems) throws OrderItemsAreNotInTheSameStoreException, ProductSoldOutException {
+        orderItemBatchLoader.newBatch().assemble(orderItems, false, false);
+        Integer storeId = null;
+        int totalAmount = 0;
+        long productPriceCents = 0;
+        long shippingFeeCents = 0;
+        long totalCostCents = 0;
+        // 同一 SKU 可能出现在多条记录中，库存按合计数量检查
+        Map<Integer, Integer> skuAmounts = new HashMap<>();
+        for (PinOrderItem item : orderItems) {
+            PinProduct product = item.getProduct();
+            PinProductAttributeValue sku = item.getProductAttributeValue();
+            if (product == null || sku == null || !sku.getProductId().equals(product.getId())) {
+                throw new RecordNotFoundException("商品或商品型号不存在");
+            }
+            if (storeId == null) {
+                storeId = product.getStoreId();
+            } else if (!storeId.equals(product.getStoreId())) {
+                throw new OrderItemsAreNotInTheSameStoreException("不属于一家店铺");
+            }
+            int amount = item.getAmount();
+            int skuAmount = skuAmounts.merge(sku.getId(), amount, Integer::sum);
+            if (sku.getStock() == null || sku.getStock() < skuAmount) {
+                throw new ProductSoldOutException("库存不足");
+            }
+            totalAmount += amount;
+            productPriceCents = Math.addExact(productPriceCents, Math.multiplyExact(toCents(sku.getPrice()), amount));
+            totalCostCents = Math.addExact(totalCostCents, Math.multiplyExact(toCents(sku.getCost()), amount));
+            if (!Boolean.TRUE.equals(product.getIsFreeShipping())) {
+                shippingFeeCents = Math.addExact(shippingFeeCents, Math.multiplyExact(toCents(product.getShippingFee()), amount));
+            }
+        }
+        if (storeId == null) {
+            throw new RecordNotFoundException("未选择商品");
+        }
+        return new OrderQuote(storeId, totalAmount, productPriceCents, shippingFeeCents, totalCostCents);
+    }
+
+    private static long toCents(BigDecimal value) {
+        if (value == null) {
+            return 0;
+        }
+        return value.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static String getQuoteKey(Integer userId, List<PinOrderItem> orderItems) {
+        StringBuilder builder = new StringBuilder().append(userId);
+        for (PinOrderItem item : orderItems) {
+            builder.append('|').append(item.getId()).append(':').append(item.getSkuId()).append(':').append(item.getAmount());
+        }
+        return builder.toString();
+    }
+}
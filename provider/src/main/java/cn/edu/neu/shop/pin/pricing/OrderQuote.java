@@ -0,0 +1,99 @@
+package cn.edu.neu.shop.pin.pricing;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.math.BigDecimal;
+
+/**
+ * 订单报价
+ * 由 OrderPricingEngine 一次遍历购物车计算得出，创建后不可修改，可以在确认订单与下单之间安全地共享
+ * 金额以分为单位保存为 long，对外以保留两位小数的 BigDecimal 返回
+ */
+public final class OrderQuote {
+
+    private final int storeId;
+
+    private final int totalAmount;
+
+    private final long productPriceCents;
+
+    private final long shippingFeeCents;
+
+    private final long totalCostCents;
+
+    private final long createTime;
+
+    OrderQuote(int storeId, int totalAmount, long productPriceCents, long shippingFeeCents, long totalCostCents) {
+        this.storeId = storeId;
+        this.totalAmount = totalAmount;
+        this.productPriceCents = productPriceCents;
+        this.shippingFeeCents = shippingFeeCents;
+        this.totalCostCents = totalCostCents;
+        this.createTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return 店铺ID
+     */
+    public Integer getStoreId() {
+        return storeId;
+    }
+
+    /**
+     * @return 商品总数
+     */
+    public Integer getTotalAmount() {
+        return totalAmount;
+    }
+
+    /**
+     * @return 商品原价合计（不含邮费）
+     */
+    public BigDecimal getProductPrice() {
+        return BigDecimal.valueOf(productPriceCents, 2);
+    }
+
+    /**
+     * @return 邮费合计
+     */
+    public BigDecimal getShippingFee() {
+        return BigDecimal.valueOf(shippingFeeCents, 2);
+    }
+
+    /**
+     * @return 订单总价（商品原价合计 + 邮费）
+     */
+    public BigDecimal getTotalPrice() {
+        return BigDecimal.valueOf(productPriceCents + shippingFeeCents, 2);
+    }
+
+    /**
+     * @return 成本合计
+     */
+    public BigDecimal getTotalCost() {
+        return BigDecimal.valueOf(totalCostCents, 2);
+    }
+
+    /**
+     * @return 报价时间（毫秒）
+     */
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * 返回给用户的报价信息，不包含成本
+     *
+     * @return JSON
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("storeId", storeId);
+        json.put("totalAmount", totalAmount);
+        json.put("productPrice", getProductPrice());
+        json.put("shippingFee", getShippingFee());
+        json.put("totalPrice", getTotalPrice());
+        json.put("createTime", createTime);
+        return json;
+    }
+}
@@ -0,0 +1,46 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 可增长的 double 数组，避免 List&lt;Double&gt; 对每个元素装箱
+ */
+public class DoubleArrayBuffer {
+
+    private double[] values;
+
+    private int size;
+
+    public DoubleArrayBuffer(int initialCapacity) {
+        values = new double[Math.max(initialCapacity, 16)];
+    }
+
+    public void add(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length + (values.length >> 1));
+        }
+        values[size++] = value;
+    }
+
+    public double get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 以大端序依次写出全部元素（不含长度）
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(values[i]);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import cn.edu.neu.shop.pin.cache.SettingsConstantRegistry;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 通过 HTTP 调用 recommender-server.py 的推荐模型服务
+ * 任务接口相对于设置常量 recommender_url 解析：POST jobs 提交表征，GET jobs/{jobId} 查询状态
+ */
+@Component
+@ConditionalOnProperty(name = "pin.recommender.engine", havingValue = "http", matchIfMissing = true)
+public class HttpRecommenderEngineClient implements RecommenderEngineClient {
+
+    // 表征类型请求头：full 或 delta
+    private static final String MODE_HEADER = "X-Pin-Representation-Mode";
+
+    private final SettingsConstantRegistry settingsConstantRegistry;
+
+    private final RestTemplate restTemplate;
+
+    @Autowired
+    public HttpRecommenderEngineClient(SettingsConstantRegistry settingsConstantRegistry) {
+        this.settingsConstantRegistry = settingsConstantRegistry;
+        // 请求体直接写入连接（分块传输），不在内存中缓冲整个表征
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setBufferRequestBody(false);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public String submit(RepresentationDataGenerator.Representation reps) {
+        URI uri = settingsConstantRegistry.getUrl("recommender_url").resolve("jobs");
+        try {
+            JSONObject body = restTemplate.execute(uri, HttpMethod.POST, request -> {
+                request.getHeaders().setContentType(RepresentationDataGenerator.CONTENT_TYPE);
+                request.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                request.getHeaders().set(MODE_HEADER, reps.isFull() ? "full" : "delta");
+                reps.writeTo(request.getBody());
+            }, response -> JSON.parseObject(StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8)));
+            return body == null ? null : body.getString("jobId");
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.CONFLICT) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public TrainingJobStatus poll(String jobId) {
+        URI uri = settingsConstantRegistry.getUrl("recommender_url").resolve("jobs/" + jobId);
+        JSONObject body;
+        try {
+            body = restTemplate.getForObject(uri, JSONObject.class);
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                return TrainingJobStatus.failed();
+            }
+            throw e;
+        }
+        String status = body == null ? null : body.getString("status");
+        if ("running".equals(status)) {
+            return TrainingJobStatus.running();
+        }
+        if (!"done".equals(status)) {
+            return TrainingJobStatus.failed();
+        }
+        JSONArray userIds = body.getJSONArray("userIds");
+        JSONArray ranks = body.getJSONArray("ranks");
+        int[] ids = new int[userIds.size()];
+        int[][] rankArrays = new int[ranks.size()][];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = userIds.getIntValue(i);
+        }
+        for (int i = 0; i < rankArrays.length; i++) {
+            JSONArray rank = ranks.getJSONArray(i);
+            rankArrays[i] = new int[rank.size()];
+            for (int j = 0; j < rankArrays[i].length; j++) {
+                rankArrays[i][j] = rank.getIntValue(j);
+            }
+        }
+        return TrainingJobStatus.done(ids, rankArrays);
+    }
+}
@@ -0,0 +1,53 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 可增长的 int 数组，避免 List&lt;Integer&gt; 对每个元素装箱
+ */
+public class IntArrayBuffer {
+
+    private int[] values;
+
+    private int size;
+
+    public IntArrayBuffer(int initialCapacity) {
+        values = new int[Math.max(initialCapacity, 16)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length + (values.length >> 1));
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 长度为 size 的副本
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * 以大端序依次写出全部元素（不含长度）
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        for (int i = 0; i < size; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * 不可变的用户-商品交互矩阵（按用户的 CSR）
+ * 用户与商品的 ID 各自升序保存，下标即为稠密编号，通过二分查找换算；
+ * 每个交互以一个 long 保存：高 32 位为商品下标，低 32 位为 float 交互值，同一用户的交互按商品下标升序排列
+ */
+public class InteractionMatrix {
+
+    private final int[] userIds;
+
+    private final int[] userOffsets;
+
+    private final long[] entries;
+
+    private final int[] productIds;
+
+    private InteractionMatrix(int[] userIds, int[] userOffsets, long[] entries, int[] productIds) {
+        this.userIds = userIds;
+        this.userOffsets = userOffsets;
+        this.entries = entries;
+        this.productIds = productIds;
+    }
+
+    /**
+     * 由交互三元组建立矩阵，同一用户与商品不得重复出现
+     *
+     * @param users    用户ID
+     * @param products 商品ID
+     * @param values   交互值
+     */
+    public static InteractionMatrix build(IntArrayBuffer users, IntArrayBuffer products, DoubleArrayBuffer values) {
+        int size = users.size();
+        int[] userIds = distinctSorted(users);
+        int[] productIds = distinctSorted(products);
+        // 计数排序：先按用户分组，再在组内按商品下标排序
+        int[] userOffsets = new int[userIds.length + 1];
+        int[] userIndexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            userIndexes[i] = Arrays.binarySearch(userIds, users.get(i));
+            userOffsets[userIndexes[i] + 1]++;
+        }
+        for (int u = 0; u < userIds.length; u++) {
+            userOffsets[u + 1] += userOffsets[u];
+        }
+        int[] cursor = Arrays.copyOf(userOffsets, userIds.length);
+        long[] entries = new long[size];
+        for (int i = 0; i < size; i++) {
+            int item = Arrays.binarySearch(productIds, products.get(i));
+            entries[cursor[userIndexes[i]]++] = entry(item, (float) values.get(i));
+        }
+        for (int u = 0; u < userIds.length; u++) {
+            Arrays.sort(entries, userOffsets[u], userOffsets[u + 1]);
+        }
+        return new InteractionMatrix(userIds, userOffsets, entries, productIds);
+    }
+
+    /**
+     * 合并增量交互，增量中的值覆盖原有的值
+     *
+     * @param deltas (userId &lt;&lt; 32 | productId) -&gt; 交互值，按键升序
+     * @return 新矩阵
+     */
+    public InteractionMatrix merge(NavigableMap<Long, Float> deltas) {
+        int capacity = entries.length + deltas.size();
+        IntArrayBuffer users = new IntArrayBuffer(capacity);
+        IntArrayBuffer products = new IntArrayBuffer(capacity);
+        DoubleArrayBuffer values = new DoubleArrayBuffer(capacity);
+        Iterator<Map.Entry<Long, Float>> deltaIterator = deltas.entrySet().iterator();
+        Map.Entry<Long, Float> delta = deltaIterator.hasNext() ? deltaIterator.next() : null;
+        // 原矩阵按 (userId, productId) 升序遍历，与增量做一次归并
+        for (int u = 0; u < userIds.length; u++) {
+            for (int e = userOffsets[u]; e < userOffsets[u + 1]; e++) {
+                long key = key(userIds[u], productIds[item(entries[e])]);
+                while (delta != null && delta.getKey() < key) {
+                    addDelta(delta, users, products, values);
+                    delta = deltaIterator.hasNext() ? deltaIterator.next() : null;
+                }
+                if (delta != null && delta.getKey() == key) {
+                    addDelta(delta, users, products, values);
+                    delta = deltaIterator.hasNext() ? deltaIterator.next() : null;
+                } else {
+                    users.add(userIds[u]);
+                    products.add(productIds[item(entries[e])]);
+                    values.add(value(entries[e]));
+                }
+            }
+        }
+        while (delta != null) {
+            addDelta(delta, users, products, values);
+            delta = deltaIterator.hasNext() ? deltaIterator.next() : null;
+        }
+        return build(users, products, values);
+    }
+
+    private static void addDelta(Map.Entry<Long, Float> delta, IntArrayBuffer users, IntArrayBuffer products, DoubleArrayBuffer values) {
+        users.add((int) (delta.getKey() >>> 32));
+        products.add((int) (long) delta.getKey());
+        values.add(delta.getValue());
+    }
+
+    /**
+     * @return 增量键：userId &lt;&lt; 32 | productId（ID 均为非负数，键的顺序与 (userId, productId) 的顺序一致）
+     */
+    public static long key(int userId, int productId) {
+        return ((long) userId << 32) | (productId & 0xFFFFFFFFL);
+    }
+
+    public static int item(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    public static float value(long entry) {
+        return Float.intBitsToFloat((int) entry);
+    }
+
+    private static long entry(int item, float value) {
+        return ((long) item << 32) | (Float.floatToRawIntBits(value) & 0xFFFFFFFFL);
+    }
+
+    private static int[] distinctSorted(IntArrayBuffer buffer) {
+        int[] values = buffer.toArray();
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                values[size++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @return 用户下标，不存在时为负数
+     */
+    public int userIndex(int userId) {
+        return Arrays.binarySearch(userIds, userId);
+    }
+
+    /**
+     * @return 商品下标，不存在时为负数
+     */
+    public int productIndex(int productId) {
+        return Arrays.binarySearch(productIds, productId);
+    }
+
+    public int userId(int u) {
+        return userIds[u];
+    }
+
+    public int productId(int item) {
+        return productIds[item];
+    }
+
+    public int userCount() {
+        return userIds.length;
+    }
+
+    public int itemCount() {
+        return productIds.length;
+    }
+
+    public int interactionCount() {
+        return entries.length;
+    }
+
+    /**
+     * @return 用户 u 的交互在 entries 中的起始位置（含）
+     */
+    public int userFrom(int u) {
+        return userOffsets[u];
+    }
+
+    /**
+     * @return 用户 u 的交互在 entries 中的结束位置（不含）
+     */
+    public int userTo(int u) {
+        return userOffsets[u + 1];
+    }
+
+    public long entry(int position) {
+        return entries[position];
+    }
+}
@@ -0,0 +1,459 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import cn.edu.neu.shop.pin.mongo.document.UserProductInteraction;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 进程内的物品协同过滤推荐
+ * 从 UserProductInteraction 建立交互矩阵，按余弦相似度计算商品两两之间的共现相似度，每个商品只保留最相似的 K 个邻居；
+ * 各行的计算以 fork/join 并行进行，矩阵与邻居表全部为基本类型数组
+ * 为用户打分时只需遍历其交互过的商品的邻居，不依赖 recommender-server.py，可在推荐模型没有为用户生成排名时使用
+ * 定时按 updateTime 增量刷新：合并变化的交互，只重新计算受影响商品（变化的商品及变化用户交互过的商品）的行，
+ * 其他行中邻居的范数变化带来的误差由定期的全量重建消除
+ */
+@Component
+public class ItemCfRecommender {
+
+    private static Logger logger = LoggerFactory.getLogger(ItemCfRecommender.class);
+
+    // 行数不超过此值时不再拆分任务
+    private static final int LEAF_ROWS = 32;
+
+    @Value("${pin.recommender.item-cf.enabled:true}")
+    private boolean enabled;
+
+    @Value("${pin.recommender.item-cf.neighbors:50}")
+    private int neighborCount;
+
+    @Value("${pin.recommender.item-cf.candidates:200}")
+    private int candidateCount;
+
+    // 交互过大量商品或被大量用户交互过的行只取前若干个，避免共现计算退化为平方级
+    @Value("${pin.recommender.item-cf.max-user-items:500}")
+    private int maxUserItems;
+
+    @Value("${pin.recommender.item-cf.max-item-users:5000}")
+    private int maxItemUsers;
+
+    @Value("${pin.recommender.item-cf.parallelism:0}")
+    private int parallelism;
+
+    @Value("${pin.recommender.item-cf.full-rebuild-millis:21600000}")
+    private long fullRebuildMillis;
+
+    @Value("${pin.recommender.watermark-overlap-millis:60000}")
+    private long watermarkOverlapMillis;
+
+    @Value("${pin.recommender.export.mongo-batch-size:2000}")
+    private int mongoBatchSize;
+
+    private final MongoTemplate mongoTemplate;
+
+    private ForkJoinPool pool;
+
+    private volatile Model model;
+
+    private volatile long lastRefreshMillis = 0;
+
+    private volatile int lastRefreshRows = 0;
+
+    @Autowired
+    public ItemCfRecommender(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    protected void init() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 启动后在后台线程中建立模型
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        Thread builder = new Thread(this::refresh, "item-cf-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * 增量刷新模型，模型不存在或距上次全量重建已超过 full-rebuild-millis 时全量重建
+     */
+    @Scheduled(fixedDelayString = "${pin.recommender.item-cf.refresh-millis:300000}", initialDelayString = "${pin.recommender.item-cf.refresh-millis:300000}")
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Model current = model;
+            if (current == null || start - current.fullBuiltAt > fullRebuildMillis) {
+                model = buildFull(start);
+            } else {
+                model = buildIncremental(current, start);
+            }
+            lastRefreshMillis = System.currentTimeMillis() - start;
+            logger.info("物品协同过滤模型刷新完成：" + getMetrics().toJSONString());
+        } catch (Exception e) {
+            logger.error("物品协同过滤模型刷新失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 按配置的候选数为用户推荐商品
+     *
+     * @param userId 用户ID
+     * @return 按得分降序排列的商品ID，不含用户已交互过的商品；模型未建立或用户没有交互时为空数组
+     */
+    public int[] recommend(Integer userId) {
+        return recommend(userId, candidateCount);
+    }
+
+    /**
+     * 用户对商品 j 的得分为 Σ 用户对其交互过的商品 i 的交互值 × sim(i, j)，只累加 i 的 K 个邻居
+     *
+     * @param userId 用户ID
+     * @param limit  最多返回的商品数
+     * @return 按得分降序排列的商品ID，不含用户已交互过的商品；模型未建立或用户没有交互时为空数组
+     */
+    public int[] recommend(Integer userId, int limit) {
+        Model current = model;
+        if (current == null || userId == null || limit <= 0) {
+            return new int[0];
+        }
+        InteractionMatrix matrix = current.matrix;
+        ItemNeighborTable table = current.table;
+        int u = matrix.userIndex(userId);
+        if (u < 0) {
+            return new int[0];
+        }
+        int from = matrix.userFrom(u);
+        int to = matrix.userTo(u);
+        ScoreMap scores = new ScoreMap((to - from) * table.getK());
+        for (int e = from; e < to; e++) {
+            long entry = matrix.entry(e);
+            float weight = InteractionMatrix.value(entry);
+            if (weight <= 0) {
+                continue;
+            }
+            int item = InteractionMatrix.item(entry);
+            for (int rank = 0; rank < table.getK(); rank++) {
+                int neighbor = table.neighbor(item, rank);
+                if (neighbor < 0) {
+                    break;
+                }
+                scores.add(neighbor, weight * table.score(item, rank));
+            }
+        }
+        TopK top = new TopK(limit);
+        for (int slot = 0; slot < scores.keys.length; slot++) {
+            int item = scores.keys[slot];
+            if (item >= 0 && !interacted(matrix, from, to, item)) {
+                top.offer(item, (float) scores.values[slot]);
+            }
+        }
+        int count = top.sortDescending();
+        int[] productIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            productIds[i] = matrix.productId(top.items[i]);
+        }
+        return productIds;
+    }
+
+    /**
+     * @return 模型规模与最近一次刷新的耗时
+     */
+    public JSONObject getMetrics() {
+        Model current = model;
+        JSONObject metrics = new JSONObject();
+        metrics.put("ready", current != null);
+        if (current != null) {
+            metrics.put("users", current.matrix.userCount());
+            metrics.put("products", current.matrix.itemCount());
+            metrics.put("interactions", current.matrix.interactionCount());
+            metrics.put("watermark", new Date(current.watermark));
+        }
+        metrics.put("lastRefreshMillis", lastRefreshMillis);
+        metrics.put("lastRefreshRows", lastRefreshRows);
+        return metrics;
+    }
+
+    private static boolean interacted(InteractionMatrix matrix, int from, int to, int item) {
+        // 同一用户的交互按商品下标升序排列
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleItem = InteractionMatrix.item(matrix.entry(middle));
+            if (middleItem < item) {
+                low = middle + 1;
+            } else if (middleItem > item) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Model buildFull(long start) {
+        IntArrayBuffer users = new IntArrayBuffer(1024);
+        IntArrayBuffer products = new IntArrayBuffer(1024);
+        DoubleArrayBuffer values = new DoubleArrayBuffer(1024);
+        try (CloseableIterator<UserProductInteraction> cursor = streamInteractions(null)) {
+            while (cursor.hasNext()) {
+                UserProductInteraction interaction = cursor.next();
+                if (interaction.getUserId() != null && interaction.getProductId() != null && interaction.getInteractionValue() != null) {
+                    users.add(interaction.getUserId());
+                    products.add(interaction.getProductId());
+                    values.add(interaction.getInteractionValue());
+                }
+            }
+        }
+        InteractionMatrix matrix = InteractionMatrix.build(users, products, values);
+        int[] rows = new int[matrix.itemCount()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        ItemNeighborTable table = new ItemNeighborTable(matrix.itemCount(), neighborCount);
+        computeRows(matrix, table, rows);
+        return new Model(matrix, table, start, start);
+    }
+
+    private Model buildIncremental(Model current, long start) {
+        TreeMap<Long, Float> deltas = new TreeMap<>();
+        try (CloseableIterator<UserProductInteraction> cursor = streamInteractions(new Date(current.watermark - watermarkOverlapMillis))) {
+            while (cursor.hasNext()) {
+                UserProductInteraction interaction = cursor.next();
+                if (interaction.getUserId() != null && interaction.getProductId() != null && interaction.getInteractionValue() != null) {
+                    deltas.put(InteractionMatrix.key(interaction.getUserId(), interaction.getProductId()), interaction.getInteractionValue().floatValue());
+                }
+            }
+        }
+        if (deltas.isEmpty()) {
+            lastRefreshRows = 0;
+            return new Model(current.matrix, current.table, start, current.fullBuiltAt);
+        }
+        InteractionMatrix matrix = current.matrix.merge(deltas);
+        ItemNeighborTable table = current.table.remap(current.matrix, matrix);
+        // 受影响的行：变化的商品，以及变化的用户交互过的全部商品
+        boolean[] dirty = new boolean[matrix.itemCount()];
+        int previousUser = -1;
+        for (Long key : deltas.keySet()) {
+            int userId = (int) (key >>> 32);
+            dirty[matrix.productIndex((int) (long) key)] = true;
+            if (userId != previousUser) {
+                int u = matrix.userIndex(userId);
+                for (int e = matrix.userFrom(u); e < matrix.userTo(u); e++) {
+                    dirty[InteractionMatrix.item(matrix.entry(e))] = true;
+                }
+                previousUser = userId;
+            }
+        }
+        IntArrayBuffer rows = new IntArrayBuffer(deltas.size());
+        for (int item = 0; item < dirty.length; item++) {
+            if (dirty[item]) {
+                rows.add(item);
+            }
+        }
+        computeRows(matrix, table, rows.toArray());
+        return new Model(matrix, table, start, current.fullBuiltAt);
+    }
+
+    private CloseableIterator<UserProductInteraction> streamInteractions(Date since) {
+        Query query = since == null ? new Query() : new Query(Criteria.where("updateTime").gte(since));
+        query.cursorBatchSize(mongoBatchSize);
+        query.fields().include("userId").include("productId").include("interactionValue");
+        return mongoTemplate.stream(query, UserProductInteraction.class);
+    }
+
+    /**
+     * 并行计算指定行的 K 个最相似邻居
+     */
+    private void computeRows(InteractionMatrix matrix, ItemNeighborTable table, int[] rows) {
+        ItemIndex index = new ItemIndex(matrix, maxItemUsers);
+        ThreadLocal<RowScratch> scratch = ThreadLocal.withInitial(() -> new RowScratch(matrix.itemCount(), table.getK()));
+        pool.invoke(new RowTask(matrix, index, table, rows, 0, rows.length, scratch));
+        lastRefreshRows = rows.length;
+    }
+
+    private class RowTask extends RecursiveAction {
+        private final InteractionMatrix matrix;
+        private final ItemIndex index;
+        private final ItemNeighborTable table;
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private final ThreadLocal<RowScratch> scratch;
+
+        RowTask(InteractionMatrix matrix, ItemIndex index, ItemNeighborTable table, int[] rows, int from, int to, ThreadLocal<RowScratch> scratch) {
+            this.matrix = matrix;
+            this.index = index;
+            this.table = table;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.scratch = scratch;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_ROWS) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowTask(matrix, index, table, rows, from, middle, scratch),
+                        new RowTask(matrix, index, table, rows, middle, to, scratch));
+                return;
+            }
+            RowScratch rowScratch = scratch.get();
+            for (int r = from; r < to; r++) {
+                computeRow(rows[r], rowScratch);
+            }
+        }
+
+        private void computeRow(int item, RowScratch rowScratch) {
+            double[] dot = rowScratch.dot;
+            IntArrayBuffer touched = new IntArrayBuffer(64);
+            for (int p = index.itemFrom(item); p < index.itemTo(item); p++) {
+                int u = index.users[p];
+                float itemWeight = index.weights[p];
+                int userFrom = matrix.userFrom(u);
+                int userTo = Math.min(matrix.userTo(u), userFrom + maxUserItems);
+                for (int e = userFrom; e < userTo; e++) {
+                    long entry = matrix.entry(e);
+                    int other = InteractionMatrix.item(entry);
+                    float weight = InteractionMatrix.value(entry);
+                    if (other == item || weight <= 0) {
+                        continue;
+                    }
+                    if (dot[other] == 0) {
+                        touched.add(other);
+                    }
+                    dot[other] += itemWeight * weight;
+                }
+            }
+            TopK top = rowScratch.top;
+            top.reset();
+            for (int t = 0; t < touched.size(); t++) {
+                int other = touched.get(t);
+                top.offer(other, (float) (dot[other] / (index.norms[item] * index.norms[other])));
+                dot[other] = 0;
+            }
+            int count = top.sortDescending();
+            table.setRow(item, top.items, top.scores, count);
+        }
+    }
+
+    /**
+     * 按商品的 CSR（交互矩阵的转置），只含正的交互值，每个商品最多 maxItemUsers 个用户，并附带按同样的用户计算的范数
+     */
+    private static class ItemIndex {
+        private final int[] offsets;
+        private final int[] users;
+        private final float[] weights;
+        private final double[] norms;
+
+        ItemIndex(InteractionMatrix matrix, int maxItemUsers) {
+            int itemCount = matrix.itemCount();
+            int[] counts = new int[itemCount];
+            norms = new double[itemCount];
+            for (int u = 0; u < matrix.userCount(); u++) {
+                for (int e = matrix.userFrom(u); e < matrix.userTo(u); e++) {
+                    long entry = matrix.entry(e);
+                    float weight = InteractionMatrix.value(entry);
+                    if (weight > 0) {
+                        int item = InteractionMatrix.item(entry);
+                        // 范数只计入实际参与点积的前 maxItemUsers 个用户，否则热门商品的相似度会被系统性压低
+                        if (counts[item] < maxItemUsers) {
+                            counts[item]++;
+                            norms[item] += (double) weight * weight;
+                        }
+                    }
+                }
+            }
+            offsets = new int[itemCount + 1];
+            for (int i = 0; i < itemCount; i++) {
+                offsets[i + 1] = offsets[i] + counts[i];
+                norms[i] = Math.sqrt(norms[i]);
+            }
+            users = new int[offsets[itemCount]];
+            weights = new float[offsets[itemCount]];
+            int[] cursor = Arrays.copyOf(offsets, itemCount);
+            for (int u = 0; u < matrix.userCount(); u++) {
+                for (int e = matrix.userFrom(u); e < matrix.userTo(u); e++) {
+                    long entry = matrix.entry(e);
+                    float weight = InteractionMatrix.value(entry);
+                    int item = InteractionMatrix.item(entry);
+                    if (weight > 0 && cursor[item] < offsets[item + 1]) {
+                        users[cursor[item]] = u;
+                        weights[cursor[item]++] = weight;
+                    }
+                }
+            }
+        }
+
+        int itemFrom(int item) {
+            return offsets[item];
+        }
+
+        int itemTo(int item) {
+            return offsets[item + 1];
+        }
+    }
+
+    /**
+     * 每个工作线程复用的行计算缓冲区
+     */
+    private static class RowScratch {
+        private final double[] dot;
+        private final TopK top;
+
+        RowScratch(int itemCount, int k) {
+            dot = new double[itemCount];
+            top = new TopK(k);
+        }
+    }
+
+    private static class Model {
+        private final InteractionMatrix matrix;
+        private final ItemNeighborTable table;
+        // 已合并的交互的时间点
+        private final long watermark;
+        private final long fullBuiltAt;
+
+        Model(InteractionMatrix matrix, ItemNeighborTable table, long watermark, long fullBuiltAt) {
+            this.matrix = matrix;
+            this.table = table;
+            this.watermark = watermark;
+            this.fullBuiltAt = fullBuiltAt;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import java.util.Arrays;
+
+/**
+ * 每个商品相似度最高的 K 个邻居
+ * 第 i 行占 neighbors / scores 的 [i * K, (i + 1) * K)，按相似度降序排列，不足 K 个时以 -1 填充
+ * 行号与邻居均为 InteractionMatrix 中的商品下标
+ */
+public class ItemNeighborTable {
+
+    private final int k;
+
+    private final int[] neighbors;
+
+    private final float[] scores;
+
+    public ItemNeighborTable(int itemCount, int k) {
+        this.k = k;
+        this.neighbors = new int[itemCount * k];
+        this.scores = new float[itemCount * k];
+        Arrays.fill(neighbors, -1);
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public int itemCount() {
+        return neighbors.length / k;
+    }
+
+    public int neighbor(int item, int rank) {
+        return neighbors[item * k + rank];
+    }
+
+    public float score(int item, int rank) {
+        return scores[item * k + rank];
+    }
+
+    /**
+     * 写入一行，由计算该行的线程独占调用
+     *
+     * @param item         商品下标
+     * @param rowNeighbors 邻居（按相似度降序）
+     * @param rowScores    相似度
+     * @param count        邻居个数，不超过 K
+     */
+    public void setRow(int item, int[] rowNeighbors, float[] rowScores, int count) {
+        int offset = item * k;
+        System.arraycopy(rowNeighbors, 0, neighbors, offset, count);
+        System.arraycopy(rowScores, 0, scores, offset, count);
+        Arrays.fill(neighbors, offset + count, offset + k, -1);
+        Arrays.fill(scores, offset + count, offset + k, 0f);
+    }
+
+    /**
+     * 将本表换算到商品更多的新矩阵下标上，新增的商品行为空
+     *
+     * @param from 本表对应的矩阵
+     * @param to   新矩阵，商品ID须包含 from 中的全部商品
+     * @return 新表
+     */
+    public ItemNeighborTable remap(InteractionMatrix from, InteractionMatrix to) {
+        ItemNeighborTable table = new ItemNeighborTable(to.itemCount(), k);
+        int[] mapping = new int[from.itemCount()];
+        for (int item = 0; item < mapping.length; item++) {
+            mapping[item] = to.productIndex(from.productId(item));
+        }
+        for (int item = 0; item < mapping.length; item++) {
+            int source = item * k;
+            int target = mapping[item] * k;
+            for (int rank = 0; rank < k && neighbors[source + rank] >= 0; rank++) {
+                table.neighbors[target + rank] = mapping[neighbors[source + rank]];
+                table.scores[target + rank] = scores[source + rank];
+            }
+        }
+        return table;
+    }
+}
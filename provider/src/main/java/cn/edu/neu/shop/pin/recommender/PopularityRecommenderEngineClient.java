@@ -0,0 +1,87 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内按热度排序的推荐模型替身，用于测试及没有部署 recommender-server.py 的环境
+ * 与真实服务一样保存上一次的数据并合并增量表征，每个用户得到相同的排名：商品按交互值之和从高到低排列
+ */
+@Component
+@ConditionalOnProperty(name = "pin.recommender.engine", havingValue = "popularity")
+public class PopularityRecommenderEngineClient implements RecommenderEngineClient {
+
+    // (userId << 32 | productId) -> 交互值
+    private final Map<Long, Double> interactions = new HashMap<>();
+
+    private final Set<Integer> userIds = new HashSet<>();
+
+    private final Set<Integer> productIds = new HashSet<>();
+
+    private boolean hasBase = false;
+
+    // 已完成但尚未被取回的任务
+    private final Map<String, TrainingJobStatus> jobs = new ConcurrentHashMap<>();
+
+    @Override
+    public synchronized String submit(RepresentationDataGenerator.Representation reps) {
+        if (!reps.isFull() && !hasBase) {
+            return null;
+        }
+        if (reps.isFull()) {
+            interactions.clear();
+            userIds.clear();
+            productIds.clear();
+            hasBase = true;
+        }
+        for (int userId : reps.getUserIds()) {
+            userIds.add(userId);
+        }
+        SparseMatrixBuilder product = reps.getProduct();
+        for (int i = 0; i < product.size(); i++) {
+            productIds.add(product.getRow(i));
+        }
+        SparseMatrixBuilder interaction = reps.getInteraction();
+        for (int i = 0; i < interaction.size(); i++) {
+            long key = ((long) interaction.getRow(i) << 32) | (interaction.getCol(i) & 0xFFFFFFFFL);
+            interactions.put(key, interaction.getValue(i));
+        }
+        String jobId = UUID.randomUUID().toString();
+        jobs.put(jobId, rank());
+        return jobId;
+    }
+
+    @Override
+    public TrainingJobStatus poll(String jobId) {
+        TrainingJobStatus status = jobs.remove(jobId);
+        return status == null ? TrainingJobStatus.failed() : status;
+    }
+
+    private TrainingJobStatus rank() {
+        Map<Integer, Double> popularity = new HashMap<>();
+        for (Integer productId : productIds) {
+            popularity.put(productId, 0.0);
+        }
+        interactions.forEach((key, value) -> popularity.merge((int) (key & 0xFFFFFFFFL), value, Double::sum));
+        int[] rank = popularity.entrySet().stream()
+                .sorted((a, b) -> {
+                    int compare = Double.compare(b.getValue(), a.getValue());
+                    return compare != 0 ? compare : Integer.compare(a.getKey(), b.getKey());
+                })
+                .mapToInt(Map.Entry::getKey)
+                .toArray();
+        int[] ids = userIds.stream().mapToInt(Integer::intValue).sorted().toArray();
+        int[][] ranks = new int[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            ranks[i] = rank;
+        }
+        return TrainingJobStatus.done(ids, ranks);
+    }
+}
@@ -0,0 +1,70 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import java.util.Arrays;
+
+/**
+ * 推荐排名的紧凑二进制编码
+ * 格式：varint 元素个数，之后每个元素与前一个元素之差经 zigzag 转为非负数后以 varint 写出；
+ * 商品ID相近时每个元素只占 1~2 字节，比 BSON 数组中每个元素的类型、键名与 4 字节值小得多
+ */
+public final class RankCodec {
+
+    private RankCodec() {
+    }
+
+    public static byte[] encode(int[] rank) {
+        byte[] buffer = new byte[5 * (rank.length + 1)];
+        int position = writeVarint(buffer, 0, rank.length);
+        int previous = 0;
+        for (int value : rank) {
+            int delta = value - previous;
+            position = writeVarint(buffer, position, (delta << 1) ^ (delta >> 31));
+            previous = value;
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * @throws IllegalArgumentException 数据不完整
+     */
+    public static int[] decode(byte[] encoded) {
+        int[] position = {0};
+        int count = readVarint(encoded, position);
+        // 每个元素至少占 1 字节，损坏的长度不会导致分配超大数组
+        if (count < 0 || count > encoded.length - position[0]) {
+            throw new IllegalArgumentException("推荐排名编码的长度无效：" + count);
+        }
+        int[] rank = new int[count];
+        int previous = 0;
+        for (int i = 0; i < rank.length; i++) {
+            int zigzag = readVarint(encoded, position);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            rank[i] = previous;
+        }
+        return rank;
+    }
+
+    private static int writeVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static int readVarint(byte[] buffer, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= buffer.length) {
+                throw new IllegalArgumentException("推荐排名编码不完整");
+            }
+            byte b = buffer[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("推荐排名编码中的 varint 过长");
+    }
+}
@@ -1,55 +1,187 @@
 package cn.edu.neu.shop.pin.recommender;
 
 import cn.edu.neu.shop.pin.lock.annotation.MutexLock;
-import cn.edu.neu.shop.pin.service.SettingsConstantService;
-import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 推荐模型刷新编排
+ * 每次调度只做一步且很快返回：有未完成的训练任务时轮询一次状态，完成则批量写回排名；
+ * 否则导出水位线之后变化的表征（首次或服务端丢失数据时导出全量）并异步提交训练，没有变化时跳过
+ * 水位线、进行中的任务与各阶段耗时保存在 Redis 中，任一节点都可以接着推进
+ */
 @Service
 public class RecommendEngineCaller {
 
     private static Logger logger = LoggerFactory.getLogger(RecommendEngineCaller.class);
 
-    private RestTemplate restTemplate =  new RestTemplate();
+    private static final String STATE_KEY = "recommender-state";
+
+    // 已提交给模型服务的数据的时间点
+    private static final String WATERMARK = "watermark";
+    // 当前推荐排名所包含的数据的时间点
+    private static final String RANKED_WATERMARK = "rankedWatermark";
+    private static final String PENDING_JOB = "pendingJob";
+    private static final String PENDING_WATERMARK = "pendingWatermark";
+    private static final String SUBMITTED_AT = "submittedAt";
+    private static final String LAST_RUN_AT = "lastRunAt";
+    private static final String EXPORT_MILLIS = "exportMillis";
+    private static final String UPLOAD_MILLIS = "uploadMillis";
+    private static final String TRAIN_MILLIS = "trainMillis";
+    private static final String WRITE_MILLIS = "writeMillis";
+
+    // 增量导出时水位线向前重叠的时间，容忍各数据库与节点之间的时钟误差
+    @Value("${pin.recommender.watermark-overlap-millis:60000}")
+    private long watermarkOverlapMillis;
+
+    // 两次导出之间的最短间隔
+    @Value("${pin.recommender.min-refresh-millis:120000}")
+    private long minRefreshMillis;
+
+    // 训练任务超过此时间仍未完成则放弃
+    @Value("${pin.recommender.job-timeout-millis:3600000}")
+    private long jobTimeoutMillis;
 
     private final RepresentationDataGenerator representationDataGenerator;
 
     private final RecommenderCache recommenderCache;
 
-    private final SettingsConstantService settingsConstantService;
+    private final RecommenderEngineClient recommenderEngineClient;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final AtomicLong skippedCount = new AtomicLong();
 
     @Autowired
-    public RecommendEngineCaller(RepresentationDataGenerator representationDataGenerator, RecommenderCache recommenderCache, SettingsConstantService settingsConstantService) {
+    public RecommendEngineCaller(RepresentationDataGenerator representationDataGenerator, RecommenderCache recommenderCache, RecommenderEngineClient recommenderEngineClient, RedisTemplate<String, String> redisTemplate) {
         this.representationDataGenerator = representationDataGenerator;
         this.recommenderCache = recommenderCache;
-        this.settingsConstantService = settingsConstantService;
+        this.recommenderEngineClient = recommenderEngineClient;
+        this.redisTemplate = redisTemplate;
     }
 
     /**
-     * 更新推荐系统缓存 rank 列表
-     * 使用互斥锁防止重入
+     * 推进一次推荐模型刷新
+     * 使用互斥锁防止重入，已有节点在推进时不等待，直接放弃本次调度
      */
-    @MutexLock(key = "updateRecommendationModel")
+    @MutexLock(key = "updateRecommendationModel", waitMillis = 0, expire = 600)
     public void updateRecommendationModel() {
         try {
-            String recommenderUrl = settingsConstantService.findByKey("recommender_url");
-            logger.info("推荐服务器 URL="+recommenderUrl);
-            JSONObject reps = representationDataGenerator.generateAllRepresentation();
-            JSONArray ids = reps.getJSONObject("user").getJSONArray("ids");
-            JSONArray ranks = restTemplate.postForEntity(
-                    recommenderUrl,
-                    reps,
-                    JSONArray.class).getBody();
-            logger.info("已接收到模型返回的 rank： \n" + ranks);
-            recommenderCache.updateCache(ids, ranks);
-            logger.info("缓存更新完成");
-        }catch (Exception ex) {
+            Map<String, String> state = readState();
+            if (state.get(PENDING_JOB) != null) {
+                pollPendingJob(state);
+            } else {
+                submitIfChanged(state);
+            }
+        } catch (Exception ex) {
             logger.error("更新rank时出现错误" + ex.getMessage());
         }
     }
+
+    /**
+     * @return 推荐模型刷新指标：排名新鲜度延迟与最近一次各阶段耗时（毫秒）
+     */
+    public JSONObject getMetrics() {
+        Map<String, String> state = readState();
+        JSONObject metrics = new JSONObject();
+        String rankedWatermark = state.get(RANKED_WATERMARK);
+        metrics.put("freshnessLagMillis", rankedWatermark == null ? null : System.currentTimeMillis() - Long.parseLong(rankedWatermark));
+        metrics.put("pendingJob", state.get(PENDING_JOB));
+        metrics.put(EXPORT_MILLIS, state.get(EXPORT_MILLIS));
+        metrics.put(UPLOAD_MILLIS, state.get(UPLOAD_MILLIS));
+        metrics.put(TRAIN_MILLIS, state.get(TRAIN_MILLIS));
+        metrics.put(WRITE_MILLIS, state.get(WRITE_MILLIS));
+        metrics.put("skipped", skippedCount.get());
+        return metrics;
+    }
+
+    private void submitIfChanged(Map<String, String> state) throws Exception {
+        long now = System.currentTimeMillis();
+        String lastRunAt = state.get(LAST_RUN_AT);
+        if (lastRunAt != null && now - Long.parseLong(lastRunAt) < minRefreshMillis) {
+            return;
+        }
+        String watermark = state.get(WATERMARK);
+        RepresentationDataGenerator.Representation reps = watermark == null
+                ? representationDataGenerator.generateAllRepresentation()
+                : representationDataGenerator.generateDeltaRepresentation(new Date(Long.parseLong(watermark) - watermarkOverlapMillis));
+        if (!reps.isFull() && reps.isEmpty()) {
+            skippedCount.incrementAndGet();
+            redisTemplate.opsForHash().put(STATE_KEY, LAST_RUN_AT, String.valueOf(now));
+            logger.info("自上次训练以来没有数据变化，跳过本次训练");
+            return;
+        }
+        long uploadStart = System.currentTimeMillis();
+        String jobId = recommenderEngineClient.submit(reps);
+        if (jobId == null) {
+            logger.info("推荐服务没有基线数据，改为提交全量表征");
+            reps = representationDataGenerator.generateAllRepresentation();
+            uploadStart = System.currentTimeMillis();
+            jobId = recommenderEngineClient.submit(reps);
+            if (jobId == null) {
+                throw new IllegalStateException("推荐服务拒绝了全量表征");
+            }
+        }
+        long submittedAt = System.currentTimeMillis();
+        // 水位线取导出开始的时刻，导出期间发生的变化会在下一次增量中重新发送
+        Map<String, String> update = new HashMap<>();
+        update.put(WATERMARK, String.valueOf(now));
+        update.put(PENDING_JOB, jobId);
+        update.put(PENDING_WATERMARK, String.valueOf(now));
+        update.put(SUBMITTED_AT, String.valueOf(submittedAt));
+        update.put(LAST_RUN_AT, String.valueOf(now));
+        update.put(EXPORT_MILLIS, String.valueOf(uploadStart - now));
+        update.put(UPLOAD_MILLIS, String.valueOf(submittedAt - uploadStart));
+        redisTemplate.opsForHash().putAll(STATE_KEY, update);
+        logger.info("已提交" + (reps.isFull() ? "全量" : "增量") + "表征，训练任务 " + jobId);
+    }
+
+    private void pollPendingJob(Map<String, String> state) throws Exception {
+        String jobId = state.get(PENDING_JOB);
+        long submittedAt = Long.parseLong(state.get(SUBMITTED_AT));
+        TrainingJobStatus status = recommenderEngineClient.poll(jobId);
+        switch (status.getState()) {
+            case RUNNING:
+                if (System.currentTimeMillis() - submittedAt > jobTimeoutMillis) {
+                    logger.warn("训练任务 " + jobId + " 超时，放弃等待");
+                    clearPendingJob();
+                }
+                return;
+            case FAILED:
+                logger.warn("训练任务 " + jobId + " 失败或已丢失");
+                clearPendingJob();
+                return;
+            default:
+                break;
+        }
+        long writeStart = System.currentTimeMillis();
+        recommenderCache.updateCache(status.getUserIds(), status.getRanks());
+        Map<String, String> update = new HashMap<>();
+        update.put(RANKED_WATERMARK, state.get(PENDING_WATERMARK));
+        update.put(TRAIN_MILLIS, String.valueOf(writeStart - submittedAt));
+        update.put(WRITE_MILLIS, String.valueOf(System.currentTimeMillis() - writeStart));
+        redisTemplate.opsForHash().putAll(STATE_KEY, update);
+        clearPendingJob();
+        logger.info("缓存更新完成：" + getMetrics().toJSONString());
+    }
+
+    private void clearPendingJob() {
+        redisTemplate.opsForHash().delete(STATE_KEY, PENDING_JOB, PENDING_WATERMARK);
+    }
+
+    private Map<String, String> readState() {
+        Map<String, String> state = new HashMap<>();
+        redisTemplate.opsForHash().entries(STATE_KEY).forEach((key, value) -> state.put((String) key, (String) value));
+        return state;
+    }
 }
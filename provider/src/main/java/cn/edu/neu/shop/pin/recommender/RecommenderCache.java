@@ -1,48 +1,227 @@
 package cn.edu.neu.shop.pin.recommender;
 
+import cn.edu.neu.shop.pin.cache.LocalLruCache;
+import cn.edu.neu.shop.pin.message_queue.producer.MessageOnQueueProducer;
+import cn.edu.neu.shop.pin.mongo.document.RecommendedRankVersion;
 import cn.edu.neu.shop.pin.mongo.document.UserProductRecommendedRank;
-import cn.edu.neu.shop.pin.mongo.repository.UserProductRecommendedRankRepository;
-import com.alibaba.fastjson.JSONArray;
+import cn.edu.neu.shop.pin.util.PinConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 推荐排名缓存
+ * 每个用户的推荐排名以紧凑的 int[] 保存在各节点的有界本地缓存中，未命中时从 MongoDB 读取；
+ * 没有排名的用户缓存一个空数组，避免每次请求都查询 MongoDB
+ * 模型刷新时排名以 RankCodec 编码，分批并发地写入一个带版本号的新集合，全部写完后才切换版本指针，
+ * 读取方不会看到新旧排名混合的状态；随后广播 RECOMMENDATION_RANK，各节点切换到新集合并按当前缓存中的用户批量重新加载
+ */
 @Component
 public class RecommenderCache {
 
     private static Logger logger = LoggerFactory.getLogger(RecommenderCache.class);
 
+    private static final int[] EMPTY_RANK = new int[0];
+
+    // 版本化集合名的前缀；尚未发布过版本时读取不带版本号的旧集合
+    private static final String RANK_COLLECTION = "UserProductRecommendedRank";
+
+    @Value("${pin.recommender.rank-cache-size:10000}")
+    private int rankCacheSize;
+
+    @Value("${pin.recommender.rank-cache-ttl-seconds:3600}")
+    private long rankCacheTtlSeconds;
+
+    @Value("${pin.recommender.warm-batch-size:500}")
+    private int warmBatchSize;
+
+    @Value("${pin.recommender.write-batch-size:1000}")
+    private int writeBatchSize;
+
+    @Value("${pin.recommender.write-parallelism:4}")
+    private int writeParallelism;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final MessageOnQueueProducer messageOnQueueProducer;
+
+    private LocalLruCache<Integer, int[]> rankCache;
+
+    private ExecutorService writerPool;
+
+    // 当前读取的排名集合
+    private volatile String rankCollection = RANK_COLLECTION;
+
     @Autowired
-    private UserProductRecommendedRankRepository userProductRecommendedRankRepository;
+    public RecommenderCache(MongoTemplate mongoTemplate, MessageOnQueueProducer messageOnQueueProducer) {
+        this.mongoTemplate = mongoTemplate;
+        this.messageOnQueueProducer = messageOnQueueProducer;
+    }
+
+    @PostConstruct
+    protected void init() {
+        rankCache = new LocalLruCache<>(rankCacheSize, TimeUnit.SECONDS.toMillis(rankCacheTtlSeconds));
+        AtomicInteger threadNumber = new AtomicInteger();
+        writerPool = Executors.newFixedThreadPool(writeParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "rank-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        rankCollection = collectionOf(readCurrentVersion());
+    }
 
-    public List<Integer> getCachedRankByUser(Integer userId){
-        Optional<UserProductRecommendedRank> rankOptional = userProductRecommendedRankRepository.findById(userId);
-        if(rankOptional.isPresent()) {
-            UserProductRecommendedRank rank = rankOptional.get();
-            return rank.getRank();
+    @PreDestroy
+    protected void shutdown() {
+        writerPool.shutdownNow();
+    }
+
+    /**
+     * 读取用户的推荐排名，返回的数组为缓存中的共享实例，调用方不得修改
+     *
+     * @param userId 用户ID
+     * @return 按推荐程度排列的商品ID，没有排名时返回空数组
+     */
+    public int[] getRank(Integer userId) {
+        int[] rank = rankCache.get(userId);
+        if (rank != null) {
+            return rank;
+        }
+        UserProductRecommendedRank document = mongoTemplate.findById(userId, UserProductRecommendedRank.class, rankCollection);
+        if (document != null) {
+            rank = toArray(document);
         } else {
             logger.info("用户 " + userId + " 的推荐组合缓存不存在，等待下一批模型推理时再行生成推荐。");
-            return null;
+            rank = EMPTY_RANK;
+        }
+        rankCache.put(userId, rank);
+        return rank;
+    }
+
+    /**
+     * 将模型返回的推荐排名发布为一个新版本
+     * 排名分批以无序的 upsert 批量写入新集合，最多 write-parallelism 批同时进行；
+     * 全部成功后切换版本指针并删除再上一个版本，失败时删除写了一半的新集合，读取方继续使用旧版本
+     *
+     * @param userIds 用户ID
+     * @param ranks   与 userIds 一一对应的推荐排名
+     */
+    public void updateCache(int[] userIds, int[][] ranks) throws InterruptedException, ExecutionException {
+        logger.info("预测用户表长度=" + userIds.length + "\n Rank 长度=" + ranks.length);
+        long start = System.currentTimeMillis();
+        Long currentVersion = readCurrentVersion();
+        long version = currentVersion == null ? 1 : currentVersion + 1;
+        String collection = collectionOf(version);
+        // 上次发布失败可能留下同名集合
+        mongoTemplate.dropCollection(collection);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < userIds.length; from += writeBatchSize) {
+            int batchFrom = from;
+            int batchTo = Math.min(from + writeBatchSize, userIds.length);
+            futures.add(writerPool.submit(() -> writeBatch(collection, userIds, ranks, batchFrom, batchTo)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            mongoTemplate.dropCollection(collection);
+            throw e;
+        }
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(RecommendedRankVersion.CURRENT)),
+                Update.update("version", version).set("publishTime", new Date()), RecommendedRankVersion.class);
+        // 保留上一个版本，供尚未收到广播的节点继续读取
+        if (version > 2) {
+            mongoTemplate.dropCollection(collectionOf(version - 2));
+        }
+        logger.info("推荐排名版本 " + version + " 发布完成，耗时 " + (System.currentTimeMillis() - start) + "ms");
+        // 包括本节点在内的所有节点都会收到广播并重新预热
+        messageOnQueueProducer.broadcastSettingsChange(PinConstants.SettingsType.RECOMMENDATION_RANK);
+    }
+
+    private void writeBatch(String collection, int[] userIds, int[][] ranks, int from, int to) {
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserProductRecommendedRank.class, collection);
+        for (int i = from; i < to; i++) {
+            operations.upsert(new Query(Criteria.where("_id").is(userIds[i])), Update.update("encodedRank", RankCodec.encode(ranks[i])));
+        }
+        operations.execute();
+    }
+
+    /**
+     * 版本指针与当前读取的集合不一致时（例如错过了广播）重新预热
+     */
+    @Scheduled(fixedDelayString = "${pin.recommender.version-check-millis:60000}", initialDelayString = "${pin.recommender.version-check-millis:60000}")
+    public void checkVersion() {
+        try {
+            if (!collectionOf(readCurrentVersion()).equals(rankCollection)) {
+                warm();
+            }
+        } catch (Exception e) {
+            logger.error("检查推荐排名版本失败：" + e.getMessage());
         }
     }
 
-    public void updateCache(JSONArray userIds, JSONArray ranks){
-        logger.info("预测用户表长度=" + userIds.size() + "\n Rank 长度=" + ranks.size());
-        int rankSize = ranks.size();
-        for(int i = 0; i < userIds.size(); i++) {
-            Integer userId = userIds.getInteger(i);
-            if(userId >= rankSize) {
-                logger.error("预测用户超出rank表范围，跳过此用户");
-                continue;
+    /**
+     * 切换到当前版本的集合，并按当前缓存中的用户批量重新加载推荐排名，由模型刷新广播的消费者调用
+     */
+    public void warm() {
+        long start = System.currentTimeMillis();
+        String collection = collectionOf(readCurrentVersion());
+        rankCollection = collection;
+        List<Integer> userIds = rankCache.keys();
+        for (int from = 0; from < userIds.size(); from += warmBatchSize) {
+            List<Integer> batch = userIds.subList(from, Math.min(from + warmBatchSize, userIds.size()));
+            Map<Integer, int[]> loaded = new HashMap<>();
+            for (UserProductRecommendedRank rank : mongoTemplate.find(new Query(Criteria.where("_id").in(batch)), UserProductRecommendedRank.class, collection)) {
+                loaded.put(rank.getUserId(), toArray(rank));
+            }
+            for (Integer userId : batch) {
+                rankCache.put(userId, loaded.getOrDefault(userId, EMPTY_RANK));
             }
-            UserProductRecommendedRank rank = new UserProductRecommendedRank();
-            rank.setUserId(userId);
-            rank.setRank(ranks.getJSONArray(userId).toJavaList(Integer.class));
-            userProductRecommendedRankRepository.save(rank);
         }
+        logger.info("推荐排名缓存预热完成（" + collection + "），用户数 " + userIds.size() + "，耗时 " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private Long readCurrentVersion() {
+        RecommendedRankVersion current = mongoTemplate.findById(RecommendedRankVersion.CURRENT, RecommendedRankVersion.class);
+        return current == null ? null : current.getVersion();
+    }
+
+    private static String collectionOf(Long version) {
+        return version == null ? RANK_COLLECTION : RANK_COLLECTION + "_" + version;
+    }
+
+    private static int[] toArray(UserProductRecommendedRank document) {
+        if (document.getEncodedRank() != null) {
+            return RankCodec.decode(document.getEncodedRank());
+        }
+        List<Integer> rank = document.getRank();
+        if (rank == null || rank.isEmpty()) {
+            return EMPTY_RANK;
+        }
+        return rank.stream().filter(Objects::nonNull).mapToInt(Integer::intValue).toArray();
     }
 }
@@ -0,0 +1,25 @@
+package cn.edu.neu.shop.pin.recommender;
+
+/**
+ * 推荐模型服务客户端
+ * 提交表征后服务端异步训练，调用方之后轮询任务状态取回推荐排名
+ */
+public interface RecommenderEngineClient {
+
+    /**
+     * 提交表征并触发一次异步训练
+     * 增量表征会合并到服务端保存的上一次数据中
+     *
+     * @param reps 全量或增量表征
+     * @return 训练任务ID；提交增量表征而服务端没有基线数据（例如重启过）时返回 null，调用方应改为提交全量表征
+     * @throws Exception 请求失败
+     */
+    String submit(RepresentationDataGenerator.Representation reps) throws Exception;
+
+    /**
+     * @param jobId 训练任务ID
+     * @return 训练任务状态，服务端不认识该任务时为 FAILED
+     * @throws Exception 请求失败
+     */
+    TrainingJobStatus poll(String jobId) throws Exception;
+}
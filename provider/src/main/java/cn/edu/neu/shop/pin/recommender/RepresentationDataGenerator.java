@@ -1,39 +1,68 @@
 package cn.edu.neu.shop.pin.recommender;
 
-import cn.edu.neu.shop.pin.mapper.PinUserProductCommentMapper;
+import cn.edu.neu.shop.pin.mapper.PinProductMapper;
+import cn.edu.neu.shop.pin.mapper.PinUserMapper;
 import cn.edu.neu.shop.pin.model.PinProduct;
+import cn.edu.neu.shop.pin.model.PinProductRating;
 import cn.edu.neu.shop.pin.model.PinUser;
 import cn.edu.neu.shop.pin.mongo.document.UserProductInteraction;
-import cn.edu.neu.shop.pin.mongo.repository.UserProductInteractionRepository;
-import cn.edu.neu.shop.pin.nlp.NLPUtil;
-import cn.edu.neu.shop.pin.service.ProductService;
-import cn.edu.neu.shop.pin.service.security.UserService;
-import com.alibaba.fastjson.JSONObject;
+import cn.edu.neu.shop.pin.service.ProductRatingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * 表征数据生成器
  * 用于推荐系统嵌入
+ * 用户、商品与交互三块表征并行生成：MySQL 以流式结果集逐行读取，MongoDB 以游标逐条读取，
+ * 每块表征以基本类型数组保存为 COO 稀疏矩阵，不再为每个值装箱并构造 JSON
+ * 增量表征只包含某一时刻之后修改过的用户、商品与交互，其中的值均为最新的完整值，重复发送不影响结果
+ * 发送时直接将二进制格式经 gzip 压缩写入请求体，格式见 {@link Representation#writeTo(OutputStream)}
  */
 @Component
 public class RepresentationDataGenerator {
 
     private static Logger logger = LoggerFactory.getLogger(RepresentationDataGenerator.class);
 
+    // 二进制表征的请求类型与格式标识
+    public static final MediaType CONTENT_TYPE = MediaType.parseMediaType("application/x-pin-representation");
+    private static final int MAGIC = 0x50494E52;
+    private static final int FORMAT_VERSION = 1;
 
-    private final UserService userService;
-    private final ProductService productService;
-    private final UserProductInteractionRepository userProductInteractionRepository;
+    private static final int INITIAL_CAPACITY = 1024;
 
-    @Autowired
-    private PinUserProductCommentMapper pinUserProductCommentMapper;
+    @Value("${pin.recommender.export.mongo-batch-size:2000}")
+    private int mongoBatchSize;
+
+    private final PinUserMapper pinUserMapper;
+    private final PinProductMapper pinProductMapper;
+    private final MongoTemplate mongoTemplate;
+    private final ProductRatingService productRatingService;
+
+    // 三块表征各占一个线程并行生成
+    private final ExecutorService exportExecutor;
 
     // 用户表征：性别，余额数量级，积分数量级
     private final static int USER_GENDER = 0;
@@ -41,60 +70,87 @@ public class RepresentationDataGenerator {
     private final static int USER_CREDIT_CLASS = 2;
 
     @Autowired
-    public RepresentationDataGenerator(UserService userService, ProductService productService, UserProductInteractionRepository userProductInteractionRepository) {
+    public RepresentationDataGenerator(PinUserMapper pinUserMapper, PinProductMapper pinProductMapper, MongoTemplate mongoTemplate, ProductRatingService productRatingService) {
         logger.info("表征生成器初始化");
-        this.userService = userService;
-        this.productService = productService;
-        this.userProductInteractionRepository = userProductInteractionRepository;
+        this.pinUserMapper = pinUserMapper;
+        this.pinProductMapper = pinProductMapper;
+        this.mongoTemplate = mongoTemplate;
+        this.productRatingService = productRatingService;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.exportExecutor = Executors.newFixedThreadPool(3, runnable -> {
+            Thread thread = new Thread(runnable, "representation-export-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        exportExecutor.shutdownNow();
     }
 
     private static int getBalanceClass(BigDecimal balance) {
-        return balance.intValue();
+        return balance == null ? 0 : balance.intValue();
+    }
+
+    // 数据库中可为 NULL 的列按 0 导出，避免个别记录中断整个导出
+    private static int orZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private static double orZero(BigDecimal value) {
+        return value == null ? 0.0 : value.doubleValue();
     }
 
     /**
-     * 生成所有用户、表征
+     * 并行生成所有用户、商品与交互表征
      * @return 表征数据
      */
-    public JSONObject generateAllRepresentation() {
-        logger.info("开始生成推荐表征");
-        JSONObject reps = new JSONObject();
-        reps.put("interaction", generateInteractionRepresentation());
-        reps.put("user", generateUserRepresentation());
-        reps.put("product", generateProductRepresentation());
+    public Representation generateAllRepresentation() throws InterruptedException, ExecutionException {
+        return generateRepresentation(null);
+    }
+
+    /**
+     * 并行生成增量表征
+     *
+     * @param since 只包含在此之后修改过的用户、商品与交互
+     * @return 表征数据
+     */
+    public Representation generateDeltaRepresentation(Date since) throws InterruptedException, ExecutionException {
+        return generateRepresentation(since);
+    }
+
+    private Representation generateRepresentation(Date since) throws InterruptedException, ExecutionException {
+        logger.info(since == null ? "开始生成推荐表征" : "开始生成 " + since + " 之后的增量推荐表征");
+        long start = System.currentTimeMillis();
+        IntArrayBuffer userIds = new IntArrayBuffer(INITIAL_CAPACITY);
+        CompletableFuture<SparseMatrixBuilder> interaction = CompletableFuture.supplyAsync(() -> generateInteractionRepresentation(since), exportExecutor);
+        CompletableFuture<SparseMatrixBuilder> user = CompletableFuture.supplyAsync(() -> generateUserRepresentation(since, userIds), exportExecutor);
+        CompletableFuture<SparseMatrixBuilder> product = CompletableFuture.supplyAsync(() -> generateProductRepresentation(since), exportExecutor);
+        Representation reps = new Representation(since == null, userIds, interaction.get(), user.get(), product.get());
+        logger.info("推荐表征生成完成：用户 " + userIds.size() + "，交互 " + reps.interaction.size()
+                + "，耗时 " + (System.currentTimeMillis() - start) + "ms");
         return reps;
     }
 
     /**
      * 生成平台用户表征
      *
+     * @param since   增量起点，为 null 时生成全部
+     * @param userIds 按行写入的用户ID，便于存储 rank 标记
      * @return 用户表征数据
      */
-    private JSONObject generateUserRepresentation() {
+    private SparseMatrixBuilder generateUserRepresentation(Date since, IntArrayBuffer userIds) {
         logger.info("生成用户表征...");
-        List<PinUser> userList = userService.findAll();
-        List<Integer> userIds = new ArrayList<>();
-        List<Integer> userRepRow = new ArrayList<>();
-        List<Integer> userRepCol = new ArrayList<>();
-        List<Integer> userRepData = new ArrayList<>();
-        for (PinUser user : userList) {
+        SparseMatrixBuilder userReps = new SparseMatrixBuilder(INITIAL_CAPACITY * 3);
+        pinUserMapper.streamUsersForRepresentation(since, context -> {
+            PinUser user = context.getResultObject();
             // 添加 USER ID 便于存储 rank 标记
             userIds.add(user.getId());
-
-            userRepRow.add(user.getId());
-            userRepCol.add(USER_GENDER);
-            userRepData.add(user.getGender());
-
-            userRepRow.add(user.getId());
-            userRepCol.add(USER_BALANCE_CLASS);
-            userRepData.add(getBalanceClass(user.getBalance()));
-
-            userRepRow.add(user.getId());
-            userRepCol.add(USER_CREDIT_CLASS);
-            userRepData.add(user.getCredit());
-        }
-        JSONObject userReps = packRepData(userRepRow, userRepCol, userRepData);
-        userReps.put("ids", userIds);
+            userReps.add(user.getId(), USER_GENDER, orZero(user.getGender()));
+            userReps.add(user.getId(), USER_BALANCE_CLASS, getBalanceClass(user.getBalance()));
+            userReps.add(user.getId(), USER_CREDIT_CLASS, orZero(user.getCredit()));
+        });
         return userReps;
     }
 
@@ -110,69 +166,122 @@ public class RepresentationDataGenerator {
     /**
      * 生成商品表征
      *
+     * @param since 增量起点，为 null 时生成全部
      * @return 商品表征
      */
-    private JSONObject generateProductRepresentation() {
+    private SparseMatrixBuilder generateProductRepresentation(Date since) {
         logger.info("生成商品表征...");
-        List<PinProduct> productList = productService.findAll();
-        List<Integer> productRepRow = new ArrayList<>();
-        List<Integer> productRepCol = new ArrayList<>();
-        List<Double> productRepData = new ArrayList<>();
-        for (PinProduct product : productList) {
-            productRepRow.add(product.getId());
-            productRepCol.add(PRODUCT_CATEGORY_ID);
-            productRepData.add(product.getCategoryId().doubleValue());
-
-            productRepRow.add(product.getId());
-            productRepCol.add(PRODUCT_PRICE);
-            productRepData.add(product.getPrice().doubleValue());
-
-            productRepRow.add(product.getId());
-            productRepCol.add(PRODUCT_SALE_COUNT);
-            productRepData.add(product.getSoldCount().doubleValue());
-
-            productRepRow.add(product.getId());
-            productRepCol.add(PRODUCT_VISIT_COUNT);
-            productRepData.add(product.getVisitCount().doubleValue());
-
-            productRepRow.add(product.getId());
-            productRepCol.add(PRODUCT_GOOD_COMMENT_RATE);
-            productRepData.add(0.0);
-
-            productRepRow.add(product.getId());
-            productRepCol.add(PRODUCT_AVERAGE_RATE_SCORE);
-            Double avgScore = pinUserProductCommentMapper.getAvgScore(product.getId());
-            productRepData.add(avgScore == null?2.5:avgScore);
-
-        }
-        return packRepData(productRepRow, productRepCol, productRepData);
+        // 评分汇总一次性取出，不再逐个商品查询平均分
+        Map<Integer, PinProductRating> ratings = productRatingService.getAllRatings();
+        SparseMatrixBuilder productReps = new SparseMatrixBuilder(INITIAL_CAPACITY * 6);
+        pinProductMapper.streamProductsForRepresentation(since, context -> {
+            PinProduct product = context.getResultObject();
+            PinProductRating rating = ratings.get(product.getId());
+            productReps.add(product.getId(), PRODUCT_CATEGORY_ID, orZero(product.getCategoryId()));
+            productReps.add(product.getId(), PRODUCT_PRICE, orZero(product.getPrice()));
+            productReps.add(product.getId(), PRODUCT_SALE_COUNT, orZero(product.getSoldCount()));
+            productReps.add(product.getId(), PRODUCT_VISIT_COUNT, orZero(product.getVisitCount()));
+            productReps.add(product.getId(), PRODUCT_GOOD_COMMENT_RATE, rating == null ? 0.0 : rating.getGoodRate());
+            Double avgScore = rating == null ? null : rating.getAverageScore();
+            productReps.add(product.getId(), PRODUCT_AVERAGE_RATE_SCORE, avgScore == null ? 2.5 : avgScore);
+        });
+        return productReps;
     }
 
     /**
      * 生成交互表征
+     * @param since 增量起点，为 null 时生成全部
      * @return 交互表征
      */
-    private JSONObject generateInteractionRepresentation() {
+    private SparseMatrixBuilder generateInteractionRepresentation(Date since) {
         logger.info("生成交互表征...");
-        List<UserProductInteraction> interactionList = userProductInteractionRepository.findAll();
-        List<Integer> interactionRepRow = new ArrayList<>();
-        List<Integer> interactionRepCol = new ArrayList<>();
-        List<Double> interactionRepData = new ArrayList<>();
-        // 注入
-        for(UserProductInteraction interaction : interactionList) {
-            interactionRepRow.add(interaction.getUserId());
-            interactionRepCol.add(interaction.getProductId());
-            interactionRepData.add(interaction.getInteractionValue());
+        Query query = since == null ? new Query() : new Query(Criteria.where("updateTime").gte(since));
+        query.cursorBatchSize(mongoBatchSize);
+        query.fields().include("userId").include("productId").include("interactionValue");
+        SparseMatrixBuilder interactionReps = new SparseMatrixBuilder(INITIAL_CAPACITY * 16);
+        try (CloseableIterator<UserProductInteraction> cursor = mongoTemplate.stream(query, UserProductInteraction.class)) {
+            while (cursor.hasNext()) {
+                UserProductInteraction interaction = cursor.next();
+                if (interaction.getUserId() == null || interaction.getProductId() == null || interaction.getInteractionValue() == null) {
+                    continue;
+                }
+                interactionReps.add(interaction.getUserId(), interaction.getProductId(), interaction.getInteractionValue());
+            }
         }
-        return packRepData(interactionRepRow, interactionRepCol, interactionRepData);
+        return interactionReps;
     }
 
-    private JSONObject packRepData(List repRow, List repCol, List repData) {
-        JSONObject rep = new JSONObject();
-        rep.put("row", repRow);
-        rep.put("col", repCol);
-        rep.put("data", repData);
-        return rep;
+    /**
+     * 一次生成的全部表征
+     */
+    public static class Representation {
+        private final boolean full;
+        private final IntArrayBuffer userIds;
+        private final SparseMatrixBuilder interaction;
+        private final SparseMatrixBuilder user;
+        private final SparseMatrixBuilder product;
+
+        Representation(boolean full, IntArrayBuffer userIds, SparseMatrixBuilder interaction, SparseMatrixBuilder user, SparseMatrixBuilder product) {
+            this.full = full;
+            this.userIds = userIds;
+            this.interaction = interaction;
+            this.user = user;
+            this.product = product;
+        }
+
+        /**
+         * @return 是否为全量表征
+         */
+        public boolean isFull() {
+            return full;
+        }
+
+        /**
+         * @return 是否没有任何数据（增量表征表示自上次导出以来没有变化）
+         */
+        public boolean isEmpty() {
+            return userIds.size() == 0 && interaction.size() == 0 && user.size() == 0 && product.size() == 0;
+        }
+
+        /**
+         * @return 本次表征中的用户ID（增量表征中为修改过的用户）
+         */
+        public int[] getUserIds() {
+            return userIds.toArray();
+        }
+
+        public SparseMatrixBuilder getInteraction() {
+            return interaction;
+        }
+
+        public SparseMatrixBuilder getUser() {
+            return user;
+        }
+
+        public SparseMatrixBuilder getProduct() {
+            return product;
+        }
+
+        /**
+         * 以 gzip 压缩的二进制格式写出（大端序）：
+         * int 格式标识 "PINR"，int 版本号，int 用户数 n，n 个 int 用户ID，
+         * 之后依次为交互、用户、商品三个 COO 稀疏矩阵，格式见 {@link SparseMatrixBuilder#writeTo(DataOutputStream)}
+         *
+         * @param out 输出流，写出后不会关闭
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16);
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip, 1 << 16));
+            data.writeInt(MAGIC);
+            data.writeInt(FORMAT_VERSION);
+            data.writeInt(userIds.size());
+            userIds.writeTo(data);
+            interaction.writeTo(data);
+            user.writeTo(data);
+            product.writeTo(data);
+            data.flush();
+            gzip.finish();
+        }
     }
 
 }
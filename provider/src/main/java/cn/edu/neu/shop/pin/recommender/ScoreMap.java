@@ -0,0 +1,33 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import java.util.Arrays;
+
+/**
+ * 为单个用户打分时使用的开放寻址哈希表（商品下标 -> 得分），容量按用户的交互数 × K 预估，无需扩容
+ * 空槽的键为 -1，遍历 keys 即可取出全部得分
+ */
+class ScoreMap {
+
+    final int[] keys;
+
+    final double[] values;
+
+    private final int mask;
+
+    ScoreMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, -1);
+    }
+
+    void add(int key, double value) {
+        int slot = (key * 0x9E3779B9) & mask;
+        while (keys[slot] >= 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] += value;
+    }
+}
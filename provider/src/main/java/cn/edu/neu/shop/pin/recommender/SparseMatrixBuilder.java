@@ -0,0 +1,55 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * COO 格式的稀疏矩阵，行号、列号与值分别保存在三个基本类型数组中
+ * 写出格式（大端序）：int 非零元个数 n，n 个 int 行号，n 个 int 列号，n 个 double 值
+ */
+public class SparseMatrixBuilder {
+
+    private final IntArrayBuffer rows;
+
+    private final IntArrayBuffer cols;
+
+    private final DoubleArrayBuffer data;
+
+    public SparseMatrixBuilder(int initialCapacity) {
+        rows = new IntArrayBuffer(initialCapacity);
+        cols = new IntArrayBuffer(initialCapacity);
+        data = new DoubleArrayBuffer(initialCapacity);
+    }
+
+    public void add(int row, int col, double value) {
+        rows.add(row);
+        cols.add(col);
+        data.add(value);
+    }
+
+    /**
+     * @return 非零元个数
+     */
+    public int size() {
+        return data.size();
+    }
+
+    public int getRow(int index) {
+        return rows.get(index);
+    }
+
+    public int getCol(int index) {
+        return cols.get(index);
+    }
+
+    public double getValue(int index) {
+        return data.get(index);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size());
+        rows.writeTo(out);
+        cols.writeTo(out);
+        data.writeTo(out);
+    }
+}
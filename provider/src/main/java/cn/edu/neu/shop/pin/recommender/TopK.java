@@ -0,0 +1,88 @@
+package cn.edu.neu.shop.pin.recommender;
+
+/**
+ * 以小顶堆保留得分最高的 K 个商品
+ */
+class TopK {
+
+    final int[] items;
+
+    final float[] scores;
+
+    private int size;
+
+    TopK(int k) {
+        items = new int[k];
+        scores = new float[k];
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    void offer(int item, float score) {
+        if (size < items.length) {
+            items[size] = item;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            items[0] = item;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * 原地堆排序为降序，排序后 items 与 scores 的前若干个元素即为结果
+     *
+     * @return 元素个数
+     */
+    int sortDescending() {
+        int count = size;
+        for (int end = count - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        size = 0;
+        return count;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(parent, i);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < end && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < end && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int item = items[a];
+        items[a] = items[b];
+        items[b] = item;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,58 @@
+package cn.edu.neu.shop.pin.recommender;
+
+/**
+ * 推荐模型训练任务状态，完成时附带每个用户的推荐排名
+ */
+public class TrainingJobStatus {
+
+    public enum State {
+        RUNNING, DONE, FAILED
+    }
+
+    private static final TrainingJobStatus RUNNING = new TrainingJobStatus(State.RUNNING, null, null);
+
+    private static final TrainingJobStatus FAILED = new TrainingJobStatus(State.FAILED, null, null);
+
+    private final State state;
+
+    private final int[] userIds;
+
+    private final int[][] ranks;
+
+    private TrainingJobStatus(State state, int[] userIds, int[][] ranks) {
+        this.state = state;
+        this.userIds = userIds;
+        this.ranks = ranks;
+    }
+
+    public static TrainingJobStatus running() {
+        return RUNNING;
+    }
+
+    public static TrainingJobStatus failed() {
+        return FAILED;
+    }
+
+    /**
+     * @param userIds 用户ID
+     * @param ranks   与 userIds 一一对应的推荐排名（按推荐程度排列的商品ID）
+     */
+    public static TrainingJobStatus done(int[] userIds, int[][] ranks) {
+        if (userIds.length != ranks.length) {
+            throw new IllegalArgumentException("用户数 " + userIds.length + " 与排名数 " + ranks.length + " 不一致");
+        }
+        return new TrainingJobStatus(State.DONE, userIds, ranks);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int[] getUserIds() {
+        return userIds;
+    }
+
+    public int[][] getRanks() {
+        return ranks;
+    }
+}
@@ -2,26 +2,40 @@ package cn.edu.neu.shop.pin.schedule;
 
 import cn.edu.neu.shop.pin.model.PinOrderGroup;
 import cn.edu.neu.shop.pin.model.PinOrderIndividual;
+import cn.edu.neu.shop.pin.service.OrderGroupRoomService;
 import cn.edu.neu.shop.pin.service.OrderGroupService;
 import cn.edu.neu.shop.pin.service.OrderIndividualService;
 import cn.edu.neu.shop.pin.service.message.TemplateMessageService;
+import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author LLG
  * 团单定时关闭器
  * 关闭已经结束的团单
+ * 每秒从 Redis 收团队列中认领即将到期的团单放入本地时间轮，到期后提交到有界线程池关闭，
+ * 团单在收团时间后约一秒内被关闭；每分钟再从数据库中扫描一次已过期仍未关闭的团单作为兜底
  */
 @Slf4j
 @Component
@@ -29,59 +43,198 @@ public class GroupClosingScheduler {
 
     private static Logger logger = LoggerFactory.getLogger(GroupClosingScheduler.class);
 
+    private static final long TICK_MILLIS = 200;
+
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+
+    // 提前认领一分钟内到期的团单
+    private static final long CLAIM_AHEAD_MILLIS = 60000;
+
+    private static final int CLAIM_BATCH_SIZE = 500;
+
+    // 兜底扫描只处理过期两分钟以上的团单，正常情况下它们早已被时间轮关闭
+    private static final long SWEEP_GRACE_MILLIS = 120000;
+
     private final OrderGroupService orderGroupService;
 
     private final OrderIndividualService orderIndividualService;
 
+    private final OrderGroupCloseQueue orderGroupCloseQueue;
+
+    private final OrderGroupRoomService orderGroupRoomService;
+
     @Autowired
     private TemplateMessageService templateMessageService;
 
-    private ExecutorService executorService = Executors.newCachedThreadPool();
+    private final HierarchicalTimerWheel timerWheel = new HierarchicalTimerWheel(TICK_MILLIS, 64, 2, System.currentTimeMillis());
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "group-closing-ticker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 队列满时由时间轮线程自行执行，形成背压
+    private final ThreadPoolExecutor executorService = new ThreadPoolExecutor(2, 4, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(1000), new NamedThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private long lastPollTime = 0;
+
+    private final AtomicLong claimedCount = new AtomicLong();
+    private final AtomicLong closedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong maxLatenessMillis = new AtomicLong();
 
-    public GroupClosingScheduler(OrderGroupService orderGroupService, OrderIndividualService orderIndividualService) {
+    public GroupClosingScheduler(OrderGroupService orderGroupService, OrderIndividualService orderIndividualService, OrderGroupCloseQueue orderGroupCloseQueue, OrderGroupRoomService orderGroupRoomService) {
         this.orderGroupService = orderGroupService;
         this.orderIndividualService = orderIndividualService;
+        this.orderGroupCloseQueue = orderGroupCloseQueue;
+        this.orderGroupRoomService = orderGroupRoomService;
     }
 
     /**
-     * cron字符串决定看门狗每1分钟执行一次清理任务
+     * 启动时将所有拼团中的团单写入收团队列（兼容队列引入前创建的团单），然后启动时间轮
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            List<PinOrderGroup> orderGroups = orderGroupService.getOrdersByStatus(PinOrderGroup.STATUS_PINGING);
+            orderGroups.forEach(orderGroup -> orderGroupCloseQueue.schedule(orderGroup.getId(), orderGroup.getCloseTime()));
+        } catch (Exception e) {
+            logger.error("初始化收团队列失败：" + e.getMessage());
+        }
+        ticker.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        ticker.shutdownNow();
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+        logger.info("收团调度器已关闭：" + getMetrics().toJSONString());
+    }
+
+    /**
+     * cron字符串决定看门狗每1分钟执行一次兜底清理任务
+     * 只查询已到期的团单，由于结束团单是条件更新，多个节点同时扫描也不会重复关闭
      */
     @Scheduled(cron = "0 0/1 * * * ? ")
     public void closeTimeoutOrderGroup() {
-        List<PinOrderGroup> orderGroups = orderGroupService.getOrdersByStatus(PinOrderGroup.STATUS_PINGING);
-        final Date currentDate = new Date();
-        logger.info("触发收团定时任务。");
-        orderGroups.forEach(orderGroup -> executorService.submit(() -> {
-            // 并发更新团单状态
-            if (orderGroup.getCloseTime().compareTo(currentDate) <= 0) {
-                finishGroupOrder(orderGroup);
+        logger.info("触发收团定时任务。" + getMetrics().toJSONString());
+        List<PinOrderGroup> orderGroups = orderGroupService.getDueOrderGroups(new Date(System.currentTimeMillis() - SWEEP_GRACE_MILLIS));
+        orderGroups.forEach(orderGroup -> submit(orderGroup.getId()));
+    }
+
+    /**
+     * @return 收团调度指标
+     */
+    public JSONObject getMetrics() {
+        JSONObject metrics = new JSONObject();
+        metrics.put("inWheel", timerWheel.size());
+        metrics.put("executorQueue", executorService.getQueue().size());
+        metrics.put("claimed", claimedCount.get());
+        metrics.put("closed", closedCount.get());
+        metrics.put("skipped", skippedCount.get());
+        metrics.put("failed", failedCount.get());
+        metrics.put("maxLatenessMillis", maxLatenessMillis.get());
+        return metrics;
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            List<Long> due = timerWheel.advance(now);
+            if (now - lastPollTime >= POLL_INTERVAL_MILLIS) {
+                lastPollTime = now;
+                for (long[] claimed : orderGroupCloseQueue.claim(now + CLAIM_AHEAD_MILLIS, CLAIM_BATCH_SIZE)) {
+                    claimedCount.incrementAndGet();
+                    timerWheel.add(claimed[0], claimed[1], due);
+                }
+            }
+            due.forEach(orderGroupId -> submit(orderGroupId.intValue()));
+        } catch (Exception e) {
+            // 异常不能抛出，否则 ScheduledExecutorService 会停止后续的执行
+            logger.error("收团时间轮执行失败：" + e.getMessage());
+        }
+    }
+
+    private void submit(Integer orderGroupId) {
+        try {
+            executorService.execute(() -> closeOrderGroup(orderGroupId));
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭，交给兜底扫描处理
+            skippedCount.incrementAndGet();
+        }
+    }
+
+    private void closeOrderGroup(Integer orderGroupId) {
+        try {
+            PinOrderGroup orderGroup = orderGroupService.findById(orderGroupId);
+            if (orderGroup == null || !orderGroup.getStatus().equals(PinOrderGroup.STATUS_PINGING)) {
+                skippedCount.incrementAndGet();
+                return;
+            }
+            long lateness = System.currentTimeMillis() - orderGroup.getCloseTime().getTime();
+            if (lateness < 0) {
+                // 收团时间已被推迟，重新排队
+                orderGroupCloseQueue.schedule(orderGroupId, orderGroup.getCloseTime());
+                skippedCount.incrementAndGet();
+                return;
+            }
+            if (finishGroupOrder(orderGroup)) {
+                closedCount.incrementAndGet();
+                maxLatenessMillis.accumulateAndGet(lateness, Math::max);
+            } else {
+                skippedCount.incrementAndGet();
             }
-        }));
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            logger.error("关闭团单 #" + orderGroupId + " 失败：" + e.getMessage());
+        }
     }
 
     /**
      * 关闭指定的团单（设置为已结束，并标记结束时间）
      *
      * @param orderGroup 团单实体
+     * @return 团单已被其他节点关闭时返回 false
      */
-    private void finishGroupOrder(PinOrderGroup orderGroup) {
+    private boolean finishGroupOrder(PinOrderGroup orderGroup) {
         logger.info("结束已达到完成时间的团单 #" + orderGroup.getId());
         List<PinOrderIndividual> orderIndividuals = orderIndividualService.getOrderIndividualsByOrderGroupId(orderGroup.getId());
         // 计算团单内最终总价
         BigDecimal finalAmountOfMoney = new BigDecimal(0);
-        Integer peopleCount = orderIndividuals.size();
         for (PinOrderIndividual orderIndividual : orderIndividuals) {
             if (!orderIndividual.getPaid()) {
                 logger.error("异常团单 #" + orderGroup.getId() + "。团单中存在未支付的订单");
                 continue;
             }
             finalAmountOfMoney = finalAmountOfMoney.add(orderIndividual.getTotalPrice());
-            // 发送模板消息
-            templateMessageService.sendGroupSuccessfullyClosedMessageToIndividualOrderOwner(peopleCount, orderIndividual, orderGroup);
         }
         orderGroup.setTotalAmountOfMoneyPaid(finalAmountOfMoney);
         orderGroup.setActualFinishTime(new Date());
         orderGroup.setStatus(PinOrderGroup.STATUS_FINISHED);
-        orderGroupService.update(orderGroup);
+        if (!orderGroupService.finishOrderGroup(orderGroup)) {
+            return false;
+        }
+        // 状态更新成功后再发送模板消息，避免重复通知
+        orderGroupRoomService.groupClosed(orderGroup);
+        Integer peopleCount = orderIndividuals.size();
+        for (PinOrderIndividual orderIndividual : orderIndividuals) {
+            if (orderIndividual.getPaid()) {
+                templateMessageService.sendGroupSuccessfullyClosedMessageToIndividualOrderOwner(peopleCount, orderIndividual, orderGroup);
+            }
+        }
+        return true;
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "group-closing-" + counter.incrementAndGet());
+        }
     }
 }
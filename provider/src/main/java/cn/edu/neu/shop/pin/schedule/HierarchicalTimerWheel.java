@@ -0,0 +1,137 @@
+package cn.edu.neu.shop.pin.schedule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮
+ * 第 0 层每个槽位跨度为一个 tick，第 k 层每个槽位跨度为 wheelSize^k 个 tick；
+ * 任务放入能容纳其到期时间的最低一层，时间推进到高层槽位的边界时，该槽位中的任务下沉到低层
+ * 添加、推进的开销均与任务总数无关，只与到期（或下沉）的任务数有关
+ * 非线程安全的部分均由 synchronized 保护
+ */
+public class HierarchicalTimerWheel {
+
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    private final int mask;
+
+    private final List<Entry>[][] levels;
+
+    private final long[] spans;
+
+    // 小于 currentTick 的槽位均已处理
+    private long currentTick;
+
+    private int size;
+
+    /**
+     * @param tickMillis 一个 tick 的毫秒数
+     * @param wheelSize  每层的槽位数，必须是 2 的幂
+     * @param levelCount 层数
+     * @param now        当前时间（毫秒）
+     */
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimerWheel(long tickMillis, int wheelSize, int levelCount, long now) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize 必须是 2 的幂");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.mask = wheelSize - 1;
+        this.levels = new List[levelCount][wheelSize];
+        this.spans = new long[levelCount];
+        long span = 1;
+        for (int k = 0; k < levelCount; k++) {
+            spans[k] = span;
+            span *= wheelSize;
+        }
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * @return 时间轮能容纳的最远到期时间与当前时间之差（毫秒）
+     */
+    public long getHorizonMillis() {
+        return spans[spans.length - 1] * wheelSize * tickMillis;
+    }
+
+    /**
+     * 添加一个定时任务
+     *
+     * @param id       任务ID
+     * @param deadline 到期时间（毫秒）
+     * @param due      已经到期的任务会直接加入此列表
+     * @return 超出时间轮范围而未能添加时返回 false
+     */
+    public synchronized boolean add(long id, long deadline, List<Long> due) {
+        long deadlineTick = deadline / tickMillis;
+        if (deadlineTick < currentTick) {
+            due.add(id);
+            return true;
+        }
+        for (int k = 0; k < levels.length; k++) {
+            if (deadlineTick / spans[k] - currentTick / spans[k] < wheelSize) {
+                int slot = (int) ((deadlineTick / spans[k]) & mask);
+                if (levels[k][slot] == null) {
+                    levels[k][slot] = new ArrayList<>();
+                }
+                levels[k][slot].add(new Entry(id, deadline));
+                size++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 推进时间轮到指定时间，返回期间到期的任务ID
+     *
+     * @param now 当前时间（毫秒）
+     * @return 到期的任务ID
+     */
+    public synchronized List<Long> advance(long now) {
+        List<Long> due = new ArrayList<>();
+        long targetTick = now / tickMillis;
+        while (currentTick < targetTick) {
+            List<Entry> expired = levels[0][(int) (currentTick & mask)];
+            if (expired != null) {
+                levels[0][(int) (currentTick & mask)] = null;
+                size -= expired.size();
+                for (Entry entry : expired) {
+                    due.add(entry.id);
+                }
+            }
+            currentTick++;
+            // 到达高层槽位边界时，将该槽位中的任务下沉
+            for (int k = 1; k < levels.length && currentTick % spans[k] == 0; k++) {
+                int slot = (int) ((currentTick / spans[k]) & mask);
+                List<Entry> cascading = levels[k][slot];
+                if (cascading != null) {
+                    levels[k][slot] = null;
+                    size -= cascading.size();
+                    for (Entry entry : cascading) {
+                        add(entry.id, entry.deadline, due);
+                    }
+                }
+            }
+        }
+        return due;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static class Entry {
+        private final long id;
+        private final long deadline;
+
+        Entry(long id, long deadline) {
+            this.id = id;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package cn.edu.neu.shop.pin.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 团单收团队列
+ * 以 Redis 有序集合保存待收团的团单，分值为收团时间
+ * 各 Provider 节点通过 ZREM 认领即将到期的团单，同一团单只会被一个节点认领
+ */
+@Component
+public class OrderGroupCloseQueue {
+
+    private static Logger logger = LoggerFactory.getLogger(OrderGroupCloseQueue.class);
+
+    private static final String QUEUE_KEY = "order-group-close-queue";
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    public OrderGroupCloseQueue(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 加入收团队列，已存在时更新收团时间
+     *
+     * @param orderGroupId 团单ID
+     * @param closeTime    收团时间
+     */
+    public void schedule(Integer orderGroupId, Date closeTime) {
+        try {
+            redisTemplate.opsForZSet().add(QUEUE_KEY, orderGroupId.toString(), closeTime.getTime());
+        } catch (Exception e) {
+            // 写入失败的团单由 GroupClosingScheduler 的兜底扫描关闭
+            logger.error("团单 #" + orderGroupId + " 加入收团队列失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 认领收团时间不晚于 deadline 的团单
+     *
+     * @param deadline 收团时间上限（毫秒）
+     * @param limit    最多认领的数量
+     * @return 认领成功的团单，每个元素为 {团单ID, 收团时间}
+     */
+    public List<long[]> claim(long deadline, int limit) {
+        Set<ZSetOperations.TypedTuple<String>> candidates =
+                redisTemplate.opsForZSet().rangeByScoreWithScores(QUEUE_KEY, 0, deadline, 0, limit);
+        List<long[]> claimed = new ArrayList<>();
+        if (candidates == null) {
+            return claimed;
+        }
+        for (ZSetOperations.TypedTuple<String> candidate : candidates) {
+            Long removed = redisTemplate.opsForZSet().remove(QUEUE_KEY, candidate.getValue());
+            if (removed != null && removed > 0) {
+                claimed.add(new long[]{Long.parseLong(candidate.getValue()), candidate.getScore().longValue()});
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * @return 队列中待收团的团单数
+     */
+    public Long size() {
+        return redisTemplate.opsForZSet().zCard(QUEUE_KEY);
+    }
+}
@@ -1,48 +1,34 @@
 package cn.edu.neu.shop.pin.schedule;
 
-import cn.edu.neu.shop.pin.mapper.PinOrderItemMapper;
-import cn.edu.neu.shop.pin.mapper.PinProductMapper;
-import cn.edu.neu.shop.pin.mapper.PinUserProductVisitRecordMapper;
-import cn.edu.neu.shop.pin.model.PinOrderItem;
-import cn.edu.neu.shop.pin.model.PinProduct;
-import cn.edu.neu.shop.pin.model.PinUserProductVisitRecord;
+import cn.edu.neu.shop.pin.service.ProductCounterService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
+/**
+ * 商品访问量、销量定时刷新
+ * 每次只累加上次刷新之后新增的浏览记录与订单，耗时与新增数据量成正比
+ */
 @Component
 public class ProductPropertyRefresher {
 
     private static Logger logger = LoggerFactory.getLogger(ProductPropertyRefresher.class);
 
-    private final PinProductMapper pinProductMapper;
-
-    private final PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper;
-
-    private final PinOrderItemMapper pinOrderItemMapper;
+    private final ProductCounterService productCounterService;
 
     @Autowired
-    public ProductPropertyRefresher(PinProductMapper pinProductMapper, PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper, PinOrderItemMapper pinOrderItemMapper) {
-        this.pinProductMapper = pinProductMapper;
-        this.pinUserProductVisitRecordMapper = pinUserProductVisitRecordMapper;
-        this.pinOrderItemMapper = pinOrderItemMapper;
+    public ProductPropertyRefresher(ProductCounterService productCounterService) {
+        this.productCounterService = productCounterService;
     }
 
     @Scheduled(initialDelay = 3600000, fixedRate = 3600000)
     public void updateVisitedCount() {
         logger.info("[定时任务] 刷新访问记录...");
         try {
-            List<PinUserProductVisitRecord> lists = pinUserProductVisitRecordMapper.selectAll();
-            PinProduct product;
-            for (PinUserProductVisitRecord item : lists) {
-                product = pinProductMapper.selectByPrimaryKey(item.getProductId());
-                product.setVisitCount(product.getVisitCount() + 1);
-                pinProductMapper.updateByPrimaryKey(product);
-            }
+            int updated = productCounterService.refreshVisitCounts();
+            logger.info("[定时任务] 已更新 " + updated + " 件商品的访问量");
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -52,13 +38,8 @@ public class ProductPropertyRefresher {
     public void updateSoldCount() {
         logger.info("[定时任务] 刷新购买量记录...");
         try {
-            List<PinOrderItem> lists = pinOrderItemMapper.selectAll();
-            PinProduct product;
-            for (PinOrderItem item : lists) {
-                product = pinProductMapper.selectByPrimaryKey(item.getProductId());
-                product.setVisitCount(product.getSoldCount() + item.getAmount());
-                pinProductMapper.updateByPrimaryKey(product);
-            }
+            int updated = productCounterService.refreshSoldCounts();
+            logger.info("[定时任务] 已更新 " + updated + " 件商品的销量");
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -1,5 +1,6 @@
 package cn.edu.neu.shop.pin.schedule;
 
+import cn.edu.neu.shop.pin.exception.LockAcquisitionException;
 import cn.edu.neu.shop.pin.recommender.RecommendEngineCaller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,11 +19,15 @@ public class RecommendationRefreshScheduler {
     RecommendEngineCaller recommendEngineCaller;
 
     /**
-     * cron字符串决定看门狗每2分钟执行一次清理任务
+     * 每次调度只推进一步（轮询训练任务或提交增量表征），导出间隔由 pin.recommender.min-refresh-millis 控制
      */
-    @Scheduled(cron = "0 0/2 * * * ? ")
+    @Scheduled(fixedDelayString = "${pin.recommender.tick-millis:30000}", initialDelayString = "${pin.recommender.tick-millis:30000}")
     public void closeTimeoutOrderGroup() {
         logger.info("触发刷新推荐系统模型定时任务。");
-        recommendEngineCaller.updateRecommendationModel();
+        try {
+            recommendEngineCaller.updateRecommendationModel();
+        } catch (LockAcquisitionException e) {
+            logger.info("其他节点正在刷新推荐系统模型，跳过本次任务。");
+        }
     }
 }
@@ -0,0 +1,110 @@
+package cn.edu.neu.shop.pin.search;
+
+import java.util.Arrays;
+
+/**
+ * N-Gram 分词器
+ * 中文商品名没有空格分隔，因此按字符切分为单字（unigram）与相邻二字（bigram），
+ * 每个 gram 编码为一个 int：高 16 位为第一个字符，低 16 位为第二个字符（单字时为 0）
+ * 标点与空白视为分隔符，不跨分隔符生成 bigram
+ */
+public final class NGramTokenizer {
+
+    private NGramTokenizer() {
+    }
+
+    /**
+     * 生成建立索引用的 gram（单字与二字），已去重并升序排列
+     *
+     * @param text 原文
+     * @return gram 编码数组
+     */
+    public static int[] indexGrams(String text) {
+        if (text == null || text.isEmpty()) {
+            return new int[0];
+        }
+        int length = text.length();
+        int[] grams = new int[length * 2];
+        int count = 0;
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            char c = normalize(text.charAt(i));
+            if (c == 0) {
+                previous = 0;
+                continue;
+            }
+            grams[count++] = unigram(c);
+            if (previous != 0) {
+                grams[count++] = bigram(previous, c);
+            }
+            previous = c;
+        }
+        return distinct(grams, count);
+    }
+
+    /**
+     * 生成查询用的 gram
+     * 查询中存在两字以上的片段时只使用 bigram，单字片段使用 unigram
+     *
+     * @param query 查询关键字
+     * @return gram 编码数组，已去重
+     */
+    public static int[] queryGrams(String query) {
+        if (query == null || query.isEmpty()) {
+            return new int[0];
+        }
+        int[] grams = new int[query.length()];
+        int count = 0;
+        int segmentLength = 0;
+        char previous = 0;
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? normalize(query.charAt(i)) : 0;
+            if (c == 0) {
+                if (segmentLength == 1) {
+                    grams[count++] = unigram(previous);
+                }
+                segmentLength = 0;
+                previous = 0;
+                continue;
+            }
+            if (previous != 0) {
+                grams[count++] = bigram(previous, c);
+            }
+            previous = c;
+            segmentLength++;
+        }
+        return distinct(grams, count);
+    }
+
+    /**
+     * 字符归一化：字母转小写，非字母数字返回 0 作为分隔符
+     */
+    private static char normalize(char c) {
+        if (!Character.isLetterOrDigit(c)) {
+            return 0;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    private static int unigram(char c) {
+        return c << 16;
+    }
+
+    private static int bigram(char first, char second) {
+        return (first << 16) | second;
+    }
+
+    private static int[] distinct(int[] grams, int count) {
+        if (count == 0) {
+            return new int[0];
+        }
+        Arrays.sort(grams, 0, count);
+        int unique = 1;
+        for (int i = 1; i < count; i++) {
+            if (grams[i] != grams[unique - 1]) {
+                grams[unique++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, unique);
+    }
+}
@@ -0,0 +1,96 @@
+package cn.edu.neu.shop.pin.search;
+
+import cn.edu.neu.shop.pin.mapper.PinProductMapper;
+import cn.edu.neu.shop.pin.model.PinProduct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 商品搜索引擎
+ * 启动后在后台线程中分批加载全部商品建立倒排索引；
+ * 商品被创建或修改时，由商品变更广播消息触发单个商品的重新索引
+ */
+@Component
+public class ProductSearchEngine {
+
+    private static Logger logger = LoggerFactory.getLogger(ProductSearchEngine.class);
+
+    private static final int BUILD_BATCH_SIZE = 2000;
+
+    private final PinProductMapper pinProductMapper;
+
+    private final ProductSearchIndex index = new ProductSearchIndex();
+
+    // 全量索引构建完成前，搜索回退到数据库查询
+    private volatile boolean ready = false;
+
+    @Autowired
+    public ProductSearchEngine(PinProductMapper pinProductMapper) {
+        this.pinProductMapper = pinProductMapper;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread builder = new Thread(this::buildIndex, "product-search-index-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * 按主键分批加载商品，建立全量索引
+     */
+    private void buildIndex() {
+        long start = System.currentTimeMillis();
+        try {
+            int afterId = 0;
+            List<PinProduct> batch;
+            do {
+                batch = pinProductMapper.getProductsForIndex(afterId, BUILD_BATCH_SIZE);
+                for (PinProduct product : batch) {
+                    index.index(product.getId(), product.getName(), product.getKeyword(), product.getDescription());
+                    afterId = product.getId();
+                }
+            } while (batch.size() == BUILD_BATCH_SIZE);
+            ready = true;
+            logger.info("商品搜索索引构建完成，共 " + index.size() + " 件商品，耗时 " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            logger.error("商品搜索索引构建失败，搜索将继续使用数据库查询：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询关键字
+     *
+     * @param keyword 关键字
+     * @return 按相关度排列的结果；索引尚未就绪时返回 null
+     */
+    public ProductSearchIndex.SearchHits search(String keyword) {
+        if (!ready) {
+            return null;
+        }
+        return index.search(keyword);
+    }
+
+    /**
+     * 重新索引单个商品，商品不存在时从索引中移除
+     *
+     * @param productId 商品ID
+     */
+    public void reindex(Integer productId) {
+        if (productId == null) {
+            return;
+        }
+        PinProduct product = pinProductMapper.selectByPrimaryKey(productId);
+        if (product == null) {
+            index.remove(productId);
+        } else {
+            index.index(productId, product.getName(), product.getKeyword(), product.getDescription());
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package cn.edu.neu.shop.pin.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品关键字倒排索引
+ * 对商品名称、关键字、描述的全文建立 N-Gram 倒排表，每条倒排记录保存商品ID及命中字段的位掩码
+ * 查询时要求所有查询 gram 均命中（与 LIKE '%kw%' 的语义接近），并按命中字段的权重排序
+ */
+public class ProductSearchIndex {
+
+    static final byte FIELD_NAME = 1;
+    static final byte FIELD_KEYWORD = 2;
+    static final byte FIELD_DESCRIPTION = 4;
+
+    // 字段权重：名称 > 关键字 > 描述
+    private static final int WEIGHT_NAME = 4;
+    private static final int WEIGHT_KEYWORD = 2;
+    private static final int WEIGHT_DESCRIPTION = 1;
+
+    private final Map<Integer, PostingList> postings = new HashMap<>();
+
+    // 每个商品已索引的 gram，用于更新或删除商品时撤销旧的倒排记录
+    private final Map<Integer, int[]> documentGrams = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 索引（或重新索引）一个商品
+     *
+     * @param productId   商品ID
+     * @param name        名称
+     * @param keyword     关键字
+     * @param description 描述
+     */
+    public void index(int productId, String name, String keyword, String description) {
+        Map<Integer, Byte> masks = new HashMap<>();
+        // 与 LIKE '%kw%' 一致，描述不截断；同一商品内重复的 gram 只保存一次，长描述不会使倒排表成比例增长
+        mergeField(masks, NGramTokenizer.indexGrams(name), FIELD_NAME);
+        mergeField(masks, NGramTokenizer.indexGrams(keyword), FIELD_KEYWORD);
+        mergeField(masks, NGramTokenizer.indexGrams(description), FIELD_DESCRIPTION);
+        int[] grams = new int[masks.size()];
+        int i = 0;
+        for (Integer gram : masks.keySet()) {
+            grams[i++] = gram;
+        }
+        lock.writeLock().lock();
+        try {
+            removeInternal(productId);
+            for (int gram : grams) {
+                postings.computeIfAbsent(gram, g -> new PostingList()).add(productId, masks.get(gram));
+            }
+            documentGrams.put(productId, grams);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 从索引中移除一个商品
+     *
+     * @param productId 商品ID
+     */
+    public void remove(int productId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查询关键字，返回按相关度降序（同分时按ID降序，即新商品在前）排列的结果
+     *
+     * @param query 关键字
+     * @return 查询结果
+     */
+    public SearchHits search(String query) {
+        int[] grams = NGramTokenizer.queryGrams(query);
+        if (grams.length == 0) {
+            return SearchHits.EMPTY;
+        }
+        lock.readLock().lock();
+        try {
+            PostingList[] lists = new PostingList[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                lists[i] = postings.get(grams[i]);
+                if (lists[i] == null) {
+                    return SearchHits.EMPTY;
+                }
+            }
+            // 从最短的倒排表开始求交集
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+            PostingList shortest = lists[0];
+            long[] packed = new long[shortest.size];
+            int count = 0;
+            for (int i = 0; i < shortest.size; i++) {
+                int productId = shortest.ids[i];
+                int score = weight(shortest.masks[i]);
+                boolean matched = true;
+                for (int j = 1; j < lists.length && matched; j++) {
+                    int position = lists[j].indexOf(productId);
+                    if (position < 0) {
+                        matched = false;
+                    } else {
+                        score += weight(lists[j].masks[position]);
+                    }
+                }
+                if (matched) {
+                    packed[count++] = ((long) score << 32) | productId;
+                }
+            }
+            return SearchHits.fromPacked(packed, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 已索引的商品数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentGrams.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeInternal(int productId) {
+        int[] oldGrams = documentGrams.remove(productId);
+        if (oldGrams == null) {
+            return;
+        }
+        for (int gram : oldGrams) {
+            PostingList list = postings.get(gram);
+            if (list != null) {
+                list.remove(productId);
+                if (list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static void mergeField(Map<Integer, Byte> masks, int[] grams, byte field) {
+        for (int gram : grams) {
+            masks.merge(gram, field, (a, b) -> (byte) (a | b));
+        }
+    }
+
+    private static int weight(byte mask) {
+        int weight = 0;
+        if ((mask & FIELD_NAME) != 0) weight += WEIGHT_NAME;
+        if ((mask & FIELD_KEYWORD) != 0) weight += WEIGHT_KEYWORD;
+        if ((mask & FIELD_DESCRIPTION) != 0) weight += WEIGHT_DESCRIPTION;
+        return weight;
+    }
+
+    /**
+     * 倒排表：按商品ID升序保存，便于二分查找求交集
+     */
+    private static class PostingList {
+        private int[] ids = new int[4];
+        private byte[] masks = new byte[4];
+        private int size;
+
+        int indexOf(int productId) {
+            return Arrays.binarySearch(ids, 0, size, productId);
+        }
+
+        void add(int productId, byte mask) {
+            int position = indexOf(productId);
+            if (position >= 0) {
+                masks[position] |= mask;
+                return;
+            }
+            position = -position - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                masks = Arrays.copyOf(masks, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            System.arraycopy(masks, position, masks, position + 1, size - position);
+            ids[position] = productId;
+            masks[position] = mask;
+            size++;
+        }
+
+        void remove(int productId) {
+            int position = indexOf(productId);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            System.arraycopy(masks, position + 1, masks, position, size - position - 1);
+            size--;
+        }
+    }
+
+    /**
+     * 查询结果：按 (相关度降序, 商品ID降序) 排列的商品ID及其得分
+     */
+    public static class SearchHits {
+
+        static final SearchHits EMPTY = new SearchHits(new int[0], new int[0]);
+
+        private final int[] ids;
+        private final int[] scores;
+
+        SearchHits(int[] ids, int[] scores) {
+            this.ids = ids;
+            this.scores = scores;
+        }
+
+        /**
+         * 由未经排序打分的商品ID构造结果（得分均为 0，按ID降序排列）
+         *
+         * @param productIds 商品ID
+         * @return 查询结果
+         */
+        public static SearchHits unranked(int[] productIds) {
+            int[] sorted = productIds.clone();
+            Arrays.sort(sorted);
+            int[] ids = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                ids[i] = sorted[sorted.length - 1 - i];
+            }
+            return new SearchHits(ids, new int[ids.length]);
+        }
+
+        static SearchHits fromPacked(long[] packed, int count) {
+            Arrays.sort(packed, 0, count);
+            int[] ids = new int[count];
+            int[] scores = new int[count];
+            for (int i = 0; i < count; i++) {
+                long value = packed[count - 1 - i];
+                ids[i] = (int) value;
+                scores[i] = (int) (value >>> 32);
+            }
+            return new SearchHits(ids, scores);
+        }
+
+        public int length() {
+            return ids.length;
+        }
+
+        public int idAt(int position) {
+            return ids[position];
+        }
+
+        public int scoreAt(int position) {
+            return scores[position];
+        }
+
+        /**
+         * 截取一页商品ID
+         *
+         * @param offset 起始位置
+         * @param size   页大小
+         * @return 商品ID数组
+         */
+        public int[] slice(int offset, int size) {
+            if (offset >= ids.length || size <= 0) {
+                return new int[0];
+            }
+            return Arrays.copyOfRange(ids, Math.max(offset, 0), Math.min(offset + size, ids.length));
+        }
+
+        /**
+         * 游标分页：返回排在 (score, id) 之后的第一个位置
+         *
+         * @param score 上一页最后一条的得分
+         * @param id    上一页最后一条的商品ID
+         * @return 起始位置
+         */
+        public int positionAfter(int score, int id) {
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                boolean before = scores[middle] > score || (scores[middle] == score && ids[middle] >= id);
+                if (before) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -30,6 +30,8 @@ public class JwtTokenFilter extends OncePerRequestFilter {
             if (token != null && jwtTokenProvider.validateToken(token)) {
                 Authentication auth = jwtTokenProvider.getAuthentication(token);
                 SecurityContextHolder.getContext().setAuthentication(auth);
+                // 供 UserService.whoAmI 复用，不必再次解析 token
+                httpServletRequest.setAttribute(JwtTokenProvider.USER_ID_ATTRIBUTE, jwtTokenProvider.getId(token));
             }
         } catch (CredentialException ex) {
             //this is very important, since it guarantees the user is not authenticated at all
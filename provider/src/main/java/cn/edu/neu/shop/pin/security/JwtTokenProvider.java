@@ -1,5 +1,6 @@
 package cn.edu.neu.shop.pin.security;
 
+import cn.edu.neu.shop.pin.cache.LocalLruCache;
 import cn.edu.neu.shop.pin.exception.CredentialException;
 import cn.edu.neu.shop.pin.model.PinRole;
 import io.jsonwebtoken.Claims;
@@ -16,6 +17,9 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.Date;
 import java.util.List;
@@ -37,10 +41,24 @@ public class JwtTokenProvider {
     @Value("${security.jwt.token.expire-length:3600000}")
     private long validityInMilliseconds = 3600000 * 2; // 1h
 
-    private final MyUserDetails myUserDetails;
+    /**
+     * 已认证请求中保存用户ID的请求属性
+     */
+    public static final String USER_ID_ATTRIBUTE = "cn.edu.neu.shop.pin.security.userId";
+
+    /**
+     * 已认证请求中保存用户实体的请求属性（由 UserService.whoAmI 首次调用时加载）
+     */
+    public static final String USER_ATTRIBUTE = "cn.edu.neu.shop.pin.security.user";
+
+    private final UserRoleCache userRoleCache;
 
-    public JwtTokenProvider(MyUserDetails myUserDetails) {
-        this.myUserDetails = myUserDetails;
+    // 已验证的 token（以 SHA-256 摘要为键），缓存到 token 过期为止，同一 token 只需验签一次
+    private final LocalLruCache<String, VerifiedToken> verifiedTokens;
+
+    public JwtTokenProvider(UserRoleCache userRoleCache, @Value("${security.jwt.token.cache-size:10000}") int tokenCacheSize) {
+        this.userRoleCache = userRoleCache;
+        this.verifiedTokens = new LocalLruCache<>(tokenCacheSize, 0);
     }
 
     @PostConstruct
@@ -71,13 +89,19 @@ public class JwtTokenProvider {
     }
 
     Authentication getAuthentication(String token) {
-        UserDetails userDetails = myUserDetails.loadUserByUsername(getId(token).toString());
+        Integer id = getId(token);
+        // 角色来自缓存，已认证的请求不再查询用户表
+        UserDetails userDetails = org.springframework.security.core.userdetails.User//
+                .withUsername(id.toString())//
+                .password("")//
+                .authorities(userRoleCache.getRoles(id))//
+                .build();
         return new UsernamePasswordAuthenticationToken(userDetails, "", userDetails.getAuthorities());
     }
 
     //通过token得到Id
     public Integer getId(String token) {
-        return Integer.parseInt(Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token).getBody().getSubject());
+        return verify(token).userId;
     }
 
     //通过请求得到 token
@@ -92,11 +116,55 @@ public class JwtTokenProvider {
     //token是否可以解析
     boolean validateToken(String token) {
         try {
-            Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token);
+            verify(token);
             return true;
         } catch (JwtException | IllegalArgumentException e) {
             throw new CredentialException("Expired or invalid JWT token", HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * 验证 token 并取出用户ID，验证结果缓存到 token 过期为止
+     *
+     * @param token JWT
+     * @return 验证结果
+     * @throws JwtException             token 无效或已过期
+     * @throws IllegalArgumentException token 为空
+     */
+    private VerifiedToken verify(String token) {
+        String key = digest(token);
+        VerifiedToken verified = verifiedTokens.get(key);
+        long now = System.currentTimeMillis();
+        if (verified != null && verified.expiration > now) {
+            return verified;
+        }
+        Claims claims = Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token).getBody();
+        long expiration = claims.getExpiration() == null ? now + validityInMilliseconds : claims.getExpiration().getTime();
+        verified = new VerifiedToken(Integer.parseInt(claims.getSubject()), expiration);
+        verifiedTokens.put(key, verified, expiration - now);
+        return verified;
+    }
+
+    private static String digest(String token) {
+        if (token == null) {
+            throw new IllegalArgumentException("JWT token is null");
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class VerifiedToken {
+        private final Integer userId;
+        private final long expiration;
+
+        VerifiedToken(Integer userId, long expiration) {
+            this.userId = userId;
+            this.expiration = expiration;
+        }
+    }
+
 }
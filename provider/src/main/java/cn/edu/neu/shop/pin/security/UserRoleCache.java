@@ -0,0 +1,77 @@
+package cn.edu.neu.shop.pin.security;
+
+import cn.edu.neu.shop.pin.cache.LocalLruCache;
+import cn.edu.neu.shop.pin.model.PinRole;
+import cn.edu.neu.shop.pin.model.PinUser;
+import cn.edu.neu.shop.pin.service.UserRoleListTransferService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 用户缓存
+ * 鉴权时需要用户的角色列表，业务代码通过 UserService.whoAmI 获取当前用户，缓存后已认证的请求不再查询用户表
+ * 用户资料、余额、积分或角色变更后需调用 invalidate；缓存条目另有较短的存活时间，保证其他节点上的缓存最终也会更新
+ */
+@Component
+public class UserRoleCache {
+
+    private final UserRoleListTransferService userRoleListTransferService;
+
+    private final LocalLruCache<Integer, PinUser> users;
+
+    @Autowired
+    public UserRoleCache(UserRoleListTransferService userRoleListTransferService,
+                         @Value("${pin.security.role-cache-size:10000}") int cacheSize,
+                         @Value("${pin.security.role-cache-ttl-seconds:60}") long ttlSeconds) {
+        this.userRoleListTransferService = userRoleListTransferService;
+        this.users = new LocalLruCache<>(cacheSize, ttlSeconds * 1000);
+    }
+
+    /**
+     * @param userId 用户ID
+     * @return 用户的角色列表（不可修改）
+     * @throws UsernameNotFoundException 用户不存在
+     */
+    public List<PinRole> getRoles(Integer userId) {
+        PinUser user = getUser(userId);
+        if (user == null) {
+            throw new UsernameNotFoundException("User '" + userId + "' not found");
+        }
+        return user.getRoles();
+    }
+
+    /**
+     * 返回的对象在多个请求间共享，调用方不能修改；需要修改时请从数据库重新读取
+     *
+     * @param userId 用户ID
+     * @return 用户（含角色列表），不存在时返回 null
+     */
+    public PinUser getUser(Integer userId) {
+        PinUser cached = users.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        PinUser user = userRoleListTransferService.findById(userId);
+        if (user == null) {
+            return null;
+        }
+        user.setRoles(Collections.unmodifiableList(user.getRoles() == null ? new ArrayList<>() : new ArrayList<>(user.getRoles())));
+        users.put(userId, user);
+        return user;
+    }
+
+    /**
+     * 用户资料、余额、积分或角色变更后清除缓存
+     *
+     * @param userId 用户ID
+     */
+    public void invalidate(Integer userId) {
+        users.remove(userId);
+    }
+}
@@ -0,0 +1,179 @@
+package cn.edu.neu.shop.pin.service;
+
+import cn.edu.neu.shop.pin.mapper.PinUserCreditRecordMapper;
+import cn.edu.neu.shop.pin.model.PinUserCreditRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 签到日历服务
+ * 每个用户在 Redis 中保存一个位图（第 N 位表示自 2019-01-01 起第 N 天是否签到）和一个摘要哈希（最后签到日、连续天数、累计天数），
+ * 两个键使用相同的哈希标签，保证在集群中落在同一个槽位，可以在同一个 Lua 脚本中操作
+ * 签到时由 Lua 脚本对当天的位执行原子的“测试并置位”并更新摘要，一次往返即可得到签到前的连续天数；
+ * 摘要不存在时（首次使用或数据丢失）从签到记录表重建
+ */
+@Service
+public class CheckInCalendarService {
+
+    public static final long NOT_INITIALIZED = -1;
+    public static final long ALREADY_CHECKED_IN = -2;
+
+    private static final String KEY_PREFIX = "check-in:{u";
+
+    private static final long BASE_EPOCH_DAY = LocalDate.of(2019, 1, 1).toEpochDay();
+
+    private static final RedisScript<Long> CHECK_IN_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return -1 end " +
+                    "local today = tonumber(ARGV[1]) " +
+                    "if redis.call('setbit', KEYS[2], today, 1) == 1 then return -2 end " +
+                    "local last = tonumber(redis.call('hget', KEYS[1], 'last')) " +
+                    "local streak = 0 " +
+                    "if last == today - 1 then streak = tonumber(redis.call('hget', KEYS[1], 'streak')) end " +
+                    "redis.call('hmset', KEYS[1], 'last', today, 'streak', streak + 1) " +
+                    "redis.call('hincrby', KEYS[1], 'total', 1) " +
+                    "return streak", Long.class);
+
+    private static final RedisScript<Long> INIT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+                    "for i = 4, #ARGV do redis.call('setbit', KEYS[2], ARGV[i], 1) end " +
+                    "redis.call('hmset', KEYS[1], 'last', ARGV[1], 'streak', ARGV[2], 'total', ARGV[3]) " +
+                    "return 1", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final PinUserCreditRecordMapper pinUserCreditRecordMapper;
+
+    @Autowired
+    public CheckInCalendarService(RedisTemplate<String, String> redisTemplate, PinUserCreditRecordMapper pinUserCreditRecordMapper) {
+        this.redisTemplate = redisTemplate;
+        this.pinUserCreditRecordMapper = pinUserCreditRecordMapper;
+    }
+
+    /**
+     * 今日签到
+     *
+     * @param userId 用户ID
+     * @return 签到前的连续签到天数（截至昨天）；今日已签到时返回 ALREADY_CHECKED_IN
+     */
+    public long checkIn(Integer userId) {
+        List<String> keys = Arrays.asList(metaKey(userId), daysKey(userId));
+        String today = String.valueOf(today());
+        Long result = redisTemplate.execute(CHECK_IN_SCRIPT, keys, today);
+        if (result != null && result == NOT_INITIALIZED) {
+            initialize(userId);
+            result = redisTemplate.execute(CHECK_IN_SCRIPT, keys, today);
+        }
+        if (result == null || result == NOT_INITIALIZED) {
+            throw new IllegalStateException("签到日历初始化失败");
+        }
+        return result;
+    }
+
+    /**
+     * 撤销用户的签到日历（签到后发放积分失败时调用），下次访问时从签到记录表重建
+     *
+     * @param userId 用户ID
+     */
+    public void invalidate(Integer userId) {
+        redisTemplate.delete(Arrays.asList(metaKey(userId), daysKey(userId)));
+    }
+
+    /**
+     * @param userId 用户ID
+     * @return 用户当前的签到状态
+     */
+    public CheckInStatus getStatus(Integer userId) {
+        List<Object> meta = readMeta(userId);
+        if (meta.get(0) == null) {
+            initialize(userId);
+            meta = readMeta(userId);
+        }
+        long today = today();
+        long last = meta.get(0) == null ? -1 : Long.parseLong((String) meta.get(0));
+        int streak = meta.get(1) == null ? 0 : Integer.parseInt((String) meta.get(1));
+        int total = meta.get(2) == null ? 0 : Integer.parseInt((String) meta.get(2));
+        // 最后签到日早于昨天时连续签到已中断
+        return new CheckInStatus(last == today, last >= today - 1 ? streak : 0, total);
+    }
+
+    private List<Object> readMeta(Integer userId) {
+        return redisTemplate.opsForHash().multiGet(metaKey(userId), Arrays.asList("last", "streak", "total"));
+    }
+
+    /**
+     * 按签到记录表重建位图与摘要（多个请求同时重建时只有一个生效）
+     */
+    private void initialize(Integer userId) {
+        List<PinUserCreditRecord> records = pinUserCreditRecordMapper.getCheckInDaysInfo(userId);
+        List<String> args = new ArrayList<>(records.size() + 3);
+        long last = -1;
+        int streak = 0;
+        if (!records.isEmpty()) {
+            // 记录按时间倒序，第一条即最后一次签到，其 note 为当时的连续签到天数
+            last = dayOf(records.get(0));
+            streak = records.get(0).getNote() == null ? 1 : records.get(0).getNote();
+        }
+        args.add(String.valueOf(last));
+        args.add(String.valueOf(streak));
+        args.add(String.valueOf(records.size()));
+        for (PinUserCreditRecord record : records) {
+            long day = dayOf(record);
+            if (day >= 0) {
+                args.add(String.valueOf(day));
+            }
+        }
+        redisTemplate.execute(INIT_SCRIPT, Arrays.asList(metaKey(userId), daysKey(userId)), args.toArray());
+    }
+
+    private static long dayOf(PinUserCreditRecord record) {
+        return record.getCreateTime().toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay() - BASE_EPOCH_DAY;
+    }
+
+    private static long today() {
+        return LocalDate.now().toEpochDay() - BASE_EPOCH_DAY;
+    }
+
+    private static String metaKey(Integer userId) {
+        return KEY_PREFIX + userId + "}:meta";
+    }
+
+    private static String daysKey(Integer userId) {
+        return KEY_PREFIX + userId + "}:days";
+    }
+
+    public static class CheckInStatus {
+        private final boolean checkedInToday;
+        private final int continuousDays;
+        private final int totalDays;
+
+        CheckInStatus(boolean checkedInToday, int continuousDays, int totalDays) {
+            this.checkedInToday = checkedInToday;
+            this.continuousDays = continuousDays;
+            this.totalDays = totalDays;
+        }
+
+        public boolean isCheckedInToday() {
+            return checkedInToday;
+        }
+
+        /**
+         * @return 连续签到天数（今日未签到时截至昨天）
+         */
+        public int getContinuousDays() {
+            return continuousDays;
+        }
+
+        public int getTotalDays() {
+            return totalDays;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package cn.edu.neu.shop.pin.service;
+
+import cn.edu.neu.shop.pin.cache.ProductDetailCache;
+import cn.edu.neu.shop.pin.lock.DistributedLockEngine;
+import cn.edu.neu.shop.pin.mapper.PinOrderItemMapper;
+import cn.edu.neu.shop.pin.mapper.PinProductAttributeValueMapper;
+import cn.edu.neu.shop.pin.mapper.PinProductMapper;
+import cn.edu.neu.shop.pin.model.PinOrderItem;
+import cn.edu.neu.shop.pin.model.PinProduct;
+import cn.edu.neu.shop.pin.model.PinProductAttributeValue;
+import cn.edu.neu.shop.pin.util.TransactionUtils;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SKU 库存服务
+ * 可售库存保存在 Redis 中，下单时通过 Lua 脚本一次性检查并预占订单内所有 SKU 的库存，
+ * 支付成功后确认预占（在支付事务提交后才真正扣除，回滚时释放），超时未支付则释放预占；
+ * 支付认领预占与超时释放都是针对预占记录的 Lua 脚本，认领后的预占不会再被超时释放，二者只有一方生效
+ * 确认后的扣减累加在 Redis 中每个店铺的待写回哈希里，由定时任务批量写回 MySQL，写回成功后再从哈希中扣除，进程重启不会丢失
+ * 每个店铺另有一个哈希记录各 SKU 尚未确认的预占数量，从 MySQL 重新加载库存时扣除预占与待写回的数量
+ * 后台修改 SKU 库存时按修改前后的差值调整 Redis 中的可售库存，不影响尚未确认的预占
+ * 同一订单的商品属于同一店铺，键使用店铺作为 hash tag，保证脚本涉及的键位于同一个集群槽位
+ */
+@Service
+public class InventoryService {
+
+    private static Logger logger = LoggerFactory.getLogger(InventoryService.class);
+
+    private static final String EXPIRY_KEY = "stock-reservation-expiry";
+
+    // 有待写回扣减的店铺
+    private static final String WRITE_BACK_STORES_KEY = "stock-write-back-stores";
+
+    private static final String WRITE_BACK_LOCK_KEY = "stock-write-back-lock";
+
+    private static final long WRITE_BACK_LEASE_MILLIS = 60000;
+
+    // 预占记录中表示已被支付认领的字段，其余字段为 SKU ID
+    private static final String CLAIMED_FIELD = "claimed";
+
+    // 预占记录在到期后再保留一段时间，供过期释放任务读取
+    private static final long RESERVATION_KEY_EXTRA_TTL_MILLIS = 3600000;
+
+    private static final int LOAD_RETRY_TIMES = 3;
+
+    private static final int EXPIRY_BATCH_SIZE = 100;
+
+    // KEYS: 各 SKU 库存键..., 预占记录键, 预占数量哈希；ARGV: 各 SKU 数量..., 各 SKU ID..., 预占记录过期时间(毫秒)
+    // 返回 1 预占成功，0 库存不足，-i 第 i 个 SKU 的库存尚未加载
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>(
+            "local n = #KEYS - 2 " +
+                    "if redis.call('exists', KEYS[n + 1]) == 1 then return 1 end " +
+                    "for i = 1, n do " +
+                    "  local stock = redis.call('get', KEYS[i]) " +
+                    "  if not stock then return -i end " +
+                    "  if tonumber(stock) < tonumber(ARGV[i]) then return 0 end " +
+                    "end " +
+                    "for i = 1, n do " +
+                    "  redis.call('decrby', KEYS[i], ARGV[i]) " +
+                    "  redis.call('hset', KEYS[n + 1], ARGV[n + i], ARGV[i]) " +
+                    "  redis.call('hincrby', KEYS[n + 2], ARGV[n + i], ARGV[i]) " +
+                    "end " +
+                    "redis.call('pexpire', KEYS[n + 1], ARGV[2 * n + 1]) " +
+                    "return 1", Long.class);
+
+    // KEYS: 预占记录键；预占存在时标记为已认领并返回 1，已被释放时返回 0
+    private static final RedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end " +
+                    "redis.call('hset', KEYS[1], '" + CLAIMED_FIELD + "', '1') " +
+                    "return 1", Long.class);
+
+    // KEYS: 预占记录键, 预占数量哈希, 待写回哈希；预占转为待写回的扣减，返回 SKU 数
+    private static final RedisScript<Long> CONFIRM_SCRIPT = new DefaultRedisScript<>(
+            "local items = redis.call('hgetall', KEYS[1]) " +
+                    "local count = 0 " +
+                    "for i = 1, #items, 2 do " +
+                    "  if items[i] ~= '" + CLAIMED_FIELD + "' then " +
+                    "    redis.call('hincrby', KEYS[2], items[i], -tonumber(items[i + 1])) " +
+                    "    redis.call('hincrby', KEYS[3], items[i], items[i + 1]) " +
+                    "    count = count + 1 " +
+                    "  end " +
+                    "end " +
+                    "redis.call('del', KEYS[1]) " +
+                    "return count", Long.class);
+
+    // KEYS: 预占记录键, 预占数量哈希；ARGV: 库存键前缀（与预占记录键具有相同的 hash tag）, 为 1 时不释放已认领的预占
+    // 返回释放的 SKU 数，预占已被认领时返回 -1；库存键已不存在时只扣除预占数量，下次加载时以 MySQL 为准
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if ARGV[2] == '1' and redis.call('hexists', KEYS[1], '" + CLAIMED_FIELD + "') == 1 then return -1 end " +
+                    "local items = redis.call('hgetall', KEYS[1]) " +
+                    "local count = 0 " +
+                    "for i = 1, #items, 2 do " +
+                    "  if items[i] ~= '" + CLAIMED_FIELD + "' then " +
+                    "    local stockKey = ARGV[1] .. items[i] " +
+                    "    if redis.call('exists', stockKey) == 1 then redis.call('incrby', stockKey, items[i + 1]) end " +
+                    "    redis.call('hincrby', KEYS[2], items[i], -tonumber(items[i + 1])) " +
+                    "    count = count + 1 " +
+                    "  end " +
+                    "end " +
+                    "redis.call('del', KEYS[1]) " +
+                    "return count", Long.class);
+
+    // KEYS: 库存键, 预占数量哈希, 待写回哈希；ARGV: MySQL 中的库存, SKU ID
+    // 库存已存在时不覆盖；MySQL 中的库存尚未扣除未确认的预占与未写回的扣减，加载时一并扣除
+    private static final RedisScript<Long> SEED_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+                    "local stock = tonumber(ARGV[1]) " +
+                    "  - tonumber(redis.call('hget', KEYS[2], ARGV[2]) or '0') " +
+                    "  - tonumber(redis.call('hget', KEYS[3], ARGV[2]) or '0') " +
+                    "redis.call('set', KEYS[1], stock) " +
+                    "return 1", Long.class);
+
+    // KEYS: 待写回哈希；ARGV: SKU ID, 已写回的数量, ...；扣除已写回的数量，返回剩余的 SKU 数
+    private static final RedisScript<Long> SETTLE_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #ARGV, 2 do " +
+                    "  if redis.call('hincrby', KEYS[1], ARGV[i], -tonumber(ARGV[i + 1])) <= 0 then " +
+                    "    redis.call('hdel', KEYS[1], ARGV[i]) " +
+                    "  end " +
+                    "end " +
+                    "return redis.call('hlen', KEYS[1])", Long.class);
+
+    // KEYS: 库存键；ARGV: 调整量；库存尚未加载时不做处理，下次预占时会从 MySQL 加载修改后的库存
+    private static final RedisScript<Long> ADJUST_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end " +
+                    "redis.call('incrby', KEYS[1], ARGV[1]) " +
+                    "return 1", Long.class);
+
+    @Value("${pin.inventory.reservation-ttl-minutes:30}")
+    private long reservationTtlMinutes;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final PinProductAttributeValueMapper pinProductAttributeValueMapper;
+
+    private final PinProductMapper pinProductMapper;
+
+    private final PinOrderItemMapper pinOrderItemMapper;
+
+    private final StoreDashboardService storeDashboardService;
+
+    private final ProductDetailCache productDetailCache;
+
+    private final DistributedLockEngine distributedLockEngine;
+
+    @Autowired
+    public InventoryService(RedisTemplate<String, String> redisTemplate, PinProductAttributeValueMapper pinProductAttributeValueMapper, PinProductMapper pinProductMapper, PinOrderItemMapper pinOrderItemMapper, StoreDashboardService storeDashboardService, ProductDetailCache productDetailCache, DistributedLockEngine distributedLockEngine) {
+        this.redisTemplate = redisTemplate;
+        this.pinProductAttributeValueMapper = pinProductAttributeValueMapper;
+        this.pinProductMapper = pinProductMapper;
+        this.pinOrderItemMapper = pinOrderItemMapper;
+        this.storeDashboardService = storeDashboardService;
+        this.productDetailCache = productDetailCache;
+        this.distributedLockEngine = distributedLockEngine;
+    }
+
+    /**
+     * 为订单预占库存，订单内任一 SKU 库存不足时不预占任何库存
+     *
+     * @param storeId           店铺ID
+     * @param orderIndividualId 订单ID
+     * @param orderItems        订单内的商品
+     * @return 是否预占成功
+     */
+    public boolean reserve(Integer storeId, Integer orderIndividualId, List<PinOrderItem> orderItems) {
+        Map<Integer, Integer> amounts = new LinkedHashMap<>();
+        for (PinOrderItem item : orderItems) {
+            if (item.getSkuId() != null) {
+                amounts.merge(item.getSkuId(), item.getAmount(), Integer::sum);
+            }
+        }
+        if (amounts.isEmpty()) {
+            return true;
+        }
+        List<String> keys = new ArrayList<>();
+        List<String> skuAmounts = new ArrayList<>();
+        List<String> skuIds = new ArrayList<>();
+        amounts.forEach((skuId, amount) -> {
+            keys.add(getStockKey(storeId, skuId));
+            skuAmounts.add(amount.toString());
+            skuIds.add(skuId.toString());
+        });
+        keys.add(getReservationKey(storeId, orderIndividualId));
+        keys.add(getReservedKey(storeId));
+        long ttlMillis = TimeUnit.MINUTES.toMillis(reservationTtlMinutes);
+        List<String> args = new ArrayList<>(skuAmounts);
+        args.addAll(skuIds);
+        args.add(String.valueOf(ttlMillis + RESERVATION_KEY_EXTRA_TTL_MILLIS));
+        for (int attempt = 0; attempt < LOAD_RETRY_TIMES; attempt++) {
+            Long result = redisTemplate.execute(RESERVE_SCRIPT, keys, args.toArray());
+            if (result == null || result == 0) {
+                return false;
+            }
+            if (result > 0) {
+                redisTemplate.opsForZSet().add(EXPIRY_KEY, storeId + ":" + orderIndividualId, System.currentTimeMillis() + ttlMillis);
+                return true;
+            }
+            // 第 -result 个 SKU 的库存尚未加载到 Redis
+            Integer skuId = Integer.valueOf(skuIds.get((int) (-result - 1)));
+            loadStock(storeId, skuId);
+        }
+        return false;
+    }
+
+    /**
+     * 确认订单的预占库存（支付成功时调用）
+     * 先认领预占，认领后的预占不会被超时释放；预占已过期被释放时，尝试重新预占
+     * 若处于事务中，预占在事务提交后才转为扣减并写回 MySQL，事务回滚时释放预占，避免订单未支付而库存已被扣除
+     *
+     * @param storeId           店铺ID
+     * @param orderIndividualId 订单ID
+     * @return 是否确认成功，库存已不足时返回 false
+     */
+    public boolean commit(Integer storeId, Integer orderIndividualId) {
+        String reservationKey = getReservationKey(storeId, orderIndividualId);
+        Long claimed = redisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(reservationKey));
+        if (claimed == null || claimed == 0) {
+            PinOrderItem sample = new PinOrderItem();
+            sample.setOrderIndividualId(orderIndividualId);
+            List<PinOrderItem> orderItems = pinOrderItemMapper.select(sample);
+            if (orderItems.stream().noneMatch(item -> item.getSkuId() != null)) {
+                return true;
+            }
+            if (!reserve(storeId, orderIndividualId, orderItems)) {
+                return false;
+            }
+            claimed = redisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(reservationKey));
+            if (claimed == null || claimed == 0) {
+                return false;
+            }
+        }
+        // 已认领的预占即使仍在过期队列中也不会被释放，这里只是提前清理
+        redisTemplate.opsForZSet().remove(EXPIRY_KEY, storeId + ":" + orderIndividualId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    confirm(storeId, orderIndividualId);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+                        release(storeId, orderIndividualId, false);
+                    }
+                }
+            });
+        } else {
+            confirm(storeId, orderIndividualId);
+        }
+        return true;
+    }
+
+    private void confirm(Integer storeId, Integer orderIndividualId) {
+        // 在转入待写回哈希的前后都登记店铺：之前登记保证进程在脚本执行后崩溃时不会遗漏，之后登记避免与写回任务移除店铺的竞争
+        redisTemplate.opsForSet().add(WRITE_BACK_STORES_KEY, storeId.toString());
+        Long count = redisTemplate.execute(CONFIRM_SCRIPT, Arrays.asList(getReservationKey(storeId, orderIndividualId), getReservedKey(storeId), getWriteBackKey(storeId)));
+        if (count == null || count == 0) {
+            logger.warn("订单 #" + orderIndividualId + " 的预占记录已不存在，未能确认库存扣减");
+            return;
+        }
+        redisTemplate.opsForSet().add(WRITE_BACK_STORES_KEY, storeId.toString());
+    }
+
+    /**
+     * 释放订单的预占库存（订单取消时调用），已被支付认领的预占不释放
+     *
+     * @param storeId           店铺ID
+     * @param orderIndividualId 订单ID
+     */
+    public void release(Integer storeId, Integer orderIndividualId) {
+        redisTemplate.opsForZSet().remove(EXPIRY_KEY, storeId + ":" + orderIndividualId);
+        release(storeId, orderIndividualId, true);
+    }
+
+    /**
+     * @return 释放的 SKU 数，预占已被认领而未释放时返回 -1
+     */
+    private long release(Integer storeId, Integer orderIndividualId, boolean skipClaimed) {
+        Long released = redisTemplate.execute(RELEASE_SCRIPT, Arrays.asList(getReservationKey(storeId, orderIndividualId), getReservedKey(storeId)),
+                getStockKey(storeId, null), skipClaimed ? "1" : "0");
+        return released == null ? 0 : released;
+    }
+
+    /**
+     * 后台修改 SKU 库存后，按修改前后的差值调整 Redis 中的可售库存，并清除商品详情缓存
+     * 若处于事务中，则等待事务提交后再调整
+     *
+     * @param skuId    SKU ID
+     * @param oldStock 修改前 MySQL 中的库存
+     * @param newStock 修改后的库存
+     */
+    public void stockEdited(Integer skuId, int oldStock, int newStock) {
+        TransactionUtils.runAfterCommit(() -> adjustStock(skuId, newStock - oldStock));
+    }
+
+    /**
+     * SKU 被删除后清除 Redis 中的库存，若处于事务中，则等待事务提交后再清除
+     *
+     * @param sku 被删除的 SKU
+     */
+    public void skuDeleted(PinProductAttributeValue sku) {
+        TransactionUtils.runAfterCommit(() -> {
+            PinProduct product = pinProductMapper.selectByPrimaryKey(sku.getProductId());
+            if (product != null) {
+                redisTemplate.delete(getStockKey(product.getStoreId(), sku.getId()));
+            }
+            productDetailCache.evict(sku.getProductId());
+        });
+    }
+
+    private void adjustStock(Integer skuId, int delta) {
+        PinProductAttributeValue sku = pinProductAttributeValueMapper.selectByPrimaryKey(skuId);
+        if (sku == null) {
+            return;
+        }
+        PinProduct product = pinProductMapper.selectByPrimaryKey(sku.getProductId());
+        if (product != null && delta != 0) {
+            redisTemplate.execute(ADJUST_SCRIPT, Collections.singletonList(getStockKey(product.getStoreId(), skuId)), String.valueOf(delta));
+        }
+        productDetailCache.evict(sku.getProductId());
+    }
+
+    /**
+     * 释放超时未支付订单的预占库存
+     * 通过 ZREM 认领过期项，多个节点同时执行时每条预占只会被处理一次；已被支付认领的预占由释放脚本跳过
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void releaseExpiredReservations() {
+        try {
+            Set<ZSetOperations.TypedTuple<String>> expired = redisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(EXPIRY_KEY, 0, System.currentTimeMillis(), 0, EXPIRY_BATCH_SIZE);
+            if (expired == null) {
+                return;
+            }
+            for (ZSetOperations.TypedTuple<String> reservation : expired) {
+                Long removed = redisTemplate.opsForZSet().remove(EXPIRY_KEY, reservation.getValue());
+                if (removed != null && removed > 0) {
+                    String[] ids = reservation.getValue().split(":");
+                    if (release(Integer.valueOf(ids[0]), Integer.valueOf(ids[1]), true) > 0) {
+                        logger.info("订单 #" + ids[1] + " 超时未支付，已释放预占库存");
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("释放超时预占库存失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 将 Redis 中待写回的库存扣减批量写回 MySQL，多个节点之间通过分布式锁保证同一时间只有一个节点写回
+     * 写回成功后才从待写回哈希中扣除已写回的数量，写回失败时下次重试
+     */
+    @Scheduled(fixedDelay = 1000)
+    public synchronized void flushWriteBack() {
+        DistributedLockEngine.Handle handle;
+        try {
+            handle = distributedLockEngine.tryLock(WRITE_BACK_LOCK_KEY, WRITE_BACK_LOCK_KEY, "inventory", WRITE_BACK_LEASE_MILLIS, 0, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (handle == null) {
+            return;
+        }
+        try {
+            Set<String> storeIds = redisTemplate.opsForSet().members(WRITE_BACK_STORES_KEY);
+            if (storeIds != null) {
+                for (String storeId : storeIds) {
+                    flushWriteBack(Integer.valueOf(storeId));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("库存写回 MySQL 失败：" + e.getMessage());
+        } finally {
+            distributedLockEngine.unlock(handle);
+        }
+    }
+
+    private void flushWriteBack(Integer storeId) {
+        String writeBackKey = getWriteBackKey(storeId);
+        Map<Object, Object> pending = redisTemplate.opsForHash().entries(writeBackKey);
+        Map<Integer, Integer> skuDeltas = new HashMap<>();
+        pending.forEach((skuId, delta) -> {
+            int amount = Integer.parseInt(delta.toString());
+            if (amount > 0) {
+                skuDeltas.put(Integer.valueOf(skuId.toString()), amount);
+            }
+        });
+        if (!skuDeltas.isEmpty()) {
+            List<PinProductAttributeValue> skus = pinProductAttributeValueMapper.selectByIds(joinIds(skuDeltas.keySet()));
+            List<JSONObject> skuUpdates = new ArrayList<>();
+            Map<Integer, Integer> productDeltas = new HashMap<>();
+            for (PinProductAttributeValue sku : skus) {
+                Integer delta = skuDeltas.get(sku.getId());
+                JSONObject skuUpdate = new JSONObject();
+                skuUpdate.put("skuId", sku.getId());
+                skuUpdate.put("delta", delta);
+                skuUpdates.add(skuUpdate);
+                productDeltas.merge(sku.getProductId(), delta, Integer::sum);
+            }
+            List<JSONObject> productUpdates = new ArrayList<>();
+            productDeltas.forEach((productId, delta) -> {
+                JSONObject productUpdate = new JSONObject();
+                productUpdate.put("productId", productId);
+                productUpdate.put("delta", delta);
+                productUpdates.add(productUpdate);
+            });
+            if (!skuUpdates.isEmpty()) {
+                pinProductAttributeValueMapper.decreaseStocks(skuUpdates);
+                pinProductMapper.decreaseStockCounts(productUpdates);
+                storeDashboardService.stockChanged(productDeltas.keySet());
+                productDeltas.keySet().forEach(productDetailCache::evict);
+            }
+        }
+        // 已被删除的 SKU 不再写回，与已写回的扣减一起从哈希中扣除；写回期间新增的扣减保留到下一次
+        List<String> settled = new ArrayList<>();
+        pending.forEach((skuId, delta) -> {
+            settled.add(skuId.toString());
+            settled.add(delta.toString());
+        });
+        Long remaining = settled.isEmpty() ? Long.valueOf(0) : redisTemplate.execute(SETTLE_SCRIPT, Collections.singletonList(writeBackKey), settled.toArray());
+        if (remaining != null && remaining == 0) {
+            redisTemplate.opsForSet().remove(WRITE_BACK_STORES_KEY, storeId.toString());
+            // 移除店铺与新的确认之间存在竞争，哈希不为空时重新登记
+            Long size = redisTemplate.opsForHash().size(writeBackKey);
+            if (size != null && size > 0) {
+                redisTemplate.opsForSet().add(WRITE_BACK_STORES_KEY, storeId.toString());
+            }
+        }
+    }
+
+    /**
+     * 从 MySQL 加载 SKU 库存到 Redis（已存在时不覆盖），扣除尚未确认的预占与尚未写回的扣减
+     * Redis 中的库存是可售库存的唯一来源，因此不设置过期时间
+     */
+    private void loadStock(Integer storeId, Integer skuId) {
+        PinProductAttributeValue sku = pinProductAttributeValueMapper.selectByPrimaryKey(skuId);
+        int stock = sku == null || sku.getStock() == null ? 0 : sku.getStock();
+        redisTemplate.execute(SEED_SCRIPT, Arrays.asList(getStockKey(storeId, skuId), getReservedKey(storeId), getWriteBackKey(storeId)),
+                String.valueOf(stock), skuId.toString());
+    }
+
+    private static String getStockKey(Integer storeId, Integer skuId) {
+        return "stock:{s" + storeId + "}:sku:" + (skuId == null ? "" : skuId);
+    }
+
+    private static String getReservationKey(Integer storeId, Integer orderIndividualId) {
+        return "stock:{s" + storeId + "}:reservation:" + orderIndividualId;
+    }
+
+    private static String getReservedKey(Integer storeId) {
+        return "stock:{s" + storeId + "}:reserved";
+    }
+
+    private static String getWriteBackKey(Integer storeId) {
+        return "stock:{s" + storeId + "}:write-back";
+    }
+
+    private static String joinIds(Set<Integer> ids) {
+        StringBuilder builder = new StringBuilder();
+        for (Integer id : ids) {
+            if (builder.length() > 0) {
+                builder.append(",");
+            }
+            builder.append(id);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,294 @@
+package cn.edu.neu.shop.pin.service;
+
+import cn.edu.neu.shop.pin.cache.LocalLruCache;
+import cn.edu.neu.shop.pin.model.PinOrderGroup;
+import cn.edu.neu.shop.pin.model.PinOrderIndividual;
+import cn.edu.neu.shop.pin.service.security.UserService;
+import cn.edu.neu.shop.pin.websocket.CustomerPrincipal;
+import cn.edu.neu.shop.pin.websocket.StompMessageService;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拼团房间状态服务
+ * 团单的每次变更（有人加团、退团、收团）只向房间推送增量帧，帧内带有团单级别的全局序号（Redis 自增）；
+ * 同一团单在短时间窗口内的多次变更合并为一帧；只有客户端发送 /hello（首次进入或发现序号不连续）时才推送完整快照
+ * 每个节点在内存中缓存团单的快照及其序号，序号未变化时直接返回缓存的快照，不再查询数据库
+ * 快照可能已包含序号稍大的增量帧中的变更，客户端按订单ID幂等地应用增量即可
+ */
+@Service
+public class OrderGroupRoomService {
+
+    private static Logger logger = LoggerFactory.getLogger(OrderGroupRoomService.class);
+
+    public static final String EVENT_JOIN = "join";
+    public static final String EVENT_LEAVE = "leave";
+    public static final String EVENT_CLOSE = "close";
+
+    private static final String SEQUENCE_KEY_PREFIX = "order-group-seq-";
+
+    private static final long SEQUENCE_KEY_TTL_HOURS = 24;
+
+    @Value("${pin.group-room.coalesce-millis:200}")
+    private long coalesceMillis;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final OrderIndividualService orderIndividualService;
+
+    private final OrderItemBatchLoader orderItemBatchLoader;
+
+    private final UserService userService;
+
+    private final OrderGroupSeatService orderGroupSeatService;
+
+    private final StompMessageService stompMessageService;
+
+    // 团单ID -> 快照，只保留最近活跃的团单
+    private final LocalLruCache<Integer, Snapshot> snapshots = new LocalLruCache<>(1000, TimeUnit.MINUTES.toMillis(10));
+
+    // 团单ID -> 等待合并发送的变更
+    private final Map<Integer, PendingFrame> pendingFrames = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "group-room-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public OrderGroupRoomService(RedisTemplate<String, String> redisTemplate, OrderIndividualService orderIndividualService, OrderItemBatchLoader orderItemBatchLoader, UserService userService, OrderGroupSeatService orderGroupSeatService, StompMessageService stompMessageService) {
+        this.redisTemplate = redisTemplate;
+        this.orderIndividualService = orderIndividualService;
+        this.orderItemBatchLoader = orderItemBatchLoader;
+        this.userService = userService;
+        this.orderGroupSeatService = orderGroupSeatService;
+        this.stompMessageService = stompMessageService;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdownNow();
+        // 发送尚未发送的变更
+        for (Integer orderGroupId : new ArrayList<>(pendingFrames.keySet())) {
+            flush(orderGroupId);
+        }
+    }
+
+    /**
+     * 有人加入团单
+     *
+     * @param principal       加入者
+     * @param orderIndividual 加入者的订单
+     * @param message         提示消息
+     */
+    public void memberJoined(CustomerPrincipal principal, PinOrderIndividual orderIndividual, String message) {
+        enqueue(principal.getOrderGroupId(), new Event(EVENT_JOIN, orderIndividual, principal.getOrderIndividualId(), principal.getUserId()), message);
+    }
+
+    /**
+     * 有人退出团单
+     *
+     * @param principal 退出者
+     * @param message   提示消息
+     */
+    public void memberLeft(CustomerPrincipal principal, String message) {
+        enqueue(principal.getOrderGroupId(), new Event(EVENT_LEAVE, null, principal.getOrderIndividualId(), principal.getUserId()), message);
+    }
+
+    /**
+     * 团单已结束
+     *
+     * @param orderGroup 已结束的团单
+     */
+    public void groupClosed(PinOrderGroup orderGroup) {
+        enqueue(orderGroup.getId(), new Event(EVENT_CLOSE, null, null, null), "团单已结束");
+    }
+
+    /**
+     * 向单个用户发送团单的完整快照
+     *
+     * @param principal  用户
+     * @param orderGroup 团单
+     */
+    public void sendSnapshot(CustomerPrincipal principal, PinOrderGroup orderGroup) {
+        long seq = getSequence(orderGroup.getId());
+        Snapshot snapshot = snapshots.get(orderGroup.getId());
+        if (snapshot == null || snapshot.seq != seq) {
+            // 先读取序号再加载数据库，快照不会比序号旧
+            snapshot = new Snapshot(seq, buildSnapshot(orderGroup));
+            snapshots.put(orderGroup.getId(), snapshot);
+        }
+        JSONObject frame = (JSONObject) snapshot.json.clone();
+        frame.put("type", "snapshot");
+        frame.put("seq", snapshot.seq);
+        frame.put("seatsRemaining", orderGroupSeatService.getRemainingSeats(orderGroup.getId()));
+        frame.put("message", "hello");
+        stompMessageService.sendSingleUpdateMessage(principal, frame);
+    }
+
+    private void enqueue(Integer orderGroupId, Event event, String message) {
+        pendingFrames.compute(orderGroupId, (id, frame) -> {
+            if (frame == null) {
+                frame = new PendingFrame();
+                flusher.schedule(() -> flush(id), coalesceMillis, TimeUnit.MILLISECONDS);
+            }
+            frame.events.add(event);
+            frame.message = message;
+            return frame;
+        });
+    }
+
+    private void flush(Integer orderGroupId) {
+        PendingFrame frame = pendingFrames.remove(orderGroupId);
+        if (frame == null) {
+            return;
+        }
+        try {
+            // 加入者的用户信息与商品信息一次性加载
+            List<PinOrderIndividual> joined = new ArrayList<>();
+            for (Event event : frame.events) {
+                if (EVENT_JOIN.equals(event.type)) {
+                    event.orderIndividual.setUser(userService.findById(event.orderIndividual.getUserId()));
+                    joined.add(event.orderIndividual);
+                }
+            }
+            orderItemBatchLoader.newBatch().assembleOrderIndividuals(joined, false);
+            JSONArray events = new JSONArray();
+            for (Event event : frame.events) {
+                events.add(event.toJSON());
+            }
+            long seq = nextSequence(orderGroupId);
+            applyToSnapshot(orderGroupId, seq, events);
+            JSONObject delta = new JSONObject();
+            delta.put("type", "delta");
+            delta.put("orderGroupId", orderGroupId);
+            delta.put("seq", seq);
+            delta.put("events", events);
+            delta.put("seatsRemaining", orderGroupSeatService.getRemainingSeats(orderGroupId));
+            delta.put("message", frame.message);
+            stompMessageService.sendGroupUpdateMessage(orderGroupId, delta);
+        } catch (Exception e) {
+            // 增量丢失后客户端会发现序号不连续并重新获取快照
+            logger.error("发送团单 #" + orderGroupId + " 增量失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 本节点的快照恰好是上一个序号时，直接应用增量，避免下次 /hello 时重新加载
+     */
+    private void applyToSnapshot(Integer orderGroupId, long seq, JSONArray events) {
+        Snapshot snapshot = snapshots.get(orderGroupId);
+        if (snapshot == null) {
+            return;
+        }
+        if (snapshot.seq != seq - 1) {
+            snapshots.remove(orderGroupId);
+            return;
+        }
+        JSONObject json = (JSONObject) snapshot.json.clone();
+        JSONArray members = new JSONArray(new ArrayList<>(json.getJSONArray("orderIndividuals")));
+        for (int i = 0; i < events.size(); i++) {
+            JSONObject event = events.getJSONObject(i);
+            String type = event.getString("event");
+            if (EVENT_JOIN.equals(type)) {
+                JSONObject orderIndividual = event.getJSONObject("orderIndividual");
+                members.removeIf(member -> Objects.equals(((JSONObject) member).getInteger("id"), orderIndividual.getInteger("id")));
+                members.add(orderIndividual);
+            } else if (EVENT_LEAVE.equals(type)) {
+                members.removeIf(member -> Objects.equals(((JSONObject) member).getInteger("id"), event.getInteger("orderIndividualId")));
+            } else if (EVENT_CLOSE.equals(type)) {
+                json.put("status", PinOrderGroup.STATUS_FINISHED);
+            }
+        }
+        json.put("orderIndividuals", members);
+        snapshots.put(orderGroupId, new Snapshot(seq, json));
+    }
+
+    /**
+     * 从数据库加载团单及团内所有订单（含用户与商品信息）
+     */
+    private JSONObject buildSnapshot(PinOrderGroup orderGroup) {
+        JSONObject orderGroupJSON = (JSONObject) JSONObject.toJSON(orderGroup);
+        // 重新置入团单结束时间 => 转为时间戳
+        orderGroupJSON.put("closeTime", orderGroup.getCloseTime());
+        // 获取当前用户个人单包含的商品
+        List<PinOrderIndividual> orderIndividualsInCurrentGroup = orderIndividualService.getOrderIndividualsByOrderGroupId(orderGroup.getId());
+        orderIndividualsInCurrentGroup.forEach(orderIndividual -> orderIndividual.setUser(userService.findById(orderIndividual.getUserId())));
+        orderItemBatchLoader.newBatch().assembleOrderIndividuals(orderIndividualsInCurrentGroup, false);
+        orderGroupJSON.put("orderIndividuals", JSON.toJSON(orderIndividualsInCurrentGroup));
+        return orderGroupJSON;
+    }
+
+    private long getSequence(Integer orderGroupId) {
+        String seq = redisTemplate.opsForValue().get(SEQUENCE_KEY_PREFIX + orderGroupId);
+        return seq == null ? 0 : Long.parseLong(seq);
+    }
+
+    private long nextSequence(Integer orderGroupId) {
+        String key = SEQUENCE_KEY_PREFIX + orderGroupId;
+        Long seq = redisTemplate.opsForValue().increment(key);
+        redisTemplate.expire(key, SEQUENCE_KEY_TTL_HOURS, TimeUnit.HOURS);
+        return seq == null ? 0 : seq;
+    }
+
+    private static class Snapshot {
+        private final long seq;
+        private final JSONObject json;
+
+        Snapshot(long seq, JSONObject json) {
+            this.seq = seq;
+            this.json = json;
+        }
+    }
+
+    private static class PendingFrame {
+        private final List<Event> events = new ArrayList<>();
+        private String message;
+    }
+
+    private static class Event {
+        private final String type;
+        private final PinOrderIndividual orderIndividual;
+        private final Integer orderIndividualId;
+        private final Integer userId;
+
+        Event(String type, PinOrderIndividual orderIndividual, Integer orderIndividualId, Integer userId) {
+            this.type = type;
+            this.orderIndividual = orderIndividual;
+            this.orderIndividualId = orderIndividualId;
+            this.userId = userId;
+        }
+
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("event", type);
+            if (EVENT_JOIN.equals(type)) {
+                json.put("orderIndividual", JSON.toJSON(orderIndividual));
+            } else if (EVENT_LEAVE.equals(type)) {
+                json.put("orderIndividualId", orderIndividualId);
+                json.put("userId", userId);
+            } else if (EVENT_CLOSE.equals(type)) {
+                json.put("status", PinOrderGroup.STATUS_FINISHED);
+            }
+            return json;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cn.edu.neu.shop.pin.service;
+
+import cn.edu.neu.shop.pin.mapper.PinOrderIndividualMapper;
+import cn.edu.neu.shop.pin.model.PinOrderGroup;
+import cn.edu.neu.shop.pin.model.PinOrderIndividual;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 团单座位服务
+ * 在 Redis 中保存每个拼团中团单的剩余座位数，加团时通过 Lua 脚本原子地“大于零则减一”，
+ * 不再需要加载团内全部订单与用户来计数，也不需要对整个团单加锁
+ */
+@Service
+public class OrderGroupSeatService {
+
+    public static final int SEAT_CLAIMED = 1;
+    public static final int SEAT_FULL = 0;
+
+    private static final String SEAT_KEY_PREFIX = "order-group-seats-";
+
+    // 团单结束后座位计数再保留一小时，随后自动过期
+    private static final long SEAT_KEY_EXTRA_TTL_MILLIS = 3600000;
+
+    private static final RedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local seats = redis.call('get', KEYS[1]) " +
+                    "if not seats then return -1 end " +
+                    "if tonumber(seats) <= 0 then return 0 end " +
+                    "redis.call('decr', KEYS[1]) " +
+                    "return 1", Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return redis.call('incr', KEYS[1]) end " +
+                    "return -1", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final PinOrderIndividualMapper pinOrderIndividualMapper;
+
+    private final StoreService storeService;
+
+    @Autowired
+    public OrderGroupSeatService(RedisTemplate<String, String> redisTemplate, PinOrderIndividualMapper pinOrderIndividualMapper, StoreService storeService) {
+        this.redisTemplate = redisTemplate;
+        this.pinOrderIndividualMapper = pinOrderIndividualMapper;
+        this.storeService = storeService;
+    }
+
+    /**
+     * 占用团单中的一个座位
+     *
+     * @param orderGroup 团单
+     * @return SEAT_CLAIMED 占座成功；SEAT_FULL 团单人数已满
+     */
+    public int claimSeat(PinOrderGroup orderGroup) {
+        String key = SEAT_KEY_PREFIX + orderGroup.getId();
+        Long result = redisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(key));
+        if (result != null && result < 0) {
+            // 座位计数尚未初始化：按数据库中的人数初始化（多个请求同时初始化时只有一个生效）
+            initializeSeats(orderGroup, key);
+            result = redisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(key));
+        }
+        return result != null && result == 1 ? SEAT_CLAIMED : SEAT_FULL;
+    }
+
+    /**
+     * 释放团单中的一个座位（退团或加团失败时调用）
+     *
+     * @param orderGroupId 团单ID
+     */
+    public void releaseSeat(Integer orderGroupId) {
+        redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(SEAT_KEY_PREFIX + orderGroupId));
+    }
+
+    /**
+     * @param orderGroupId 团单ID
+     * @return 团单剩余座位数，座位计数尚未初始化时返回 null
+     */
+    public Integer getRemainingSeats(Integer orderGroupId) {
+        String seats = redisTemplate.opsForValue().get(SEAT_KEY_PREFIX + orderGroupId);
+        return seats == null ? null : Integer.valueOf(seats);
+    }
+
+    private void initializeSeats(PinOrderGroup orderGroup, String key) {
+        PinOrderIndividual sample = new PinOrderIndividual();
+        sample.setOrderGroupId(orderGroup.getId());
+        int memberCount = pinOrderIndividualMapper.selectCount(sample);
+        int limit = storeService.getStoreById(orderGroup.getStoreId()).getPeopleLimit();
+        long ttl = Math.max(orderGroup.getCloseTime().getTime() - System.currentTimeMillis(), 0) + SEAT_KEY_EXTRA_TTL_MILLIS;
+        redisTemplate.opsForValue().setIfAbsent(key, String.valueOf(Math.max(limit - memberCount, 0)), ttl, TimeUnit.MILLISECONDS);
+    }
+}
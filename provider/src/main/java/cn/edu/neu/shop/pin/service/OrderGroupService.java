@@ -1,13 +1,13 @@
 package cn.edu.neu.shop.pin.service;
 
-import cn.edu.neu.shop.pin.lock.annotation.LockKeyVariable;
-import cn.edu.neu.shop.pin.lock.annotation.MutexLock;
+import cn.edu.neu.shop.pin.dto.OrderQueryCondition;
 import cn.edu.neu.shop.pin.mapper.PinOrderGroupMapper;
 import cn.edu.neu.shop.pin.mapper.PinOrderIndividualMapper;
 import cn.edu.neu.shop.pin.model.PinOrderGroup;
 import cn.edu.neu.shop.pin.model.PinOrderIndividual;
 import cn.edu.neu.shop.pin.model.PinStoreGroupCloseBatch;
 import cn.edu.neu.shop.pin.model.PinUser;
+import cn.edu.neu.shop.pin.schedule.OrderGroupCloseQueue;
 import cn.edu.neu.shop.pin.service.finance.UserBalanceService;
 import cn.edu.neu.shop.pin.service.security.UserService;
 import cn.edu.neu.shop.pin.util.PinConstants;
@@ -15,7 +15,6 @@ import cn.edu.neu.shop.pin.util.ResponseWrapper;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
 import cn.edu.neu.shop.pin.websocket.CustomerPrincipal;
 import cn.edu.neu.shop.pin.websocket.StompMessageService;
-import com.alibaba.fastjson.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -24,7 +23,9 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import static java.lang.Math.pow;
@@ -73,7 +74,13 @@ public class OrderGroupService extends AbstractService<PinOrderGroup> {
 
     private final UserBalanceService userBalanceService;
 
-    public OrderGroupService(PinOrderIndividualMapper individualMapper, PinOrderGroupMapper pinOrderGroupMapper, StoreService storeService, OrderItemService orderItemService, OrderIndividualService orderIndividualService, StompMessageService stompMessageService, UserService userService, StoreCloseBatchService storeCloseBatchService, UserBalanceService userBalanceService) {
+    private final OrderGroupCloseQueue orderGroupCloseQueue;
+
+    private final OrderGroupSeatService orderGroupSeatService;
+
+    private final OrderGroupRoomService orderGroupRoomService;
+
+    public OrderGroupService(PinOrderIndividualMapper individualMapper, PinOrderGroupMapper pinOrderGroupMapper, StoreService storeService, OrderItemService orderItemService, OrderIndividualService orderIndividualService, StompMessageService stompMessageService, UserService userService, StoreCloseBatchService storeCloseBatchService, UserBalanceService userBalanceService, OrderGroupCloseQueue orderGroupCloseQueue, OrderGroupSeatService orderGroupSeatService, OrderGroupRoomService orderGroupRoomService) {
         this.individualMapper = individualMapper;
         this.pinOrderGroupMapper = pinOrderGroupMapper;
         this.storeService = storeService;
@@ -83,6 +90,9 @@ public class OrderGroupService extends AbstractService<PinOrderGroup> {
         this.userService = userService;
         this.storeCloseBatchService = storeCloseBatchService;
         this.userBalanceService = userBalanceService;
+        this.orderGroupCloseQueue = orderGroupCloseQueue;
+        this.orderGroupSeatService = orderGroupSeatService;
+        this.orderGroupRoomService = orderGroupRoomService;
     }
 
     /**
@@ -105,16 +115,6 @@ public class OrderGroupService extends AbstractService<PinOrderGroup> {
         return orderIndividualService.getUsers(individuals);
     }
 
-    /**
-     * @param orderGroupId 团单ID
-     * @return 团单中的人数
-     * @author flyhero
-     * 返回在某一团单中的人数
-     */
-    private Integer getUserNumberInAOrderGroup(Integer orderGroupId) {
-        return getUsersByOrderGroup(orderGroupId).size();
-    }
-
     /**
      * @param orderIndividualId 订单ID
      * @author flyhero
@@ -147,6 +147,7 @@ public class OrderGroupService extends AbstractService<PinOrderGroup> {
         orderGroup.setCreateTime(new Date());
         orderGroup.setCloseTime(getOrderGroupCloseTimeFromNow(storeId));
         this.save(orderGroup);
+        orderGroupCloseQueue.schedule(orderGroup.getId(), orderGroup.getCloseTime());
         // 将orderGroup挂载到orderIndividual上
         orderIndividual.setOrderGroupId(orderGroup.getId());
         orderIndividual.setIsGroup(true);
@@ -161,10 +162,9 @@ public class OrderGroupService extends AbstractService<PinOrderGroup> {
      * @param orderGroupId      要加入的团单 orderGroupID
      * @author flyhero
      * 按照orderGroupId加入团单
+     * 人数限制由 OrderGroupSeatService 原子地占座保证，订单只能挂载到一个团单由条件更新保证，因此无需对团单加锁
      */
-    @Transactional
-    @MutexLock(key = PinConstants.LOCK_KEY_ORDER_GROUP)
-    public Integer joinOrderGroup(Integer userId, Integer storeId, Integer orderIndividualId, @LockKeyVariable Integer orderGroupId) {
+    public Integer joinOrderGroup(Integer userId, Integer storeId, Integer orderIndividualId, Integer orderGroupId) {
         PinOrderIndividual orderIndividual = orderIndividualService.findById(orderIndividualId);
         PinOrderGroup orderGroup = this.findById(orderGroupId);
         if (!Objects.equals(userId, orderIndividual.getUserId())) {
@@ -197,21 +197,25 @@ public class OrderGroupService extends AbstractService<PinOrderGroup> {
             // 指定的团单已结束
             return STATUS_JOIN_ORDER_GROUP_IS_ENDED;
         }
-        Integer userNum = this.getUserNumberInAOrderGroup(orderGroupId);
-        Integer limit = storeService.getStoreById(storeId).getPeopleLimit();
-        if (userNum >= limit) {
+        if (orderGroupSeatService.claimSeat(orderGroup) != OrderGroupSeatService.SEAT_CLAIMED) {
             // 指定的团单人数已满
             return STATUS_JOIN_ORDER_GROUP_IS_FULL;
         }
         // 上述问题都没有出现，则正常加入团单，并更新数据库
-        orderIndividual.setOrderGroupId(orderGroupId);
-        orderIndividual.setIsGroup(true);
-        orderIndividualService.update(orderIndividual);
-        // 向房间内的人发送消息
-        JSONObject orderGroupJSON = generateOrderGroupJSON(orderGroup);
-        orderGroupJSON.put("message", "有人适才加入了房间");
+        try {
+            if (individualMapper.mountOrderGroup(orderIndividualId, orderGroupId) == 0) {
+                // 并发请求已将此订单加入了其他团单，归还座位并返回已有团单ID
+                orderGroupSeatService.releaseSeat(orderGroupId);
+                return orderIndividualService.findById(orderIndividualId).getOrderGroupId();
+            }
+        } catch (RuntimeException e) {
+            orderGroupSeatService.releaseSeat(orderGroupId);
+            throw e;
+        }
+        // 向房间内的人发送增量消息
         CustomerPrincipal customerPrincipal = new CustomerPrincipal(userId, orderIndividualId, orderGroupId);
-        stompMessageService.sendGroupUpdateMessage(customerPrincipal, orderGroupJSON);
+        orderIndividual.setOrderGroupId(orderGroupId);
+        orderGroupRoomService.memberJoined(customerPrincipal, orderIndividual, "有人适才加入了房间");
         return STATUS_SUCCESS;
     }
 
@@ -235,21 +239,21 @@ public class OrderGroupService extends AbstractService<PinOrderGroup> {
             return STATUS_QUIT_ORDER_GROUP_FAILED;
         }
         // 上述问题都没有出现，则正常退出团单，并更新数据库
-        orderIndividual.setOrderGroupId(null);
-        orderIndividual.setIsGroup(false);
-        orderIndividualService.update(orderIndividual);
-        // 向房间内的人发送消息
-        JSONObject orderGroupJSON = generateOrderGroupJSON(orderGroup);
-        orderGroupJSON.put("message", "有人适才退出了房间");
+        if (individualMapper.unmountOrderGroup(orderIndividualId, orderGroupId) == 0) {
+            // 订单不在此团单中
+            return STATUS_QUIT_ORDER_GROUP_FAILED;
+        }
+        orderGroupSeatService.releaseSeat(orderGroupId);
+        // 向房间内的人发送增量消息
         CustomerPrincipal customerPrincipal = new CustomerPrincipal(userId, orderIndividualId, orderGroupId);
-        stompMessageService.sendGroupUpdateMessage(customerPrincipal, orderGroupJSON);
+        orderGroupRoomService.memberLeft(customerPrincipal, "有人适才退出了房间");
         return STATUS_SUCCESS;
     }
 
     /**
      * @param customerPrincipal 客户principal
      * @author flyhero
-     * Stomp 初始化页面消息
+     * Stomp 初始化页面消息（客户端首次进入或发现增量序号不连续时发送 /hello）
      */
     public void sendGroupInitMessageToSingle(CustomerPrincipal customerPrincipal) {
         PinOrderGroup orderGroup = this.findById(customerPrincipal.getOrderGroupId());
@@ -259,31 +263,7 @@ public class OrderGroupService extends AbstractService<PinOrderGroup> {
                     ResponseWrapper.wrap(PinConstants.StatusCode.INVALID_DATA, PinConstants.ResponseMessage.INVALID_DATA, null));
             return;
         }
-        JSONObject orderGroupJSON = generateOrderGroupJSON(orderGroup);
-        orderGroupJSON.put("message", "hello");
-        logger.info("Sending: " + orderGroupJSON.toJSONString());
-        stompMessageService.sendSingleUpdateMessage(customerPrincipal, orderGroupJSON);
-    }
-
-    /**
-     * @param orderGroup 团单对象
-     * @return 响应JSON
-     * @author flyhero
-     * 生成返回的JSON格式的orderGroup，由于多个地方会用到，因此将其抽离出来
-     */
-    private JSONObject generateOrderGroupJSON(PinOrderGroup orderGroup) {
-        JSONObject orderGroupJSON = (JSONObject) JSONObject.toJSON(orderGroup);
-        // 重新置入团单结束时间 => 转为时间戳
-        orderGroupJSON.put("closeTime", orderGroup.getCloseTime());
-        // 获取当前用户个人单包含的商品
-        List<PinOrderIndividual> orderIndividualsInCurrentGroup = orderIndividualService.getOrderIndividualsByOrderGroupId(orderGroup.getId());
-        orderIndividualsInCurrentGroup.forEach(orderIndividual -> {
-            orderIndividual.setUser(userService.findById(orderIndividual.getUserId()));
-            orderIndividual.setOrderItems(orderItemService.getOrderItemsByOrderIndividualId(orderIndividual.getId()));
-        });
-
-        orderGroupJSON.put("orderIndividuals", orderIndividualsInCurrentGroup);
-        return orderGroupJSON;
+        orderGroupRoomService.sendSnapshot(customerPrincipal, orderGroup);
     }
 
     /**
@@ -378,55 +358,56 @@ public class OrderGroupService extends AbstractService<PinOrderGroup> {
         }
     }
 
-    public List<PinOrderGroup> getAllWithOrderIndividual(Integer storeId) {
-        return pinOrderGroupMapper.getAllWithOrderIndividual(storeId);
-    }
-
-    public List<PinOrderGroup> getOrdersByOrderStatus(List<PinOrderGroup> list, Integer groupStatus) {
-        List<PinOrderGroup> returnList = new ArrayList<>();
-        switch (groupStatus) {
-            case 0://全部
-                return list;
-            case 1://正在拼团
-                for (PinOrderGroup item : list) {
-                    if (item.getStatus() == PinOrderGroup.STATUS_PINGING)
-                        returnList.add(item);
-                }
-                break;
-            case 2://已结束拼团
-                for (PinOrderGroup item : list) {
-                    if (item.getStatus() == PinOrderGroup.STATUS_FINISHED)
-                        returnList.add(item);
-                }
-                break;
+    /**
+     * 后台团单查询，只为当前页的团单加载子订单（子订单与订单商品各一条 IN 查询）
+     *
+     * @param condition 查询条件
+     * @return 当前页的团单，每个团单包含子订单，子订单包含订单商品及商品信息
+     */
+    public List<PinOrderGroup> queryForAdmin(OrderQueryCondition condition) {
+        List<PinOrderGroup> orderGroups = pinOrderGroupMapper.queryForAdmin(condition);
+        Map<Integer, List<PinOrderIndividual>> orderIndividualsByGroup = new HashMap<>();
+        for (PinOrderGroup orderGroup : orderGroups) {
+            orderIndividualsByGroup.put(orderGroup.getId(), new ArrayList<>());
+        }
+        for (PinOrderIndividual orderIndividual : orderIndividualService.getOrderIndividualsByOrderGroupIds(new ArrayList<>(orderIndividualsByGroup.keySet()))) {
+            orderIndividualsByGroup.get(orderIndividual.getOrderGroupId()).add(orderIndividual);
         }
-        return returnList;
+        for (PinOrderGroup orderGroup : orderGroups) {
+            orderGroup.setOrderIndividuals(orderIndividualsByGroup.get(orderGroup.getId()));
+        }
+        return orderGroups;
     }
 
-    public List<PinOrderGroup> getOrdersByDate(List<PinOrderGroup> list, Date begin, Date end) {
-        List<PinOrderGroup> returnList = new ArrayList<>();
-        if (begin != null && end != null) {
-            for (PinOrderGroup item : list) {
-                if (item.getCreateTime().getTime() <= end.getTime() && item.getCreateTime().getTime() >= begin.getTime())
-                    returnList.add(item);
-            }
-        } else if (begin == null && end != null) {
-            for (PinOrderGroup item : list) {
-                if (item.getCreateTime().getTime() <= end.getTime())
-                    returnList.add(item);
-            }
-        } else if (begin != null) {
-            for (PinOrderGroup item : list) {
-                if (item.getCreateTime().getTime() >= begin.getTime())
-                    returnList.add(item);
-            }
-        } else {
-            return list;
-        }
-        return returnList;
+    /**
+     * @param condition 查询条件
+     * @return 符合条件的团单总数
+     */
+    public Integer countForAdmin(OrderQueryCondition condition) {
+        return pinOrderGroupMapper.countForAdmin(condition);
     }
 
     public List<PinOrderGroup> getOrdersByStatus(Integer status) {
         return pinOrderGroupMapper.getOrderGroupsByStatus(status);
     }
+
+    /**
+     * 获取收团时间不晚于给定时间、仍在拼团中的团单
+     *
+     * @param before 收团时间上限
+     * @return 团单列表
+     */
+    public List<PinOrderGroup> getDueOrderGroups(Date before) {
+        return pinOrderGroupMapper.getDueOrderGroups(PinOrderGroup.STATUS_PINGING, before);
+    }
+
+    /**
+     * 结束团单，仅当团单仍处于拼团中时才会更新
+     *
+     * @param orderGroup 已设置总价和实际结束时间的团单
+     * @return 是否由本次调用结束了团单
+     */
+    public boolean finishOrderGroup(PinOrderGroup orderGroup) {
+        return pinOrderGroupMapper.finishOrderGroup(orderGroup.getId(), orderGroup.getTotalAmountOfMoneyPaid(), orderGroup.getActualFinishTime()) > 0;
+    }
 }
@@ -0,0 +1,232 @@
+package cn.edu.neu.shop.pin.service;
+
+import cn.edu.neu.shop.pin.mapper.PinOrderItemMapper;
+import cn.edu.neu.shop.pin.mapper.PinProductAttributeDefinitionMapper;
+import cn.edu.neu.shop.pin.mapper.PinProductAttributeValueMapper;
+import cn.edu.neu.shop.pin.mapper.PinProductMapper;
+import cn.edu.neu.shop.pin.mapper.PinStoreMapper;
+import cn.edu.neu.shop.pin.model.PinOrderIndividual;
+import cn.edu.neu.shop.pin.model.PinOrderItem;
+import cn.edu.neu.shop.pin.model.PinProduct;
+import cn.edu.neu.shop.pin.model.PinProductAttributeDefinition;
+import cn.edu.neu.shop.pin.model.PinProductAttributeValue;
+import cn.edu.neu.shop.pin.model.PinStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import tk.mybatis.mapper.entity.Condition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 订单商品批量加载器
+ * 组装购物车、子订单时，先收集整个请求涉及的商品、SKU、店铺ID，去重后每类实体只用一条 IN 查询加载，
+ * 取代逐条查询的 N+1 模式；同一个 Batch 内已加载的实体会被记住，不会重复查询
+ * Batch 只应在一次请求内使用，返回的实体是新查询出的对象，可以放心修改
+ */
+@Service
+public class OrderItemBatchLoader {
+
+    private final PinOrderItemMapper pinOrderItemMapper;
+
+    private final PinProductMapper pinProductMapper;
+
+    private final PinProductAttributeDefinitionMapper pinProductAttributeDefinitionMapper;
+
+    private final PinProductAttributeValueMapper pinProductAttributeValueMapper;
+
+    private final PinStoreMapper pinStoreMapper;
+
+    @Autowired
+    public OrderItemBatchLoader(PinOrderItemMapper pinOrderItemMapper, PinProductMapper pinProductMapper, PinProductAttributeDefinitionMapper pinProductAttributeDefinitionMapper, PinProductAttributeValueMapper pinProductAttributeValueMapper, PinStoreMapper pinStoreMapper) {
+        this.pinOrderItemMapper = pinOrderItemMapper;
+        this.pinProductMapper = pinProductMapper;
+        this.pinProductAttributeDefinitionMapper = pinProductAttributeDefinitionMapper;
+        this.pinProductAttributeValueMapper = pinProductAttributeValueMapper;
+        this.pinStoreMapper = pinStoreMapper;
+    }
+
+    /**
+     * @return 新的批量加载上下文
+     */
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * 一次请求内的批量加载上下文
+     */
+    public class Batch {
+
+        private final Map<Integer, PinProduct> products = new HashMap<>();
+
+        private final Map<Integer, PinProductAttributeValue> skus = new HashMap<>();
+
+        private final Map<Integer, PinStore> stores = new HashMap<>();
+
+        // 已加载 SKU 定义与全部 SKU 值的商品
+        private final Set<Integer> detailedProductIds = new LinkedHashSet<>();
+
+        private Batch() {
+        }
+
+        /**
+         * 为订单商品挂载商品与 SKU 信息
+         *
+         * @param orderItems 订单商品
+         * @param withDetail 商品是否包含 SKU 定义与全部 SKU 值（与商品详情一致）
+         * @param withStore  商品是否包含店铺信息
+         * @return 传入的订单商品
+         */
+        public List<PinOrderItem> assemble(List<PinOrderItem> orderItems, boolean withDetail, boolean withStore) {
+            Set<Integer> productIds = new LinkedHashSet<>();
+            Set<Integer> skuIds = new LinkedHashSet<>();
+            for (PinOrderItem item : orderItems) {
+                productIds.add(item.getProductId());
+                if (item.getSkuId() != null) {
+                    skuIds.add(item.getSkuId());
+                }
+            }
+            loadProducts(productIds);
+            if (withDetail) {
+                // 全部 SKU 值中已包含订单商品的 SKU，无需再单独查询
+                loadProductDetails(productIds);
+            }
+            loadSkus(skuIds);
+            if (withStore) {
+                Set<Integer> storeIds = new LinkedHashSet<>();
+                for (Integer productId : productIds) {
+                    PinProduct product = products.get(productId);
+                    if (product != null) {
+                        storeIds.add(product.getStoreId());
+                    }
+                }
+                loadStores(storeIds);
+            }
+            for (PinOrderItem item : orderItems) {
+                PinProduct product = products.get(item.getProductId());
+                if (product != null && withStore) {
+                    product.setStore(stores.get(product.getStoreId()));
+                }
+                item.setProduct(product);
+                item.setProductAttributeValue(item.getSkuId() == null ? null : skus.get(item.getSkuId()));
+            }
+            return orderItems;
+        }
+
+        /**
+         * 为子订单挂载订单商品（含商品与 SKU 信息）与店铺信息，订单商品用一条查询加载
+         *
+         * @param orderIndividuals 子订单
+         * @param withStore        子订单是否包含店铺信息
+         * @return 传入的子订单
+         */
+        public List<PinOrderIndividual> assembleOrderIndividuals(List<PinOrderIndividual> orderIndividuals, boolean withStore) {
+            if (orderIndividuals.isEmpty()) {
+                return orderIndividuals;
+            }
+            Set<Integer> orderIndividualIds = new LinkedHashSet<>();
+            Set<Integer> storeIds = new LinkedHashSet<>();
+            for (PinOrderIndividual orderIndividual : orderIndividuals) {
+                orderIndividualIds.add(orderIndividual.getId());
+                storeIds.add(orderIndividual.getStoreId());
+            }
+            Condition condition = new Condition(PinOrderItem.class);
+            condition.createCriteria().andIn("orderIndividualId", orderIndividualIds);
+            List<PinOrderItem> orderItems = assemble(pinOrderItemMapper.selectByCondition(condition), false, false);
+            Map<Integer, List<PinOrderItem>> orderItemsByIndividual = new HashMap<>();
+            for (PinOrderItem item : orderItems) {
+                orderItemsByIndividual.computeIfAbsent(item.getOrderIndividualId(), k -> new ArrayList<>()).add(item);
+            }
+            if (withStore) {
+                loadStores(storeIds);
+            }
+            for (PinOrderIndividual orderIndividual : orderIndividuals) {
+                orderIndividual.setOrderItems(orderItemsByIndividual.getOrDefault(orderIndividual.getId(), new ArrayList<>()));
+                if (withStore) {
+                    orderIndividual.setStore(stores.get(orderIndividual.getStoreId()));
+                }
+            }
+            return orderIndividuals;
+        }
+
+        private void loadProducts(Collection<Integer> ids) {
+            String missing = missingIds(ids, products);
+            if (missing != null) {
+                for (PinProduct product : pinProductMapper.selectByIds(missing)) {
+                    products.put(product.getId(), product);
+                }
+            }
+        }
+
+        private void loadProductDetails(Collection<Integer> ids) {
+            List<Integer> missing = new ArrayList<>();
+            for (Integer id : ids) {
+                if (products.containsKey(id) && !detailedProductIds.contains(id)) {
+                    missing.add(id);
+                }
+            }
+            if (missing.isEmpty()) {
+                return;
+            }
+            Condition definitionCondition = new Condition(PinProductAttributeDefinition.class);
+            definitionCondition.createCriteria().andIn("productId", missing);
+            Map<Integer, List<PinProductAttributeDefinition>> definitions = new HashMap<>();
+            for (PinProductAttributeDefinition definition : pinProductAttributeDefinitionMapper.selectByCondition(definitionCondition)) {
+                definitions.computeIfAbsent(definition.getProductId(), k -> new ArrayList<>()).add(definition);
+            }
+            Condition valueCondition = new Condition(PinProductAttributeValue.class);
+            valueCondition.createCriteria().andIn("productId", missing);
+            Map<Integer, List<PinProductAttributeValue>> values = new HashMap<>();
+            for (PinProductAttributeValue value : pinProductAttributeValueMapper.selectByCondition(valueCondition)) {
+                values.computeIfAbsent(value.getProductId(), k -> new ArrayList<>()).add(value);
+                skus.putIfAbsent(value.getId(), value);
+            }
+            for (Integer id : missing) {
+                PinProduct product = products.get(id);
+                product.setProductAttributeDefinitions(definitions.getOrDefault(id, new ArrayList<>()));
+                product.setProductAttributeValues(values.getOrDefault(id, new ArrayList<>()));
+                detailedProductIds.add(id);
+            }
+        }
+
+        private void loadSkus(Collection<Integer> ids) {
+            String missing = missingIds(ids, skus);
+            if (missing != null) {
+                for (PinProductAttributeValue sku : pinProductAttributeValueMapper.selectByIds(missing)) {
+                    skus.put(sku.getId(), sku);
+                }
+            }
+        }
+
+        private void loadStores(Collection<Integer> ids) {
+            String missing = missingIds(ids, stores);
+            if (missing != null) {
+                for (PinStore store : pinStoreMapper.selectByIds(missing)) {
+                    stores.put(store.getId(), store);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 尚未加载的ID（以逗号分隔，供 selectByIds 使用），全部已加载时返回 null
+     */
+    private static String missingIds(Collection<Integer> ids, Map<Integer, ?> loaded) {
+        StringBuilder builder = new StringBuilder();
+        for (Integer id : ids) {
+            if (id != null && !loaded.containsKey(id)) {
+                if (builder.length() > 0) {
+                    builder.append(",");
+                }
+                builder.append(id);
+            }
+        }
+        return builder.length() == 0 ? null : builder.toString();
+    }
+}
@@ -9,7 +9,6 @@ import cn.edu.neu.shop.pin.mapper.PinProductMapper;
 import cn.edu.neu.shop.pin.model.PinOrderItem;
 import cn.edu.neu.shop.pin.model.PinProduct;
 import cn.edu.neu.shop.pin.model.PinProductAttributeValue;
-import cn.edu.neu.shop.pin.model.PinStore;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
 import com.alibaba.fastjson.JSONArray;
 import org.springframework.stereotype.Service;
@@ -17,7 +16,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -42,12 +43,15 @@ public class OrderItemService extends AbstractService<PinOrderItem> {
 
     private final StoreService storeService;
 
-    public OrderItemService(PinOrderItemMapper pinOrderItemMapper, PinProductAttributeValueMapper pinProductAttributeValueMapper, PinProductMapper pinProductMapper, ProductService productService, StoreService storeService) {
+    private final OrderItemBatchLoader orderItemBatchLoader;
+
+    public OrderItemService(PinOrderItemMapper pinOrderItemMapper, PinProductAttributeValueMapper pinProductAttributeValueMapper, PinProductMapper pinProductMapper, ProductService productService, StoreService storeService, OrderItemBatchLoader orderItemBatchLoader) {
         this.pinOrderItemMapper = pinOrderItemMapper;
         this.pinProductAttributeValueMapper = pinProductAttributeValueMapper;
         this.pinProductMapper = pinProductMapper;
         this.productService = productService;
         this.storeService = storeService;
+        this.orderItemBatchLoader = orderItemBatchLoader;
     }
 
 
@@ -59,85 +63,30 @@ public class OrderItemService extends AbstractService<PinOrderItem> {
      * @return 返回由PinOrderItem组成的ArrayList
      */
     public List<PinOrderItem> getItemListByJSONArray(JSONArray array) {
-        List<PinOrderItem> list = new ArrayList<>();
-        for (int i = 0; i < array.size(); i++) {
-            //这个selectByPrimaryKey 不知道有没有用
-            list.add(pinOrderItemMapper.selectByPrimaryKey(array.getInteger(i)));
+        if (array == null || array.isEmpty()) {
+            return new ArrayList<>();
         }
-        return list;
-    }
-
-    /**
-     * ydy 未测试
-     * 通过JSONArray 传入PinOrderItem的数组
-     *
-     * @param array 数组 里面都是PinOrderItem的对象
-     * @return 返回商品总数
-     */
-    Integer getProductAmount(List<PinOrderItem> array) {
-        Integer amount = 0;
-        PinProduct product;
-        for (PinOrderItem item : array) {
-            amount += item.getAmount();
-            product = productService.getProductById(item.getProductId());
-            //同时将对应的商品的amount减去相应的数量
-            if (product.getStockCount() >= item.getAmount()) {
-                product.setStockCount(product.getStockCount() - item.getAmount());
-            } else {
-                //库存不够，返回-1
-                return -1;
+        // 一次查询全部记录，再按传入的顺序排列
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < array.size(); i++) {
+            if (i > 0) {
+                ids.append(",");
             }
+            ids.append(array.getInteger(i));
         }
-        return amount;
-    }
-
-    /**
-     * ydy 未测试
-     * 通过JSONArray 传入PinOrderItem的数组
-     *
-     * @param array 数组 里面都是PinOrderItem的对象
-     * @return 返回商品总数
-     */
-    BigDecimal getProductTotalPrice(List<PinOrderItem> array) {
-        //BigDecimal 尽量用字符串初始化
-        BigDecimal price = new BigDecimal("0");
-        for (PinOrderItem item : array) {
-            price = price.add(item.getTotalPrice());
+        Map<Integer, PinOrderItem> items = new HashMap<>();
+        for (PinOrderItem item : pinOrderItemMapper.selectByIds(ids.toString())) {
+            items.put(item.getId(), item);
         }
-        return price;
-    }
-
-    /**
-     * ydy 未测试
-     *
-     * @param array 传入一个PinOrderItem数组
-     * @return 返回总的邮费
-     */
-    BigDecimal getAllShippingFee(List<PinOrderItem> array) {
-        BigDecimal shippingFee = new BigDecimal("0");
-        PinProduct product;
-        for (PinOrderItem item : array) {
-            product = productService.getProductById(item.getProductId());
-            if (!product.getIsFreeShipping()) {
-                shippingFee = shippingFee.add(product.getShippingFee().multiply(new BigDecimal(item.getAmount())));
+        List<PinOrderItem> list = new ArrayList<>();
+        for (int i = 0; i < array.size(); i++) {
+            PinOrderItem item = items.get(array.getInteger(i));
+            if (item == null) {
+                throw new RecordNotFoundException("购物车记录不存在");
             }
+            list.add(item);
         }
-        return shippingFee;
-    }
-
-    /**
-     * ydy 未测试
-     * 传入所有的PinOrderItem的list，计算得到所有的成本
-     *
-     * @param array PinOrderItem的list
-     * @return 成本
-     */
-    BigDecimal getTotalCost(List<PinOrderItem> array) {
-        BigDecimal total = new BigDecimal("0");
-        for (PinOrderItem item : array) {
-            total = total.add(item.getTotalCost());
-        }
-        return total;
+        return list;
     }
 
     /**
@@ -168,15 +117,8 @@ public class OrderItemService extends AbstractService<PinOrderItem> {
         pinOrderItem.setOrderIndividualId(null);
         pinOrderItem.setIsSubmitted(false);
         List<PinOrderItem> list = pinOrderItemMapper.select(pinOrderItem);
-        for (PinOrderItem p : list) {
-            PinProduct pro = productService.getProductById(p.getProductId());
-            PinProductAttributeValue val = pinProductAttributeValueMapper.getSkuBySkuId(p.getSkuId());
-            PinStore store = storeService.getStoreById(pro.getStoreId());
-            pro.setStore(store);
-            p.setProduct(pro);
-            p.setProductAttributeValue(val);
-        }
-        return list;
+        // 商品、SKU、店铺各用一条查询批量加载
+        return orderItemBatchLoader.newBatch().assemble(list, true, true);
     }
 
     /**
@@ -233,14 +175,7 @@ public class OrderItemService extends AbstractService<PinOrderItem> {
         PinOrderItem orderItem = new PinOrderItem();
         orderItem.setOrderIndividualId(orderIndividualId);
         List<PinOrderItem> list = pinOrderItemMapper.select(orderItem);
-        for (PinOrderItem o : list) {
-            PinProduct product = pinProductMapper.getProductById(o.getProductId());
-            o.setProduct(product);
-            PinProductAttributeValue pinProductAttributeValue =
-                    pinProductAttributeValueMapper.selectByPrimaryKey(o.getSkuId());
-            o.setProductAttributeValue(pinProductAttributeValue);
-        }
-        return list;
+        return orderItemBatchLoader.newBatch().assemble(list, false, false);
     }
 
     /**
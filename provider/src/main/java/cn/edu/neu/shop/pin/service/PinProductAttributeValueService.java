@@ -2,8 +2,38 @@ package cn.edu.neu.shop.pin.service;
 
 import cn.edu.neu.shop.pin.model.PinProductAttributeValue;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
 public class PinProductAttributeValueService extends AbstractService<PinProductAttributeValue> {
+
+    private final InventoryService inventoryService;
+
+    @Autowired
+    public PinProductAttributeValueService(InventoryService inventoryService) {
+        this.inventoryService = inventoryService;
+    }
+
+    /**
+     * 修改 SKU，库存发生变化时同步调整 Redis 中的可售库存
+     */
+    @Override
+    public Integer update(PinProductAttributeValue model) {
+        PinProductAttributeValue old = model.getStock() == null ? null : findById(model.getId());
+        Integer result = super.update(model);
+        if (old != null) {
+            inventoryService.stockEdited(model.getId(), old.getStock() == null ? 0 : old.getStock(), model.getStock());
+        }
+        return result;
+    }
+
+    @Override
+    public void deleteById(Integer id) {
+        PinProductAttributeValue old = findById(id);
+        super.deleteById(id);
+        if (old != null) {
+            inventoryService.skuDeleted(old);
+        }
+    }
 }
@@ -1,82 +1,109 @@
 package cn.edu.neu.shop.pin.service;
 
 
-import cn.edu.neu.shop.pin.mapper.PinSettingsProductCategoryMapper;
+import cn.edu.neu.shop.pin.cache.ProductCategoryRegistry;
+import cn.edu.neu.shop.pin.message_queue.producer.MessageOnQueueProducer;
 import cn.edu.neu.shop.pin.model.PinSettingsProductCategory;
+import cn.edu.neu.shop.pin.util.PinConstants;
+import cn.edu.neu.shop.pin.util.TransactionUtils;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
-import com.alibaba.fastjson.JSONArray;
-import com.alibaba.fastjson.JSONObject;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 
+/**
+ * 商品分类服务
+ * 读取全部由 ProductCategoryRegistry 的内存快照提供；分类变更后（事务提交后）重新加载本节点的快照，并通知其他节点重新加载
+ */
 @Service
 public class ProductCategoryService extends AbstractService<PinSettingsProductCategory> {
 
-    private final PinSettingsProductCategoryMapper pinSettingsProductCategoryMapper;
+    private final ProductCategoryRegistry productCategoryRegistry;
 
-    public ProductCategoryService(PinSettingsProductCategoryMapper pinSettingsProductCategoryMapper) {
-        this.pinSettingsProductCategoryMapper = pinSettingsProductCategoryMapper;
+    private final MessageOnQueueProducer messageOnQueueProducer;
+
+    public ProductCategoryService(ProductCategoryRegistry productCategoryRegistry, MessageOnQueueProducer messageOnQueueProducer) {
+        this.productCategoryRegistry = productCategoryRegistry;
+        this.messageOnQueueProducer = messageOnQueueProducer;
     }
 
     /**
      * 层级获取商品分类表
      *
      * @param layer 层
-     * @return List
+     * @return 预先序列化的响应体
      */
-    public List<PinSettingsProductCategory> getProductCategoryByLayer(Integer layer) {
-        if (layer == null || layer.equals(0)) {
-            return pinSettingsProductCategoryMapper.getAllParentProductCategory();
-        } else {
-            return pinSettingsProductCategoryMapper.getAllSubProductCategory();
-        }
-
+    public byte[] getProductCategoryByLayer(Integer layer) {
+        return productCategoryRegistry.getByLayerResponse(layer);
     }
 
     /**
-     * 根据父分类获取商品分类表
+     * 获取嵌套商品分类表
      *
-     * @param parentId 父级分类ID
-     * @return List
+     * @return 预先序列化的响应体
      */
-    private List<PinSettingsProductCategory> getProductCategoryByParentId(Integer parentId) {
-        if (parentId == null || parentId.equals(0)) {
-            return pinSettingsProductCategoryMapper.getAllParentProductCategory();
-        } else {
-            PinSettingsProductCategory category = new PinSettingsProductCategory();
-            category.setParentCategoryId(parentId);
-            return pinSettingsProductCategoryMapper.select(category);
-        }
+    public byte[] getProductCategoryAll() {
+        return productCategoryRegistry.getAllResponse();
+    }
 
+    /**
+     * 获取后台使用的 {parent, child} 商品分类表
+     *
+     * @return 预先序列化的响应体
+     */
+    public byte[] getProductCategory() {
+        return productCategoryRegistry.getAdminListResponse();
     }
 
     /**
-     * 根据获取嵌套商品分类表
+     * 将分类展开为商品实际挂载的分类ID（一级分类包含其下所有二级分类）
      *
-     * @return JSONArray 嵌套的商品分类
+     * @param categoryId 分类ID
+     * @return 分类ID列表
      */
-    public JSONArray getProductCategoryAll() {
-        List<PinSettingsProductCategory> parents = pinSettingsProductCategoryMapper.getAllParentProductCategory();
-        JSONArray resultArray = new JSONArray();
-        for (PinSettingsProductCategory parentCategory : parents) {
-            JSONObject categoryJSON = (JSONObject) JSONObject.toJSON(parentCategory);
-            categoryJSON.put("subCategories", getProductCategoryByParentId(parentCategory.getId()));
-            resultArray.add(categoryJSON);
-        }
-        return resultArray;
+    public List<Integer> expandCategoryIds(Integer categoryId) {
+        return productCategoryRegistry.expandCategoryIds(categoryId);
+    }
+
+    @Override
+    public Integer save(PinSettingsProductCategory model) {
+        Integer result = super.save(model);
+        onCategoryChanged();
+        return result;
+    }
+
+    @Override
+    public Integer save(List<PinSettingsProductCategory> models) {
+        Integer result = super.save(models);
+        onCategoryChanged();
+        return result;
+    }
+
+    @Override
+    public Integer update(PinSettingsProductCategory model) {
+        Integer result = super.update(model);
+        onCategoryChanged();
+        return result;
+    }
+
+    @Override
+    public void deleteById(Integer id) {
+        super.deleteById(id);
+        onCategoryChanged();
+    }
+
+    @Override
+    public Integer deleteByIds(String ids) {
+        Integer result = super.deleteByIds(ids);
+        onCategoryChanged();
+        return result;
     }
 
-    public JSONArray getProductCategory() {
-        List<JSONObject> parents = pinSettingsProductCategoryMapper.getParentProductCategory();
-        JSONArray resultArray = new JSONArray();
-        for (JSONObject parent : parents) {
-            List<JSONObject> children = pinSettingsProductCategoryMapper.getSubProductCategory(parent.getInteger("id"));
-            JSONObject tempItem = new JSONObject();
-            tempItem.put("parent", parent);
-            tempItem.put("child", children);
-            resultArray.add(tempItem);
-        }
-        return resultArray;
+    private void onCategoryChanged() {
+        Runnable reload = () -> {
+            productCategoryRegistry.reload();
+            messageOnQueueProducer.broadcastSettingsChange(PinConstants.SettingsType.PRODUCT_CATEGORY);
+        };
+        TransactionUtils.runAfterCommit(reload);
     }
 }
@@ -6,7 +6,8 @@ import cn.edu.neu.shop.pin.mapper.PinProductAttributeValueMapper;
 import cn.edu.neu.shop.pin.mapper.PinUserProductCommentMapper;
 import cn.edu.neu.shop.pin.model.PinOrderIndividual;
 import cn.edu.neu.shop.pin.model.PinUserProductComment;
-import cn.edu.neu.shop.pin.nlp.NLPUtil;
+import cn.edu.neu.shop.pin.pipeline.CommentAnalysisPipeline;
+import cn.edu.neu.shop.pin.util.TransactionUtils;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.PageHelper;
@@ -15,7 +16,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
@@ -29,11 +29,20 @@ public class ProductCommentService extends AbstractService<PinUserProductComment
 
     private final PinProductAttributeValueMapper pinProductAttributeValueMapper;
 
+    private final StoreDashboardService storeDashboardService;
+
+    private final CommentAnalysisPipeline commentAnalysisPipeline;
+
+    private final ProductRatingService productRatingService;
+
     @Autowired
-    public ProductCommentService(PinUserProductCommentMapper pinUserProductCommentMapper, OrderIndividualService orderIndividualService, PinProductAttributeValueMapper pinProductAttributeValueMapper) {
+    public ProductCommentService(PinUserProductCommentMapper pinUserProductCommentMapper, OrderIndividualService orderIndividualService, PinProductAttributeValueMapper pinProductAttributeValueMapper, StoreDashboardService storeDashboardService, CommentAnalysisPipeline commentAnalysisPipeline, ProductRatingService productRatingService) {
         this.pinUserProductCommentMapper = pinUserProductCommentMapper;
         this.orderIndividualService = orderIndividualService;
         this.pinProductAttributeValueMapper = pinProductAttributeValueMapper;
+        this.storeDashboardService = storeDashboardService;
+        this.commentAnalysisPipeline = commentAnalysisPipeline;
+        this.productRatingService = productRatingService;
     }
 
     /**
@@ -41,6 +50,7 @@ public class ProductCommentService extends AbstractService<PinUserProductComment
      * @param comments 评论对象集合
      * @author flyhero
      * 为商品添加评论
+     * 评论以待分析状态入库，事务提交后再交给观点分析管道异步分析
      */
     @Transactional
     public void addComments(Integer userId, List<PinUserProductComment> comments) throws PermissionDeniedException, CommentFailedException {
@@ -63,15 +73,13 @@ public class ProductCommentService extends AbstractService<PinUserProductComment
             commentSample.setOrderIndividualId(orderIndividualId);
             commentSample.setSkuId(skuId);
             PinUserProductComment checkIfExists = pinUserProductCommentMapper.selectOne(commentSample);
-            // 加入评论观点分析
-            try {
-                comment.setCommentTag(NLPUtil.analyzeCommentTag(comment.getContent()));
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+            comment.setCommentTag(null);
             if (checkIfExists != null) { // 如果评论已存在，则覆盖更新这条评论
                 comment.setId(checkIfExists.getId());
                 this.update(comment);
+                // 选择性更新不会写入空字段，旧标签需要单独清除
+                pinUserProductCommentMapper.clearCommentTag(comment.getId());
+                productRatingService.commentSaved(checkIfExists, mergeForRating(checkIfExists, comment));
                 // 更新订单状态
                 orderIndividual.setStatus(PinOrderIndividual.STATUS_COMMENTED);
                 orderIndividualService.update(orderIndividual);
@@ -82,11 +90,34 @@ public class ProductCommentService extends AbstractService<PinUserProductComment
                 comment.setUserId(userId);
                 comment.setCreateTime(new Date());
                 pinUserProductCommentMapper.insert(comment); // 评论表中新增一条记录
+                productRatingService.commentSaved(null, comment);
+                storeDashboardService.commentCreated(orderIndividual.getStoreId(), comment.getCreateTime());
                 // 更新订单状态为已评价
                 orderIndividual.setStatus(PinOrderIndividual.STATUS_COMMENTED);
                 orderIndividualService.update(orderIndividual);
             }
         }
+        submitForAnalysis(comments);
+    }
+
+    /**
+     * 覆盖更新只写入非空字段，评分汇总需要按覆盖后的实际值计算
+     */
+    private static PinUserProductComment mergeForRating(PinUserProductComment before, PinUserProductComment update) {
+        PinUserProductComment merged = new PinUserProductComment();
+        merged.setProductId(update.getProductId() != null ? update.getProductId() : before.getProductId());
+        merged.setGrade(update.getGrade() != null ? update.getGrade() : before.getGrade());
+        merged.setProductScore(update.getProductScore() != null ? update.getProductScore() : before.getProductScore());
+        return merged;
+    }
+
+    /**
+     * 在事务提交后（没有事务时立即）提交观点分析，回滚的评论不会被分析
+     * 覆盖更新的评论可能仍在分析旧内容，以新内容取而代之
+     */
+    private void submitForAnalysis(List<PinUserProductComment> comments) {
+        Runnable submit = () -> comments.forEach(comment -> commentAnalysisPipeline.resubmit(comment.getId(), comment.getContent()));
+        TransactionUtils.runAfterCommit(submit);
     }
 
     /**
@@ -99,27 +130,6 @@ public class ProductCommentService extends AbstractService<PinUserProductComment
         return PageHelper.startPage(pageNum, pageSize).doSelectPageInfo(() -> pinUserProductCommentMapper.getCommentAndUserInfo(productId));
     }
 
-    /**
-     * 从当前时间算起，获取之前7天内每天的评论数
-     *
-     * @param storeId 店铺ID
-     * @return 获取评论数成功与否的状态
-     */
-    public Integer[] getComments(Integer storeId) {
-        Integer[] comment = new Integer[7];
-        Date date = new Date();
-        date = getDateByOffset(date, 1);
-        for (int i = 0; i < 7; i++) {
-            Date toDate = date;
-            date = getDateByOffset(date, -1);
-            Date fromDate = date;
-//            System.out.println("fromDate: " + fromDate + " --- toDate: " + toDate);
-            comment[i] = pinUserProductCommentMapper.getNumberOfComment(fromDate, toDate, storeId);
-//            System.out.println("comment[i]: " + comment[i]);
-        }
-        return comment;
-    }
-
     /**
      * 管理端
      * 分页获取商品评论信息 包括评论用户昵称和头像 购买商品类型
@@ -142,30 +152,6 @@ public class ProductCommentService extends AbstractService<PinUserProductComment
         }
     }
 
-    /**
-     * 获取该店铺商家未评论总数
-     *
-     * @param storeId 店铺ID
-     * @return 未评论的店家数量
-     */
-    public Integer getMerchantNotComment(Integer storeId) {
-        return pinUserProductCommentMapper.getNumberOfMerchantNotComment(storeId);
-    }
-
-    /**
-     * 指定偏移的天数，计算某天的日期
-     *
-     * @param today 当前时间
-     * @param delta 偏移量
-     * @return 希望得到的日期
-     */
-    private java.util.Date getDateByOffset(java.util.Date today, Integer delta) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(today);
-        calendar.set(Calendar.DATE, calendar.get(Calendar.DATE) + delta);
-        return calendar.getTime();
-    }
-
     /**
      * 获取某一店铺内尚未评论的产品列表
      *
@@ -177,6 +163,10 @@ public class ProductCommentService extends AbstractService<PinUserProductComment
     }
 
     public void updateMerchantCommentContent(Integer commentId, String commentContent, Date commentTime) {
+        PinUserProductComment comment = pinUserProductCommentMapper.selectByPrimaryKey(commentId);
         pinUserProductCommentMapper.updateMerchantComment(commentId, commentContent, commentTime);
+        if (comment != null && comment.getMerchantCommentContent() == null) {
+            storeDashboardService.commentReplied(comment.getProductId());
+        }
     }
 }
@@ -0,0 +1,106 @@
+package cn.edu.neu.shop.pin.service;
+
+import cn.edu.neu.shop.pin.mapper.PinOrderIndividualMapper;
+import cn.edu.neu.shop.pin.mapper.PinOrderItemMapper;
+import cn.edu.neu.shop.pin.mapper.PinProductMapper;
+import cn.edu.neu.shop.pin.mapper.PinSettingsConstantMapper;
+import cn.edu.neu.shop.pin.mapper.PinUserProductVisitRecordMapper;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * 商品访问量、销量增量计数服务
+ * 以浏览记录ID、子订单ID作为高水位检查点，每次只汇总检查点之后新增的记录，
+ * 按商品聚合后以 visit_count = visit_count + delta 的方式批量累加
+ * 检查点保存在 pin_settings_constant 中，并与计数更新处于同一事务，保证每条记录只被计入一次
+ */
+@Service
+public class ProductCounterService {
+
+    private static Logger logger = LoggerFactory.getLogger(ProductCounterService.class);
+
+    static final String VISIT_CHECKPOINT_KEY = "product_visit_count_checkpoint";
+
+    static final String SOLD_CHECKPOINT_KEY = "product_sold_count_checkpoint";
+
+    // 只汇总一分钟之前的记录，避免遗漏ID较小但尚未提交的记录
+    private static final long SETTLE_MILLIS = 60 * 1000;
+
+    // 单条 UPDATE 语句中最多包含的商品数
+    private static final int UPDATE_BATCH_SIZE = 500;
+
+    private final PinSettingsConstantMapper pinSettingsConstantMapper;
+
+    private final PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper;
+
+    private final PinOrderIndividualMapper pinOrderIndividualMapper;
+
+    private final PinOrderItemMapper pinOrderItemMapper;
+
+    private final PinProductMapper pinProductMapper;
+
+    @Autowired
+    public ProductCounterService(PinSettingsConstantMapper pinSettingsConstantMapper, PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper, PinOrderIndividualMapper pinOrderIndividualMapper, PinOrderItemMapper pinOrderItemMapper, PinProductMapper pinProductMapper) {
+        this.pinSettingsConstantMapper = pinSettingsConstantMapper;
+        this.pinUserProductVisitRecordMapper = pinUserProductVisitRecordMapper;
+        this.pinOrderIndividualMapper = pinOrderIndividualMapper;
+        this.pinOrderItemMapper = pinOrderItemMapper;
+        this.pinProductMapper = pinProductMapper;
+    }
+
+    /**
+     * 将检查点之后新增的浏览记录累加到商品访问量
+     *
+     * @return 本次更新的商品数
+     */
+    @Transactional
+    public int refreshVisitCounts() {
+        return refresh(VISIT_CHECKPOINT_KEY, pinUserProductVisitRecordMapper::getMaxIdBefore,
+                pinUserProductVisitRecordMapper::getVisitCountDeltas, pinProductMapper::increaseVisitCounts);
+    }
+
+    /**
+     * 将检查点之后新增的子订单中的商品数量累加到商品销量
+     *
+     * @return 本次更新的商品数
+     */
+    @Transactional
+    public int refreshSoldCounts() {
+        return refresh(SOLD_CHECKPOINT_KEY, pinOrderIndividualMapper::getMaxIdBefore,
+                pinOrderItemMapper::getSoldCountDeltas, pinProductMapper::increaseSoldCounts);
+    }
+
+    private int refresh(String checkpointKey, BiFunction<Integer, Date, Integer> maxIdLoader,
+                        BiFunction<Integer, Integer, List<JSONObject>> deltaLoader, Consumer<List<JSONObject>> deltaWriter) {
+        // 锁定检查点所在行，多个节点同时执行时只有一个能推进检查点
+        String checkpoint = pinSettingsConstantMapper.getConstantValueForUpdate(checkpointKey);
+        Date cutoff = new Date(System.currentTimeMillis() - SETTLE_MILLIS);
+        if (checkpoint == null) {
+            // 首次运行：从当前最大ID开始计数，不重复累加历史记录
+            Integer maxId = maxIdLoader.apply(0, cutoff);
+            pinSettingsConstantMapper.saveConstantValue(checkpointKey, String.valueOf(maxId == null ? 0 : maxId));
+            logger.info("初始化计数检查点 " + checkpointKey + " = " + maxId);
+            return 0;
+        }
+        Integer afterId = Integer.valueOf(checkpoint);
+        Integer toId = maxIdLoader.apply(afterId, cutoff);
+        if (toId == null) {
+            return 0;
+        }
+        List<JSONObject> deltas = deltaLoader.apply(afterId, toId);
+        for (int from = 0; from < deltas.size(); from += UPDATE_BATCH_SIZE) {
+            deltaWriter.accept(deltas.subList(from, Math.min(from + UPDATE_BATCH_SIZE, deltas.size())));
+        }
+        pinSettingsConstantMapper.saveConstantValue(checkpointKey, String.valueOf(toId));
+        return deltas.size();
+    }
+}
@@ -0,0 +1,181 @@
+package cn.edu.neu.shop.pin.service;
+
+import cn.edu.neu.shop.pin.mapper.PinProductRatingMapper;
+import cn.edu.neu.shop.pin.model.PinProductRating;
+import cn.edu.neu.shop.pin.model.PinUserProductComment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 商品评分汇总服务
+ * 每个商品的评论数、打分之和、好评数与 1~5 分直方图保存在 pin_product_rating 中，
+ * 评论新增或覆盖时在评论所在的事务中增量更新，读取平均分与好评率时不再对评论表做 AVG
+ */
+@Service
+public class ProductRatingService {
+
+    private static Logger logger = LoggerFactory.getLogger(ProductRatingService.class);
+
+    private final PinProductRatingMapper pinProductRatingMapper;
+
+    @Autowired
+    public ProductRatingService(PinProductRatingMapper pinProductRatingMapper) {
+        this.pinProductRatingMapper = pinProductRatingMapper;
+    }
+
+    /**
+     * 汇总表为空时（首次部署）在后台线程中按评论表统计一次
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (pinProductRatingMapper.selectCount(new PinProductRating()) > 0) {
+            return;
+        }
+        Thread builder = new Thread(this::rebuild, "product-rating-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * 按评论表重新统计全部商品的评分汇总
+     */
+    public void rebuild() {
+        try {
+            long start = System.currentTimeMillis();
+            pinProductRatingMapper.rebuildAll();
+            logger.info("商品评分汇总重建完成，耗时 " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            logger.error("商品评分汇总重建失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 评论新增或覆盖后更新汇总，需在评论所在的事务中调用
+     *
+     * @param before 覆盖前的评论，新增时为 null
+     * @param after  新增或覆盖后的评论
+     */
+    public void commentSaved(PinUserProductComment before, PinUserProductComment after) {
+        if (before != null && after != null && Objects.equals(before.getProductId(), after.getProductId())) {
+            PinProductRating delta = emptyDelta(after.getProductId());
+            accumulate(delta, before, -1);
+            accumulate(delta, after, 1);
+            pinProductRatingMapper.applyDelta(delta);
+            return;
+        }
+        if (before != null) {
+            PinProductRating delta = emptyDelta(before.getProductId());
+            accumulate(delta, before, -1);
+            pinProductRatingMapper.applyDelta(delta);
+        }
+        if (after != null) {
+            PinProductRating delta = emptyDelta(after.getProductId());
+            accumulate(delta, after, 1);
+            pinProductRatingMapper.applyDelta(delta);
+        }
+    }
+
+    /**
+     * @param productId 商品ID
+     * @return 商品的评分汇总，没有评论时各项为 0
+     */
+    public PinProductRating getRating(Integer productId) {
+        PinProductRating rating = pinProductRatingMapper.selectByPrimaryKey(productId);
+        return rating == null ? emptyDelta(productId) : rating;
+    }
+
+    /**
+     * 批量获取评分汇总（一次查询）
+     *
+     * @param productIds 商品ID
+     * @return 商品ID -> 评分汇总，没有评论的商品不在结果中
+     */
+    public Map<Integer, PinProductRating> getRatings(Collection<Integer> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        String ids = productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        return toMap(pinProductRatingMapper.selectByIds(ids));
+    }
+
+    /**
+     * @return 全部商品的评分汇总（一次查询）
+     */
+    public Map<Integer, PinProductRating> getAllRatings() {
+        return toMap(pinProductRatingMapper.selectAll());
+    }
+
+    private static Map<Integer, PinProductRating> toMap(Collection<PinProductRating> ratings) {
+        Map<Integer, PinProductRating> result = new HashMap<>();
+        for (PinProductRating rating : ratings) {
+            result.put(rating.getProductId(), rating);
+        }
+        return result;
+    }
+
+    /**
+     * 好评：有 grade 时以 grade = 0 为准，否则以打分不低于 4 分为准
+     */
+    private static boolean isGood(PinUserProductComment comment) {
+        if (comment.getGrade() != null) {
+            return comment.getGrade() == 0;
+        }
+        return comment.getProductScore() != null && comment.getProductScore() >= 4;
+    }
+
+    /**
+     * 与 rebuildAll 的 GROUP BY 统计一致：评论总是计入评论数，没有打分的评论不计入打分之和与直方图
+     */
+    private static void accumulate(PinProductRating delta, PinUserProductComment comment, int sign) {
+        delta.setCommentCount(delta.getCommentCount() + sign);
+        if (isGood(comment)) {
+            delta.setGoodCount(delta.getGoodCount() + sign);
+        }
+        Integer score = comment.getProductScore();
+        if (score == null) {
+            return;
+        }
+        delta.setScoreSum(delta.getScoreSum() + sign * score);
+        switch (PinProductRating.toStar(score)) {
+            case 1:
+                delta.setStar1Count(delta.getStar1Count() + sign);
+                break;
+            case 2:
+                delta.setStar2Count(delta.getStar2Count() + sign);
+                break;
+            case 3:
+                delta.setStar3Count(delta.getStar3Count() + sign);
+                break;
+            case 4:
+                delta.setStar4Count(delta.getStar4Count() + sign);
+                break;
+            default:
+                delta.setStar5Count(delta.getStar5Count() + sign);
+                break;
+        }
+    }
+
+    private static PinProductRating emptyDelta(Integer productId) {
+        PinProductRating rating = new PinProductRating();
+        rating.setProductId(productId);
+        rating.setCommentCount(0);
+        rating.setScoreSum(0);
+        rating.setGoodCount(0);
+        rating.setStar1Count(0);
+        rating.setStar2Count(0);
+        rating.setStar3Count(0);
+        rating.setStar4Count(0);
+        rating.setStar5Count(0);
+        return rating;
+    }
+}
@@ -1,22 +1,28 @@
 package cn.edu.neu.shop.pin.service;
 
+import cn.edu.neu.shop.pin.cache.ProductCategoryRegistry;
+import cn.edu.neu.shop.pin.cache.ProductDetailCache;
+import cn.edu.neu.shop.pin.exception.InvalidOperationException;
 import cn.edu.neu.shop.pin.mapper.*;
 import cn.edu.neu.shop.pin.model.*;
 import cn.edu.neu.shop.pin.mongo.document.ProductRichTextDescription;
 import cn.edu.neu.shop.pin.mongo.repository.ProductRichTextRepository;
+import cn.edu.neu.shop.pin.recommender.ItemCfRecommender;
 import cn.edu.neu.shop.pin.recommender.RecommenderCache;
+import cn.edu.neu.shop.pin.search.ProductSearchEngine;
+import cn.edu.neu.shop.pin.search.ProductSearchIndex;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
 import com.alibaba.fastjson.JSONObject;
+import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import tk.mybatis.mapper.entity.Condition;
 
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 /**
  * @author flyhero, LLG, CQF, YDY
@@ -24,6 +30,9 @@ import java.util.Optional;
 @Component
 public class ProductService extends AbstractService<PinProduct> {
 
+    // 搜索结果每页条数上限
+    private static final int SEARCH_MAX_PAGE_SIZE = 100;
+
     @Autowired
     private PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper;
     @Autowired
@@ -48,8 +57,20 @@ public class ProductService extends AbstractService<PinProduct> {
     // 推荐排名缓存
     private final RecommenderCache recommenderCache;
 
+    // 进程内物品协同过滤推荐，推荐排名尚未生成时使用
+    private final ItemCfRecommender itemCfRecommender;
+
+    // 商品详情缓存
+    private final ProductDetailCache productDetailCache;
+
+    // 商品关键字搜索引擎
+    private final ProductSearchEngine productSearchEngine;
+
+    // 商品分类注册表
+    private final ProductCategoryRegistry productCategoryRegistry;
+
     @Autowired
-    public ProductService(PinProductMapper pinProductMapper, PinProductAttributeDefinitionMapper pinProductAttributeDefinitionMapper, PinProductAttributeValueMapper pinProductAttributeValueMapper, PinUserProductCollectionMapper pinUserProductCollectionMapper, PinUserProductCommentMapper pinUserProductCommentMapper, StoreService storeService, ProductRichTextRepository productRichTextRepository, UserProductRecordService userProductRecordService, RecommenderCache recommenderCache) {
+    public ProductService(PinProductMapper pinProductMapper, PinProductAttributeDefinitionMapper pinProductAttributeDefinitionMapper, PinProductAttributeValueMapper pinProductAttributeValueMapper, PinUserProductCollectionMapper pinUserProductCollectionMapper, PinUserProductCommentMapper pinUserProductCommentMapper, StoreService storeService, ProductRichTextRepository productRichTextRepository, UserProductRecordService userProductRecordService, RecommenderCache recommenderCache, ItemCfRecommender itemCfRecommender, ProductDetailCache productDetailCache, ProductSearchEngine productSearchEngine, ProductCategoryRegistry productCategoryRegistry) {
         this.pinProductMapper = pinProductMapper;
         this.pinProductAttributeDefinitionMapper = pinProductAttributeDefinitionMapper;
         this.pinProductAttributeValueMapper = pinProductAttributeValueMapper;
@@ -59,16 +80,46 @@ public class ProductService extends AbstractService<PinProduct> {
         this.productRichTextRepository = productRichTextRepository;
         this.userProductRecordService = userProductRecordService;
         this.recommenderCache = recommenderCache;
+        this.itemCfRecommender = itemCfRecommender;
+        this.productDetailCache = productDetailCache;
+        this.productSearchEngine = productSearchEngine;
+        this.productCategoryRegistry = productCategoryRegistry;
     }
 
     /**
-     * 根据商品Id 获取商品详情信息
+     * 新增商品，并广播商品变更消息以便各节点更新搜索索引
+     *
+     * @param model 商品
+     * @return 影响行数
+     */
+    @Override
+    public Integer save(PinProduct model) {
+        Integer result = super.save(model);
+        productDetailCache.evict(model.getId());
+        return result;
+    }
+
+    /**
+     * 根据商品Id 获取商品详情信息，优先读取商品详情缓存
      *
      * @param productId 商品 ID
      * @return 单个PinProduct类实体
      */
     public PinProduct getProductById(Integer productId) {
+        return productDetailCache.getProduct(productId, this::loadProductById);
+    }
+
+    /**
+     * 从数据库加载完整的商品详情（含 SKU 定义与 SKU 值）
+     *
+     * @param productId 商品 ID
+     * @return 单个PinProduct类实体，不存在则返回 null
+     */
+    private PinProduct loadProductById(Integer productId) {
         PinProduct pinProduct = pinProductMapper.getProductById(productId);
+        if (pinProduct == null) {
+            return null;
+        }
         PinProductAttributeDefinition ppad = new PinProductAttributeDefinition();
         ppad.setProductId(productId);
         List<PinProductAttributeDefinition> defList = pinProductAttributeDefinitionMapper.select(ppad);
@@ -126,6 +177,7 @@ public class ProductService extends AbstractService<PinProduct> {
 
     /**
      * 根据分类ID，获取该分类下所有在售商品信息
+     * 传入一级分类时，通过分类注册表展开为其下所有二级分类，不再查询分类表
      *
      * @param categoryId 分类ID
      * @param pageNum    分页页码
@@ -133,11 +185,11 @@ public class ProductService extends AbstractService<PinProduct> {
      * @return 商品分页列表
      */
     public PageInfo<PinProduct> getProductByCategoryIdByPage(Integer categoryId, Integer pageNum, Integer pageSize) {
+        List<Integer> categoryIds = productCategoryRegistry.expandCategoryIds(categoryId);
         return PageHelper.startPage(pageNum, pageSize).doSelectPageInfo(() -> {
-            PinProduct pinProduct = new PinProduct();
-            pinProduct.setCategoryId(categoryId);
-            pinProductMapper.select(pinProduct);
-            // pinProductMapper.getProductByCategoryId(categoryId);
+            Condition condition = new Condition(PinProduct.class);
+            condition.createCriteria().andIn("categoryId", categoryIds);
+            pinProductMapper.selectByCondition(condition);
         });
     }
 
@@ -157,6 +209,8 @@ public class ProductService extends AbstractService<PinProduct> {
 
     /**
      * 返回推荐商品，支持分页操作
+     * 先从推荐排名中截取当前页的商品ID，再逐个从商品详情缓存读取，结果保持推荐顺序
+     * 用户还没有推荐排名时（例如新用户或模型服务不可用）改用进程内的物品协同过滤结果，仍没有结果时返回最新商品
      *
      * @param userId  用户 ID
      * @param pageNum  页面编号
@@ -165,21 +219,25 @@ public class ProductService extends AbstractService<PinProduct> {
      * @author LLG
      */
     public PageInfo<PinProduct> getRecommendedProductsByPage(Integer userId, int pageNum, int pageSize) {
-        List<Integer> rankedIds = recommenderCache.getCachedRankByUser(userId);
-        if(rankedIds == null) {
+        int[] rank = recommenderCache.getRank(userId);
+        if(rank.length == 0) {
+            rank = itemCfRecommender.recommend(userId);
+        }
+        if(rank.length == 0) {
             return getNewProductsByPage(pageNum, pageSize);
         }
-        StringBuilder rankStringBuilder = new StringBuilder();
-        int len = rankedIds.size();
-        for(int i = 0; i < len; i ++) {
-            rankStringBuilder.append(rankedIds.get(i));
-            if(i != len - 1) {
-                rankStringBuilder.append(",");
+        Page<PinProduct> page = new Page<>(pageNum, pageSize);
+        page.setTotal(rank.length);
+        int from = (int) Math.min((long) Math.max(pageNum - 1, 0) * pageSize, rank.length);
+        int to = Math.min(from + Math.max(pageSize, 0), rank.length);
+        for(int i = from; i < to; i ++) {
+            PinProduct product = getProductById(rank[i]);
+            // 排名中已被删除的商品直接跳过
+            if(product != null) {
+                page.add(product);
             }
         }
-        return PageHelper.startPage(pageNum, pageSize).doSelectPageInfo(() -> {
-            mapper.selectByIds(rankStringBuilder.toString());
-        });
+        return new PageInfo<>(page);
     }
 
     /**
@@ -284,9 +342,13 @@ public class ProductService extends AbstractService<PinProduct> {
      * @param productId 产品ID
      * @return 富文本字符串
      * @author LLG
-     * 获取来自MongoDB的产品富文描述
+     * 获取来自MongoDB的产品富文描述，优先读取商品详情缓存
      */
     public String getProductRichTextDescription(Integer productId) {
+        return productDetailCache.getRichText(productId, this::loadProductRichTextDescription);
+    }
+
+    private String loadProductRichTextDescription(Integer productId) {
         Optional<ProductRichTextDescription> productRichTextDescriptionOptional =
                 productRichTextRepository.findById(productId);
         if (productRichTextDescriptionOptional.isPresent()) {
@@ -320,6 +382,7 @@ public class ProductService extends AbstractService<PinProduct> {
             productRichTextDescription.setProductId(productId);
             productRichTextRepository.save(productRichTextDescription);
         }
+        productDetailCache.evict(productId);
     }
 
 //    /**
@@ -340,20 +403,131 @@ public class ProductService extends AbstractService<PinProduct> {
     @Transactional
     public void updateProductCategory(Integer productId, Integer categoryId) {
         pinProductMapper.updateProductCategory(productId, categoryId);
+        productDetailCache.evict(productId);
     }
 
     @Transactional
     public void updateProductIsShownStatus(Integer productId) {
         pinProductMapper.updateIsShownStatus(productId);
+        productDetailCache.evict(productId);
     }
 
     @Transactional
     public void updateProductIsNotShownStatus(Integer productId) {
         pinProductMapper.updateIsNotShownStatus(productId);
+        productDetailCache.evict(productId);
+    }
+
+    /**
+     * 商品的 SKU 定义或 SKU 值被修改后，使商品详情缓存失效
+     *
+     * @param productId 商品ID
+     */
+    public void evictProductCache(Integer productId) {
+        productDetailCache.evict(productId);
     }
 
-    public PageInfo<PinProduct> searchByKeyWordByPage(String keyword, Integer pageNum, Integer pageSize) {
-        return PageHelper.startPage(pageNum, pageSize).doSelectPageInfo(
-                ()->pinProductMapper.searchByKeyword(keyword));
+    /**
+     * 按关键字搜索商品，结果按相关度排序，支持分页操作
+     * 搜索索引尚未就绪时回退到数据库模糊查询
+     *
+     * @param keyword  关键字
+     * @param pageNum  页面编号
+     * @param pageSize 页面大小，超过 SEARCH_MAX_PAGE_SIZE 时取 SEARCH_MAX_PAGE_SIZE
+     * @return 商品分页列表
+     * @throws InvalidOperationException 页面大小不为正数
+     */
+    public PageInfo<PinProduct> searchByKeyWordByPage(String keyword, Integer pageNum, Integer pageSize) throws InvalidOperationException {
+        pageSize = checkSearchPageSize(pageSize);
+        pageNum = pageNum == null || pageNum < 1 ? 1 : pageNum;
+        ProductSearchIndex.SearchHits hits = productSearchEngine.search(keyword);
+        if (hits == null) {
+            return PageHelper.startPage(pageNum, pageSize).doSelectPageInfo(
+                    ()->pinProductMapper.searchByKeyword(keyword));
+        }
+        Page<PinProduct> page = new Page<>(pageNum, pageSize);
+        page.setTotal(hits.length());
+        page.addAll(getProductsByIdsInOrder(hits.slice(page.getStartRow(), pageSize)));
+        return new PageInfo<>(page);
+    }
+
+    /**
+     * 按关键字搜索商品，使用游标分页
+     * 游标格式为 "得分_商品ID"，即上一页最后一条记录的位置；首页游标为空
+     *
+     * @param keyword  关键字
+     * @param cursor   游标
+     * @param pageSize 页面大小，超过 SEARCH_MAX_PAGE_SIZE 时取 SEARCH_MAX_PAGE_SIZE
+     * @return JSON 包含商品列表 list 与下一页游标 nextCursor（无下一页时为 null）
+     * @throws InvalidOperationException 页面大小不为正数或游标格式有误
+     */
+    public JSONObject searchByKeyWordByCursor(String keyword, String cursor, Integer pageSize) throws InvalidOperationException {
+        pageSize = checkSearchPageSize(pageSize);
+        ProductSearchIndex.SearchHits hits = productSearchEngine.search(keyword);
+        if (hits == null) {
+            // 索引尚未就绪，使用数据库结果构造（得分均为 0）
+            List<PinProduct> matched = pinProductMapper.searchByKeyword(keyword);
+            int[] ids = new int[matched.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = matched.get(i).getId();
+            }
+            hits = ProductSearchIndex.SearchHits.unranked(ids);
+        }
+        int start = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] parts = cursor.split("_");
+            if (parts.length != 2) {
+                throw new InvalidOperationException("游标格式有误");
+            }
+            try {
+                start = hits.positionAfter(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+            } catch (NumberFormatException e) {
+                throw new InvalidOperationException("游标格式有误");
+            }
+        }
+        int[] pageIds = hits.slice(start, pageSize);
+        int end = start + pageIds.length;
+        JSONObject result = new JSONObject();
+        result.put("list", getProductsByIdsInOrder(pageIds));
+        result.put("nextCursor", end < hits.length() ? hits.scoreAt(end - 1) + "_" + hits.idAt(end - 1) : null);
+        return result;
+    }
+
+    private static int checkSearchPageSize(Integer pageSize) throws InvalidOperationException {
+        if (pageSize == null || pageSize <= 0) {
+            throw new InvalidOperationException("页面大小必须为正数");
+        }
+        return Math.min(pageSize, SEARCH_MAX_PAGE_SIZE);
+    }
+
+    /**
+     * 根据商品ID数组批量获取商品，并保持数组中的顺序
+     *
+     * @param ids 商品ID数组
+     * @return 商品列表
+     */
+    List<PinProduct> getProductsByIdsInOrder(int[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        StringBuilder idsBuilder = new StringBuilder();
+        for (int i = 0; i < ids.length; i++) {
+            if (i != 0) {
+                idsBuilder.append(",");
+            }
+            idsBuilder.append(ids[i]);
+        }
+        Map<Integer, PinProduct> productMap = new HashMap<>();
+        for (PinProduct product : pinProductMapper.selectByIds(idsBuilder.toString())) {
+            productMap.put(product.getId(), product);
+        }
+        List<PinProduct> products = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            PinProduct product = productMap.get(id);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
     }
 }
@@ -1,15 +1,52 @@
 package cn.edu.neu.shop.pin.service;
 
+import cn.edu.neu.shop.pin.cache.SettingsConstantRegistry;
+import cn.edu.neu.shop.pin.mapper.PinSettingsConstantMapper;
+import cn.edu.neu.shop.pin.message_queue.producer.MessageOnQueueProducer;
 import cn.edu.neu.shop.pin.model.PinSettingsConstant;
+import cn.edu.neu.shop.pin.util.PinConstants;
+import cn.edu.neu.shop.pin.util.TransactionUtils;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * 设置常量服务
+ * 读取由 SettingsConstantRegistry 的内存快照提供；修改常量时同时自增版本号，事务提交后重新加载本节点并通知其他节点
+ */
 @Service
 public class SettingsConstantService extends AbstractService<PinSettingsConstant> {
 
+    private final PinSettingsConstantMapper pinSettingsConstantMapper;
+
+    private final SettingsConstantRegistry settingsConstantRegistry;
+
+    private final MessageOnQueueProducer messageOnQueueProducer;
+
+    public SettingsConstantService(PinSettingsConstantMapper pinSettingsConstantMapper, SettingsConstantRegistry settingsConstantRegistry, MessageOnQueueProducer messageOnQueueProducer) {
+        this.pinSettingsConstantMapper = pinSettingsConstantMapper;
+        this.settingsConstantRegistry = settingsConstantRegistry;
+        this.messageOnQueueProducer = messageOnQueueProducer;
+    }
+
     public String findByKey(String key) {
-        PinSettingsConstant constant = new PinSettingsConstant();
-        constant.setConstantKey(key);
-        return mapper.selectOne(constant).getConstantValue();
+        return settingsConstantRegistry.getString(key);
+    }
+
+    /**
+     * 保存设置常量（不存在则新增）
+     *
+     * @param key   常量键
+     * @param value 常量值
+     */
+    @Transactional
+    public void saveConstant(String key, String value) {
+        pinSettingsConstantMapper.saveConstantValue(key, value);
+        pinSettingsConstantMapper.increaseVersion(SettingsConstantRegistry.VERSION_KEY);
+        Runnable reload = () -> {
+            settingsConstantRegistry.reload();
+            messageOnQueueProducer.broadcastSettingsChange(PinConstants.SettingsType.CONSTANT);
+        };
+        TransactionUtils.runAfterCommit(reload);
     }
 }
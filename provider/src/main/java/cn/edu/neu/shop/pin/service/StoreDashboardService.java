@@ -0,0 +1,428 @@
+package cn.edu.neu.shop.pin.service;
+
+import cn.edu.neu.shop.pin.cache.LocalLruCache;
+import cn.edu.neu.shop.pin.lock.DistributedLockEngine;
+import cn.edu.neu.shop.pin.mapper.PinOrderIndividualMapper;
+import cn.edu.neu.shop.pin.mapper.PinProductMapper;
+import cn.edu.neu.shop.pin.mapper.PinStoreMapper;
+import cn.edu.neu.shop.pin.mapper.PinUserProductCommentMapper;
+import cn.edu.neu.shop.pin.mapper.PinUserProductVisitRecordMapper;
+import cn.edu.neu.shop.pin.model.PinProduct;
+import cn.edu.neu.shop.pin.model.PinStore;
+import cn.edu.neu.shop.pin.model.PinUserProductVisitRecord;
+import cn.edu.neu.shop.pin.util.TransactionUtils;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 店铺首页看板计数服务
+ * 在 Redis 中按店铺保存两类计数：每日计数（订单、评论、浏览、退款申请，每天一个 Hash）与当前计数
+ * （待发货、退款中、待回复评论、库存预警）。业务事件发生时增量更新，每晚再以 GROUP BY 统计全量重建一次，纠正可能的偏差
+ * 同一店铺的键使用相同的 hash tag，读取看板时用一个 Lua 脚本一次取回全部计数，耗时与历史数据量无关
+ */
+@Service
+public class StoreDashboardService {
+
+    private static Logger logger = LoggerFactory.getLogger(StoreDashboardService.class);
+
+    public static final String DAILY_ORDERS = "orders";
+    public static final String DAILY_COMMENTS = "comments";
+    public static final String DAILY_VISITS = "visits";
+    public static final String DAILY_REFUNDS = "refunds";
+
+    public static final String GAUGE_UNSHIPPED = "unshipped";
+    public static final String GAUGE_REFUNDING = "refunding";
+    public static final String GAUGE_UNREPLIED = "unreplied";
+    public static final String GAUGE_LOW_STOCK = "lowStock";
+
+    private static final List<String> DAILY_FIELDS = Arrays.asList(DAILY_ORDERS, DAILY_COMMENTS, DAILY_VISITS, DAILY_REFUNDS);
+
+    private static final List<String> GAUGE_FIELDS = Arrays.asList(GAUGE_UNSHIPPED, GAUGE_REFUNDING, GAUGE_UNREPLIED, GAUGE_LOW_STOCK);
+
+    // 看板展示的天数
+    public static final int DAYS = 7;
+
+    // 每日计数保留的天数
+    private static final long DAILY_KEY_TTL_DAYS = 40;
+
+    private static final String REBUILT_KEY = "dashboard:rebuilt";
+
+    private static final String REBUILD_LOCK_KEY = "dashboard:rebuild-lock";
+
+    private static final long REBUILD_LEASE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * KEYS[1] 每日计数键，KEYS[2] 当前计数键
+     * ARGV: 每日计数字段, 增量, 当前计数字段, 增量, 每日计数键的过期秒数；字段为空字符串时跳过
+     */
+    private static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "if ARGV[1] ~= '' then " +
+                    "redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2]) " +
+                    "redis.call('expire', KEYS[1], ARGV[5]) " +
+                    "end " +
+                    "if ARGV[3] ~= '' then redis.call('hincrby', KEYS[2], ARGV[3], ARGV[4]) end " +
+                    "return 1", Long.class);
+
+    /**
+     * KEYS 为若干每日计数键，最后一个为当前计数键
+     * ARGV[1] 为每日计数字段数 n，随后 n 个每日计数字段，其余为当前计数字段
+     * 按键的顺序依次返回每个键中各字段的值
+     */
+    private static final RedisScript<List> READ_SCRIPT = new DefaultRedisScript<>(
+            "local n = tonumber(ARGV[1]) " +
+                    "local dailyFields = {unpack(ARGV, 2, n + 1)} " +
+                    "local gaugeFields = {unpack(ARGV, n + 2)} " +
+                    "local result = {} " +
+                    "for i = 1, #KEYS do " +
+                    "local fields = i < #KEYS and dailyFields or gaugeFields " +
+                    "local values = redis.call('hmget', KEYS[i], unpack(fields)) " +
+                    "for j = 1, #fields do result[#result + 1] = values[j] end " +
+                    "end " +
+                    "return result", List.class);
+
+    @Value("${pin.dashboard.rebuild-days:" + DAYS + "}")
+    private int rebuildDays;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final PinOrderIndividualMapper pinOrderIndividualMapper;
+
+    private final PinUserProductCommentMapper pinUserProductCommentMapper;
+
+    private final PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper;
+
+    private final PinProductMapper pinProductMapper;
+
+    private final PinStoreMapper pinStoreMapper;
+
+    private final DistributedLockEngine distributedLockEngine;
+
+    // 商品ID -> 店铺ID，商品不会更换店铺
+    private final LocalLruCache<Integer, Integer> productStores = new LocalLruCache<>(100000, 0);
+
+    @Autowired
+    public StoreDashboardService(RedisTemplate<String, String> redisTemplate, PinOrderIndividualMapper pinOrderIndividualMapper, PinUserProductCommentMapper pinUserProductCommentMapper, PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper, PinProductMapper pinProductMapper, PinStoreMapper pinStoreMapper, DistributedLockEngine distributedLockEngine) {
+        this.redisTemplate = redisTemplate;
+        this.pinOrderIndividualMapper = pinOrderIndividualMapper;
+        this.pinUserProductCommentMapper = pinUserProductCommentMapper;
+        this.pinUserProductVisitRecordMapper = pinUserProductVisitRecordMapper;
+        this.pinProductMapper = pinProductMapper;
+        this.pinStoreMapper = pinStoreMapper;
+        this.distributedLockEngine = distributedLockEngine;
+    }
+
+    /**
+     * 读取店铺看板，一次 Redis 往返
+     *
+     * @param storeId 店铺ID
+     * @return 各项每日计数（长度为 DAYS 的数组，下标 0 为今天，依次向前）以及各项当前计数
+     */
+    public JSONObject getDashboard(Integer storeId) {
+        LocalDate today = LocalDate.now();
+        List<String> keys = new ArrayList<>(DAYS + 1);
+        for (int i = 0; i < DAYS; i++) {
+            keys.add(getDailyKey(storeId, today.minusDays(i)));
+        }
+        keys.add(getGaugeKey(storeId));
+        List<Object> args = new ArrayList<>();
+        args.add(String.valueOf(DAILY_FIELDS.size()));
+        args.addAll(DAILY_FIELDS);
+        args.addAll(GAUGE_FIELDS);
+        List<?> values = redisTemplate.execute(READ_SCRIPT, keys, args.toArray());
+        values = values == null ? new ArrayList<>() : values;
+        int width = DAILY_FIELDS.size();
+        JSONObject dashboard = new JSONObject();
+        for (int f = 0; f < width; f++) {
+            Integer[] series = new Integer[DAYS];
+            for (int i = 0; i < DAYS; i++) {
+                series[i] = parse(values, i * width + f);
+            }
+            dashboard.put(DAILY_FIELDS.get(f), series);
+        }
+        for (int f = 0; f < GAUGE_FIELDS.size(); f++) {
+            dashboard.put(GAUGE_FIELDS.get(f), Math.max(parse(values, DAYS * width + f), 0));
+        }
+        return dashboard;
+    }
+
+    /**
+     * 新建子订单：当日订单数、待发货数加一
+     */
+    public void orderCreated(Integer storeId, Date createTime) {
+        increment(storeId, createTime, DAILY_ORDERS, 1, GAUGE_UNSHIPPED, 1);
+    }
+
+    /**
+     * 子订单离开待发货状态（发货、退款处理）：待发货数减一
+     */
+    public void orderLeftUnshipped(Integer storeId) {
+        increment(storeId, null, null, 0, GAUGE_UNSHIPPED, -1);
+    }
+
+    /**
+     * 用户申请退款：当日退款申请数、退款中数加一
+     */
+    public void refundApplied(Integer storeId, Date applyTime) {
+        increment(storeId, applyTime, DAILY_REFUNDS, 1, GAUGE_REFUNDING, 1);
+    }
+
+    /**
+     * 商家处理退款申请：退款中数减一
+     */
+    public void refundResolved(Integer storeId) {
+        increment(storeId, null, null, 0, GAUGE_REFUNDING, -1);
+    }
+
+    /**
+     * 用户发表新评论：当日评论数、待回复评论数加一
+     */
+    public void commentCreated(Integer storeId, Date createTime) {
+        increment(storeId, createTime, DAILY_COMMENTS, 1, GAUGE_UNREPLIED, 1);
+    }
+
+    /**
+     * 商家首次回复评论：待回复评论数减一
+     *
+     * @param productId 被评论的商品ID
+     */
+    public void commentReplied(Integer productId) {
+        try {
+            increment(getStoreIdsOfProducts(Collections.singletonList(productId)).get(productId), null, null, 0, GAUGE_UNREPLIED, -1);
+        } catch (Exception e) {
+            logger.error("更新看板待回复评论数失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 一批浏览记录已写入：按店铺与浏览记录自身的日期合并后累加浏览量，商品所属店铺只在首次出现时查询
+     * 批量写入可能晚于浏览发生的时间（例如跨过零点），因此不能按写入时的日期计数
+     *
+     * @param visitRecords 已写入的浏览记录
+     */
+    public void visitsRecorded(Collection<PinUserProductVisitRecord> visitRecords) {
+        try {
+            Set<Integer> productIds = new HashSet<>();
+            for (PinUserProductVisitRecord visitRecord : visitRecords) {
+                productIds.add(visitRecord.getProductId());
+            }
+            Map<Integer, Integer> storeIds = getStoreIdsOfProducts(productIds);
+            // 店铺ID -> 日期 -> 浏览次数
+            Map<Integer, Map<LocalDate, Integer>> storeVisits = new HashMap<>();
+            for (PinUserProductVisitRecord visitRecord : visitRecords) {
+                Integer storeId = storeIds.get(visitRecord.getProductId());
+                if (storeId != null) {
+                    storeVisits.computeIfAbsent(storeId, id -> new HashMap<>()).merge(toDay(visitRecord.getVisitTime()), 1, Integer::sum);
+                }
+            }
+            storeVisits.forEach((storeId, days) -> days.forEach((day, count) -> incrementOnDay(storeId, day, DAILY_VISITS, count, null, 0)));
+        } catch (Exception e) {
+            logger.error("更新看板浏览量失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 商品库存变化后重新统计这些店铺的库存预警商品数
+     *
+     * @param productIds 库存发生变化的商品
+     */
+    public void stockChanged(Collection<Integer> productIds) {
+        try {
+            for (Integer storeId : new HashSet<>(getStoreIdsOfProducts(productIds).values())) {
+                Integer lowStock = pinProductMapper.getNumberOfProductLessStock(storeId);
+                redisTemplate.opsForHash().put(getGaugeKey(storeId), GAUGE_LOW_STOCK, String.valueOf(lowStock == null ? 0 : lowStock));
+            }
+        } catch (Exception e) {
+            logger.error("更新看板库存预警数失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 首次启动时（Redis 中尚无看板数据）在后台线程中回填
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(REBUILT_KEY))) {
+            return;
+        }
+        Thread builder = new Thread(this::rebuild, "dashboard-rollup-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * 以 GROUP BY 统计重建最近若干天的每日计数与全部当前计数，多个节点同时执行时只有一个生效
+     * 重建期间发生的少量增量可能被覆盖，下一次重建时会再次纠正
+     */
+    @Scheduled(cron = "${pin.dashboard.rebuild-cron:0 30 3 * * ?}")
+    public void rebuild() {
+        DistributedLockEngine.Handle handle;
+        try {
+            handle = distributedLockEngine.tryLock(REBUILD_LOCK_KEY, REBUILD_LOCK_KEY, "dashboard", REBUILD_LEASE_MILLIS, 0, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (handle == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            LocalDate today = LocalDate.now();
+            LocalDate firstDay = today.minusDays(rebuildDays - 1);
+            Date from = Date.from(firstDay.atStartOfDay(ZoneId.systemDefault()).toInstant());
+            // 店铺ID -> 天 -> 字段 -> 计数，没有记录的天和字段补零
+            Map<Integer, Map<String, Map<String, String>>> daily = new HashMap<>();
+            Map<Integer, Map<String, String>> gauges = new HashMap<>();
+            Set<Integer> storeIds = new HashSet<>();
+            for (PinStore store : pinStoreMapper.selectAll()) {
+                storeIds.add(store.getId());
+            }
+            for (Integer storeId : storeIds) {
+                Map<String, Map<String, String>> days = new HashMap<>();
+                for (LocalDate day = firstDay; !day.isAfter(today); day = day.plusDays(1)) {
+                    days.put(day.format(DAY_FORMAT), zeros(DAILY_FIELDS));
+                }
+                daily.put(storeId, days);
+                gauges.put(storeId, zeros(GAUGE_FIELDS));
+            }
+            fillDaily(daily, DAILY_ORDERS, pinOrderIndividualMapper.getDailyOrderCounts(from));
+            fillDaily(daily, DAILY_REFUNDS, pinOrderIndividualMapper.getDailyRefundCounts(from));
+            fillDaily(daily, DAILY_COMMENTS, pinUserProductCommentMapper.getDailyCommentCounts(from));
+            fillDaily(daily, DAILY_VISITS, pinUserProductVisitRecordMapper.getDailyVisitCounts(from));
+            fillGauge(gauges, GAUGE_UNSHIPPED, pinOrderIndividualMapper.getUnshippedCountsByStore());
+            fillGauge(gauges, GAUGE_REFUNDING, pinOrderIndividualMapper.getRefundingCountsByStore());
+            fillGauge(gauges, GAUGE_UNREPLIED, pinUserProductCommentMapper.getUnrepliedCountsByStore());
+            fillGauge(gauges, GAUGE_LOW_STOCK, pinProductMapper.getLowStockCountsByStore());
+            daily.forEach((storeId, days) -> days.forEach((day, counts) -> {
+                String key = getDailyKey(storeId, LocalDate.parse(day, DAY_FORMAT));
+                redisTemplate.opsForHash().putAll(key, counts);
+                redisTemplate.expire(key, DAILY_KEY_TTL_DAYS, TimeUnit.DAYS);
+            }));
+            gauges.forEach((storeId, counts) -> redisTemplate.opsForHash().putAll(getGaugeKey(storeId), counts));
+            redisTemplate.opsForValue().set(REBUILT_KEY, String.valueOf(System.currentTimeMillis()));
+            logger.info("看板计数重建完成：" + storeIds.size() + " 个店铺，" + rebuildDays + " 天，耗时 " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            logger.error("看板计数重建失败：" + e.getMessage());
+        } finally {
+            distributedLockEngine.unlock(handle);
+        }
+    }
+
+    /**
+     * 在事务提交后（没有事务时立即）更新计数，回滚的业务不会被计入
+     */
+    private void increment(Integer storeId, Date time, String dailyField, int dailyDelta, String gaugeField, int gaugeDelta) {
+        incrementOnDay(storeId, toDay(time), dailyField, dailyDelta, gaugeField, gaugeDelta);
+    }
+
+    private void incrementOnDay(Integer storeId, LocalDate day, String dailyField, int dailyDelta, String gaugeField, int gaugeDelta) {
+        if (storeId == null) {
+            return;
+        }
+        Runnable task = () -> {
+            try {
+                redisTemplate.execute(INCREMENT_SCRIPT, Arrays.asList(getDailyKey(storeId, day), getGaugeKey(storeId)),
+                        dailyField == null ? "" : dailyField, String.valueOf(dailyDelta),
+                        gaugeField == null ? "" : gaugeField, String.valueOf(gaugeDelta),
+                        String.valueOf(TimeUnit.DAYS.toSeconds(DAILY_KEY_TTL_DAYS)));
+            } catch (Exception e) {
+                // 计数偏差会在下一次重建时纠正
+                logger.error("更新店铺 #" + storeId + " 看板计数失败：" + e.getMessage());
+            }
+        };
+        TransactionUtils.runAfterCommit(task);
+    }
+
+    private static LocalDate toDay(Date time) {
+        return time == null ? LocalDate.now() : time.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private Map<Integer, Integer> getStoreIdsOfProducts(Collection<Integer> productIds) {
+        Map<Integer, Integer> storeIds = new HashMap<>();
+        StringBuilder missing = new StringBuilder();
+        for (Integer productId : productIds) {
+            Integer storeId = productStores.get(productId);
+            if (storeId != null) {
+                storeIds.put(productId, storeId);
+            } else {
+                missing.append(missing.length() > 0 ? "," : "").append(productId);
+            }
+        }
+        if (missing.length() > 0) {
+            for (PinProduct product : pinProductMapper.selectByIds(missing.toString())) {
+                productStores.put(product.getId(), product.getStoreId());
+                storeIds.put(product.getId(), product.getStoreId());
+            }
+        }
+        return storeIds;
+    }
+
+    private static void fillDaily(Map<Integer, Map<String, Map<String, String>>> daily, String field, List<JSONObject> rows) {
+        for (JSONObject row : rows) {
+            Map<String, Map<String, String>> days = daily.get(row.getInteger("storeId"));
+            Map<String, String> counts = days == null ? null : days.get(row.getString("day"));
+            if (counts != null) {
+                counts.put(field, row.getString("num"));
+            }
+        }
+    }
+
+    private static void fillGauge(Map<Integer, Map<String, String>> gauges, String field, List<JSONObject> rows) {
+        for (JSONObject row : rows) {
+            Map<String, String> counts = gauges.get(row.getInteger("storeId"));
+            if (counts != null) {
+                counts.put(field, row.getString("num"));
+            }
+        }
+    }
+
+    private static Map<String, String> zeros(List<String> fields) {
+        Map<String, String> counts = new HashMap<>();
+        for (String field : fields) {
+            counts.put(field, "0");
+        }
+        return counts;
+    }
+
+    private static int parse(List<?> values, int index) {
+        if (index >= values.size() || values.get(index) == null) {
+            return 0;
+        }
+        return Integer.parseInt(values.get(index).toString());
+    }
+
+    private static String getDailyKey(Integer storeId, LocalDate day) {
+        return "dashboard:{s" + storeId + "}:day:" + day.format(DAY_FORMAT);
+    }
+
+    private static String getGaugeKey(Integer storeId) {
+        return "dashboard:{s" + storeId + "}:gauge";
+    }
+}
@@ -3,8 +3,15 @@ package cn.edu.neu.shop.pin.service;
 import cn.edu.neu.shop.pin.mongo.document.UserProductInteraction;
 import cn.edu.neu.shop.pin.mongo.repository.UserProductInteractionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -13,11 +20,27 @@ import java.util.Optional;
 @Service
 public class UserProductInteractionService {
 
+    private static final double VISIT_ADJUSTMENT = 0.2;
+
     private final UserProductInteractionRepository userProductInteractionRepository;
 
+    private final MongoTemplate mongoTemplate;
+
     @Autowired
-    public UserProductInteractionService(UserProductInteractionRepository userProductInteractionRepository) {
+    public UserProductInteractionService(UserProductInteractionRepository userProductInteractionRepository, MongoTemplate mongoTemplate) {
         this.userProductInteractionRepository = userProductInteractionRepository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * 交互记录的文档ID
+     *
+     * @param userId    用户ID
+     * @param productId 商品ID
+     * @return 形如 userId-productId 的文档ID
+     */
+    public static String getInteractionId(Integer userId, Integer productId) {
+        return userId + "-" + productId;
     }
 
     private void adjustUserProductInteraction(Integer userId, Integer productId, Double adjustment) {
@@ -32,13 +55,38 @@ public class UserProductInteractionService {
             interaction.setProductId(productId);
             interaction.setUserId(userId);
             interaction.setInteractionValue(adjustment);
-            interaction.setInteractionId(userId + "-" + productId);
+            interaction.setInteractionId(getInteractionId(userId, productId));
         }
+        interaction.setUpdateTime(new Date());
         userProductInteractionRepository.save(interaction);
     }
 
     public void visitProduct(Integer userId, Integer productId) {
-        adjustUserProductInteraction(userId, productId, 0.2);
+        adjustUserProductInteraction(userId, productId, VISIT_ADJUSTMENT);
+    }
+
+    /**
+     * 批量累加浏览商品的交互度量值
+     * 以 $inc upsert 的方式一次性写入，不再逐条读取-修改-保存
+     *
+     * @param visitCounts 交互记录ID（userId-productId）到浏览次数的映射
+     */
+    public void batchVisitProduct(Map<String, Integer> visitCounts) {
+        if (visitCounts.isEmpty()) {
+            return;
+        }
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserProductInteraction.class);
+        Date now = new Date();
+        visitCounts.forEach((interactionId, count) -> {
+            int separator = interactionId.indexOf('-');
+            Update update = new Update()
+                    .inc("interactionValue", VISIT_ADJUSTMENT * count)
+                    .set("updateTime", now)
+                    .setOnInsert("userId", Integer.valueOf(interactionId.substring(0, separator)))
+                    .setOnInsert("productId", Integer.valueOf(interactionId.substring(separator + 1)));
+            operations.upsert(new Query(Criteria.where("_id").is(interactionId)), update);
+        });
+        operations.execute();
     }
 
     public void addProductToCart(Integer userId, Integer productId) {
@@ -2,6 +2,7 @@ package cn.edu.neu.shop.pin.service;
 
 import cn.edu.neu.shop.pin.mapper.PinUserProductVisitRecordMapper;
 import cn.edu.neu.shop.pin.model.PinUserProductVisitRecord;
+import cn.edu.neu.shop.pin.pipeline.ProductVisitPipeline;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -14,12 +15,12 @@ public class UserProductRecordService extends AbstractService<PinUserProductVisi
 
     private final PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper;
 
-    private final UserProductInteractionService userProductInteractionService;
+    private final ProductVisitPipeline productVisitPipeline;
 
     @Autowired
-    public UserProductRecordService(PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper, UserProductInteractionService userProductInteractionService) {
+    public UserProductRecordService(PinUserProductVisitRecordMapper pinUserProductVisitRecordMapper, ProductVisitPipeline productVisitPipeline) {
         this.pinUserProductVisitRecordMapper = pinUserProductVisitRecordMapper;
-        this.userProductInteractionService = userProductInteractionService;
+        this.productVisitPipeline = productVisitPipeline;
     }
 
     /**
@@ -46,8 +47,7 @@ public class UserProductRecordService extends AbstractService<PinUserProductVisi
         visitRecord.setUserId(userId);
         visitRecord.setVisitTime(new Date());
         visitRecord.setVisitIp(ipAddress);
-        save(visitRecord);
-        // 更新交互度量值
-        userProductInteractionService.visitProduct(userId, productId);
+        // 浏览记录与交互度量值由管道异步批量写入，不阻塞商品详情请求
+        productVisitPipeline.submit(visitRecord);
     }
 }
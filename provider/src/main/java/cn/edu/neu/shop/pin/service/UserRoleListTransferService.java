@@ -21,6 +21,9 @@ public class UserRoleListTransferService extends AbstractService<PinUser> {
     @Override
     public PinUser findById(Integer id) {
         PinUser pinUser = pinUserMapper.findById(id);
+        if (pinUser == null) {
+            return null;
+        }
         List<PinRole> roles = pinUser.getRoles();
         if (roles != null) {
             pinUser.setRoles(PinUser.transferRoleIntegerToPinRole(roles));
@@ -2,11 +2,13 @@ package cn.edu.neu.shop.pin.service.finance;
 
 import cn.edu.neu.shop.pin.exception.InsufficientBalanceException;
 import cn.edu.neu.shop.pin.exception.PermissionDeniedException;
+import cn.edu.neu.shop.pin.exception.ProductSoldOutException;
 import cn.edu.neu.shop.pin.exception.RecordNotFoundException;
 import cn.edu.neu.shop.pin.exception.RepeatPaymentException;
 import cn.edu.neu.shop.pin.lock.annotation.LockKeyVariable;
 import cn.edu.neu.shop.pin.lock.annotation.MutexLock;
 import cn.edu.neu.shop.pin.model.PinOrderIndividual;
+import cn.edu.neu.shop.pin.service.InventoryService;
 import cn.edu.neu.shop.pin.service.OrderIndividualService;
 import cn.edu.neu.shop.pin.service.message.TemplateMessageService;
 import cn.edu.neu.shop.pin.util.PinConstants;
@@ -30,11 +32,14 @@ public class PaymentService {
 
     private final TemplateMessageService templateMessageService;
 
+    private final InventoryService inventoryService;
+
     @Autowired
-    public PaymentService(UserBalanceService userBalanceService, OrderIndividualService orderIndividualService, TemplateMessageService templateMessageService) {
+    public PaymentService(UserBalanceService userBalanceService, OrderIndividualService orderIndividualService, TemplateMessageService templateMessageService, InventoryService inventoryService) {
         this.userBalanceService = userBalanceService;
         this.orderIndividualService = orderIndividualService;
         this.templateMessageService = templateMessageService;
+        this.inventoryService = inventoryService;
     }
 
     /**
@@ -46,10 +51,11 @@ public class PaymentService {
      * @throws PermissionDeniedException    权限不足（操作了他人的个人订单）
      * @throws RecordNotFoundException      记录不存在（个人订单ID无效）
      * @throws InsufficientBalanceException 余额不足（支付失败）
+     * @throws ProductSoldOutException      预占库存已超时释放，且商品库存已不足（支付失败）
      */
-    @Transactional
+    @Transactional(rollbackFor = ProductSoldOutException.class)
     @MutexLock(key = PinConstants.LOCK_KEY_ORDER_INDIVIDUAL)
-    public void payIndividualOrderByBalance(@LockKeyVariable Integer individualOrderId, Integer userId) throws PermissionDeniedException, RecordNotFoundException, InsufficientBalanceException, RepeatPaymentException {
+    public void payIndividualOrderByBalance(@LockKeyVariable Integer individualOrderId, Integer userId) throws PermissionDeniedException, RecordNotFoundException, InsufficientBalanceException, RepeatPaymentException, ProductSoldOutException {
         PinOrderIndividual orderIndividual = orderIndividualService.findById(individualOrderId);
         if (orderIndividual == null) {
             throw new RecordNotFoundException("指定的个人订单不存在");
@@ -62,6 +68,10 @@ public class PaymentService {
             throw new RepeatPaymentException("此订单已经支付");
         }
         userBalanceService.reduceUserBalanceFromDiscountOnIndividualOrder(userId, individualOrderId, orderIndividual.getTotalPrice());
+        // 确认下单时预占的库存，失败时回滚余额扣款
+        if (!inventoryService.commit(orderIndividual.getStoreId(), individualOrderId)) {
+            throw new ProductSoldOutException("库存不足");
+        }
         // 余额扣款成功(不成功会抛出异常)。
         // 在此余额支付了所有款项，实际进帐金额为0元
         updateOrderIndividualPaymentStatusToSuccess(orderIndividual, orderIndividual.getTotalPrice());
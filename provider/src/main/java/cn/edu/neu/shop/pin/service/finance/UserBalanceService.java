@@ -4,6 +4,8 @@ import cn.edu.neu.shop.pin.exception.InsufficientBalanceException;
 import cn.edu.neu.shop.pin.mapper.PinUserMapper;
 import cn.edu.neu.shop.pin.model.PinUser;
 import cn.edu.neu.shop.pin.model.PinUserBalanceRecord;
+import cn.edu.neu.shop.pin.security.UserRoleCache;
+import cn.edu.neu.shop.pin.util.TransactionUtils;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,8 +22,11 @@ public class UserBalanceService extends AbstractService<PinUserBalanceRecord> {
 
     private final PinUserMapper userMapper;
 
-    public UserBalanceService(PinUserMapper userMapper) {
+    private final UserRoleCache userRoleCache;
+
+    public UserBalanceService(PinUserMapper userMapper, UserRoleCache userRoleCache) {
         this.userMapper = userMapper;
+        this.userRoleCache = userRoleCache;
     }
 
     /**
@@ -40,6 +45,7 @@ public class UserBalanceService extends AbstractService<PinUserBalanceRecord> {
         }
         // 更新数据库记录
         userMapper.updateByPrimaryKey(userToOperate);
+        TransactionUtils.runAfterCommit(() -> userRoleCache.invalidate(userId));
         // 动账操作
         PinUserBalanceRecord newBalanceRecord = getNewBalanceRecord(userId, fromOrderIndividualId);
         // 减少金额需要取反
@@ -62,6 +68,7 @@ public class UserBalanceService extends AbstractService<PinUserBalanceRecord> {
         userToOperate.setBalance(userToOperate.getBalance().add(bonusAmount));
         // 更新数据库记录
         userMapper.updateByPrimaryKey(userToOperate);
+        TransactionUtils.runAfterCommit(() -> userRoleCache.invalidate(userId));
         // 动账操作
         PinUserBalanceRecord newBalanceRecord = getNewBalanceRecord(userId, fromOrderIndividualId);
         // 返现金额类型
@@ -77,6 +84,7 @@ public class UserBalanceService extends AbstractService<PinUserBalanceRecord> {
         userToOperate.setBalance(userToOperate.getBalance().add(refundAmount));
         //更新数据库记录
         userMapper.updateByPrimaryKey(userToOperate);
+        TransactionUtils.runAfterCommit(() -> userRoleCache.invalidate(userId));
         //动账操作
         PinUserBalanceRecord newBalanceRecord = getNewBalanceRecord(userId, fromOrderIndividualId);
         //返现金额类型
@@ -4,6 +4,7 @@ import cn.edu.neu.shop.pin.exception.CredentialException;
 import cn.edu.neu.shop.pin.mapper.PinUserRoleMapper;
 import cn.edu.neu.shop.pin.model.*;
 import cn.edu.neu.shop.pin.security.JwtTokenProvider;
+import cn.edu.neu.shop.pin.security.UserRoleCache;
 import cn.edu.neu.shop.pin.service.UserRoleListTransferService;
 import cn.edu.neu.shop.pin.util.base.AbstractService;
 import org.springframework.http.HttpStatus;
@@ -34,12 +35,15 @@ public class UserService extends AbstractService<PinUser> {
 
     private final PinUserRoleMapper pinUserRoleMapper;
 
-    public UserService(UserRoleListTransferService userRoleListTransferService, PasswordEncoder passwordEncoder, JwtTokenProvider jwtTokenProvider, AuthenticationManager authenticationManager, PinUserRoleMapper pinUserRoleMapper) {
+    private final UserRoleCache userRoleCache;
+
+    public UserService(UserRoleListTransferService userRoleListTransferService, PasswordEncoder passwordEncoder, JwtTokenProvider jwtTokenProvider, AuthenticationManager authenticationManager, PinUserRoleMapper pinUserRoleMapper, UserRoleCache userRoleCache) {
         this.userRoleListTransferService = userRoleListTransferService;
         this.passwordEncoder = passwordEncoder;
         this.jwtTokenProvider = jwtTokenProvider;
         this.authenticationManager = authenticationManager;
         this.pinUserRoleMapper = pinUserRoleMapper;
+        this.userRoleCache = userRoleCache;
     }
 
     /**
@@ -124,6 +128,7 @@ public class UserService extends AbstractService<PinUser> {
                 PinUserRole role = new PinUserRole(user.getId(), roleToAppend.ordinal());
                 pinUserRoleMapper.insert(role);
             }
+            userRoleCache.invalidate(user.getId());
             return jwtTokenProvider.createToken(user.getId(), roleList);
         } else {
             throw new CredentialException("Id is already in use", HttpStatus.UNPROCESSABLE_ENTITY);
@@ -142,12 +147,37 @@ public class UserService extends AbstractService<PinUser> {
         return user;
     }
 
+    /**
+     * 获取当前请求的用户，从用户缓存中读取，同一请求内只读取一次
+     * 返回的对象在多个请求间共享，调用方不能修改
+     *
+     * @param req 请求
+     * @return 用户
+     */
     public PinUser whoAmI(HttpServletRequest req) {
-        return whoDoesThisTokenBelongsTo(jwtTokenProvider.resolveToken(req));
+        PinUser user = (PinUser) req.getAttribute(JwtTokenProvider.USER_ATTRIBUTE);
+        if (user != null) {
+            return user;
+        }
+        Integer id = (Integer) req.getAttribute(JwtTokenProvider.USER_ID_ATTRIBUTE);
+        user = id != null ? userRoleCache.getUser(id) : whoDoesThisTokenBelongsTo(jwtTokenProvider.resolveToken(req));
+        req.setAttribute(JwtTokenProvider.USER_ATTRIBUTE, user);
+        return user;
+    }
+
+    /**
+     * 获取当前请求的用户ID，认证过滤器已解析出ID时不再加载用户
+     *
+     * @param req 请求
+     * @return 用户ID
+     */
+    public Integer whoAmIId(HttpServletRequest req) {
+        Integer id = (Integer) req.getAttribute(JwtTokenProvider.USER_ID_ATTRIBUTE);
+        return id != null ? id : whoAmI(req).getId();
     }
 
     public PinUser whoDoesThisTokenBelongsTo(String token) {
-        return userRoleListTransferService.findById(jwtTokenProvider.getId(token));
+        return userRoleCache.getUser(jwtTokenProvider.getId(token));
     }
 
     public String refresh(Integer id) {
@@ -188,6 +218,7 @@ public class UserService extends AbstractService<PinUser> {
         user.setPhone(phone);
         // 成功更新
         this.update(user);
+        userRoleCache.invalidate(userId);
         return true;
     }
 
@@ -207,6 +238,7 @@ public class UserService extends AbstractService<PinUser> {
         user.setPhone(passwordHash);
         // 成功更新
         this.update(user);
+        userRoleCache.invalidate(userId);
         return true;
     }
 
@@ -224,6 +256,7 @@ public class UserService extends AbstractService<PinUser> {
         user.setEmail(email);
         // 成功更新
         this.update(user);
+        userRoleCache.invalidate(userId);
         return true;
     }
 
@@ -241,6 +274,7 @@ public class UserService extends AbstractService<PinUser> {
         user.setAvatarUrl(avatarUrl);
         // 成功更新
         this.update(user);
+        userRoleCache.invalidate(userId);
         return true;
     }
 
@@ -256,5 +290,6 @@ public class UserService extends AbstractService<PinUser> {
         userInfoToUpdate.setId(userId);
         // 成功更新
         this.update(userInfoToUpdate);
+        userRoleCache.invalidate(userId);
     }
 }
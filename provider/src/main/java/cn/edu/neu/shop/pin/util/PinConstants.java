@@ -17,6 +17,7 @@ public class PinConstants {
         public static final int PERMISSION_DENIED = 403;
 
         public static final int INTERNAL_ERROR = 500;
+        public static final int SERVER_BUSY = 503;
         public static final int PRODUCT_SOLD_OUT = 800;
 
         public static final int PAY_REPEAT_PAYMENT = 900; // 重复支付已经支付的订单
@@ -29,6 +30,7 @@ public class PinConstants {
         public static final String INVALID_DATA = "数据有误";
         public static final String PERMISSION_DENIED = "权限不足";
         public static final String INTERNAL_ERROR = "服务器错误";
+        public static final String SERVER_BUSY = "操作过于频繁，请稍后再试";
         public static final String PRODUCT_SOLD_OUT = "存在商品库存不足";
     }
 
@@ -43,8 +45,22 @@ public class PinConstants {
     }
 
     public class MessageQueueKey {
-        public static final String GROUP = "GROUP";
-        public static final String USER = "USER";
+        // STOMP 消息交换机：每个节点以 "node.节点ID" 和 "broadcast" 绑定自己的独占队列
+        public static final String STOMP_EXCHANGE = "STOMP";
+        public static final String STOMP_NODE_ROUTING_KEY_PREFIX = "node.";
+        public static final String STOMP_BROADCAST_ROUTING_KEY = "broadcast";
+        // 商品缓存失效广播交换机
+        public static final String PRODUCT_CACHE_EXCHANGE = "PRODUCT_CACHE";
+        // 系统设置变更广播交换机
+        public static final String SETTINGS_EXCHANGE = "SETTINGS";
+    }
+
+    // 系统设置变更消息中的设置类型
+    public class SettingsType {
+        public static final String PRODUCT_CATEGORY = "productCategory";
+        public static final String CONSTANT = "constant";
+        // 推荐模型刷新后各节点重新预热推荐排名缓存
+        public static final String RECOMMENDATION_RANK = "recommendationRank";
     }
 
 }
@@ -2,24 +2,38 @@ package cn.edu.neu.shop.pin.websocket;
 
 import cn.edu.neu.shop.pin.message_queue.producer.MessageOnQueueProducer;
 import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.stereotype.Component;
 
+import java.util.Set;
+import java.util.function.Supplier;
+
 /**
  * @author flyhero, LLG
  */
 @Component
 public class StompMessageService {
 
+    private static Logger logger = LoggerFactory.getLogger(StompMessageService.class);
+
+    private static final String MESSAGE_TYPE_USER = "USER";
+
+    private static final String MESSAGE_TYPE_GROUP = "GROUP";
+
     private final SimpMessageSendingOperations simpMessageSendingOperations;
 
     private final MessageOnQueueProducer messageOnQueueProducer;
 
+    private final StompSessionRegistry stompSessionRegistry;
+
     @Autowired
-    public StompMessageService(SimpMessageSendingOperations simpMessageSendingOperations, MessageOnQueueProducer messageOnQueueProducer) {
+    public StompMessageService(SimpMessageSendingOperations simpMessageSendingOperations, MessageOnQueueProducer messageOnQueueProducer, StompSessionRegistry stompSessionRegistry) {
         this.simpMessageSendingOperations = simpMessageSendingOperations;
         this.messageOnQueueProducer = messageOnQueueProducer;
+        this.stompSessionRegistry = stompSessionRegistry;
     }
 
     /**
@@ -63,6 +77,15 @@ public class StompMessageService {
         sendGroupMessage(principal, "update", jsonObject);
     }
 
+    /**
+     * @param orderGroupId 团单ID
+     * @param jsonObject   需要发送的信息JSON
+     * 在同一个Group内发送通知信息
+     */
+    public void sendGroupUpdateMessage(Integer orderGroupId, JSONObject jsonObject) {
+        sendToGroupRoute(orderGroupId, "/group/" + orderGroupId + "/update", jsonObject);
+    }
+
 //    /**
 //     * @author flyhero
 //     * 点对点发送Hello消息
@@ -117,49 +140,74 @@ public class StompMessageService {
      * 向/group/{orderGroupId}/notify地址发送广播消息，属于同一团内的用户订阅这个地址
      */
     private void sendGroupMessage(CustomerPrincipal principal, String router, JSONObject data) {
-        sendToGroupRoute("/group/" + principal.getOrderGroupId() + "/" + router, data);
+        sendToGroupRoute(principal.getOrderGroupId(), "/group/" + principal.getOrderGroupId() + "/" + router, data);
     }
 
     /**
      * @author LLG
      * 向个人用户发送信息：抽象分离方法
-     * 向消息队列转发 stomp 信息
+     * 只投递到该用户会话所在的节点
      * @param userId 用户Id
      * @param route 路由key
      * @param data 数据
      */
     private void sendToUserRoute(String userId, String route, JSONObject data) {
-        messageOnQueueProducer.sendToUser(userId, route, data);
+        JSONObject message = new JSONObject();
+        message.put("type", MESSAGE_TYPE_USER);
+        message.put("userId", userId);
+        message.put("route", route);
+        message.put("data", data);
+        deliver(() -> stompSessionRegistry.getUserNodes(userId), message);
     }
 
     /**
      * @author LLG
      * 向组内用户发送信息：抽象分离方法
-     * 向消息队列转发 stomp 信息
+     * 每个有组内成员会话的节点只投递一次，由节点内的消息代理推送给订阅者
+     * @param orderGroupId 团单Id
      * @param route 路由key
      * @param data 数据
      */
-    private void sendToGroupRoute(String route, JSONObject data) {
-        messageOnQueueProducer.sendToGroup(route, data);
+    private void sendToGroupRoute(Integer orderGroupId, String route, JSONObject data) {
+        JSONObject message = new JSONObject();
+        message.put("type", MESSAGE_TYPE_GROUP);
+        message.put("route", route);
+        message.put("data", data);
+        deliver(() -> stompSessionRegistry.getGroupNodes(orderGroupId), message);
     }
 
     /**
-     * 处理消息队列的组内消息回调方法
-     * @param route 路由
-     * @param data 数据
+     * 将消息投递到目标节点：本节点直接推送，其他节点经消息队列转发
+     * 会话注册表不可用时广播到所有节点
      */
-    public void onReceiveGroupMessageToRoute(String route, JSONObject data) {
-        simpMessageSendingOperations.convertAndSend(route, data);
+    private void deliver(Supplier<Set<String>> targetNodes, JSONObject message) {
+        Set<String> nodes;
+        try {
+            nodes = targetNodes.get();
+        } catch (Exception e) {
+            logger.error("查询 STOMP 会话所在节点失败，改为广播：" + e.getMessage());
+            messageOnQueueProducer.broadcastToNodes(message);
+            return;
+        }
+        for (String nodeId : nodes) {
+            if (nodeId.equals(stompSessionRegistry.getNodeId())) {
+                deliverLocally(message);
+            } else {
+                messageOnQueueProducer.sendToNode(nodeId, message);
+            }
+        }
     }
 
     /**
-     * 处理消息队列的用户个人消息回调方法
-     * @param userId 用户Id
-     * @param route 路由
-     * @param data 数据
+     * 推送给本节点上的 WebSocket 会话（处理消息队列的回调方法）
+     * @param message 消息
      */
-    public void onReceiveUserMessageToRoute(String userId, String route, JSONObject data) {
-        simpMessageSendingOperations.convertAndSendToUser(userId, route, data);
+    public void deliverLocally(JSONObject message) {
+        if (MESSAGE_TYPE_USER.equals(message.getString("type"))) {
+            simpMessageSendingOperations.convertAndSendToUser(message.getString("userId"), message.getString("route"), message.getJSONObject("data"));
+        } else {
+            simpMessageSendingOperations.convertAndSend(message.getString("route"), message.getJSONObject("data"));
+        }
     }
 
 //    /**
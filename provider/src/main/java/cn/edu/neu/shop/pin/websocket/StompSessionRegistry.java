@@ -0,0 +1,234 @@
+package cn.edu.neu.shop.pin.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import javax.annotation.PreDestroy;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOMP 会话注册表
+ * 在 Redis 中记录每个用户、每个团单的 WebSocket 会话分别连接在哪些 Provider 节点上，
+ * 发送消息时只投递到这些节点，而不是广播到所有节点
+ * 团单在连接时按握手参数注册，会话之后订阅其他团单（/group/{团单ID}/...）时再补充注册
+ * 节点每 30 秒续期一次自己的注册信息与存活标记，宕机节点的注册信息会在 90 秒后失效
+ */
+@Component
+public class StompSessionRegistry {
+
+    private static Logger logger = LoggerFactory.getLogger(StompSessionRegistry.class);
+
+    private static final String USER_NODES_KEY_PREFIX = "stomp-user-nodes-";
+
+    private static final String GROUP_NODES_KEY_PREFIX = "stomp-group-nodes-";
+
+    private static final String GROUP_DESTINATION_PREFIX = "/group/";
+
+    // 有序集合：节点ID -> 最近一次心跳时间
+    private static final String ALIVE_NODES_KEY = "stomp-alive-nodes";
+
+    private static final long REGISTRATION_TTL_MILLIS = 90000;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final String nodeId;
+
+    // 本节点的会话：会话ID -> 该会话注册的键
+    private final Map<String, Set<String>> sessionKeys = new ConcurrentHashMap<>();
+
+    // 本节点上每个用户、每个团单的会话数，只有最后一个会话断开时才从 Redis 中注销
+    private final Map<String, Integer> localKeyCounts = new ConcurrentHashMap<>();
+
+    private volatile Set<String> aliveNodes = Collections.emptySet();
+
+    @Autowired
+    public StompSessionRegistry(RedisTemplate<String, String> redisTemplate, @Value("${pin.node-id:}") String nodeId) {
+        this.redisTemplate = redisTemplate;
+        this.nodeId = nodeId.isEmpty() ? UUID.randomUUID().toString() : nodeId;
+        logger.info("STOMP 节点ID：" + this.nodeId);
+    }
+
+    /**
+     * @return 当前节点ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Principal principal = event.getUser();
+        String sessionId = (String) event.getMessage().getHeaders().get("simpSessionId");
+        if (principal == null || sessionId == null) {
+            return;
+        }
+        Set<String> keys = ConcurrentHashMap.newKeySet();
+        sessionKeys.put(sessionId, keys);
+        for (String key : getKeys(principal)) {
+            if (keys.add(key)) {
+                acquire(key);
+            }
+        }
+    }
+
+    /**
+     * 会话订阅团单消息时注册该团单，用户在连接之后加入的团单也能收到本节点的消息
+     */
+    @EventListener
+    public void onSessionSubscribe(SessionSubscribeEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        String destination = SimpMessageHeaderAccessor.getDestination(event.getMessage().getHeaders());
+        Set<String> keys = sessionId == null ? null : sessionKeys.get(sessionId);
+        if (keys == null || destination == null || !destination.startsWith(GROUP_DESTINATION_PREFIX)) {
+            return;
+        }
+        int end = destination.indexOf('/', GROUP_DESTINATION_PREFIX.length());
+        String orderGroupId = destination.substring(GROUP_DESTINATION_PREFIX.length(), end < 0 ? destination.length() : end);
+        if (orderGroupId.isEmpty()) {
+            return;
+        }
+        String key = GROUP_NODES_KEY_PREFIX + orderGroupId;
+        if (keys.add(key)) {
+            acquire(key);
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        Set<String> keys = sessionKeys.remove(event.getSessionId());
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            if (localKeyCounts.merge(key, -1, Integer::sum) <= 0) {
+                localKeyCounts.remove(key);
+                unregister(key);
+            }
+        }
+    }
+
+    private void acquire(String key) {
+        if (localKeyCounts.merge(key, 1, Integer::sum) == 1) {
+            register(key);
+        }
+    }
+
+    /**
+     * @param userId 用户ID
+     * @return 该用户的会话所在的存活节点
+     */
+    public Set<String> getUserNodes(String userId) {
+        return getNodes(USER_NODES_KEY_PREFIX + userId);
+    }
+
+    /**
+     * @param orderGroupId 团单ID
+     * @return 该团单成员的会话所在的存活节点
+     */
+    public Set<String> getGroupNodes(Integer orderGroupId) {
+        return getNodes(GROUP_NODES_KEY_PREFIX + orderGroupId);
+    }
+
+    /**
+     * 续期本节点的注册信息与存活标记，并刷新本地的存活节点列表
+     */
+    @Scheduled(fixedDelay = 30000, initialDelay = 0)
+    public void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().add(ALIVE_NODES_KEY, nodeId, now);
+            redisTemplate.opsForZSet().removeRangeByScore(ALIVE_NODES_KEY, 0, now - REGISTRATION_TTL_MILLIS);
+            refreshAliveNodes();
+            for (String key : localKeyCounts.keySet()) {
+                register(key);
+            }
+        } catch (Exception e) {
+            logger.error("STOMP 会话注册表续期失败：" + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        try {
+            redisTemplate.opsForZSet().remove(ALIVE_NODES_KEY, nodeId);
+            for (String key : localKeyCounts.keySet()) {
+                unregister(key);
+            }
+        } catch (Exception e) {
+            logger.error("注销 STOMP 会话失败：" + e.getMessage());
+        }
+    }
+
+    private Set<String> getNodes(String key) {
+        Set<String> members = redisTemplate.opsForSet().members(key);
+        Set<String> nodes = new HashSet<>();
+        if (members == null) {
+            return nodes;
+        }
+        Set<String> alive = aliveNodes;
+        boolean refreshed = false;
+        for (String member : members) {
+            // 本地存活列表中没有的节点可能是上次刷新后才上线的，重新读取一次存活列表再判断
+            if (!member.equals(nodeId) && !alive.isEmpty() && !alive.contains(member) && !refreshed) {
+                alive = refreshAliveNodes();
+                refreshed = true;
+            }
+            if (member.equals(nodeId) || alive.isEmpty() || alive.contains(member)) {
+                nodes.add(member);
+            }
+        }
+        return nodes;
+    }
+
+    private Set<String> refreshAliveNodes() {
+        Set<String> nodes = redisTemplate.opsForZSet().rangeByScore(ALIVE_NODES_KEY, System.currentTimeMillis() - REGISTRATION_TTL_MILLIS, Double.MAX_VALUE);
+        aliveNodes = nodes == null ? Collections.singleton(nodeId) : nodes;
+        return aliveNodes;
+    }
+
+    private void register(String key) {
+        try {
+            redisTemplate.opsForSet().add(key, nodeId);
+            redisTemplate.expire(key, REGISTRATION_TTL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            logger.error("注册 STOMP 会话 " + key + " 失败：" + e.getMessage());
+        }
+    }
+
+    private void unregister(String key) {
+        try {
+            redisTemplate.opsForSet().remove(key, nodeId);
+        } catch (Exception e) {
+            logger.error("注销 STOMP 会话 " + key + " 失败：" + e.getMessage());
+        }
+    }
+
+    private static Set<String> getKeys(Principal principal) {
+        Set<String> keys = new HashSet<>();
+        if (principal instanceof CustomerPrincipal) {
+            CustomerPrincipal customer = (CustomerPrincipal) principal;
+            keys.add(USER_NODES_KEY_PREFIX + customer.getUserId());
+            keys.add(GROUP_NODES_KEY_PREFIX + customer.getOrderGroupId());
+        } else if (principal instanceof MerchantPrincipal) {
+            keys.add(USER_NODES_KEY_PREFIX + ((MerchantPrincipal) principal).getUserId());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,75 @@
+package cn.edu.neu.shop.pin.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LocalLruCacheTest {
+
+    @Test
+    public void getReturnsPutValue() {
+        LocalLruCache<Integer, String> cache = new LocalLruCache<>(10, 0);
+        cache.put(1, "a");
+        assertEquals("a", cache.get(1));
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        LocalLruCache<Integer, String> cache = new LocalLruCache<>(2, 0);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        // 访问 1 之后，2 成为最久未使用的条目
+        cache.get(1);
+        cache.put(3, "c");
+        assertEquals(2, cache.size());
+        assertEquals("a", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("c", cache.get(3));
+    }
+
+    @Test
+    public void expiredEntriesAreRemovedOnRead() throws InterruptedException {
+        LocalLruCache<Integer, String> cache = new LocalLruCache<>(10, 0);
+        cache.put(1, "a", 1);
+        cache.put(2, "b");
+        Thread.sleep(20);
+        assertNull(cache.get(1));
+        assertEquals("b", cache.get(2));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void defaultTtlApplies() throws InterruptedException {
+        LocalLruCache<Integer, String> cache = new LocalLruCache<>(10, 1);
+        cache.put(1, "a");
+        Thread.sleep(20);
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void putReplacesValueAndTtl() throws InterruptedException {
+        LocalLruCache<Integer, String> cache = new LocalLruCache<>(10, 0);
+        cache.put(1, "a", 1);
+        cache.put(1, "b", 0);
+        Thread.sleep(20);
+        assertEquals("b", cache.get(1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void removeClearAndKeys() {
+        LocalLruCache<Integer, String> cache = new LocalLruCache<>(10, 0);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        cache.remove(2);
+        assertEquals(Arrays.asList(1, 3), cache.keys());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.keys().size());
+    }
+}
@@ -1,5 +1,6 @@
 package cn.edu.neu.shop.pin.mapper;
 
+import cn.edu.neu.shop.pin.dto.OrderQueryCondition;
 import cn.edu.neu.shop.pin.model.PinOrderGroup;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -45,8 +46,10 @@ public class PinOrderGroupMapperTest {
     }
 
     @Test
-    public void getAllWithOrderIndividual() {
-        List<PinOrderGroup> list = pinOrderGroupMapper.getAllWithOrderIndividual(1);
+    public void queryForAdmin() {
+        OrderQueryCondition condition = OrderQueryCondition.forStore(1).groupStatus(1).build();
+        List<PinOrderGroup> list = pinOrderGroupMapper.queryForAdmin(condition);
+        System.out.println(pinOrderGroupMapper.countForAdmin(condition));
         System.out.println("pause");
     }
 }
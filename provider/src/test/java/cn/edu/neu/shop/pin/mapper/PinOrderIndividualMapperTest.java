@@ -1,5 +1,6 @@
 package cn.edu.neu.shop.pin.mapper;
 
+import cn.edu.neu.shop.pin.dto.OrderQueryCondition;
 import cn.edu.neu.shop.pin.model.PinOrderIndividual;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -20,13 +21,15 @@ public class PinOrderIndividualMapperTest {
     PinOrderIndividualMapper pinOrderIndividualMapper;
 
     @Test
-    public void testGetAllWithProductsByKeyWord() {
+    public void testQueryForAdmin() {
         System.out.println(new Date());
-        List<PinOrderIndividual> list = pinOrderIndividualMapper.getAllWithProductsByKeyWord("", 1);
+        OrderQueryCondition condition = OrderQueryCondition.forStore(1).page(1, 10, null).build();
+        List<PinOrderIndividual> list = pinOrderIndividualMapper.queryForAdmin(condition);
         System.out.println(new Date());
         for(PinOrderIndividual orderIndividual : list) {
             System.out.println(orderIndividual.getUserId());
         }
+        System.out.println(pinOrderIndividualMapper.countForAdmin(condition));
     }
 
     @Test
@@ -45,7 +48,8 @@ public class PinOrderIndividualMapperTest {
 
     @Test
     public void getOrdersByKeyWord(){
-        List<PinOrderIndividual> list = pinOrderIndividualMapper.getAllWithProductsByKeyWord("沈阳",1);
+        OrderQueryCondition condition = OrderQueryCondition.forStore(1).keyWord("沈阳").build();
+        List<PinOrderIndividual> list = pinOrderIndividualMapper.queryForAdmin(condition);
         System.out.println("pause");
     }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package cn.edu.neu.shop.pin.nlp;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RuleBasedCommentTagAnalyzerTest {
+
+    private final RuleBasedCommentTagAnalyzer analyzer = new RuleBasedCommentTagAnalyzer();
+
+    @Test
+    public void longerPhraseWinsOverContainedPhrase() {
+        JSONArray items = analyze("这个不好用");
+        assertEquals(1, items.size());
+        JSONObject item = items.getJSONObject(0);
+        assertEquals("不好用", item.getString("adj"));
+        assertEquals(0, item.getIntValue("sentiment"));
+        assertEquals(2, item.getIntValue("begin_pos"));
+        assertEquals(5, item.getIntValue("end_pos"));
+        assertEquals("不好用", item.getString("abstract"));
+    }
+
+    @Test
+    public void positivePhraseIsNotSplit() {
+        JSONArray items = analyze("物流非常好");
+        assertEquals(1, items.size());
+        assertEquals("非常好", items.getJSONObject(0).getString("adj"));
+        assertEquals(2, items.getJSONObject(0).getIntValue("sentiment"));
+    }
+
+    @Test
+    public void everyOccurrenceIsReported() {
+        JSONArray items = analyze("好吃，好吃，就是太慢");
+        assertEquals(3, items.size());
+        int negative = 0;
+        for (int i = 0; i < items.size(); i++) {
+            if (items.getJSONObject(i).getIntValue("sentiment") == 0) {
+                negative++;
+                assertEquals("太慢", items.getJSONObject(i).getString("adj"));
+            }
+        }
+        assertEquals(1, negative);
+    }
+
+    @Test
+    public void emptyOrNullContentHasNoTags() {
+        assertEquals(0, analyze(null).size());
+        assertEquals(0, analyze("").size());
+        assertEquals(0, analyze("收到了").size());
+    }
+
+    private JSONArray analyze(String content) {
+        return JSON.parseArray(analyzer.analyze(content));
+    }
+}
@@ -0,0 +1,179 @@
+package cn.edu.neu.shop.pin.pipeline;
+
+import cn.edu.neu.shop.pin.mapper.PinUserProductCommentMapper;
+import cn.edu.neu.shop.pin.model.PinUserProductComment;
+import cn.edu.neu.shop.pin.nlp.CommentTagAnalyzer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class CommentAnalysisPipelineTest {
+
+    private final List<PinUserProductComment> written = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private PinUserProductCommentMapper mapper;
+
+    private CommentAnalysisPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        // 记录写回的标签
+        mapper = mock(PinUserProductCommentMapper.class);
+        doAnswer(invocation -> {
+            List<PinUserProductComment> comments = invocation.getArgument(0);
+            written.addAll(comments);
+            return null;
+        }).when(mapper).updateCommentTags(any());
+    }
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void analyzedTagsAreWrittenBack() throws Exception {
+        start(content -> "tag-" + content, 5, 100);
+        pipeline.submit(1, "a");
+        pipeline.submit(2, "b");
+        pipeline.submit(3, "c");
+        awaitWritten(3);
+        assertEquals("tag-a", tagOf(1));
+        assertEquals("tag-b", tagOf(2));
+        assertEquals("tag-c", tagOf(3));
+        assertEquals(3L, pipeline.getMetrics().getLongValue("analyzed"));
+    }
+
+    @Test
+    public void transientFailureIsRetried() throws Exception {
+        start(content -> {
+            if (calls.get() == 1) {
+                throw new IllegalStateException("限流");
+            }
+            return "ok";
+        }, 5, 100);
+        pipeline.submit(1, "a");
+        awaitWritten(1);
+        assertEquals("ok", tagOf(1));
+        assertEquals(2, calls.get());
+        assertEquals(1L, pipeline.getMetrics().getLongValue("retried"));
+    }
+
+    @Test
+    public void commentIsAbandonedAfterMaxAttempts() throws Exception {
+        start(content -> {
+            throw new IllegalStateException("网络错误");
+        }, 3, 100);
+        pipeline.submit(1, "a");
+        awaitWritten(1);
+        assertEquals(CommentAnalysisPipeline.EMPTY_TAG, tagOf(1));
+        assertEquals(3, calls.get());
+        assertEquals(2L, pipeline.getMetrics().getLongValue("retried"));
+        assertEquals(1L, pipeline.getMetrics().getLongValue("abandoned"));
+    }
+
+    @Test
+    public void breakerOpensAfterConsecutiveFailures() throws Exception {
+        start(content -> {
+            throw new IllegalStateException("网络错误");
+        }, 1, 2);
+        pipeline.submit(1, "a");
+        pipeline.submit(2, "b");
+        awaitWritten(2);
+        assertTrue(pipeline.getMetrics().getBooleanValue("breakerOpen"));
+    }
+
+    @Test
+    public void duplicateSubmitIsIgnoredWhileInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        start(content -> {
+            release.await();
+            return "tag-" + content;
+        }, 5, 100);
+        pipeline.submit(1, "a");
+        pipeline.submit(1, "a");
+        release.countDown();
+        awaitWritten(1);
+        // 再等一个批次，确认没有第二次分析
+        Thread.sleep(100);
+        assertEquals(1, calls.get());
+        assertEquals(1, written.size());
+    }
+
+    @Test
+    public void resubmitSupersedesOldContent() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        start(content -> {
+            if ("old".equals(content)) {
+                started.countDown();
+                release.await();
+            }
+            return "tag-" + content;
+        }, 5, 100);
+        pipeline.submit(1, "old");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pipeline.resubmit(1, "new");
+        release.countDown();
+        awaitWritten(1);
+        assertEquals("tag-new", tagOf(1));
+        for (PinUserProductComment comment : written) {
+            assertFalse("tag-old".equals(comment.getCommentTag()));
+        }
+    }
+
+    private void start(CommentTagAnalyzer analyzer, int maxAttempts, int breakerThreshold) {
+        CommentTagAnalyzer counting = content -> {
+            calls.incrementAndGet();
+            return analyzer.analyze(content);
+        };
+        pipeline = new CommentAnalysisPipeline(mapper, counting, null);
+        ReflectionTestUtils.setField(pipeline, "capacity", 100);
+        ReflectionTestUtils.setField(pipeline, "batchSize", 10);
+        ReflectionTestUtils.setField(pipeline, "workers", 2);
+        ReflectionTestUtils.setField(pipeline, "batchTimeoutMillis", 5000L);
+        ReflectionTestUtils.setField(pipeline, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(pipeline, "retryBackoffMillis", 1L);
+        ReflectionTestUtils.setField(pipeline, "breakerThreshold", breakerThreshold);
+        ReflectionTestUtils.setField(pipeline, "breakerOpenMillis", 60000L);
+        pipeline.start();
+    }
+
+    private void awaitWritten(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (written.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, written.size());
+    }
+
+    private String tagOf(Integer commentId) {
+        synchronized (written) {
+            for (PinUserProductComment comment : written) {
+                if (commentId.equals(comment.getId())) {
+                    return comment.getCommentTag();
+                }
+            }
+        }
+        return null;
+    }
+}
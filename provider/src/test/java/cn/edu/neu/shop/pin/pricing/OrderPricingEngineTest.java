@@ -0,0 +1,149 @@
+package cn.edu.neu.shop.pin.pricing;
+
+import cn.edu.neu.shop.pin.exception.OrderItemsAreNotInTheSameStoreException;
+import cn.edu.neu.shop.pin.exception.ProductSoldOutException;
+import cn.edu.neu.shop.pin.exception.RecordNotFoundException;
+import cn.edu.neu.shop.pin.model.PinOrderItem;
+import cn.edu.neu.shop.pin.model.PinProduct;
+import cn.edu.neu.shop.pin.model.PinProductAttributeValue;
+import cn.edu.neu.shop.pin.service.OrderItemBatchLoader;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrderPricingEngineTest {
+
+    private OrderItemBatchLoader orderItemBatchLoader;
+
+    private OrderPricingEngine engine;
+
+    @Before
+    public void setUp() {
+        // 订单商品在测试中已挂载商品与 SKU，批量加载不做任何事
+        orderItemBatchLoader = mock(OrderItemBatchLoader.class);
+        when(orderItemBatchLoader.newBatch()).thenReturn(mock(OrderItemBatchLoader.Batch.class));
+        engine = new OrderPricingEngine(orderItemBatchLoader, 100, 60);
+    }
+
+    @Test
+    public void sumsPriceShippingAndCostInOnePass() throws Exception {
+        PinProduct phone = product(1, 10, "8.00", false);
+        PinProduct cable = product(2, 10, "5.00", true);
+        OrderQuote quote = engine.quote(1, Arrays.asList(
+                item(1, phone, sku(11, 1, 5, "1999.99", "1500.00"), 2),
+                item(2, cable, sku(21, 2, 10, "19.90", "3.30"), 3)));
+        assertEquals(Integer.valueOf(10), quote.getStoreId());
+        assertEquals(Integer.valueOf(5), quote.getTotalAmount());
+        assertEquals(new BigDecimal("4059.68"), quote.getProductPrice());
+        // 包邮商品不计邮费
+        assertEquals(new BigDecimal("16.00"), quote.getShippingFee());
+        assertEquals(new BigDecimal("4075.68"), quote.getTotalPrice());
+        assertEquals(new BigDecimal("3009.90"), quote.getTotalCost());
+    }
+
+    @Test
+    public void pricesAreRoundedToCents() throws Exception {
+        PinProduct product = product(1, 10, null, true);
+        OrderQuote quote = engine.quote(1, Collections.singletonList(item(1, product, sku(11, 1, 5, "0.005", null), 3)));
+        assertEquals(new BigDecimal("0.03"), quote.getProductPrice());
+        assertEquals(new BigDecimal("0.00"), quote.getShippingFee());
+        assertEquals(new BigDecimal("0.00"), quote.getTotalCost());
+    }
+
+    @Test(expected = OrderItemsAreNotInTheSameStoreException.class)
+    public void itemsFromDifferentStoresAreRejected() throws Exception {
+        engine.quote(1, Arrays.asList(
+                item(1, product(1, 10, "0", true), sku(11, 1, 5, "1", "1"), 1),
+                item(2, product(2, 20, "0", true), sku(21, 2, 5, "1", "1"), 1)));
+    }
+
+    @Test(expected = ProductSoldOutException.class)
+    public void stockIsCheckedAgainstTheTotalOfTheSameSku() throws Exception {
+        PinProduct product = product(1, 10, "0", true);
+        engine.quote(1, Arrays.asList(
+                item(1, product, sku(11, 1, 5, "1", "1"), 3),
+                item(2, product, sku(11, 1, 5, "1", "1"), 3)));
+    }
+
+    @Test(expected = ProductSoldOutException.class)
+    public void missingStockIsSoldOut() throws Exception {
+        engine.quote(1, Collections.singletonList(item(1, product(1, 10, "0", true), sku(11, 1, null, "1", "1"), 1)));
+    }
+
+    @Test(expected = RecordNotFoundException.class)
+    public void missingSkuIsRejected() throws Exception {
+        engine.quote(1, Collections.singletonList(item(1, product(1, 10, "0", true), null, 1)));
+    }
+
+    @Test(expected = RecordNotFoundException.class)
+    public void skuOfAnotherProductIsRejected() throws Exception {
+        engine.quote(1, Collections.singletonList(item(1, product(1, 10, "0", true), sku(21, 2, 5, "1", "1"), 1)));
+    }
+
+    @Test(expected = RecordNotFoundException.class)
+    public void emptyCartIsRejected() throws Exception {
+        engine.quote(1, new ArrayList<>());
+    }
+
+    @Test
+    public void quotesAreCachedPerUserAndSelection() throws Exception {
+        PinProduct product = product(1, 10, "0", true);
+        OrderQuote first = engine.quote(1, Collections.singletonList(item(1, product, sku(11, 1, 5, "1", "1"), 1)));
+        assertSame(first, engine.quote(1, Collections.singletonList(item(1, product, sku(11, 1, 5, "1", "1"), 1))));
+        verify(orderItemBatchLoader, times(1)).newBatch();
+        // 数量或用户不同时重新计算
+        assertNotSame(first, engine.quote(1, Collections.singletonList(item(1, product, sku(11, 1, 5, "1", "1"), 2))));
+        assertNotSame(first, engine.quote(2, Collections.singletonList(item(1, product, sku(11, 1, 5, "1", "1"), 1))));
+        verify(orderItemBatchLoader, times(3)).newBatch();
+    }
+
+    @Test
+    public void quoteJsonHidesCost() throws Exception {
+        OrderQuote quote = engine.quote(1, Collections.singletonList(item(1, product(1, 10, "0", true), sku(11, 1, 5, "1", "1"), 1)));
+        assertFalse(quote.toJSON().containsKey("totalCost"));
+        assertEquals(new BigDecimal("1.00"), quote.toJSON().get("totalPrice"));
+    }
+
+    private static PinProduct product(int id, int storeId, String shippingFee, boolean freeShipping) {
+        PinProduct product = new PinProduct();
+        product.setId(id);
+        product.setStoreId(storeId);
+        product.setShippingFee(shippingFee == null ? null : new BigDecimal(shippingFee));
+        product.setIsFreeShipping(freeShipping);
+        return product;
+    }
+
+    private static PinProductAttributeValue sku(int id, int productId, Integer stock, String price, String cost) {
+        PinProductAttributeValue sku = new PinProductAttributeValue();
+        sku.setId(id);
+        sku.setProductId(productId);
+        sku.setStock(stock);
+        sku.setPrice(price == null ? null : new BigDecimal(price));
+        sku.setCost(cost == null ? null : new BigDecimal(cost));
+        return sku;
+    }
+
+    private static PinOrderItem item(int id, PinProduct product, PinProductAttributeValue sku, int amount) {
+        PinOrderItem item = new PinOrderItem();
+        item.setId(id);
+        item.setProductId(product.getId());
+        item.setSkuId(sku == null ? null : sku.getId());
+        item.setProduct(product);
+        item.setProductAttributeValue(sku);
+        item.setAmount(amount);
+        return item;
+    }
+}
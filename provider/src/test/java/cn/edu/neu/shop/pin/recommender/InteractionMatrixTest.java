@@ -0,0 +1,99 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InteractionMatrixTest {
+
+    @Test
+    public void buildSortsUsersProductsAndEntries() {
+        InteractionMatrix matrix = matrix(new int[][]{{20, 300, 1}, {10, 200, 2}, {20, 100, 3}});
+        assertEquals(2, matrix.userCount());
+        assertEquals(3, matrix.itemCount());
+        assertEquals(0, matrix.userIndex(10));
+        assertEquals(20, matrix.userId(1));
+        assertEquals(2, matrix.productIndex(300));
+        assertTrue(matrix.userIndex(15) < 0);
+        // 同一用户的交互按商品下标升序
+        int u = matrix.userIndex(20);
+        assertEquals(100, matrix.productId(InteractionMatrix.item(matrix.entry(matrix.userFrom(u)))));
+        assertEquals(300, matrix.productId(InteractionMatrix.item(matrix.entry(matrix.userTo(u) - 1))));
+    }
+
+    @Test
+    public void mergeOverwritesAndInserts() {
+        InteractionMatrix matrix = matrix(new int[][]{{10, 100, 1}, {10, 200, 2}, {20, 100, 3}});
+        TreeMap<Long, Float> deltas = new TreeMap<>();
+        deltas.put(InteractionMatrix.key(10, 200), 5f);
+        deltas.put(InteractionMatrix.key(10, 150), 4f);
+        deltas.put(InteractionMatrix.key(5, 100), 6f);
+        deltas.put(InteractionMatrix.key(30, 400), 7f);
+        InteractionMatrix merged = matrix.merge(deltas);
+
+        Map<Long, Float> expected = new TreeMap<>();
+        expected.put(InteractionMatrix.key(5, 100), 6f);
+        expected.put(InteractionMatrix.key(10, 100), 1f);
+        expected.put(InteractionMatrix.key(10, 150), 4f);
+        expected.put(InteractionMatrix.key(10, 200), 5f);
+        expected.put(InteractionMatrix.key(20, 100), 3f);
+        expected.put(InteractionMatrix.key(30, 400), 7f);
+        assertEquals(expected, contents(merged));
+        assertEquals(4, merged.userCount());
+        assertEquals(4, merged.itemCount());
+        // 原矩阵不变
+        assertEquals(3, matrix.interactionCount());
+        assertEquals(Float.valueOf(2f), contents(matrix).get(InteractionMatrix.key(10, 200)));
+    }
+
+    @Test
+    public void mergeWithOnlyTrailingDeltas() {
+        InteractionMatrix matrix = matrix(new int[][]{{10, 100, 1}});
+        TreeMap<Long, Float> deltas = new TreeMap<>();
+        deltas.put(InteractionMatrix.key(11, 100), 2f);
+        deltas.put(InteractionMatrix.key(11, 101), 3f);
+        Map<Long, Float> merged = contents(matrix.merge(deltas));
+        assertEquals(3, merged.size());
+        assertEquals(Float.valueOf(1f), merged.get(InteractionMatrix.key(10, 100)));
+        assertEquals(Float.valueOf(3f), merged.get(InteractionMatrix.key(11, 101)));
+    }
+
+    @Test
+    public void mergeWithoutDeltasKeepsContents() {
+        InteractionMatrix matrix = matrix(new int[][]{{10, 100, 1}, {20, 200, 2}});
+        assertEquals(contents(matrix), contents(matrix.merge(new TreeMap<>())));
+    }
+
+    @Test
+    public void keyOrderFollowsUserThenProduct() {
+        assertTrue(InteractionMatrix.key(1, Integer.MAX_VALUE) < InteractionMatrix.key(2, 0));
+        assertTrue(InteractionMatrix.key(2, 1) < InteractionMatrix.key(2, 2));
+    }
+
+    private static InteractionMatrix matrix(int[][] triples) {
+        IntArrayBuffer users = new IntArrayBuffer(triples.length);
+        IntArrayBuffer products = new IntArrayBuffer(triples.length);
+        DoubleArrayBuffer values = new DoubleArrayBuffer(triples.length);
+        for (int[] triple : triples) {
+            users.add(triple[0]);
+            products.add(triple[1]);
+            values.add(triple[2]);
+        }
+        return InteractionMatrix.build(users, products, values);
+    }
+
+    private static Map<Long, Float> contents(InteractionMatrix matrix) {
+        Map<Long, Float> contents = new TreeMap<>();
+        for (int u = 0; u < matrix.userCount(); u++) {
+            for (int e = matrix.userFrom(u); e < matrix.userTo(u); e++) {
+                long entry = matrix.entry(e);
+                contents.put(InteractionMatrix.key(matrix.userId(u), matrix.productId(InteractionMatrix.item(entry))), InteractionMatrix.value(entry));
+            }
+        }
+        return contents;
+    }
+}
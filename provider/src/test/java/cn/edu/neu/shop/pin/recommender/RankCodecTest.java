@@ -0,0 +1,78 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RankCodecTest {
+
+    @Test
+    public void emptyRank() {
+        byte[] encoded = RankCodec.encode(new int[0]);
+        assertEquals(1, encoded.length);
+        assertArrayEquals(new int[0], RankCodec.decode(encoded));
+    }
+
+    @Test
+    public void closeIdsUseOneByteEach() {
+        int[] rank = {1000, 1001, 999, 1003, 1002};
+        byte[] encoded = RankCodec.encode(rank);
+        // 长度 1 字节，首个元素 2 字节，其余差值 1 字节
+        assertEquals(1 + 2 + 4, encoded.length);
+        assertArrayEquals(rank, RankCodec.decode(encoded));
+    }
+
+    @Test
+    public void negativeDeltasRoundTrip() {
+        int[] rank = {500, 3, 200, 1, 0, 7};
+        assertArrayEquals(rank, RankCodec.decode(RankCodec.encode(rank)));
+    }
+
+    @Test
+    public void extremeValuesRoundTrip() {
+        int[] rank = {Integer.MAX_VALUE, Integer.MIN_VALUE, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 1};
+        byte[] encoded = RankCodec.encode(rank);
+        // 差值溢出时按补码回绕，解码时同样回绕
+        assertArrayEquals(rank, RankCodec.decode(encoded));
+        assertTrue(encoded.length <= 5 * (rank.length + 1));
+    }
+
+    @Test
+    public void randomRanksRoundTrip() {
+        Random random = new Random(7);
+        for (int round = 0; round < 100; round++) {
+            int[] rank = new int[random.nextInt(300)];
+            for (int i = 0; i < rank.length; i++) {
+                rank[i] = random.nextInt();
+            }
+            assertArrayEquals(rank, RankCodec.decode(RankCodec.encode(rank)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedInputIsRejected() {
+        byte[] encoded = RankCodec.encode(new int[]{1, 100000, 2});
+        RankCodec.decode(Arrays.copyOf(encoded, encoded.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyInputIsRejected() {
+        RankCodec.decode(new byte[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overlongVarintIsRejected() {
+        RankCodec.decode(new byte[]{(byte) 0x81, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptLengthIsRejected() {
+        // 声明 2^28 个元素，实际没有数据
+        RankCodec.decode(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01});
+    }
+}
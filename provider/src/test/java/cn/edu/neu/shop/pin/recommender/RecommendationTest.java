@@ -1,20 +1,72 @@
 package cn.edu.neu.shop.pin.recommender;
 
+import cn.edu.neu.shop.pin.mapper.PinUserMapper;
+import cn.edu.neu.shop.pin.model.PinUser;
+import cn.edu.neu.shop.pin.mongo.document.RecommendedRankVersion;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@TestPropertySource(properties = {"pin.recommender.engine=popularity", "pin.recommender.min-refresh-millis=0"})
 public class RecommendationTest {
     @Autowired
     private RecommendEngineCaller caller;
 
+    @Autowired
+    private RecommenderCache recommenderCache;
+
+    @Autowired
+    private PinUserMapper pinUserMapper;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Before
+    public void resetState() {
+        // 热度替身的任务只存在于内存中，清除上次运行留下的水位线与未完成任务，从全量导出开始
+        redisTemplate.delete("recommender-state");
+    }
+
     @Test
     public void testRec() {
+        long versionBefore = currentVersion();
+        // 第一次提交全量表征，第二次取回按热度排序的排名并发布新版本
+        caller.updateRecommendationModel();
         caller.updateRecommendationModel();
+        assertTrue(currentVersion() > versionBefore);
+        // 发布后的广播经由消息队列异步送达，这里直接切换到新版本
+        recommenderCache.warm();
+        List<PinUser> users = pinUserMapper.selectAll();
+        assertFalse(users.isEmpty());
+        int[] rank = recommenderCache.getRank(users.get(0).getId());
+        assertTrue(rank.length > 0);
+        // 热度替身为每个用户生成相同的排名
+        if (users.size() > 1) {
+            assertArrayEquals(rank, recommenderCache.getRank(users.get(users.size() - 1).getId()));
+        }
+        assertNotNull(caller.getMetrics().get("freshnessLagMillis"));
     }
 
+    private long currentVersion() {
+        RecommendedRankVersion current = mongoTemplate.findById(RecommendedRankVersion.CURRENT, RecommendedRankVersion.class);
+        return current == null || current.getVersion() == null ? 0 : current.getVersion();
+    }
 }
@@ -0,0 +1,55 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScoreMapTest {
+
+    @Test
+    public void accumulatesScoresPerKey() {
+        ScoreMap scores = new ScoreMap(4);
+        scores.add(3, 0.5);
+        scores.add(0, 1.0);
+        scores.add(3, 0.25);
+        Map<Integer, Double> expected = new HashMap<>();
+        expected.put(3, 0.75);
+        expected.put(0, 1.0);
+        assertEquals(expected, contents(scores));
+    }
+
+    @Test
+    public void holdsExpectedNumberOfKeysWithCollisions() {
+        int expected = 1000;
+        ScoreMap scores = new ScoreMap(expected);
+        for (int round = 0; round < 2; round++) {
+            for (int key = 0; key < expected; key++) {
+                // 键均为容量的倍数，初始槽位相同，依赖线性探测
+                scores.add(key * scores.keys.length, key);
+            }
+        }
+        Map<Integer, Double> contents = contents(scores);
+        assertEquals(expected, contents.size());
+        for (int key = 0; key < expected; key++) {
+            assertEquals(2.0 * key, contents.get(key * scores.keys.length), 0);
+        }
+    }
+
+    @Test
+    public void emptyMapHasNoKeys() {
+        assertEquals(0, contents(new ScoreMap(0)).size());
+    }
+
+    private static Map<Integer, Double> contents(ScoreMap scores) {
+        Map<Integer, Double> contents = new HashMap<>();
+        for (int slot = 0; slot < scores.keys.length; slot++) {
+            if (scores.keys[slot] >= 0) {
+                contents.put(scores.keys[slot], scores.values[slot]);
+            }
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,68 @@
+package cn.edu.neu.shop.pin.recommender;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TopKTest {
+
+    @Test
+    public void keepsHighestScoresInDescendingOrder() {
+        TopK top = new TopK(3);
+        float[] scores = {0.5f, 0.1f, 0.9f, 0.3f, 0.7f, 0.2f};
+        for (int item = 0; item < scores.length; item++) {
+            top.offer(item, scores[item]);
+        }
+        assertEquals(3, top.sortDescending());
+        assertArrayEquals(new int[]{2, 4, 0}, Arrays.copyOf(top.items, 3));
+        assertArrayEquals(new float[]{0.9f, 0.7f, 0.5f}, Arrays.copyOf(top.scores, 3), 0f);
+    }
+
+    @Test
+    public void fewerOffersThanK() {
+        TopK top = new TopK(5);
+        top.offer(7, 1f);
+        top.offer(8, 3f);
+        assertEquals(2, top.sortDescending());
+        assertArrayEquals(new int[]{8, 7}, Arrays.copyOf(top.items, 2));
+    }
+
+    @Test
+    public void emptyAndReused() {
+        TopK top = new TopK(2);
+        assertEquals(0, top.sortDescending());
+        top.offer(1, 1f);
+        top.offer(2, 2f);
+        top.offer(3, 3f);
+        assertEquals(2, top.sortDescending());
+        // sortDescending 之后可以直接复用
+        top.offer(4, 0.5f);
+        assertEquals(1, top.sortDescending());
+        assertEquals(4, top.items[0]);
+        top.offer(5, 5f);
+        top.reset();
+        assertEquals(0, top.sortDescending());
+    }
+
+    @Test
+    public void matchesFullSort() {
+        Random random = new Random(42);
+        float[] scores = new float[1000];
+        TopK top = new TopK(50);
+        for (int item = 0; item < scores.length; item++) {
+            scores[item] = random.nextFloat();
+            top.offer(item, scores[item]);
+        }
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        assertEquals(50, top.sortDescending());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(sorted[sorted.length - 1 - i], top.scores[i], 0f);
+            assertEquals(scores[top.items[i]], top.scores[i], 0f);
+        }
+    }
+}
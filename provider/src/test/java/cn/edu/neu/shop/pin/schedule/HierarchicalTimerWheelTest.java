@@ -0,0 +1,106 @@
+package cn.edu.neu.shop.pin.schedule;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchicalTimerWheelTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wheelSizeMustBePowerOfTwo() {
+        new HierarchicalTimerWheel(10, 6, 2, 0);
+    }
+
+    @Test
+    public void horizonCoversAllLevels() {
+        HierarchicalTimerWheel wheel = new HierarchicalTimerWheel(10, 8, 3, 0);
+        assertEquals(8 * 8 * 8 * 10, wheel.getHorizonMillis());
+    }
+
+    @Test
+    public void pastDeadlineIsDueImmediately() {
+        HierarchicalTimerWheel wheel = new HierarchicalTimerWheel(10, 8, 2, 1000);
+        List<Long> due = new ArrayList<>();
+        assertTrue(wheel.add(1, 500, due));
+        assertEquals(Collections.singletonList(1L), due);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void deadlineBeyondHorizonIsRejected() {
+        HierarchicalTimerWheel wheel = new HierarchicalTimerWheel(10, 8, 2, 0);
+        List<Long> due = new ArrayList<>();
+        assertFalse(wheel.add(1, wheel.getHorizonMillis() + 10, due));
+        assertTrue(due.isEmpty());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void taskFiresOnceItsTickHasPassed() {
+        HierarchicalTimerWheel wheel = new HierarchicalTimerWheel(10, 8, 2, 0);
+        wheel.add(1, 55, new ArrayList<>());
+        assertTrue(wheel.advance(50).isEmpty());
+        assertTrue(wheel.advance(59).isEmpty());
+        assertEquals(Collections.singletonList(1L), wheel.advance(60));
+        assertEquals(0, wheel.size());
+        assertTrue(wheel.advance(1000).isEmpty());
+    }
+
+    @Test
+    public void higherLevelTasksCascadeDown() {
+        HierarchicalTimerWheel wheel = new HierarchicalTimerWheel(10, 8, 3, 0);
+        // 第 0 层只能容纳 80ms 以内的任务
+        wheel.add(1, 300, new ArrayList<>());
+        wheel.add(2, 3000, new ArrayList<>());
+        assertEquals(2, wheel.size());
+        assertTrue(wheel.advance(300).isEmpty());
+        assertEquals(Collections.singletonList(1L), wheel.advance(310));
+        assertTrue(wheel.advance(3000).isEmpty());
+        assertEquals(Collections.singletonList(2L), wheel.advance(3010));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void randomTasksFireExactlyOnceAtTheirTick() {
+        Random random = new Random(11);
+        long tick = 10;
+        long now = 123456;
+        HierarchicalTimerWheel wheel = new HierarchicalTimerWheel(tick, 16, 3, now);
+        Map<Long, Long> deadlines = new HashMap<>();
+        List<Long> due = new ArrayList<>();
+        for (long id = 0; id < 2000; id++) {
+            long deadline = now + (long) (random.nextDouble() * wheel.getHorizonMillis() * 0.9);
+            assertTrue(wheel.add(id, deadline, due));
+            deadlines.put(id, deadline);
+        }
+        assertTrue(due.isEmpty());
+        Map<Long, Long> firedAt = new HashMap<>();
+        Map<Long, Long> previousAdvance = new HashMap<>();
+        long end = now + wheel.getHorizonMillis();
+        while (now < end) {
+            long previous = now;
+            now += 1 + random.nextInt(200);
+            for (Long id : wheel.advance(now)) {
+                assertEquals(null, firedAt.put(id, now));
+                previousAdvance.put(id, previous);
+            }
+        }
+        assertEquals(deadlines.size(), firedAt.size());
+        assertEquals(0, wheel.size());
+        for (Map.Entry<Long, Long> fired : firedAt.entrySet()) {
+            long deadlineTick = deadlines.get(fired.getKey()) / tick;
+            // 在第一次越过到期 tick 的推进中触发，既不提前也不推迟
+            assertTrue(fired.getValue() / tick > deadlineTick);
+            assertTrue(previousAdvance.get(fired.getKey()) / tick <= deadlineTick);
+        }
+    }
+}
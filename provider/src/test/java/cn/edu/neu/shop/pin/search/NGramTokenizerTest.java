@@ -0,0 +1,72 @@
+package cn.edu.neu.shop.pin.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+public class NGramTokenizerTest {
+
+    @Test
+    public void emptyTextHasNoGrams() {
+        assertEquals(0, NGramTokenizer.indexGrams(null).length);
+        assertEquals(0, NGramTokenizer.indexGrams("").length);
+        assertEquals(0, NGramTokenizer.queryGrams(null).length);
+        assertEquals(0, NGramTokenizer.queryGrams("，。 ").length);
+    }
+
+    @Test
+    public void indexGramsContainUnigramsAndBigrams() {
+        // 手、机、手机
+        assertEquals(3, NGramTokenizer.indexGrams("手机").length);
+        // 重复的 gram 只保留一次：a、aa
+        assertEquals(2, NGramTokenizer.indexGrams("aaa").length);
+    }
+
+    @Test
+    public void indexGramsAreSortedAndDistinct() {
+        int[] grams = NGramTokenizer.indexGrams("华为手机华为平板");
+        int[] sorted = grams.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(sorted, grams);
+        for (int i = 1; i < grams.length; i++) {
+            assertTrue(grams[i] != grams[i - 1]);
+        }
+    }
+
+    @Test
+    public void separatorsBreakBigrams() {
+        // a、b，不生成跨空格的 ab
+        assertEquals(2, NGramTokenizer.indexGrams("a b").length);
+        assertEquals(2, NGramTokenizer.indexGrams("a，b").length);
+    }
+
+    @Test
+    public void lettersAreCaseInsensitive() {
+        assertArrayEquals(NGramTokenizer.indexGrams("iphone"), NGramTokenizer.indexGrams("iPhone"));
+        assertArrayEquals(NGramTokenizer.queryGrams("iphone"), NGramTokenizer.queryGrams("IPHONE"));
+    }
+
+    @Test
+    public void queryUsesBigramsForLongSegmentsAndUnigramsForSingleCharacters() {
+        assertEquals(1, NGramTokenizer.queryGrams("手机").length);
+        // 苹果、果手、手机
+        assertEquals(3, NGramTokenizer.queryGrams("苹果手机").length);
+        assertArrayEquals(NGramTokenizer.indexGrams("手"), NGramTokenizer.queryGrams("手"));
+        // 手机 的 bigram 加上 a 的 unigram
+        assertEquals(2, NGramTokenizer.queryGrams("手机 a").length);
+    }
+
+    @Test
+    public void queryGramsOfSubstringAreIndexed() {
+        int[] indexed = NGramTokenizer.indexGrams("2019新款华为P30 Pro全网通手机");
+        for (String query : new String[]{"华为", "p30", "全网通手机", "新", "pro"}) {
+            for (int gram : NGramTokenizer.queryGrams(query)) {
+                assertTrue(query, Arrays.binarySearch(indexed, gram) >= 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package cn.edu.neu.shop.pin.search;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProductSearchIndexTest {
+
+    private ProductSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ProductSearchIndex();
+        index.index(1, "华为P30手机", "华为 手机", "徕卡三摄");
+        index.index(2, "苹果手机", "iPhone", "A12 芯片");
+        index.index(3, "手机壳", "配件", "适用于华为P30");
+        index.index(4, "蓝牙耳机", "耳机", null);
+    }
+
+    @Test
+    public void emptyQueryHasNoHits() {
+        assertEquals(0, index.search("").length());
+        assertEquals(0, index.search("  ").length());
+    }
+
+    @Test
+    public void unknownGramHasNoHits() {
+        assertEquals(0, index.search("冰箱").length());
+    }
+
+    @Test
+    public void allQueryGramsMustMatch() {
+        // 2 号商品的名称中没有 机苹
+        assertEquals(0, index.search("手机苹果").length());
+        assertArrayEquals(new int[]{2}, index.search("苹果手机").slice(0, 10));
+    }
+
+    @Test
+    public void nameMatchesRankAboveDescriptionMatches() {
+        ProductSearchIndex.SearchHits hits = index.search("华为p30");
+        assertArrayEquals(new int[]{1, 3}, hits.slice(0, 10));
+        assertTrue(hits.scoreAt(0) > hits.scoreAt(1));
+    }
+
+    @Test
+    public void equalScoresAreOrderedByNewestFirst() {
+        // 1、4 号商品的名称与关键字都包含 机，2、3 号只有名称包含
+        ProductSearchIndex.SearchHits hits = index.search("机");
+        assertArrayEquals(new int[]{4, 1, 3, 2}, hits.slice(0, 10));
+        assertEquals(hits.scoreAt(0), hits.scoreAt(1));
+        assertTrue(hits.scoreAt(1) > hits.scoreAt(2));
+        assertEquals(hits.scoreAt(2), hits.scoreAt(3));
+    }
+
+    @Test
+    public void wholeDescriptionIsIndexed() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            description.append('的');
+        }
+        description.append("防水涂层");
+        index.index(5, "运动手表", null, description.toString());
+        assertArrayEquals(new int[]{5}, index.search("防水").slice(0, 10));
+    }
+
+    @Test
+    public void reindexReplacesOldGrams() {
+        index.index(2, "苹果平板", "iPad", null);
+        assertEquals(0, index.search("苹果手机").length());
+        assertArrayEquals(new int[]{2}, index.search("平板").slice(0, 10));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void removeDropsProduct() {
+        index.remove(1);
+        assertArrayEquals(new int[]{3}, index.search("华为").slice(0, 10));
+        assertEquals(3, index.size());
+        // 重复删除无影响
+        index.remove(1);
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void sliceAndCursorPaging() {
+        ProductSearchIndex.SearchHits hits = index.search("机");
+        assertArrayEquals(new int[]{1, 3}, hits.slice(1, 2));
+        assertEquals(0, hits.slice(10, 2).length);
+        assertEquals(0, hits.slice(0, 0).length);
+        int position = hits.positionAfter(hits.scoreAt(1), hits.idAt(1));
+        assertEquals(2, position);
+        assertEquals(hits.length(), hits.positionAfter(hits.scoreAt(hits.length() - 1), hits.idAt(hits.length() - 1)));
+    }
+
+    @Test
+    public void unrankedHitsAreOrderedByIdDescending() {
+        ProductSearchIndex.SearchHits hits = ProductSearchIndex.SearchHits.unranked(new int[]{3, 9, 1});
+        assertArrayEquals(new int[]{9, 3, 1}, hits.slice(0, 10));
+        assertEquals(0, hits.scoreAt(0));
+    }
+}
@@ -1,3 +1,9 @@
+import gzip
+import struct
+import threading
+import uuid
+
+import numpy as np
 import tensorrec
 from flask import Flask, request, jsonify
 from scipy.sparse import csr_matrix
@@ -11,33 +17,166 @@ try:
 except IOError:
     print("没有保存的模型检查点，初始化模型")
 
-@app.route('/ranks', methods=["POST"])
-def fitModelAndUpateRanks():
-    input = request.get_json()
-    print("INPUT: \n" + str(input) + "\n")
+# Provider 发送的二进制表征（gzip 压缩，大端序），格式见 RepresentationDataGenerator.Representation#writeTo
+REPRESENTATION_CONTENT_TYPE = 'application/x-pin-representation'
+REPRESENTATION_MAGIC = 0x50494E52
+# 表征类型请求头：full 或 delta
+MODE_HEADER = 'X-Pin-Representation-Mode'
+
+
+def read_int(buf, offset):
+    return struct.unpack_from('>i', buf, offset)[0], offset + 4
+
+
+def read_coo(buf, offset):
+    nnz, offset = read_int(buf, offset)
+    row = np.frombuffer(buf, dtype='>i4', count=nnz, offset=offset).astype(np.int32)
+    offset += 4 * nnz
+    col = np.frombuffer(buf, dtype='>i4', count=nnz, offset=offset).astype(np.int32)
+    offset += 4 * nnz
+    data = np.frombuffer(buf, dtype='>f8', count=nnz, offset=offset).astype(np.float64)
+    offset += 8 * nnz
+    return (row, col, data), offset
+
+
+def read_representation_blocks(body):
+    """返回 (用户ID, [交互, 用户, 商品]) ，每块为 (row, col, data) 数组"""
+    buf = gzip.decompress(body)
+    magic, offset = read_int(buf, 0)
+    if magic != REPRESENTATION_MAGIC:
+        raise ValueError("不是有效的表征数据")
+    _version, offset = read_int(buf, offset)
+    user_count, offset = read_int(buf, offset)
+    user_ids = np.frombuffer(buf, dtype='>i4', count=user_count, offset=offset).astype(np.int32)
+    offset += 4 * user_count
+    blocks = []
+    for _ in range(3):
+        block, offset = read_coo(buf, offset)
+        blocks.append(block)
+    return user_ids, blocks
+
+
+def to_matrices(blocks):
+    """交互矩阵的形状与用户、商品特征矩阵的行数保持一致"""
+    (i_row, i_col, i_data), (u_row, u_col, u_data), (p_row, p_col, p_data) = blocks
+    n_users = int(max(i_row.max(initial=-1), u_row.max(initial=-1))) + 1
+    n_items = int(max(i_col.max(initial=-1), p_row.max(initial=-1))) + 1
+    return (csr_matrix((i_data, (i_row, i_col)), shape=(n_users, n_items)),
+            csr_matrix((u_data, (u_row, u_col)), shape=(n_users, int(u_col.max(initial=-1)) + 1)),
+            csr_matrix((p_data, (p_row, p_col)), shape=(n_items, int(p_col.max(initial=-1)) + 1)))
+
+
+def read_representation(body):
+    _user_ids, blocks = read_representation_blocks(body)
+    return to_matrices(blocks)
+
+
+def read_json_representation(input):
     interactions = input['interaction']
     user_features = input['user']
     item_features = input['product']
+    return (csr_matrix((interactions['data'], (interactions['row'], interactions['col']))),
+            csr_matrix((user_features['data'], (user_features['row'], user_features['col']))),
+            csr_matrix((item_features['data'], (item_features['row'], item_features['col']))))
+
+
+class RepresentationState:
+    """保存上一次提交的全部表征，增量表征中的值直接覆盖对应位置"""
+
+    def __init__(self):
+        self.blocks = None
+        self.user_ids = set()
+
+    def has_base(self):
+        return self.blocks is not None
+
+    def merge(self, user_ids, blocks, full):
+        if full:
+            self.blocks = [{}, {}, {}]
+            self.user_ids = set()
+        for merged, (row, col, data) in zip(self.blocks, blocks):
+            merged.update(zip(zip(row.tolist(), col.tolist()), data.tolist()))
+        self.user_ids.update(user_ids.tolist())
+
+    def snapshot(self):
+        blocks = []
+        for merged in self.blocks:
+            keys = list(merged.keys())
+            blocks.append((np.array([k[0] for k in keys], dtype=np.int32),
+                           np.array([k[1] for k in keys], dtype=np.int32),
+                           np.array(list(merged.values()), dtype=np.float64)))
+        return sorted(self.user_ids), blocks
+
+
+state = RepresentationState()
+state_lock = threading.Lock()
+# 同一时间只训练一个模型
+train_lock = threading.Lock()
+jobs = {}
+
+
+def fit_and_rank(interactions, user_features, item_features):
+    # Fit the model for 5 epochs
+    model.fit(interactions, user_features, item_features, epochs=5, verbose=True)
+    model.save_model("./model")
+    # Predict ranks for all users and all items
+    return model.predict_rank(user_features=user_features, item_features=item_features)
+
+
+def train(job_id, user_ids, blocks):
+    try:
+        with train_lock:
+            predicted_ranks = fit_and_rank(*to_matrices(blocks))
+        jobs[job_id] = {'status': 'done',
+                        'userIds': user_ids,
+                        'ranks': [predicted_ranks[u].tolist() for u in user_ids]}
+    except Exception as e:
+        print("训练任务 " + job_id + " 失败：" + str(e))
+        jobs[job_id] = {'status': 'failed'}
+
+
+@app.route('/jobs', methods=["POST"])
+def submitTrainingJob():
+    full = request.headers.get(MODE_HEADER, 'full') == 'full'
+    user_ids, blocks = read_representation_blocks(request.get_data())
+    with state_lock:
+        if not full and not state.has_base():
+            return jsonify(error="没有基线数据，请提交全量表征"), 409
+        state.merge(user_ids, blocks, full)
+        snapshot_user_ids, snapshot_blocks = state.snapshot()
+    job_id = uuid.uuid4().hex
+    jobs[job_id] = {'status': 'running'}
+    threading.Thread(target=train, args=(job_id, snapshot_user_ids, snapshot_blocks), daemon=True).start()
+    return jsonify(jobId=job_id), 202
+
+
+@app.route('/jobs/<job_id>', methods=["GET"])
+def getTrainingJob(job_id):
+    job = jobs.get(job_id)
+    if job is None:
+        return jsonify(error="任务不存在"), 404
+    if job['status'] != 'running':
+        # 结果只取回一次
+        jobs.pop(job_id, None)
+    return jsonify(job)
+
+
+@app.route('/ranks', methods=["POST"])
+def fitModelAndUpateRanks():
     # 交互属性值 （矩阵大小用户数*商品数）
-    interactions = csr_matrix((interactions['data'], (interactions['row'], interactions['col'])))
-    # 性别，余额数量级，积分数量级
-    user_features = csr_matrix((user_features['data'], (user_features['row'], user_features['col'])))
-    # 分类ID，价格，销量，访问量，好评率，产品得分
-    item_features = csr_matrix((item_features['data'], (item_features['row'], item_features['col'])))
+    # 用户：性别，余额数量级，积分数量级
+    # 商品：分类ID，价格，销量，访问量，好评率，产品得分
+    if request.mimetype == REPRESENTATION_CONTENT_TYPE:
+        interactions, user_features, item_features = read_representation(request.get_data())
+    else:
+        interactions, user_features, item_features = read_json_representation(request.get_json())
 
     print("interaction: \n", interactions)
     print("user: \n" + str(user_features))
     print("item: \n" +str(item_features))
 
-    # Fit the model for 5 epochs
-    model.fit(interactions, user_features, item_features, epochs=5, verbose=True)
-    model.save_model("./model")
-    # Predict scores and ranks for all users and all items
-    predictions = model.predict(user_features=user_features,
-                                item_features=item_features)
-    predicted_ranks = model.predict_rank(user_features=user_features,
-                                         item_features=item_features)
-    print("Predictions: \n" +str(predictions))
+    with train_lock:
+        predicted_ranks = fit_and_rank(interactions, user_features, item_features)
     print("Predicted Rank: \n" +str(predicted_ranks))
     return jsonify(predicted_ranks.tolist())
 